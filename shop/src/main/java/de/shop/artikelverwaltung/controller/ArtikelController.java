@@ -26,15 +26,18 @@ import javax.persistence.EntityManager;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpSession;
 import javax.validation.ConstraintViolation;
 
 import org.jboss.logging.Logger;
 import org.richfaces.cdi.push.Push;
 import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.service.ArtikelKatalog;
+import de.shop.artikelverwaltung.service.ArtikelKatalog.Sortierung;
 import de.shop.artikelverwaltung.service.ArtikelService;
 import de.shop.artikelverwaltung.service.ArtikelValidationException;
 import de.shop.artikelverwaltung.service.ArtikelverwaltungException;
+import de.shop.artikelverwaltung.service.BestandService;
+import de.shop.artikelverwaltung.service.InvalidNachschubException;
 import de.shop.auth.controller.AuthController;
 import de.shop.util.AbstractShopException;
 import de.shop.util.Client;
@@ -63,10 +66,11 @@ public class ArtikelController implements Serializable {
 	//private static final String FLASH_ARTIKEL = "artikel";
 	
 	private static final String JSF_SELECT_ARTIKEL = JSF_ARTIKELVERWALTUNG + "selectArtikel";
-	private static final String SESSION_VERFUEGBARE_ARTIKEL = "verfuegbareArtikel";
 
 	private static final String MSG_KEY_UPDATE_ARTIKEL_CONCURRENT_UPDATE = "updateArtikel.concurrentUpdate";
 	private static final String MSG_KEY_UPDATE_ARTIKEL_CONCURRENT_DELETE = "updateArtikel.concurrentDelete";
+	private static final String MSG_KEY_NACHBESTELLEN_INVALID_MENGE = "updateArtikel.nachschub.invalidMenge";
+	private static final String CLIENT_ID_NACHSCHUB = "nachschubForm:nachschub";
 
 	private static final String REQUEST_ARTIKEL_ID = "artikelId";
 
@@ -75,6 +79,7 @@ public class ArtikelController implements Serializable {
 	private Artikel artikel;
 	private Artikel neuerArtikel;
 	private boolean geaendertArtikel;
+	private int nachschub;
 	private List<Artikel> artikelList = Collections.emptyList();
 
 
@@ -84,6 +89,12 @@ public class ArtikelController implements Serializable {
 	@Inject
 	private ArtikelService as;
 	
+	@Inject
+	private ArtikelKatalog katalog;
+	
+	@Inject
+	private BestandService bestandService;
+	
 	@Inject
 	private transient HttpServletRequest request;
 	
@@ -107,9 +118,6 @@ public class ArtikelController implements Serializable {
 	@Push(topic = "updateArtikel")
 	private transient Event<String> updateArtikelEvent;
 	
-	@Inject
-	private transient HttpSession session;
-	
 	@Inject
 	private Messages messages;
 
@@ -161,9 +169,32 @@ public class ArtikelController implements Serializable {
 		this.neuerArtikel = neuerArtikel;
 	}
 	
+	public int getNachschub() {
+		return nachschub;
+	}
+	
+	public void setNachschub(int nachschub) {
+		this.nachschub = nachschub;
+	}
+	
+	/**
+	 * @return Verfuegbarer Bestand des ausgewaehlten Artikels abzueglich aller Reservierungen
+	 */
+	public int getBestand() {
+		return artikel == null ? 0 : bestandService.getBestand(artikel.getId());
+	}
+	
 	public List<Artikel> getArtikelList() {
 		return artikelList;
 	}
+	
+	/**
+	 * @return Verfuegbare Artikel fuer selectArtikel.xhtml aus dem gemeinsamen Katalog, sortiert nach der
+	 *         Bezeichnung. In der Session wird nur die Referenz auf den Katalog gespeichert.
+	 */
+	public List<Artikel> getVerfuegbareArtikel() {
+		return katalog.getArtikel(Sortierung.BEZEICHNUNG);
+	}
 
 	@Transactional
 	public String findArtikelByBezeichnung() {
@@ -197,14 +228,7 @@ public class ArtikelController implements Serializable {
 		return JSF_VIEW_ARTIKEL;
 	}
 		
-	@Transactional
 	public String selectArtikel() {
-		if (session.getAttribute(SESSION_VERFUEGBARE_ARTIKEL) != null) {
-			return JSF_SELECT_ARTIKEL;
-		}
-		
-		final List<Artikel> alleArtikel = as.findVerfuegbareArtikel();
-		session.setAttribute(SESSION_VERFUEGBARE_ARTIKEL, alleArtikel);
 		return JSF_SELECT_ARTIKEL;
 	}
 	
@@ -277,6 +301,32 @@ public class ArtikelController implements Serializable {
 		return JSF_VIEW_ARTIKEL + JSF_REDIRECT_SUFFIX;
 	}
 	
+	/**
+	 * Nachschub fuer den ausgewaehlten Artikel buchen
+	 * @return Navigation zu viewArtikel.xhtml oder null bei einer ungueltigen Menge
+	 */
+	@Transactional
+	@TransactionAttribute(REQUIRED)
+	public String nachbestellen() {
+		auth.preserveLogin();
+		
+		if (artikel == null) {
+			return JSF_INDEX;
+		}
+		
+		try {
+			bestandService.nachbestellen(artikel.getId(), nachschub);
+		}
+		catch (InvalidNachschubException e) {
+			messages.error(ARTIKELVERWALTUNG, MSG_KEY_NACHBESTELLEN_INVALID_MENGE, CLIENT_ID_NACHSCHUB);
+			return null;
+		}
+		
+		nachschub = 0;  // zuruecksetzen
+		artikelId = artikel.getId();
+		return JSF_VIEW_ARTIKEL + JSF_REDIRECT_SUFFIX;
+	}
+	
 	private String updateErrorMsg(RuntimeException e, Class<? extends Artikel> artikelClass) {
 		final Class<? extends RuntimeException> exceptionClass = e.getClass();
 		if (exceptionClass.equals(ArtikelValidationException.class)) {
@@ -298,7 +348,11 @@ public class ArtikelController implements Serializable {
 			return null;
 		}
 		
-		artikel = ausgewaehlterArtikel;
+		// Der ausgewaehlte Artikel kann aus dem gemeinsamen Katalog stammen und wird deshalb neu gelesen
+		artikel = as.findArtikelById(ausgewaehlterArtikel.getId());
+		if (artikel == null) {
+			return null;
+		}
 		
 		return JSF_UPDATE_ARTIKEL;
 	}
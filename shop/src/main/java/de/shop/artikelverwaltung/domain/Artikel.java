@@ -2,6 +2,8 @@ package de.shop.artikelverwaltung.domain;
 
 import static de.shop.util.Constants.KEINE_ID;
 import static de.shop.util.Constants.ERSTE_VERSION;
+import static de.shop.util.Constants.HINT_CACHEABLE;
+import static de.shop.util.Constants.HINT_CACHE_REGION;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
 import java.io.Serializable;
@@ -20,6 +22,7 @@ import javax.persistence.PostPersist;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.PostUpdate;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Version;
@@ -28,6 +31,7 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
 import org.jboss.logging.Logger;
 
 @Entity
@@ -37,7 +41,9 @@ import org.jboss.logging.Logger;
         	query = "SELECT      a"
         	        + " FROM     Artikel a"
         			+ " WHERE a.erhaeltlich = TRUE"
-                    + " ORDER BY a.id ASC"),
+                    + " ORDER BY a.id ASC",
+            hints = { @QueryHint(name = HINT_CACHEABLE, value = "true"),
+                      @QueryHint(name = HINT_CACHE_REGION, value = Artikel.FIND_VERFUEGBARE_ARTIKEL) }),
                     
 	@NamedQuery(name = Artikel.FIND_ARTIKEL_BY_BEZ,
 			query = "SELECT      a"
@@ -45,6 +51,24 @@ import org.jboss.logging.Logger;
 					+ " WHERE    a.bezeichnung LIKE :" + Artikel.PARAM_BEZEICHNUNG
 					+ " ORDER BY a.id ASC"),
 	
+	@NamedQuery(name = Artikel.FIND_ARTIKEL_BY_IDS,
+			query = "SELECT      a"
+					+ " FROM     Artikel a"
+					+ " WHERE    a.id IN :" + Artikel.PARAM_IDS),
+	
+	@NamedQuery(name = Artikel.FIND_IDS_UND_BEZEICHNUNGEN,
+			query = "SELECT      a.id, a.bezeichnung"
+					+ " FROM     Artikel a"),
+	
+	@NamedQuery(name = Artikel.FIND_FILTER_DATEN,
+			query = "SELECT      a.id, a.preis, a.groesse, a.erhaeltlich"
+					+ " FROM     Artikel a"
+					+ " ORDER BY a.preis, a.id"),
+	
+	@NamedQuery(name = Artikel.FIND_BESTAENDE,
+			query = "SELECT      a.id, a.bestand"
+					+ " FROM     Artikel a"),
+	
 	@NamedQuery(name = Artikel.FIND_ARTIKEL_MAX_PREIS,
 		query = "SELECT		 a"
 				+ " FROM 	Artikel a"
@@ -62,11 +86,22 @@ public class Artikel implements Serializable {
 	private static final String PREFIX = "Artikel.";
 	public static final String FIND_VERFUEGBARE_ARTIKEL = PREFIX + "findVerfuegbareArtikel";
 	public static final String FIND_ARTIKEL_BY_BEZ = PREFIX + "findArtikelByBez";
+	public static final String FIND_ARTIKEL_BY_IDS = PREFIX + "findArtikelByIds";
+	public static final String FIND_IDS_UND_BEZEICHNUNGEN = PREFIX + "findIdsUndBezeichnungen";
+	public static final String FIND_FILTER_DATEN = PREFIX + "findFilterDaten";
+	public static final String FIND_BESTAENDE = PREFIX + "findBestaende";
 	public static final String FIND_ARTIKEL_MAX_PREIS = PREFIX + "findArtikelByMaxPreis";
 
 	public static final String PARAM_BEZEICHNUNG = "bezeichnung";
+	public static final String PARAM_ID = "id";
+	public static final String PARAM_IDS = "ids";
+	public static final String PARAM_MENGE = "menge";
 	public static final String PARAM_PREIS_MAX = "preis";
 	
+	// Natives SQL statt JPQL: ein Bulk Update in JPQL wuerde die gesamte Region Artikel im L2C leeren
+	public static final String SQL_UPDATE_BESTAND = "UPDATE artikel SET bestand = bestand + :" + PARAM_MENGE
+	                                                + " WHERE id = :" + PARAM_ID;
+	
 
 	@Id
 	@GeneratedValue
@@ -104,6 +139,14 @@ public class Artikel implements Serializable {
 	@NotNull(message = "{artikelverwaltung.artikel.erhaeltlich.notNull}")
 	private boolean erhaeltlich = true;
 	
+	// Nur beim Anlegen, danach ausschliesslich durch BestandService per SQL_UPDATE_BESTAND aus den
+	// Bestandsbuchungen, damit ein Merge mit einem veralteten Artikel die Buchungen nicht ueberschreibt.
+	// Ohne die offenen Buchungen und ohne neue Version veraltet, deshalb nur beim Anlegen im JSON-Datensatz:
+	// den aktuellen Bestand liefert GET /artikel/{id}/bestand.
+	@Column(nullable = false, updatable = false)
+	@Min(value = 0, message = "{artikelverwaltung.artikel.bestand.min}")
+	private int bestand;
+	
 
 	@PrePersist
 	private void prePersist() {
@@ -190,6 +233,16 @@ public class Artikel implements Serializable {
 		this.erhaeltlich = erhaeltlich;
 	}
 	
+	@JsonIgnore
+	public int getBestand() {
+		return bestand;
+	}
+	
+	@JsonProperty
+	public void setBestand(int bestand) {
+		this.bestand = bestand;
+	}
+	
 	@Override
 	public String toString() {
 		return "Artikel [id=" + id + ", version=" + version
@@ -0,0 +1,90 @@
+package de.shop.artikelverwaltung.domain;
+
+import static de.shop.util.Constants.ALLOCATION_SIZE;
+import static de.shop.util.Constants.KEINE_ID;
+import static de.shop.util.Constants.SEQUENCE_START;
+import static javax.persistence.GenerationType.SEQUENCE;
+
+import java.io.Serializable;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+
+/**
+ * Aenderung des Bestands eines Artikels, die noch nicht in die Spalte "bestand" von Artikel uebernommen ist:
+ * eine negative Menge fuer eine Bestellung, eine positive fuer Nachschub. Eine Buchung wird in der Transaktion
+ * der Bestellung bzw. des Nachschubs nur eingefuegt, damit sich gleichzeitige Bestellungen desselben Artikels
+ * nicht an der Zeile des Artikels anstellen. Der aktuelle Bestand ist "bestand" plus die Summe der Buchungen.
+ */
+@Entity
+@NamedQueries({
+	@NamedQuery(name  = Bestandsbuchung.FIND_BUCHUNGEN,
+	            query = "SELECT   b"
+	                  + " FROM     Bestandsbuchung b"
+	                  + " ORDER BY b.id"),
+	@NamedQuery(name  = Bestandsbuchung.FIND_SUMMEN,
+	            query = "SELECT   b.artikelId, SUM(b.menge)"
+	                  + " FROM     Bestandsbuchung b"
+	                  + " GROUP BY b.artikelId"),
+	@NamedQuery(name  = Bestandsbuchung.DELETE_BY_IDS,
+	            query = "DELETE FROM Bestandsbuchung b"
+	                  + " WHERE b.id IN :" + Bestandsbuchung.PARAM_IDS)
+})
+public class Bestandsbuchung implements Serializable {
+	private static final long serialVersionUID = -3357210794271906126L;
+
+	private static final String PREFIX = "Bestandsbuchung.";
+	public static final String FIND_BUCHUNGEN = PREFIX + "findBuchungen";
+	public static final String FIND_SUMMEN = PREFIX + "findSummen";
+	public static final String DELETE_BY_IDS = PREFIX + "deleteByIds";
+	public static final String PARAM_IDS = "ids";
+
+	@Id
+	// Pooled Optimizer: ein Zugriff auf die Sequenz fuer ALLOCATION_SIZE Buchungen
+	@GeneratedValue(strategy = SEQUENCE, generator = "bestandsbuchungGenerator")
+	@SequenceGenerator(name = "bestandsbuchungGenerator", sequenceName = "bestandsbuchung_seq",
+	                   initialValue = SEQUENCE_START, allocationSize = ALLOCATION_SIZE)
+	@Column(nullable = false, updatable = false)
+	private Long id = KEINE_ID;
+
+	// Nur die ID statt einer Beziehung, damit der Artikel fuer die Buchung nicht geladen wird
+	@Column(name = "artikel_fk", nullable = false, updatable = false)
+	private Long artikelId;
+
+	@Basic(optional = false)
+	@Column(updatable = false)
+	private int menge;
+
+	public Bestandsbuchung() {
+		super();
+	}
+
+	public Bestandsbuchung(Long artikelId, int menge) {
+		super();
+		this.artikelId = artikelId;
+		this.menge = menge;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Long getArtikelId() {
+		return artikelId;
+	}
+
+	public int getMenge() {
+		return menge;
+	}
+
+	@Override
+	public String toString() {
+		return "Bestandsbuchung [id=" + id + ", artikelId=" + artikelId + ", menge=" + menge + "]";
+	}
+}
@@ -6,29 +6,50 @@ import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.persistence.OptimisticLockException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import org.codehaus.jackson.JsonNode;
 import org.jboss.logging.Logger;
 
+import com.google.common.collect.ImmutableMap;
+
 import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.service.ArtikelFilter;
+import de.shop.artikelverwaltung.service.ArtikelFilterErgebnis;
+import de.shop.artikelverwaltung.service.ArtikelIndex;
+import de.shop.artikelverwaltung.service.ArtikelKatalog;
 import de.shop.artikelverwaltung.service.ArtikelService;
+import de.shop.artikelverwaltung.service.BestandService;
+import de.shop.util.EntityTags;
+import de.shop.util.InvalidMergePatchException;
 import de.shop.util.LocaleHelper;
 import de.shop.util.Log;
+import de.shop.util.MergePatch;
 import de.shop.util.NotFoundException;
+import de.shop.util.PATCH;
+import de.shop.util.PreconditionRequiredException;
 import de.shop.util.Transactional;
 
 
@@ -40,6 +61,13 @@ import de.shop.util.Transactional;
 @Log
 public class ArtikelResource {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	private static final String QUERY_PARAM_LIMIT = "limit";
+	private static final String QUERY_PARAM_AFTER = "after";
+	private static final String HEADER_LINK = "Link";
+	private static final String BESTAND = "bestand";
+	private static final String MENGE = "menge";
+	private static final int LIMIT_DEFAULT = 100;
+	private static final int LIMIT_MAX = 1000;
 	
 	@Context
 	private UriInfo uriInfo;
@@ -47,9 +75,21 @@ public class ArtikelResource {
 	@Context
 	private HttpHeaders headers;
 	
+	@Context
+	private Request request;
+	
 	@Inject
 	private ArtikelService as;
 	
+	@Inject
+	private ArtikelIndex artikelIndex;
+	
+	@Inject
+	private ArtikelKatalog katalog;
+	
+	@Inject
+	private BestandService bestandService;
+	
 	@Inject
 	private UriHelperArtikel uriHelperArtikel;
 	
@@ -66,16 +106,123 @@ public class ArtikelResource {
 		LOGGER.debugf("CDI-faehiges Bean %s wird geloescht", this);
 	}
 	
+	/**
+	 * Mit der URL /artikel/{id} einen Artikel ermitteln
+	 * @param id ID des Artikels
+	 * @return Response mit den Artikeldaten und dem ETag oder 304 bei passendem If-None-Match
+	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}")
-	public Artikel findArtikelById(@PathParam("id") Long id) {
-		final Artikel artikel = as.findArtikelById(id);
+	public Response findArtikelById(@PathParam("id") Long id) {
+		// Nicht verfuegbare Artikel sind nicht im Katalog
+		Artikel artikel = katalog.findArtikelById(id);
+		if (artikel == null) {
+			artikel = as.findArtikelById(id);
+		}
 		if (artikel == null) {
 			final String msg = "Kein Artikel gefunden mit der ID " + id;
 			throw new NotFoundException(msg);
 		}
 
-		return artikel;
+		return EntityTags.ok(request, EntityTags.of(artikel.getId(), artikel.getVersion()), artikel);
+	}
+	
+	/**
+	 * Mit der URL /artikel?bezeichnung=... die Artikel ermitteln, deren Bezeichnung den Suchbegriff enthaelt,
+	 * bzw. bei einem Tippfehler Artikel mit einer aehnlichen Bezeichnung. Mit /artikel?bezeichnung=...&amp;limit=...
+	 * werden nur die besten Treffer geliefert. Ohne Bezeichnung werden die verfuegbaren Artikel geliefert.
+	 * Mit minPreis, maxPreis, groesse, erhaeltlich oder after wird stattdessen gefiltert, siehe findArtikelByFilter.
+	 * @param bezeichnung Suchbegriff, unabhaengig von Gross- und Kleinschreibung
+	 * @param limit Maximale Anzahl an Artikeln, 0 fuer unbegrenzt
+	 * @return Response mit den gefundenen Artikeln, die besten Treffer zuerst, und dem ETag oder 304
+	 */
+	@GET
+	public Response findArtikel(@QueryParam("bezeichnung") @DefaultValue("") String bezeichnung,
+	                            @QueryParam("minPreis") Double minPreis,
+	                            @QueryParam("maxPreis") Double maxPreis,
+	                            @QueryParam("groesse") String groesse,
+	                            @QueryParam("erhaeltlich") Boolean erhaeltlich,
+	                            @QueryParam(QUERY_PARAM_LIMIT) @DefaultValue("0") int limit,
+	                            @QueryParam(QUERY_PARAM_AFTER) Long after) {
+		final ArtikelFilter filter = new ArtikelFilter(minPreis, maxPreis, groesse, erhaeltlich);
+		if (!filter.isLeer() || after != null) {
+			return findArtikelByFilter(filter, bezeichnung, limit, after);
+		}
+		
+		final List<Artikel> artikel = as.findArtikelByBezeichnung(bezeichnung, Math.max(0, limit));
+		if (artikel.isEmpty()) {
+			final String msg = "Kein Artikel gefunden mit der Bezeichnung " + bezeichnung;
+			throw new NotFoundException(msg);
+		}
+		
+		final EntityTags.ListBuilder etag = EntityTags.list();
+		for (Artikel a : artikel) {
+			etag.add(a.getId(), a.getVersion());
+		}
+		final EntityTag entityTag = etag.build();
+		return EntityTags.ok(request, entityTag, new GenericEntity<List<Artikel>>(artikel) { });
+	}
+	
+	/**
+	 * Mit der URL /artikel?minPreis=...&amp;maxPreis=...&amp;groesse=...&amp;erhaeltlich=... die Artikel nach
+	 * Preis, Groesse und Verfuegbarkeit filtern, optional zusaetzlich mit bezeichnung=... Die Artikel sind nach dem
+	 * Preis sortiert und werden seitenweise geliefert; die URL der naechsten Seite steht im Header "Link" mit
+	 * rel="next". Die Antwort enthaelt ausserdem die Gesamtzahl der Treffer und die Anzahl je Groesse und je
+	 * Preisbereich. Auch ohne Treffer ist der Status 200, damit die Facetten geliefert werden.
+	 */
+	private Response findArtikelByFilter(ArtikelFilter filter, String bezeichnung, int limit, Long after) {
+		final int pageSize = limit <= 0 ? LIMIT_DEFAULT : Math.min(limit, LIMIT_MAX);
+		final ArtikelFilterErgebnis ergebnis = as.findArtikelByFilter(filter, bezeichnung, after, pageSize);
+		
+		final ResponseBuilder rb = Response.ok(ergebnis);
+		if (ergebnis.isWeitere()) {
+			final List<Long> ids = ergebnis.getIds();
+			final URI next = uriInfo.getRequestUriBuilder()
+			                        .replaceQueryParam(QUERY_PARAM_AFTER, ids.get(ids.size() - 1))
+			                        .replaceQueryParam(QUERY_PARAM_LIMIT, pageSize)
+			                        .build();
+			rb.header(HEADER_LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return rb.build();
+	}
+	
+	/**
+	 * Mit der URL /artikel/bezeichnungen/statistik die Kennzahlen des Trigramm-Index ermitteln
+	 * @return Anzahl Artikel und Trigramme, geschaetzter Speicherbedarf und mittlere Dauer einer Abfrage
+	 */
+	@GET
+	@Path("bezeichnungen/statistik")
+	public Map<String, Number> getArtikelIndexStatistik() {
+		return artikelIndex.getStatistik();
+	}
+	
+	/**
+	 * Mit der URL /artikel/{id}/bestand den verfuegbaren Bestand eines Artikels ermitteln, d.h. abzueglich
+	 * aller Reservierungen durch Bestellungen
+	 * @param id ID des Artikels
+	 * @return JSON-Objekt mit dem Attribut "bestand"
+	 */
+	@GET
+	@Path("{id:[1-9][0-9]*}/bestand")
+	public Map<String, Integer> findBestand(@PathParam("id") Long id) {
+		if (as.findArtikelById(id) == null) {
+			final String msg = "Kein Artikel gefunden mit der ID " + id;
+			throw new NotFoundException(msg);
+		}
+		return ImmutableMap.of(BESTAND, bestandService.getBestand(id));
+	}
+	
+	/**
+	 * Mit der URL /artikel/{id}/bestand Nachschub fuer einen Artikel buchen, z.B. {"menge": 10}
+	 * @param id ID des Artikels
+	 * @param nachschub JSON-Objekt mit der zusaetzlichen Menge im Attribut "menge"
+	 */
+	@POST
+	@Path("{id:[1-9][0-9]*}/bestand")
+	@Consumes(APPLICATION_JSON)
+	@Produces
+	public void nachbestellen(@PathParam("id") Long id, JsonNode nachschub) {
+		bestandService.nachbestellen(id, nachschub == null ? 0 : nachschub.path(MENGE).asInt());
 	}
 	
 	@POST
@@ -90,5 +237,60 @@ public class ArtikelResource {
 		final URI artikelUri = uriHelperArtikel.getUriArtikel(artikel, uriInfo);
 		return Response.created(artikelUri).build();
 	}
+	
+	/**
+	 * Mit der URL /artikel/{id} einen Artikel per JSON Merge Patch aendern. Nur die uebergebenen Attribute
+	 * werden mit einem einzigen UPDATE geschrieben. Es wird mit dem Header If-Match und dem ETag aus
+	 * GET /artikel/{id} optimistisch synchronisiert, ohne If-Match mit "version" im Patch.
+	 * @param id ID des Artikels
+	 * @param patch JSON-Objekt mit den zu aendernden Attributen
+	 * @return 204 mit dem ETag der neuen Version, 412 bei einem veralteten ETag oder 428, falls weder If-Match
+	 *         noch "version" angegeben sind
+	 */
+	@PATCH
+	@Path("{id:[1-9][0-9]*}")
+	@Consumes({ MergePatch.MEDIA_TYPE, APPLICATION_JSON })
+	@Produces
+	public Response patchArtikel(@PathParam("id") Long id, JsonNode patch) {
+		final Long patchId = MergePatch.getId(patch);
+		if (patchId != null && !patchId.equals(id)) {
+			throw new InvalidMergePatchException("Die ID " + patchId + " im Patch passt nicht zur ID " + id);
+		}
+		
+		final List<Locale> locales = headers.getAcceptableLanguages();
+		final Locale locale = locales.isEmpty() ? Locale.getDefault() : locales.get(0);
+		final Map<String, Object> werte = MergePatch.getWerte(patch, ArtikelService.PATCH_ATTRIBUTE);
+		Integer version = MergePatch.getVersion(patch);
+		if (headers.getRequestHeaders().containsKey(HttpHeaders.IF_MATCH)) {
+			// Nur die Version lesen: ein geladener Artikel waere nach dem UPDATE im Persistenzkontext veraltet
+			final Integer aktuelleVersion = as.findVersionById(id);
+			if (aktuelleVersion == null) {
+				final String msg = "Kein Artikel gefunden mit der ID " + id;
+				throw new NotFoundException(msg);
+			}
+			final ResponseBuilder rb = request.evaluatePreconditions(EntityTags.of(id, aktuelleVersion));
+			if (rb != null) {
+				// 412: Der Artikel wurde seit dem GET geaendert
+				return rb.build();
+			}
+			version = aktuelleVersion;
+		}
+		else if (version == null) {
+			throw new PreconditionRequiredException("Der Header If-Match oder das Attribut version ist erforderlich");
+		}
+		final Artikel patchedArtikel = as.patchArtikel(id, version, werte, locale);
+		if (patchedArtikel == null) {
+			// Nur im Fehlerfall: existiert der Artikel nicht oder ist die Version veraltet?
+			final Artikel artikel = as.findArtikelById(id);
+			if (artikel == null) {
+				final String msg = "Kein Artikel gefunden mit der ID " + id;
+				throw new NotFoundException(msg);
+			}
+			throw new OptimisticLockException(artikel);
+		}
+		return Response.noContent()
+		               .tag(EntityTags.of(patchedArtikel.getId(), patchedArtikel.getVersion()))
+		               .build();
+	}
 }
 
@@ -0,0 +1,29 @@
+package de.shop.artikelverwaltung.rest;
+
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import de.shop.artikelverwaltung.service.BestandException;
+import de.shop.util.Log;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class BestandExceptionMapper implements ExceptionMapper<BestandException> {
+	@Override
+	public Response toResponse(BestandException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(CONFLICT)
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
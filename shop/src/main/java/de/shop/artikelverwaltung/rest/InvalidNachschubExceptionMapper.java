@@ -0,0 +1,29 @@
+package de.shop.artikelverwaltung.rest;
+
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import de.shop.artikelverwaltung.service.InvalidNachschubException;
+import de.shop.util.Log;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class InvalidNachschubExceptionMapper implements ExceptionMapper<InvalidNachschubException> {
+	@Override
+	public Response toResponse(InvalidNachschubException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(BAD_REQUEST)
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
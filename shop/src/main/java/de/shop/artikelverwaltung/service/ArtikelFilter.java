@@ -0,0 +1,58 @@
+package de.shop.artikelverwaltung.service;
+
+import java.io.Serializable;
+
+/**
+ * Filter fuer die Suche nach Artikeln ueber Preis, Groesse und Verfuegbarkeit. Ein Kriterium mit null wird nicht
+ * beruecksichtigt.
+ */
+public class ArtikelFilter implements Serializable {
+	private static final long serialVersionUID = -3140921806387255516L;
+
+	private final Double minPreis;
+	private final Double maxPreis;
+	private final String groesse;
+	private final Boolean erhaeltlich;
+
+	/**
+	 * @param minPreis Mindestpreis einschliesslich
+	 * @param maxPreis Hoechstpreis einschliesslich
+	 * @param groesse Groesse, z.B. "XL"
+	 * @param erhaeltlich Nur verfuegbare bzw. nur nicht verfuegbare Artikel
+	 */
+	public ArtikelFilter(Double minPreis, Double maxPreis, String groesse, Boolean erhaeltlich) {
+		this.minPreis = minPreis;
+		this.maxPreis = maxPreis;
+		this.groesse = groesse == null || groesse.isEmpty() ? null : groesse;
+		this.erhaeltlich = erhaeltlich;
+	}
+
+	public Double getMinPreis() {
+		return minPreis;
+	}
+
+	public Double getMaxPreis() {
+		return maxPreis;
+	}
+
+	public String getGroesse() {
+		return groesse;
+	}
+
+	public Boolean getErhaeltlich() {
+		return erhaeltlich;
+	}
+
+	/**
+	 * @return true, falls kein Kriterium gesetzt ist
+	 */
+	public boolean isLeer() {
+		return minPreis == null && maxPreis == null && groesse == null && erhaeltlich == null;
+	}
+
+	@Override
+	public String toString() {
+		return "ArtikelFilter [minPreis=" + minPreis + ", maxPreis=" + maxPreis + ", groesse=" + groesse
+			   + ", erhaeltlich=" + erhaeltlich + "]";
+	}
+}
@@ -0,0 +1,86 @@
+package de.shop.artikelverwaltung.service;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+
+/**
+ * Eine Seite der gefilterten Artikel mit der Gesamtzahl der Treffer und den Facetten. Die Anzahl je Groesse
+ * beruecksichtigt alle Kriterien ausser der Groesse, die Anzahl je Preisbereich alle Kriterien ausser dem Preis.
+ * So zeigen die Facetten, wie viele Artikel es nach dem Aendern dieses einen Kriteriums gaebe.
+ */
+public class ArtikelFilterErgebnis implements Serializable {
+	private static final long serialVersionUID = 4870123996145632715L;
+
+	private final int anzahl;
+	private final List<Long> ids;
+	private final boolean weitere;
+	private final Map<String, Integer> groessen;
+	private final Map<String, Integer> preise;
+	private List<Artikel> artikel = Collections.emptyList();
+
+	public ArtikelFilterErgebnis(int anzahl, List<Long> ids, boolean weitere, Map<String, Integer> groessen,
+	                             Map<String, Integer> preise) {
+		this.anzahl = anzahl;
+		this.ids = ids;
+		this.weitere = weitere;
+		this.groessen = groessen;
+		this.preise = preise;
+	}
+
+	/**
+	 * @return Anzahl aller Treffer, nicht nur der Seite
+	 */
+	public int getAnzahl() {
+		return anzahl;
+	}
+
+	/**
+	 * @return IDs der Artikel auf dieser Seite, nach dem Preis sortiert
+	 */
+	@JsonIgnore
+	public List<Long> getIds() {
+		return ids;
+	}
+
+	/**
+	 * @return true, falls es nach dieser Seite weitere Treffer gibt
+	 */
+	@JsonIgnore
+	public boolean isWeitere() {
+		return weitere;
+	}
+
+	/**
+	 * @return Anzahl der Artikel je Groesse, z.B. "XL"
+	 */
+	public Map<String, Integer> getGroessen() {
+		return groessen;
+	}
+
+	/**
+	 * @return Anzahl der Artikel je Preisbereich, z.B. "10-25" fuer mindestens 10 und weniger als 25
+	 */
+	public Map<String, Integer> getPreise() {
+		return preise;
+	}
+
+	public List<Artikel> getArtikel() {
+		return artikel;
+	}
+
+	public void setArtikel(List<Artikel> artikel) {
+		this.artikel = artikel;
+	}
+
+	@Override
+	public String toString() {
+		return "ArtikelFilterErgebnis [anzahl=" + anzahl + ", ids=" + ids + ", weitere=" + weitere
+			   + ", groessen=" + groessen + ", preise=" + preise + "]";
+	}
+}
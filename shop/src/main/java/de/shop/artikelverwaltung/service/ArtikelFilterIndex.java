@@ -0,0 +1,323 @@
+package de.shop.artikelverwaltung.service;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.jboss.logging.Logger;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.util.Log;
+
+/**
+ * Index ueber Preis, Groesse und Verfuegbarkeit aller Artikel im Hauptspeicher, damit z.B. ein Smartphone nicht
+ * alle Artikel laden und selbst filtern muss. Die Artikel sind nach Preis und ID sortiert: die Preise stehen in
+ * einem double[], so dass ein Preisbereich per binaerer Suche ein Intervall von Positionen ist. Je Groesse und
+ * fuer die Verfuegbarkeit gibt es ein BitSet ueber diese Positionen. Wie beim Katalog wird der Index nach dem
+ * Commit einer Aenderung als neuer Schnappschuss gebaut und die Referenz atomar ersetzt.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@Log
+public class ArtikelFilterIndex {
+	// Grenzen der Preisbereiche fuer die Facetten: [0, 10), [10, 25), ... [500, unendlich)
+	private static final double[] PREIS_GRENZEN = { 10, 25, 50, 100, 250, 500 };
+	private static final char BIS = '-';
+
+	/**
+	 * Unveraenderlicher Stand des Index. Die Arrays sind nach Preis und ID sortiert.
+	 */
+	private static final class Schnappschuss {
+		private final double[] preise;
+		private final long[] ids;
+		private final String[] groessen;
+		private final BitSet erhaeltlich;
+		private final Map<String, BitSet> bitsByGroesse;
+		private final Map<Long, Integer> positionById;
+
+		private Schnappschuss(double[] preise, long[] ids, String[] groessen, BitSet erhaeltlich) {
+			this.preise = preise;
+			this.ids = ids;
+			this.groessen = groessen;
+			this.erhaeltlich = erhaeltlich;
+
+			bitsByGroesse = new TreeMap<>();
+			positionById = new HashMap<>(ids.length * 2);
+			for (int i = 0; i < ids.length; i++) {
+				BitSet bits = bitsByGroesse.get(groessen[i]);
+				if (bits == null) {
+					bits = new BitSet(ids.length);
+					bitsByGroesse.put(groessen[i], bits);
+				}
+				bits.set(i);
+				positionById.put(ids[i], i);
+			}
+		}
+
+		private int size() {
+			return ids.length;
+		}
+
+		/**
+		 * @return Erste Position mit einem Preis, der mindestens preis ist
+		 */
+		private int untereGrenze(double preis) {
+			int lo = 0;
+			int hi = preise.length;
+			while (lo < hi) {
+				final int mitte = (lo + hi) >>> 1;
+				if (preise[mitte] < preis) {
+					lo = mitte + 1;
+				}
+				else {
+					hi = mitte;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * @return Erste Position mit einem Preis, der groesser als preis ist
+		 */
+		private int obereGrenze(double preis) {
+			int lo = 0;
+			int hi = preise.length;
+			while (lo < hi) {
+				final int mitte = (lo + hi) >>> 1;
+				if (preise[mitte] <= preis) {
+					lo = mitte + 1;
+				}
+				else {
+					hi = mitte;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * Position fuer einen Artikel in der Sortierung nach Preis und ID
+		 */
+		private int einfuegePosition(double preis, long id) {
+			int pos = untereGrenze(preis);
+			while (pos < preise.length && preise[pos] == preis && ids[pos] < id) {
+				pos++;
+			}
+			return pos;
+		}
+	}
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private Logger logger;
+
+	// Leer, bis postConstruct die Artikel geladen hat
+	private volatile Schnappschuss schnappschuss = new Schnappschuss(new double[0], new long[0], new String[0],
+	                                                                 new BitSet());
+
+	@PostConstruct
+	private void postConstruct() {
+		final List<Object[]> rows = em.createNamedQuery(Artikel.FIND_FILTER_DATEN, Object[].class)
+		                              .getResultList();
+		final int n = rows.size();
+		final double[] preise = new double[n];
+		final long[] ids = new long[n];
+		final String[] groessen = new String[n];
+		final BitSet erhaeltlich = new BitSet(n);
+		for (int i = 0; i < n; i++) {
+			final Object[] row = rows.get(i);
+			ids[i] = (Long) row[0];
+			preise[i] = (Double) row[1];
+			groessen[i] = ((String) row[2]).intern();
+			erhaeltlich.set(i, (Boolean) row[3]);
+		}
+		schnappschuss = new Schnappschuss(preise, ids, groessen, erhaeltlich);
+		logger.infof("Filter-Index mit %d Artikeln und %d Groessen geladen", n, schnappschuss.bitsByGroesse.size());
+	}
+
+	/**
+	 * Eine Seite der Artikel zu einem Filter mit den Facetten
+	 * @param filter Kriterien fuer Preis, Groesse und Verfuegbarkeit
+	 * @param artikelIds Nur diese Artikel beruecksichtigen, z.B. aus der Suche nach der Bezeichnung, oder null
+	 * @param after Die Seite beginnt nach diesem Artikel, oder null fuer die erste Seite
+	 * @param limit Maximale Anzahl an Artikeln auf der Seite
+	 * @return IDs der Seite nach dem Preis sortiert, Gesamtzahl und Facetten
+	 */
+	public ArtikelFilterErgebnis find(ArtikelFilter filter, Collection<Long> artikelIds, Long after, int limit) {
+		final Schnappschuss s = schnappschuss;
+		final int n = s.size();
+
+		// Verfuegbarkeit und Einschraenkung auf bestimmte Artikel
+		final BitSet basis = new BitSet(n);
+		if (artikelIds == null) {
+			basis.set(0, n);
+		}
+		else {
+			for (Long id : artikelIds) {
+				final Integer pos = s.positionById.get(id);
+				if (pos != null) {
+					basis.set(pos);
+				}
+			}
+		}
+		if (filter.getErhaeltlich() != null) {
+			if (filter.getErhaeltlich()) {
+				basis.and(s.erhaeltlich);
+			}
+			else {
+				basis.andNot(s.erhaeltlich);
+			}
+		}
+
+		// Preisbereich als Intervall von Positionen
+		final int von = filter.getMinPreis() == null ? 0 : s.untereGrenze(filter.getMinPreis());
+		final int bis = filter.getMaxPreis() == null ? n : Math.max(von, s.obereGrenze(filter.getMaxPreis()));
+
+		// Facette Groesse: alle Kriterien ausser der Groesse
+		final Map<String, Integer> groessen = new LinkedHashMap<>();
+		final BitSet basisImPreisbereich = basis.get(von, bis);
+		for (Map.Entry<String, BitSet> entry : s.bitsByGroesse.entrySet()) {
+			final BitSet bits = entry.getValue().get(von, bis);
+			bits.and(basisImPreisbereich);
+			groessen.put(entry.getKey(), bits.cardinality());
+		}
+
+		final BitSet treffer = basis;
+		if (filter.getGroesse() != null) {
+			final BitSet bits = s.bitsByGroesse.get(filter.getGroesse());
+			if (bits == null) {
+				treffer.clear();
+			}
+			else {
+				treffer.and(bits);
+			}
+		}
+
+		// Facette Preis: alle Kriterien ausser dem Preis
+		final Map<String, Integer> preise = new LinkedHashMap<>();
+		double untergrenze = 0;
+		for (int i = 0; i <= PREIS_GRENZEN.length; i++) {
+			final boolean letzter = i == PREIS_GRENZEN.length;
+			final int start = s.untereGrenze(untergrenze);
+			final int ende = letzter ? n : s.untereGrenze(PREIS_GRENZEN[i]);
+			final String bereich = letzter ? format(untergrenze) + BIS
+			                               : format(untergrenze) + BIS + format(PREIS_GRENZEN[i]);
+			preise.put(bereich, treffer.get(start, ende).cardinality());
+			if (!letzter) {
+				untergrenze = PREIS_GRENZEN[i];
+			}
+		}
+
+		// Seite ab dem Artikel "after" innerhalb des Preisbereichs
+		final int anzahl = treffer.get(von, bis).cardinality();
+		int pos = von;
+		if (after != null) {
+			final Integer afterPos = s.positionById.get(after);
+			if (afterPos != null) {
+				pos = Math.max(von, afterPos + 1);
+			}
+		}
+		final List<Long> ids = new ArrayList<>(Math.min(limit, anzahl));
+		pos = treffer.nextSetBit(pos);
+		while (pos >= 0 && pos < bis && ids.size() < limit) {
+			ids.add(s.ids[pos]);
+			pos = treffer.nextSetBit(pos + 1);
+		}
+		final boolean weitere = pos >= 0 && pos < bis;
+
+		return new ArtikelFilterErgebnis(anzahl, ids, weitere, Collections.unmodifiableMap(groessen),
+		                                 Collections.unmodifiableMap(preise));
+	}
+
+	private static String format(double preis) {
+		return preis == Math.rint(preis) ? String.valueOf((long) preis) : String.valueOf(preis);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), artikel);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onUpdateArtikel(@Observes(during = AFTER_SUCCESS) @GeaenderterArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), artikel);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onDeleteArtikel(@Observes(during = AFTER_SUCCESS) @GeloeschterArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), null);
+	}
+
+	/**
+	 * Einen neuen Schnappschuss ohne den bisherigen Eintrag zur ID und ggf. mit dem neuen Eintrag an der Position
+	 * gemaess Preis und ID bauen. Die Arrays werden dabei in einem Durchlauf kopiert, nicht neu sortiert.
+	 */
+	private synchronized void ersetzen(Long id, Artikel artikel) {
+		if (id == null) {
+			return;
+		}
+		final Schnappschuss alt = schnappschuss;
+		final Integer altePos = alt.positionById.get(id);
+		final boolean neu = artikel != null && artikel.getGroesse() != null;
+		final int n = alt.size() - (altePos == null ? 0 : 1) + (neu ? 1 : 0);
+
+		// Einfuegeposition im alten Array, ohne den alten Eintrag
+		int einfuegen = -1;
+		if (neu) {
+			einfuegen = alt.einfuegePosition(artikel.getPreis(), id);
+			if (altePos != null && altePos < einfuegen) {
+				einfuegen--;
+			}
+		}
+
+		final double[] preise = new double[n];
+		final long[] ids = new long[n];
+		final String[] groessen = new String[n];
+		final BitSet erhaeltlich = new BitSet(n);
+		int ziel = 0;
+		for (int i = 0; i < alt.size() || ziel < n; i++) {
+			if (ziel == einfuegen) {
+				preise[ziel] = artikel.getPreis();
+				ids[ziel] = id;
+				groessen[ziel] = artikel.getGroesse().intern();
+				erhaeltlich.set(ziel, artikel.isErhaeltlich());
+				ziel++;
+				einfuegen = -1;
+			}
+			if (i >= alt.size()) {
+				continue;
+			}
+			if (altePos != null && i == altePos) {
+				continue;
+			}
+			preise[ziel] = alt.preise[i];
+			ids[ziel] = alt.ids[i];
+			groessen[ziel] = alt.groessen[i];
+			erhaeltlich.set(ziel, alt.erhaeltlich.get(i));
+			ziel++;
+		}
+		schnappschuss = new Schnappschuss(preise, ids, groessen, erhaeltlich);
+	}
+}
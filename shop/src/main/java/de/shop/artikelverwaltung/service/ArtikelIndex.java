@@ -0,0 +1,514 @@
+package de.shop.artikelverwaltung.service;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.jboss.logging.Logger;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.util.Log;
+
+/**
+ * Invertierter Index ueber die Trigramme der Artikelbezeichnungen im Hauptspeicher, z.B. "hemd" hat die
+ * Trigramme "hem" und "emd". Zu jedem Trigramm gibt es eine sortierte Liste der Positionen der Artikel als int[].
+ * Eine Suche nach einem Teilstring schneidet die Listen der Trigramme des Suchbegriffs und prueft die Kandidaten
+ * mit String.contains(), statt wie LIKE '%x%' alle Zeilen der Tabelle zu lesen. Fuer eine fehlertolerante
+ * Suche genuegt ein Teil der Trigramme, weil ein Tippfehler hoechstens 3 Trigramme veraendert.
+ * Gross- und Kleinschreibung werden nicht unterschieden. Der Index wird beim Deployment geladen und ueber die
+ * CDI-Events zu neuen, geaenderten und geloeschten Artikeln nach dem Commit der Transaktion aktualisiert.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@Log
+public class ArtikelIndex {
+	private static final int N = 3;
+	private static final int MAX_FEHLER = 1;
+	private static final int BITS_PRO_ZEICHEN = 16;
+	private static final int ANFANGS_KAPAZITAET = 1024;
+
+	// Grobe Schaetzung des Speicherbedarfs: HashMap-Eintrag, Long und Postings je Trigramm, int je Position
+	// sowie Eintrag in slotByArtikelId und String je Artikel; Strings mit 2 Bytes je Zeichen
+	private static final long BYTES_PRO_TRIGRAMM = 112L;
+	private static final long BYTES_PRO_POSTING = 4L;
+	private static final long BYTES_PRO_ARTIKEL = 120L;
+	private static final long BYTES_PRO_ZEICHEN = 2L;
+
+	private static final String STAT_ARTIKEL = "artikel";
+	private static final String STAT_TRIGRAMME = "trigramme";
+	private static final String STAT_POSTINGS = "postings";
+	private static final String STAT_BYTES = "geschaetzteBytes";
+	private static final String STAT_ABFRAGEN = "abfragen";
+	private static final String STAT_DAUER_NANOS = "mittlereDauerNanos";
+
+	/**
+	 * Aufsteigend sortierte Positionen der Artikel zu einem Trigramm
+	 */
+	private static final class Postings {
+		private int[] slots = new int[1];
+		private int size;
+
+		private void add(int slot) {
+			final int pos = Arrays.binarySearch(slots, 0, size, slot);
+			if (pos >= 0) {
+				return;
+			}
+			final int einfuegen = -pos - 1;
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+			}
+			System.arraycopy(slots, einfuegen, slots, einfuegen + 1, size - einfuegen);
+			slots[einfuegen] = slot;
+			size++;
+		}
+
+		private boolean remove(int slot) {
+			final int pos = Arrays.binarySearch(slots, 0, size, slot);
+			if (pos < 0) {
+				return false;
+			}
+			System.arraycopy(slots, pos + 1, slots, pos, size - pos - 1);
+			size--;
+			return true;
+		}
+
+		private boolean contains(int slot) {
+			return Arrays.binarySearch(slots, 0, size, slot) >= 0;
+		}
+	}
+
+	/**
+	 * Ein Artikel im Ergebnis mit den Kriterien fuer die Reihenfolge
+	 */
+	private static final class Treffer {
+		private final long artikelId;
+		// 2: Bezeichnung beginnt mit dem Suchbegriff, 1: enthaelt ihn, 0: nur aehnlich
+		private final int stufe;
+		private final int anzahlTrigramme;
+		private final int laenge;
+
+		private Treffer(long artikelId, int stufe, int anzahlTrigramme, int laenge) {
+			this.artikelId = artikelId;
+			this.stufe = stufe;
+			this.anzahlTrigramme = anzahlTrigramme;
+			this.laenge = laenge;
+		}
+	}
+
+	/**
+	 * Bessere Treffer zuerst: Praefix vor Teilstring vor aehnlicher Bezeichnung, dann mehr gemeinsame
+	 * Trigramme, dann kuerzere Bezeichnung und schliesslich die kleinere ID
+	 */
+	private static final Comparator<Treffer> RANGFOLGE = new Comparator<Treffer>() {
+		@Override
+		public int compare(Treffer t1, Treffer t2) {
+			if (t1.stufe != t2.stufe) {
+				return t1.stufe > t2.stufe ? -1 : 1;
+			}
+			if (t1.anzahlTrigramme != t2.anzahlTrigramme) {
+				return t1.anzahlTrigramme > t2.anzahlTrigramme ? -1 : 1;
+			}
+			if (t1.laenge != t2.laenge) {
+				return t1.laenge < t2.laenge ? -1 : 1;
+			}
+			return t1.artikelId < t2.artikelId ? -1 : (t1.artikelId == t2.artikelId ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Sammelt die Treffer. Bei einer maximalen Anzahl werden in einem Heap nur die besten behalten.
+	 */
+	private static final class Sammler {
+		private final int max;
+		private final PriorityQueue<Treffer> heap;
+		private final List<Treffer> alle;
+
+		private Sammler(int max) {
+			this.max = max;
+			if (max > 0) {
+				// Der schlechteste Treffer steht oben und wird als erster verdraengt
+				heap = new PriorityQueue<>(max + 1, Collections.reverseOrder(RANGFOLGE));
+				alle = null;
+			}
+			else {
+				heap = null;
+				alle = new ArrayList<>();
+			}
+		}
+
+		private void add(Treffer treffer) {
+			if (heap == null) {
+				alle.add(treffer);
+				return;
+			}
+			heap.add(treffer);
+			if (heap.size() > max) {
+				heap.poll();
+			}
+		}
+
+		private List<Treffer> getTreffer() {
+			final List<Treffer> treffer = heap == null ? alle : new ArrayList<>(heap);
+			Collections.sort(treffer, RANGFOLGE);
+			return treffer;
+		}
+	}
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private Logger logger;
+
+	// Lesende Zugriffe teilen sich die Lese-Sperre, weil die int-Arrays beim Aendern verschoben werden
+	private final ReadWriteLock sperre = new ReentrantReadWriteLock();
+	private final Lock lesen = sperre.readLock();
+	private final Lock schreiben = sperre.writeLock();
+
+	private final Map<Long, Postings> postingsByTrigramm = new HashMap<>();
+	private final Map<Long, Integer> slotByArtikelId = new HashMap<>();
+	// Je Position die ID des Artikels und die normalisierte Bezeichnung, null bei einer freien Position
+	private long[] artikelIds = new long[ANFANGS_KAPAZITAET];
+	private String[] bezeichnungen = new String[ANFANGS_KAPAZITAET];
+	private int anzahlSlots;
+	private final Deque<Integer> freieSlots = new ArrayDeque<>();
+	private long anzahlPostings;
+	private long anzahlZeichen;
+
+	private final AtomicLong anzahlAbfragen = new AtomicLong();
+	private final AtomicLong summeDauerNanos = new AtomicLong();
+
+	@PostConstruct
+	private void postConstruct() {
+		final long start = System.nanoTime();
+		final List<Object[]> rows = em.createNamedQuery(Artikel.FIND_IDS_UND_BEZEICHNUNGEN, Object[].class)
+		                              .getResultList();
+		schreiben.lock();
+		try {
+			for (Object[] row : rows) {
+				add((Long) row[0], (String) row[1]);
+			}
+		}
+		finally {
+			schreiben.unlock();
+		}
+		logger.infof("Artikel-Index mit %d Trigrammen von %d Artikeln in %d ms geladen",
+		             postingsByTrigramm.size(), slotByArtikelId.size(),
+		             NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * IDs der Artikel, deren Bezeichnung den Suchbegriff enthaelt bzw. bei der fehlertoleranten Suche eine
+	 * aehnliche Bezeichnung haben, unabhaengig von Gross- und Kleinschreibung
+	 * @param bezeichnung Suchbegriff
+	 * @param fehlertolerant true, falls auch Bezeichnungen mit einem Tippfehler gegenueber dem Suchbegriff
+	 *        gefunden werden sollen. Bei einem Suchbegriff mit weniger als 3 Zeichen wird das ignoriert.
+	 * @param max Maximale Anzahl an IDs, 0 fuer unbegrenzt
+	 * @return IDs der Artikel, die besten Treffer zuerst
+	 */
+	public List<Long> findArtikelIds(String bezeichnung, boolean fehlertolerant, int max) {
+		final long start = System.nanoTime();
+		final String suchbegriff = normalisieren(bezeichnung == null ? "" : bezeichnung);
+
+		final List<Treffer> treffer;
+		lesen.lock();
+		try {
+			if (suchbegriff.length() < N) {
+				treffer = findKurz(suchbegriff, max);
+			}
+			else if (fehlertolerant) {
+				treffer = findAehnlich(suchbegriff, max);
+			}
+			else {
+				treffer = findTeilstring(suchbegriff, max);
+			}
+		}
+		finally {
+			lesen.unlock();
+		}
+
+		final List<Long> ids = new ArrayList<>(treffer.size());
+		for (Treffer t : treffer) {
+			ids.add(t.artikelId);
+		}
+
+		anzahlAbfragen.incrementAndGet();
+		summeDauerNanos.addAndGet(System.nanoTime() - start);
+		return ids;
+	}
+
+	/**
+	 * Zu kurze Suchbegriffe haben kein Trigramm, deshalb werden alle Bezeichnungen im Hauptspeicher durchsucht
+	 */
+	private List<Treffer> findKurz(String suchbegriff, int max) {
+		final Sammler sammler = new Sammler(max);
+		for (int slot = 0; slot < anzahlSlots; slot++) {
+			final String str = bezeichnungen[slot];
+			if (str != null && str.contains(suchbegriff)) {
+				sammler.add(new Treffer(artikelIds[slot], str.startsWith(suchbegriff) ? 2 : 1, 0, str.length()));
+			}
+		}
+		return sammler.getTreffer();
+	}
+
+	/**
+	 * Schnittmenge der Listen zu allen Trigrammen des Suchbegriffs, beginnend mit der kuerzesten Liste.
+	 * Ein Kandidat enthaelt alle Trigramme, aber nicht notwendig in der richtigen Reihenfolge.
+	 */
+	private List<Treffer> findTeilstring(String suchbegriff, int max) {
+		final long[] trigramme = getTrigramme(suchbegriff);
+		final Postings[] listen = new Postings[trigramme.length];
+		for (int i = 0; i < trigramme.length; i++) {
+			listen[i] = postingsByTrigramm.get(trigramme[i]);
+			if (listen[i] == null) {
+				return Collections.emptyList();
+			}
+		}
+		Arrays.sort(listen, new Comparator<Postings>() {
+			@Override
+			public int compare(Postings p1, Postings p2) {
+				return p1.size < p2.size ? -1 : (p1.size == p2.size ? 0 : 1);
+			}
+		});
+
+		final Sammler sammler = new Sammler(max);
+		final Postings kuerzeste = listen[0];
+		kandidaten:
+		for (int i = 0; i < kuerzeste.size; i++) {
+			final int slot = kuerzeste.slots[i];
+			for (int j = 1; j < listen.length; j++) {
+				if (!listen[j].contains(slot)) {
+					continue kandidaten;
+				}
+			}
+			final String str = bezeichnungen[slot];
+			if (str.contains(suchbegriff)) {
+				sammler.add(new Treffer(artikelIds[slot], str.startsWith(suchbegriff) ? 2 : 1, trigramme.length,
+				                        str.length()));
+			}
+		}
+		return sammler.getTreffer();
+	}
+
+	/**
+	 * Die Listen zu den Trigrammen des Suchbegriffs werden gemischt und je Artikel die gemeinsamen Trigramme
+	 * gezaehlt. Ein Tippfehler veraendert hoechstens 3 Trigramme, mindestens muss aber die Haelfte passen.
+	 */
+	private List<Treffer> findAehnlich(String suchbegriff, int max) {
+		final long[] trigramme = getTrigramme(suchbegriff);
+		final List<Postings> listen = new ArrayList<>(trigramme.length);
+		for (long trigramm : trigramme) {
+			final Postings postings = postingsByTrigramm.get(trigramm);
+			if (postings != null) {
+				listen.add(postings);
+			}
+		}
+		final int minTrigramme = Math.max((trigramme.length + 1) / 2, trigramme.length - N * MAX_FEHLER);
+
+		final Sammler sammler = new Sammler(max);
+		final int[] positionen = new int[listen.size()];
+		for (;;) {
+			// Kleinste Position unter den aktuellen Anfaengen der Listen
+			int slot = Integer.MAX_VALUE;
+			for (int i = 0; i < positionen.length; i++) {
+				final Postings postings = listen.get(i);
+				if (positionen[i] < postings.size) {
+					slot = Math.min(slot, postings.slots[positionen[i]]);
+				}
+			}
+			if (slot == Integer.MAX_VALUE) {
+				break;
+			}
+
+			int anzahl = 0;
+			for (int i = 0; i < positionen.length; i++) {
+				final Postings postings = listen.get(i);
+				if (positionen[i] < postings.size && postings.slots[positionen[i]] == slot) {
+					positionen[i]++;
+					anzahl++;
+				}
+			}
+			if (anzahl >= minTrigramme) {
+				final String str = bezeichnungen[slot];
+				final int stufe = str.startsWith(suchbegriff) ? 2 : (str.contains(suchbegriff) ? 1 : 0);
+				sammler.add(new Treffer(artikelIds[slot], stufe, anzahl, str.length()));
+			}
+		}
+		return sammler.getTreffer();
+	}
+
+	/**
+	 * Kennzahlen zum Index: Anzahl Artikel, Trigramme und Eintraege in den Listen, geschaetzter Speicherbedarf
+	 * in Bytes, Anzahl der Abfragen und deren mittlere Dauer in Nanosekunden
+	 * @return Kennzahlen in fester Reihenfolge
+	 */
+	public Map<String, Number> getStatistik() {
+		final Map<String, Number> statistik = new LinkedHashMap<>();
+		lesen.lock();
+		try {
+			final int anzahlArtikel = slotByArtikelId.size();
+			final int anzahlTrigramme = postingsByTrigramm.size();
+			statistik.put(STAT_ARTIKEL, anzahlArtikel);
+			statistik.put(STAT_TRIGRAMME, anzahlTrigramme);
+			statistik.put(STAT_POSTINGS, anzahlPostings);
+			statistik.put(STAT_BYTES, anzahlTrigramme * BYTES_PRO_TRIGRAMM + anzahlPostings * BYTES_PRO_POSTING
+			                          + anzahlArtikel * BYTES_PRO_ARTIKEL + anzahlZeichen * BYTES_PRO_ZEICHEN);
+		}
+		finally {
+			lesen.unlock();
+		}
+
+		final long abfragen = anzahlAbfragen.get();
+		statistik.put(STAT_ABFRAGEN, abfragen);
+		statistik.put(STAT_DAUER_NANOS, abfragen == 0 ? 0L : summeDauerNanos.get() / abfragen);
+		return Collections.unmodifiableMap(statistik);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		schreiben.lock();
+		try {
+			add(artikel.getId(), artikel.getBezeichnung());
+		}
+		finally {
+			schreiben.unlock();
+		}
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onUpdateArtikel(@Observes(during = AFTER_SUCCESS) @GeaenderterArtikel Artikel artikel) {
+		schreiben.lock();
+		try {
+			remove(artikel.getId());
+			add(artikel.getId(), artikel.getBezeichnung());
+		}
+		finally {
+			schreiben.unlock();
+		}
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onDeleteArtikel(@Observes(during = AFTER_SUCCESS) @GeloeschterArtikel Artikel artikel) {
+		schreiben.lock();
+		try {
+			remove(artikel.getId());
+		}
+		finally {
+			schreiben.unlock();
+		}
+	}
+
+	private void add(Long artikelId, String bezeichnung) {
+		if (artikelId == null || bezeichnung == null || slotByArtikelId.containsKey(artikelId)) {
+			return;
+		}
+
+		final int slot;
+		if (freieSlots.isEmpty()) {
+			if (anzahlSlots == artikelIds.length) {
+				artikelIds = Arrays.copyOf(artikelIds, anzahlSlots * 2);
+				bezeichnungen = Arrays.copyOf(bezeichnungen, anzahlSlots * 2);
+			}
+			slot = anzahlSlots++;
+		}
+		else {
+			slot = freieSlots.pop();
+		}
+
+		final String str = normalisieren(bezeichnung);
+		artikelIds[slot] = artikelId;
+		bezeichnungen[slot] = str;
+		slotByArtikelId.put(artikelId, slot);
+		anzahlZeichen += str.length();
+
+		for (long trigramm : getTrigramme(str)) {
+			Postings postings = postingsByTrigramm.get(trigramm);
+			if (postings == null) {
+				postings = new Postings();
+				postingsByTrigramm.put(trigramm, postings);
+			}
+			postings.add(slot);
+			anzahlPostings++;
+		}
+	}
+
+	private void remove(Long artikelId) {
+		final Integer slot = slotByArtikelId.remove(artikelId);
+		if (slot == null) {
+			return;
+		}
+
+		final String str = bezeichnungen[slot];
+		for (long trigramm : getTrigramme(str)) {
+			final Postings postings = postingsByTrigramm.get(trigramm);
+			if (postings != null && postings.remove(slot)) {
+				anzahlPostings--;
+				if (postings.size == 0) {
+					postingsByTrigramm.remove(trigramm);
+				}
+			}
+		}
+		anzahlZeichen -= str.length();
+		bezeichnungen[slot] = null;
+		freieSlots.push(slot);
+	}
+
+	/**
+	 * @return Die verschiedenen Trigramme eines Strings, jeweils 3 Zeichen mit 16 Bit in einem long
+	 */
+	private static long[] getTrigramme(String str) {
+		final int anzahl = str.length() - N + 1;
+		if (anzahl <= 0) {
+			return new long[0];
+		}
+		final long[] trigramme = new long[anzahl];
+		for (int i = 0; i < anzahl; i++) {
+			trigramme[i] = (long) str.charAt(i) << (2 * BITS_PRO_ZEICHEN)
+			               | (long) str.charAt(i + 1) << BITS_PRO_ZEICHEN
+			               | str.charAt(i + 2);
+		}
+		Arrays.sort(trigramme);
+
+		// Duplikate entfernen, z.B. "ana" in "banana"
+		int verschieden = 1;
+		for (int i = 1; i < anzahl; i++) {
+			if (trigramme[i] != trigramme[verschieden - 1]) {
+				trigramme[verschieden++] = trigramme[i];
+			}
+		}
+		return Arrays.copyOf(trigramme, verschieden);
+	}
+
+	private static String normalisieren(String str) {
+		return str.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,186 @@
+package de.shop.artikelverwaltung.service;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.jboss.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.util.Log;
+
+/**
+ * Die verfuegbaren Artikel als gemeinsamer Schnappschuss fuer alle Sessions, statt einer Kopie des Katalogs
+ * je Session. Der Schnappschuss ist unveraenderlich und enthaelt die Artikel bereits in jeder Sortierung.
+ * Nach dem Commit einer Transaktion, die einen Artikel anlegt, aendert oder loescht, wird aus dem bisherigen
+ * Schnappschuss und einer Kopie des Artikels ein neuer Schnappschuss gebaut und die Referenz darauf atomar
+ * ersetzt (Copy-on-Write). Lesende Zugriffe benoetigen deshalb weder eine Sperre noch die Datenbank.
+ * Die gelieferten Artikel werden von allen Sessions gemeinsam genutzt und duerfen nicht geaendert werden.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@Log
+public class ArtikelKatalog {
+	public enum Sortierung {
+		ID(new Comparator<Artikel>() {
+			@Override
+			public int compare(Artikel a1, Artikel a2) {
+				return a1.getId().compareTo(a2.getId());
+			}
+		}),
+		BEZEICHNUNG(new Comparator<Artikel>() {
+			@Override
+			public int compare(Artikel a1, Artikel a2) {
+				final int diff = String.CASE_INSENSITIVE_ORDER.compare(a1.getBezeichnung(), a2.getBezeichnung());
+				return diff == 0 ? a1.getId().compareTo(a2.getId()) : diff;
+			}
+		}),
+		PREIS(new Comparator<Artikel>() {
+			@Override
+			public int compare(Artikel a1, Artikel a2) {
+				final int diff = Double.compare(a1.getPreis(), a2.getPreis());
+				return diff == 0 ? a1.getId().compareTo(a2.getId()) : diff;
+			}
+		});
+
+		private final Comparator<Artikel> comparator;
+
+		private Sortierung(Comparator<Artikel> comparator) {
+			this.comparator = comparator;
+		}
+	}
+
+	/**
+	 * Unveraenderlicher Stand des Katalogs
+	 */
+	private static final class Schnappschuss {
+		private final Map<Long, Artikel> artikelById;
+		private final Map<Sortierung, List<Artikel>> sortiert;
+
+		private Schnappschuss(Collection<Artikel> artikel) {
+			final List<Artikel> liste = new ArrayList<>(artikel);
+			sortiert = new EnumMap<>(Sortierung.class);
+			for (Sortierung sortierung : Sortierung.values()) {
+				Collections.sort(liste, sortierung.comparator);
+				sortiert.put(sortierung, ImmutableList.copyOf(liste));
+			}
+
+			final ImmutableMap.Builder<Long, Artikel> builder = ImmutableMap.builder();
+			for (Artikel a : sortiert.get(Sortierung.ID)) {
+				builder.put(a.getId(), a);
+			}
+			artikelById = builder.build();
+		}
+	}
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private Logger logger;
+
+	private volatile Schnappschuss schnappschuss;
+
+	@PostConstruct
+	private void postConstruct() {
+		final List<Artikel> artikel = em.createNamedQuery(Artikel.FIND_VERFUEGBARE_ARTIKEL, Artikel.class)
+		                                .getResultList();
+		schnappschuss = new Schnappschuss(artikel);
+		logger.infof("Katalog mit %d verfuegbaren Artikeln geladen", artikel.size());
+	}
+
+	/**
+	 * @return Verfuegbare Artikel sortiert nach der ID
+	 */
+	public List<Artikel> getArtikel() {
+		return getArtikel(Sortierung.ID);
+	}
+
+	/**
+	 * @param sortierung Gewuenschte Sortierung
+	 * @return Verfuegbare Artikel als unveraenderliche Liste
+	 */
+	public List<Artikel> getArtikel(Sortierung sortierung) {
+		return schnappschuss.sortiert.get(sortierung);
+	}
+
+	/**
+	 * @param id ID des Artikels
+	 * @return Der Artikel oder null, falls es ihn nicht gibt oder er nicht verfuegbar ist
+	 */
+	public Artikel findArtikelById(Long id) {
+		return id == null ? null : schnappschuss.artikelById.get(id);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), artikel);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onUpdateArtikel(@Observes(during = AFTER_SUCCESS) @GeaenderterArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), artikel);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onDeleteArtikel(@Observes(during = AFTER_SUCCESS) @GeloeschterArtikel Artikel artikel) {
+		ersetzen(artikel.getId(), null);
+	}
+
+	/**
+	 * Einen neuen Schnappschuss ohne den bisherigen Artikel zur ID und ggf. mit einer Kopie des neuen Artikels
+	 * bauen. Aenderungen werden nacheinander eingearbeitet, damit keine verloren geht.
+	 */
+	private synchronized void ersetzen(Long id, Artikel artikel) {
+		if (id == null) {
+			return;
+		}
+		final Map<Long, Artikel> artikelById = new LinkedHashMap<>(schnappschuss.artikelById);
+		artikelById.remove(id);
+		if (artikel != null && artikel.isErhaeltlich()) {
+			artikelById.put(id, kopieren(artikel));
+		}
+		schnappschuss = new Schnappschuss(artikelById.values());
+		logger.debugf("Katalog nach Aenderung des Artikels %d mit %d Artikeln", id, artikelById.size());
+	}
+
+	/**
+	 * Der Artikel aus dem Event gehoert dem Aufrufer, der ihn z.B. in einem Formular weiter aendern kann
+	 */
+	private static Artikel kopieren(Artikel artikel) {
+		final Artikel kopie = new Artikel();
+		kopie.setId(artikel.getId());
+		kopie.setVersion(artikel.getVersion());
+		kopie.setBezeichnung(artikel.getBezeichnung());
+		kopie.setGroesse(artikel.getGroesse());
+		kopie.setPreis(artikel.getPreis());
+		kopie.setErhaeltlich(artikel.isErhaeltlich());
+		kopie.setBestand(artikel.getBestand());
+		kopie.setErzeugt(artikel.getErzeugt());
+		kopie.setAktualisiert(artikel.getAktualisiert());
+		return kopie;
+	}
+}
@@ -3,39 +3,60 @@ package de.shop.artikelverwaltung.service;
 import static de.shop.util.Constants.KEINE_ID;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Path;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import javax.validation.groups.Default;
 
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.jboss.logging.Logger;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 
 import de.shop.artikelverwaltung.domain.Artikel;
 import de.shop.util.ConcurrentDeletedException;
 import de.shop.util.IdGroup;
 import de.shop.util.Log;
+import de.shop.util.MergePatch;
 import de.shop.util.ValidatorProvider;
 
 @Log
 public class ArtikelService implements Serializable {
 	private static final long serialVersionUID = 3076865030092242363L;
 
+	// Attribute, die per JSON Merge Patch geaendert werden duerfen
+	public static final Map<String, Class<?>> PATCH_ATTRIBUTE = ImmutableMap.<String, Class<?>>builder()
+	                                                                      .put("bezeichnung", String.class)
+	                                                                      .put("groesse", String.class)
+	                                                                      .put("preis", double.class)
+	                                                                      .put("erhaeltlich", boolean.class)
+	                                                                      .build();
+
+	// Anzahl der aehnlichen Artikel, falls kein Artikel den Suchbegriff enthaelt
+	private static final int MAX_AEHNLICHE_ARTIKEL = 20;
+
+	// Laengen der IN-Listen beim Lesen mehrerer Artikel, aufsteigend
+	private static final int[] CHUNK_GROESSEN = { 1, 4, 16, 64 };
 	
 	@PersistenceContext
 	private transient EntityManager em;
@@ -46,6 +67,27 @@ public class ArtikelService implements Serializable {
 	@Inject
 	private ValidatorProvider validatorProvider;
 	
+	@Inject
+	private ArtikelIndex artikelIndex;
+	
+	@Inject
+	private ArtikelKatalog katalog;
+	
+	@Inject
+	private ArtikelFilterIndex filterIndex;
+	
+	@Inject
+	@NeuerArtikel
+	private transient Event<Artikel> event;
+	
+	@Inject
+	@GeaenderterArtikel
+	private transient Event<Artikel> eventGeaendert;
+	
+	@Inject
+	@GeloeschterArtikel
+	private transient Event<Artikel> eventGeloescht;
+	
 	
 	@PostConstruct
 	private void postConstruct() {
@@ -58,10 +100,12 @@ public class ArtikelService implements Serializable {
 	}
 
 	
+	/**
+	 * @return Verfuegbare Artikel aus dem gemeinsamen Katalog, sortiert nach der ID. Die Artikel duerfen nicht
+	 *         geaendert werden.
+	 */
 	public List<Artikel> findVerfuegbareArtikel() {
-		final List<Artikel> artikel = em.createNamedQuery(Artikel.FIND_VERFUEGBARE_ARTIKEL, Artikel.class)
-				                        .getResultList();
-		return artikel;
+		return katalog.getArtikel();
 	}
 
 
@@ -72,54 +116,151 @@ public class ArtikelService implements Serializable {
 	
 
 	public List<Artikel> findArtikelByBezeichnung(String bezeichnung) {
+		return findArtikelByBezeichnung(bezeichnung, 0);
+	}
+
+	/**
+	 * Artikel, deren Bezeichnung den Suchbegriff unabhaengig von Gross- und Kleinschreibung enthaelt, ueber den
+	 * Trigramm-Index statt mit LIKE '%x%'. Gibt es keinen solchen Artikel, z.B. wegen eines Tippfehlers, werden
+	 * Artikel mit einer aehnlichen Bezeichnung geliefert.
+	 * @param bezeichnung Suchbegriff
+	 * @param max Maximale Anzahl an Artikeln, 0 fuer unbegrenzt
+	 * @return Artikel, die besten Treffer zuerst
+	 */
+	public List<Artikel> findArtikelByBezeichnung(String bezeichnung, int max) {
 		if (Strings.isNullOrEmpty(bezeichnung)) {
 			final List<Artikel> artikelListe = findVerfuegbareArtikel();
 			return artikelListe;
 		}
 		
-		final List<Artikel> artikel = em.createNamedQuery(Artikel.FIND_ARTIKEL_BY_BEZ, Artikel.class)
-				                        .setParameter(Artikel.PARAM_BEZEICHNUNG, "%" + bezeichnung + "%")
-				                        .getResultList();
-		
-		return artikel;
+		List<Long> ids = artikelIndex.findArtikelIds(bezeichnung, false, max);
+		if (ids.isEmpty()) {
+			ids = artikelIndex.findArtikelIds(bezeichnung, true, max > 0 ? max : MAX_AEHNLICHE_ARTIKEL);
+		}
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// Reihenfolge aus dem Index beibehalten
+		return findArtikelByIds(ids);
+	}
+
+	/**
+	 * Eine Seite der Artikel zu einem Filter ueber Preis, Groesse und Verfuegbarkeit, nach dem Preis sortiert
+	 * @param filter Kriterien, die ueber den Filter-Index statt mit einer Abfrage ausgewertet werden
+	 * @param bezeichnung Suchbegriff fuer die Bezeichnung oder null bzw. ""
+	 * @param after ID des letzten Artikels der vorherigen Seite oder null
+	 * @param limit Maximale Anzahl an Artikeln auf der Seite
+	 * @return Artikel der Seite mit der Gesamtzahl der Treffer und den Facetten
+	 */
+	public ArtikelFilterErgebnis findArtikelByFilter(ArtikelFilter filter, String bezeichnung, Long after,
+	                                                 int limit) {
+		final List<Long> ids = Strings.isNullOrEmpty(bezeichnung)
+		                       ? null
+		                       : artikelIndex.findArtikelIds(bezeichnung, false, 0);
+		final ArtikelFilterErgebnis ergebnis = filterIndex.find(filter, ids, after, limit);
+		ergebnis.setArtikel(findArtikelByIds(ergebnis.getIds()));
+		return ergebnis;
 	}
 
 	public List<Artikel> findArtikelByIds(List<Long> ids) {
+		return new ArrayList<>(findArtikelMapByIds(ids).values());
+	}
+
+	/**
+	 * Artikel zu IDs, z.B. fuer die Positionen einer grossen Bestellung. Doppelte IDs werden nur einmal gelesen.
+	 * Artikel im Persistenzkontext oder im L2C werden ohne SQL geliefert. Die uebrigen IDs werden in Abschnitten
+	 * mit IN-Listen fester Laenge gelesen, d.h. mit 1, 4, 16 oder 64 Parametern, wobei der letzte Abschnitt mit
+	 * seiner letzten ID aufgefuellt wird. So gibt es nur wenige verschiedene SQL-Anweisungen fuer den
+	 * Statement-Cache und die Anzahl an Parametern je Anweisung bleibt unter den Grenzen der Datenbank.
+	 * @param ids IDs der Artikel, auch mit Duplikaten
+	 * @return Gefundene Artikel in der Reihenfolge der IDs, ohne die IDs ohne Artikel
+	 */
+	public Map<Long, Artikel> findArtikelMapByIds(Collection<Long> ids) {
 		if (ids == null || ids.isEmpty()) {
-			return Collections.emptyList();
+			return Collections.emptyMap();
 		}
-		
-		/**
-		 * SELECT a
-		 * FROM   Artikel a
-		 * WHERE  a.id = ? OR a.id = ? OR ...
-		 */
-		final CriteriaBuilder builder = em.getCriteriaBuilder();
-		final CriteriaQuery<Artikel> criteriaQuery = builder.createQuery(Artikel.class);
-		final Root<Artikel> a = criteriaQuery.from(Artikel.class);
-
-		final Path<Long> idPath = a.get("id");
-		//final Path<String> idPath = a.get(Artikel_.id);   // Metamodel-Klassen funktionieren nicht mit Eclipse
-			
-		Predicate pred = null;
-		if (ids.size() == 1) {
-			// Genau 1 id: kein OR notwendig
-			pred = builder.equal(idPath, ids.get(0));
-		}
-		else {
-			// Mind. 2x id, durch OR verknuepft
-			final Predicate[] equals = new Predicate[ids.size()];
-			int i = 0;
-			for (Long id : ids) {
-				equals[i++] = builder.equal(idPath, id);
+		final Set<Long> eindeutigeIds = new LinkedHashSet<>(ids);
+		eindeutigeIds.remove(null);
+
+		// Zuerst im Persistenzkontext und im L2C suchen
+		final SessionImplementor session = em.unwrap(SessionImplementor.class);
+		final EntityPersister persister = session.getFactory().getEntityPersister(Artikel.class.getName());
+		final Cache cache = em.getEntityManagerFactory().getCache();
+		final Map<Long, Artikel> gefunden = new HashMap<>(eindeutigeIds.size() * 2);
+		final List<Long> fehlend = new ArrayList<>();
+		for (Long id : eindeutigeIds) {
+			final Object artikel = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+			if (artikel != null) {
+				gefunden.put(id, (Artikel) artikel);
+			}
+			else if (cache.contains(Artikel.class, id)) {
+				// em.find() liest den Artikel aus dem L2C ohne SQL
+				gefunden.put(id, em.find(Artikel.class, id));
+			}
+			else {
+				fehlend.add(id);
 			}
-				
-			pred = builder.or(equals);
 		}
-		criteriaQuery.where(pred);
-			
-		final List<Artikel> artikel = em.createQuery(criteriaQuery).getResultList();
-		return artikel;
+
+		final List<List<Long>> chunks = zerlegen(fehlend);
+		for (List<Long> chunk : chunks) {
+			for (Artikel artikel : em.createNamedQuery(Artikel.FIND_ARTIKEL_BY_IDS, Artikel.class)
+			                         .setParameter(Artikel.PARAM_IDS, chunk)
+			                         .getResultList()) {
+				gefunden.put(artikel.getId(), artikel);
+			}
+		}
+		logger.tracef("%d Artikel gesucht, %d aus dem Cache, %d Abfragen", eindeutigeIds.size(),
+		              eindeutigeIds.size() - fehlend.size(), chunks.size());
+
+		final Map<Long, Artikel> artikelMap = new LinkedHashMap<>(gefunden.size() * 2);
+		for (Long id : eindeutigeIds) {
+			final Artikel artikel = gefunden.get(id);
+			if (artikel != null) {
+				artikelMap.put(id, artikel);
+			}
+		}
+		return artikelMap;
+	}
+
+	/**
+	 * Die IDs in Abschnitte fuer die IN-Listen zerlegen. Jeder Abschnitt hat eine der Laengen aus
+	 * CHUNK_GROESSEN; der letzte wird mit seiner letzten ID aufgefuellt.
+	 * @param ids IDs ohne Duplikate
+	 * @return Abschnitte in der Reihenfolge der IDs
+	 */
+	static List<List<Long>> zerlegen(List<Long> ids) {
+		final List<List<Long>> chunks = new ArrayList<>();
+		int start = 0;
+		while (start < ids.size()) {
+			final int groesse = getChunkGroesse(ids.size() - start);
+			final int ende = Math.min(start + groesse, ids.size());
+			final List<Long> chunk = new ArrayList<>(ids.subList(start, ende));
+			while (chunk.size() < groesse) {
+				chunk.add(ids.get(ende - 1));
+			}
+			chunks.add(chunk);
+			start = ende;
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return Die groesste Laenge der IN-Liste, falls mindestens so viele IDs fehlen, sonst die kleinste Laenge,
+	 *         die alle fehlenden IDs aufnimmt
+	 */
+	private static int getChunkGroesse(int anzahl) {
+		final int maxGroesse = CHUNK_GROESSEN[CHUNK_GROESSEN.length - 1];
+		if (anzahl >= maxGroesse) {
+			return maxGroesse;
+		}
+		for (int groesse : CHUNK_GROESSEN) {
+			if (groesse >= anzahl) {
+				return groesse;
+			}
+		}
+		return maxGroesse;
 	}
 
 	public Artikel createArtikel(Artikel artikel, Locale locale) {
@@ -131,6 +272,7 @@ public class ArtikelService implements Serializable {
 		
 		artikel.setId(KEINE_ID);
 		em.persist(artikel);
+		event.fire(artikel);
 		
 		return artikel;
 	}
@@ -163,7 +305,58 @@ public class ArtikelService implements Serializable {
 		em.detach(tmp);
 
 		artikel = em.merge(artikel);   // OptimisticLockException
+		eventGeaendert.fire(artikel);
+
+		return artikel;
+	}
+	
+	/**
+	 * Die Version fuer das ETag eines Artikels lesen, ohne den Artikel in den Persistenzkontext zu laden
+	 * @param id ID des Artikels
+	 * @return Version des Artikels oder null, falls es keinen Artikel mit der ID gibt
+	 */
+	public Integer findVersionById(Long id) {
+		final List<Integer> versionen = em.createQuery("SELECT a.version FROM Artikel a WHERE a.id = :"
+		                                               + Artikel.PARAM_ID, Integer.class)
+		                                  .setParameter(Artikel.PARAM_ID, id)
+		                                  .getResultList();
+		return versionen.isEmpty() ? null : versionen.get(0);
+	}
+	
+	/**
+	 * JSON Merge Patch: nur die uebergebenen Attribute mit einem einzigen UPDATE-Statement aendern.
+	 * @param id ID des Artikels
+	 * @param version Erwartete Version
+	 * @param werte Attributname und neuer Wert, nur Attribute aus PATCH_ATTRIBUTE
+	 * Das UPDATE umgeht Bean Validation und die Entity Listener. Deshalb werden die Attribute vorab einzeln
+	 * und der geaenderte Artikel danach vollstaendig validiert; Version und Zeitstempel setzt das UPDATE selbst.
+	 * @param locale Locale fuer die Fehlermeldungen der Validierung
+	 * @return Der geaenderte Artikel mit der neuen Version oder null, falls er nicht existiert oder die Version
+	 *         nicht passt
+	 */
+	public Artikel patchArtikel(Long id, int version, Map<String, Object> werte, Locale locale) {
+		// Werden alle Constraints der geaenderten Attribute gewahrt?
+		final Validator validator = validatorProvider.getValidator(locale);
+		final Set<ConstraintViolation<Artikel>> violations = new HashSet<>();
+		for (Map.Entry<String, Object> wert : werte.entrySet()) {
+			violations.addAll(validator.validateValue(Artikel.class, wert.getKey(), wert.getValue(),
+			                                          Default.class));
+		}
+		if (!violations.isEmpty()) {
+			throw new ArtikelValidationException(null, violations);
+		}
+
+		final int anzahl = MergePatch.update(em, Artikel.class, id, version, werte);
+		if (anzahl == 0) {
+			return null;
+		}
+
+		// Mit der neuen Version laden und als Ganzes pruefen; bei einer Verletzung wird das UPDATE zurueckgerollt
+		final Artikel artikel = em.find(Artikel.class, id);
+		validateArtikel(artikel, locale, Default.class);
 
+		// Der Katalog und ggf. der Trigramm-Index benoetigen den geaenderten Artikel
+		eventGeaendert.fire(artikel);
 		return artikel;
 	}
 	
@@ -192,6 +385,7 @@ public class ArtikelService implements Serializable {
 
 		// Artikeldaten loeschen
 		em.remove(artikel);
+		eventGeloescht.fire(artikel);
 	}
 	
 }
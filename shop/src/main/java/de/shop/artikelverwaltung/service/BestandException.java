@@ -0,0 +1,35 @@
+package de.shop.artikelverwaltung.service;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Der Bestand eines Artikels reicht fuer eine Bestellung nicht aus
+ */
+@ApplicationException(rollback = true)
+public class BestandException extends AbstractArtikelverwaltungException {
+	private static final long serialVersionUID = 3208571046523901748L;
+
+	private final Long artikelId;
+	private final int verfuegbar;
+	private final int angefordert;
+
+	public BestandException(Long artikelId, int verfuegbar, int angefordert) {
+		super("Der Artikel mit der ID " + artikelId + " ist nur noch " + verfuegbar + "-mal vorhanden, bestellt: "
+		      + angefordert);
+		this.artikelId = artikelId;
+		this.verfuegbar = verfuegbar;
+		this.angefordert = angefordert;
+	}
+
+	public Long getArtikelId() {
+		return artikelId;
+	}
+
+	public int getVerfuegbar() {
+		return verfuegbar;
+	}
+
+	public int getAngefordert() {
+		return angefordert;
+	}
+}
@@ -0,0 +1,271 @@
+package de.shop.artikelverwaltung.service;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+import static javax.enterprise.event.TransactionPhase.AFTER_FAILURE;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Event;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.jboss.logging.Logger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.domain.Bestandsbuchung;
+import de.shop.util.Log;
+import de.shop.util.NotFoundException;
+
+/**
+ * Bestand der Artikel im Hauptspeicher, damit sich gleichzeitige Bestellungen desselben Artikels nicht an einer
+ * Zeilensperre in der Datenbank anstellen. Je Artikel gibt es einen Zaehler, der per Compare-and-Set abgebucht
+ * wird und dabei nie negativ werden kann. Die Positionen einer Bestellung werden nach der Artikel-ID sortiert
+ * nacheinander reserviert; reicht der Bestand fuer eine Position nicht, werden die bereits reservierten
+ * Positionen wieder freigegeben (alles oder nichts).
+ * <p>
+ * Jede Reservierung wird in der Transaktion der Bestellung als Bestandsbuchung eingefuegt, ebenso jeder
+ * Nachschub. Der Bestand ist damit nach dem Commit dauerhaft gespeichert, ohne dass die Zeile des Artikels
+ * gesperrt wird; nach einem Rollback wird die Reservierung im Hauptspeicher freigegeben. Alle paar Sekunden
+ * werden die Buchungen je Artikel aufsummiert, in die Spalte "bestand" uebernommen und geloescht, alles in
+ * einer Transaktion. Scheitert sie, bleiben die Buchungen fuer den naechsten Lauf erhalten. Beim Start ergibt
+ * sich der Zaehler aus der Spalte "bestand" und der Summe der noch offenen Buchungen.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@Log
+public class BestandService {
+	// Hoechstens so viele Buchungen je Lauf, damit die Transaktion kurz bleibt
+	private static final int MAX_BUCHUNGEN = 5000;
+	private static final int IN_CHUNK_SIZE = 500;
+
+	// Query Space fuer das native UPDATE: keine Entity hat ihn, deshalb raeumt Hibernate keine Region im L2C
+	// ab. Stattdessen werden nach dem Commit nur die betroffenen Artikel entfernt.
+	private static final String QUERY_SPACE_BESTAND = "artikel_bestand";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private Event<Reservierung> eventReservierung;
+
+	@Inject
+	private Event<Bestandsaenderung> eventBestandsaenderung;
+
+	// Verfuegbarer Bestand je Artikel-ID, d.h. abzueglich aller Reservierungen
+	private final ConcurrentMap<Long, AtomicInteger> bestaende = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	private void postConstruct() {
+		final List<Object[]> rows = em.createNamedQuery(Artikel.FIND_BESTAENDE, Object[].class)
+		                              .getResultList();
+		for (Object[] row : rows) {
+			bestaende.put((Long) row[0], new AtomicInteger((Integer) row[1]));
+		}
+
+		// Buchungen, die vor einem Neustart noch nicht in die Spalte "bestand" uebernommen wurden
+		final List<Object[]> summen = em.createNamedQuery(Bestandsbuchung.FIND_SUMMEN, Object[].class)
+		                                .getResultList();
+		for (Object[] row : summen) {
+			final AtomicInteger bestand = bestaende.get((Long) row[0]);
+			if (bestand != null) {
+				bestand.addAndGet(((Long) row[1]).intValue());
+			}
+		}
+		logger.infof("Bestand von %d Artikeln geladen, offene Buchungen fuer %d Artikel", rows.size(),
+		             summen.size());
+	}
+
+	/**
+	 * @param artikelId ID des Artikels
+	 * @return Verfuegbarer Bestand abzueglich aller Reservierungen
+	 */
+	public int getBestand(Long artikelId) {
+		final AtomicInteger bestand = artikelId == null ? null : bestaende.get(artikelId);
+		return bestand == null ? 0 : bestand.get();
+	}
+
+	/**
+	 * Die Mengen einer Bestellung atomar reservieren und in der aktuellen Transaktion buchen
+	 * @param mengen Bestellte Menge je Artikel-ID
+	 * @return Die Reservierung, die auch als Event in der aktuellen Transaktion gefeuert wurde
+	 * @throws BestandException Falls der Bestand fuer einen Artikel nicht ausreicht. Es bleibt dann nichts
+	 *         reserviert.
+	 */
+	public Reservierung reservieren(Map<Long, Integer> mengen) {
+		final SortedMap<Long, Integer> reserviert = new TreeMap<>();
+		for (Entry<Long, Integer> entry : new TreeMap<>(mengen).entrySet()) {
+			final Long artikelId = entry.getKey();
+			final int menge = entry.getValue();
+			if (menge <= 0) {
+				continue;
+			}
+
+			final AtomicInteger bestand = bestaende.get(artikelId);
+			if (bestand == null || !abbuchen(bestand, menge)) {
+				freigeben(reserviert);
+				throw new BestandException(artikelId, bestand == null ? 0 : bestand.get(), menge);
+			}
+			reserviert.put(artikelId, menge);
+		}
+
+		final Reservierung reservierung = new Reservierung(reserviert);
+		eventReservierung.fire(reservierung);
+		for (Entry<Long, Integer> entry : reserviert.entrySet()) {
+			em.persist(new Bestandsbuchung(entry.getKey(), -entry.getValue()));
+		}
+		return reservierung;
+	}
+
+	/**
+	 * Nachschub fuer einen Artikel in der aktuellen Transaktion buchen. Nach dem Commit steht die Menge fuer
+	 * Bestellungen zur Verfuegung.
+	 * @param artikelId ID des Artikels
+	 * @param menge Zusaetzliche Menge
+	 * @throws InvalidNachschubException Falls die Menge nicht positiv ist
+	 * @throws NotFoundException Falls es den Artikel nicht gibt
+	 */
+	public void nachbestellen(Long artikelId, int menge) {
+		if (menge <= 0) {
+			throw new InvalidNachschubException(artikelId, menge);
+		}
+		if (artikelId == null || em.find(Artikel.class, artikelId) == null) {
+			throw new NotFoundException("Kein Artikel gefunden mit der ID " + artikelId);
+		}
+
+		em.persist(new Bestandsbuchung(artikelId, menge));
+		eventBestandsaenderung.fire(new Bestandsaenderung(ImmutableMap.of(artikelId, menge)));
+	}
+
+	/**
+	 * Compare-and-Set in einer Schleife, bis die Abbuchung gelingt oder der Bestand nicht mehr reicht
+	 */
+	private static boolean abbuchen(AtomicInteger bestand, int menge) {
+		for (;;) {
+			final int alt = bestand.get();
+			if (alt < menge) {
+				return false;
+			}
+			if (bestand.compareAndSet(alt, alt - menge)) {
+				return true;
+			}
+		}
+	}
+
+	private void freigeben(Map<Long, Integer> mengen) {
+		for (Entry<Long, Integer> entry : mengen.entrySet()) {
+			final AtomicInteger bestand = bestaende.get(entry.getKey());
+			if (bestand != null) {
+				bestand.addAndGet(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Die Bestellung wurde zurueckgerollt und mit ihr die Buchungen: die Mengen stehen wieder zur Verfuegung
+	 */
+	@TransactionAttribute(SUPPORTS)
+	public void onRollback(@Observes(during = AFTER_FAILURE) Reservierung reservierung) {
+		freigeben(reservierung.getMengen());
+	}
+
+	/**
+	 * Nach dem Commit die Zugaenge auf die Zaehler buchen und die geaenderten Artikel aus dem L2C entfernen
+	 */
+	@TransactionAttribute(SUPPORTS)
+	public void onCommit(@Observes(during = AFTER_SUCCESS) Bestandsaenderung bestandsaenderung) {
+		final Cache cache = em.getEntityManagerFactory().getCache();
+		for (Entry<Long, Integer> entry : bestandsaenderung.getZugaenge().entrySet()) {
+			final AtomicInteger bestand = bestaende.get(entry.getKey());
+			if (bestand != null && entry.getValue() != 0) {
+				bestand.addAndGet(entry.getValue());
+			}
+			cache.evict(Artikel.class, entry.getKey());
+		}
+	}
+
+	/**
+	 * Die offenen Buchungen je Artikel aufsummieren, mit einem UPDATE je Artikel in die Spalte "bestand"
+	 * uebernehmen und loeschen. Die Zaehler im Hauptspeicher enthalten die Buchungen bereits.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/5", persistent = false)
+	public void schreiben() {
+		final List<Bestandsbuchung> buchungen = em.createNamedQuery(Bestandsbuchung.FIND_BUCHUNGEN,
+		                                                            Bestandsbuchung.class)
+		                                          .setMaxResults(MAX_BUCHUNGEN)
+		                                          .getResultList();
+		if (buchungen.isEmpty()) {
+			return;
+		}
+
+		final Map<Long, Integer> summen = new TreeMap<>();
+		final List<Long> ids = new ArrayList<>(buchungen.size());
+		for (Bestandsbuchung buchung : buchungen) {
+			final Integer summe = summen.get(buchung.getArtikelId());
+			summen.put(buchung.getArtikelId(), summe == null ? buchung.getMenge() : summe + buchung.getMenge());
+			ids.add(buchung.getId());
+		}
+
+		final Session session = em.unwrap(Session.class);
+		final Map<Long, Integer> geschrieben = new TreeMap<>();
+		for (Entry<Long, Integer> entry : summen.entrySet()) {
+			if (entry.getValue() == 0) {
+				continue;
+			}
+			session.createSQLQuery(Artikel.SQL_UPDATE_BESTAND)
+			       .addSynchronizedQuerySpace(QUERY_SPACE_BESTAND)
+			       .setInteger(Artikel.PARAM_MENGE, entry.getValue())
+			       .setLong(Artikel.PARAM_ID, entry.getKey())
+			       .executeUpdate();
+			geschrieben.put(entry.getKey(), 0);
+		}
+		for (List<Long> chunk : Lists.partition(ids, IN_CHUNK_SIZE)) {
+			em.createNamedQuery(Bestandsbuchung.DELETE_BY_IDS)
+			  .setParameter(Bestandsbuchung.PARAM_IDS, chunk)
+			  .executeUpdate();
+		}
+
+		eventBestandsaenderung.fire(new Bestandsaenderung(geschrieben));
+		logger.debugf("%d Buchungen fuer %d Artikel uebernommen", buchungen.size(), geschrieben.size());
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		if (artikel.getId() != null) {
+			bestaende.putIfAbsent(artikel.getId(), new AtomicInteger(artikel.getBestand()));
+		}
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public void onDeleteArtikel(@Observes(during = AFTER_SUCCESS) @GeloeschterArtikel Artikel artikel) {
+		if (artikel.getId() != null) {
+			bestaende.remove(artikel.getId());
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package de.shop.artikelverwaltung.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Geaenderter Bestand je Artikel-ID, als Event innerhalb der Transaktion gefeuert: nach dem Commit werden die
+ * Zugaenge auf die Zaehler im Hauptspeicher gebucht und die Artikel aus dem L2C entfernt. Ein Zugang von 0
+ * bedeutet, dass nur die Spalte "bestand" nachgezogen wurde.
+ */
+public class Bestandsaenderung {
+	private final SortedMap<Long, Integer> zugaenge;
+
+	Bestandsaenderung(Map<Long, Integer> zugaenge) {
+		this.zugaenge = Collections.unmodifiableSortedMap(new TreeMap<>(zugaenge));
+	}
+
+	/**
+	 * @return Zugang je Artikel-ID, nach der ID sortiert
+	 */
+	public Map<Long, Integer> getZugaenge() {
+		return zugaenge;
+	}
+
+	@Override
+	public String toString() {
+		return "Bestandsaenderung [zugaenge=" + zugaenge + "]";
+	}
+}
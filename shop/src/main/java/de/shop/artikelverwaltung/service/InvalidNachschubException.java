@@ -0,0 +1,28 @@
+package de.shop.artikelverwaltung.service;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Die Menge fuer den Nachschub eines Artikels ist nicht positiv
+ */
+@ApplicationException(rollback = true)
+public class InvalidNachschubException extends AbstractArtikelverwaltungException {
+	private static final long serialVersionUID = 7519372204186540231L;
+
+	private final Long artikelId;
+	private final int menge;
+
+	public InvalidNachschubException(Long artikelId, int menge) {
+		super("Ungueltige Menge " + menge + " fuer den Nachschub des Artikels mit der ID " + artikelId);
+		this.artikelId = artikelId;
+		this.menge = menge;
+	}
+
+	public Long getArtikelId() {
+		return artikelId;
+	}
+
+	public int getMenge() {
+		return menge;
+	}
+}
@@ -0,0 +1,31 @@
+package de.shop.artikelverwaltung.service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Die reservierten Mengen einer Bestellung je Artikel-ID. Die Reservierung wird als Event innerhalb der
+ * Transaktion der Bestellung gefeuert: nach dem Commit wird sie in die Datenbank geschrieben, nach einem
+ * Rollback wieder freigegeben.
+ */
+public class Reservierung {
+	private final SortedMap<Long, Integer> mengen;
+
+	Reservierung(SortedMap<Long, Integer> mengen) {
+		this.mengen = Collections.unmodifiableSortedMap(new TreeMap<>(mengen));
+	}
+
+	/**
+	 * @return Reservierte Menge je Artikel-ID, nach der ID sortiert
+	 */
+	public Map<Long, Integer> getMengen() {
+		return mengen;
+	}
+
+	@Override
+	public String toString() {
+		return "Reservierung [mengen=" + mengen + "]";
+	}
+}
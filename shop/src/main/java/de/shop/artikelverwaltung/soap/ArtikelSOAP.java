@@ -12,6 +12,7 @@ import javax.jws.soap.SOAPBinding;
 import org.jboss.logging.Logger;
 
 import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.service.ArtikelKatalog;
 import de.shop.artikelverwaltung.service.ArtikelService;
 
 /**
@@ -30,6 +31,9 @@ public class ArtikelSOAP {
 	@Inject
 	private ArtikelService as;
 	
+	@Inject
+	private ArtikelKatalog katalog;
+	
 	@PostConstruct
 	private void postConstruct() {
 		logger.debugf("CDI-faehiges Bean %s wurde erzeugt", this);
@@ -47,7 +51,8 @@ public class ArtikelSOAP {
 	
 	@WebResult(name = "artikel")
 	public Artikel findArtikelById(@WebParam(name = "id") long id) {
-		final Artikel artikel = as.findArtikelById(id);
-		return artikel;
+		// Nicht verfuegbare Artikel sind nicht im Katalog
+		final Artikel artikel = katalog.findArtikelById(id);
+		return artikel == null ? as.findArtikelById(id) : artikel;
 	}
 }
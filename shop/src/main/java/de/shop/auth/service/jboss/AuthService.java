@@ -1,7 +1,5 @@
 package de.shop.auth.service.jboss;
 
-import static de.shop.kundenverwaltung.domain.Kunde.FIND_USERNAME_BY_USERNAME_PREFIX;
-import static de.shop.kundenverwaltung.domain.Kunde.PARAM_USERNAME_PREFIX;
 import static de.shop.util.Constants.HASH_ALGORITHM;
 import static de.shop.util.Constants.HASH_CHARSET;
 import static de.shop.util.Constants.HASH_ENCODING;
@@ -15,7 +13,9 @@ import java.io.Serializable;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
@@ -26,8 +26,6 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 import javax.security.auth.Subject;
 import javax.security.jacc.PolicyContext;
 import javax.security.jacc.PolicyContextException;
@@ -42,6 +40,7 @@ import com.google.common.base.Strings;
 import de.shop.kundenverwaltung.domain.Kunde;
 import de.shop.kundenverwaltung.service.KundeService;
 import de.shop.kundenverwaltung.service.KundeService.FetchType;
+import de.shop.util.IdPrefix;
 import de.shop.util.InternalError;
 import de.shop.util.Log;
 
@@ -77,9 +76,6 @@ public class AuthService implements Serializable {
 	@Inject
 	private Logger logger;
 	
-	@PersistenceContext
-	private transient EntityManager em;
-	
 	@Inject
 	private KundeService ks;
 	
@@ -243,11 +239,20 @@ public class AuthService implements Serializable {
 	}
 
 	/**
+	 * Der Username ist die ID des Kunden. Verglichen wird wie bei LIKE mit der Dezimaldarstellung,
+	 * d.h. ein nicht-numerischer Praefix oder eine fuehrende 0 passt zu keinem Username.
 	 */
 	public List<String> findUsernameListByUsernamePrefix(String usernamePrefix) {
-		final List<String> usernameList = em.createNamedQuery(FIND_USERNAME_BY_USERNAME_PREFIX, String.class)
-				                            .setParameter(PARAM_USERNAME_PREFIX, usernamePrefix + '%')
-				                            .getResultList();
+		final Long idPrefix = IdPrefix.parse(usernamePrefix);
+		if (idPrefix == null) {
+			return Collections.emptyList();
+		}
+		
+		final List<Long> ids = ks.findIdsByPrefix(idPrefix, 0);
+		final List<String> usernameList = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			usernameList.add(id.toString());
+		}
 		return usernameList;
 	}
 	
@@ -1,6 +1,7 @@
 package de.shop.bestellverwaltung.controller;
 
 import static de.shop.util.Constants.JSF_DEFAULT_ERROR;
+import static de.shop.util.Messages.MessagesType.BESTELLVERWALTUNG;
 
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
@@ -15,6 +16,7 @@ import javax.inject.Named;
 
 import org.jboss.logging.Logger;
 
+import de.shop.artikelverwaltung.service.BestandException;
 import de.shop.auth.controller.AuthController;
 import de.shop.auth.controller.KundeLoggedIn;
 import de.shop.bestellverwaltung.domain.Bestellposition;
@@ -22,10 +24,9 @@ import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.service.AbstractBestellungValidationException;
 import de.shop.bestellverwaltung.service.BestellungService;
 import de.shop.kundenverwaltung.domain.Kunde;
-import de.shop.kundenverwaltung.service.KundeService;
-import de.shop.kundenverwaltung.service.KundeService.FetchType;
 import de.shop.util.Client;
 import de.shop.util.Log;
+import de.shop.util.Messages;
 import de.shop.util.Transactional;
 
 @Named("bc")
@@ -38,15 +39,14 @@ public class BestellungController implements Serializable {
 
 	private static final String JSF_VIEW_BESTELLUNG = "/bestellverwaltung/viewBestellung";
 	
+	private static final String MSG_KEY_BESTAND = "confirmBestellung.bestand";
+	
 	@Inject
 	private Warenkorb warenkorb;
 	
 	@Inject
 	private BestellungService bs;
 	
-	@Inject
-	private KundeService ks;
-	
 	@Inject
 	private AuthController auth;
 	
@@ -61,6 +61,9 @@ public class BestellungController implements Serializable {
 	@Inject
 	private Flash flash;
 	
+	@Inject
+	private Messages messages;
+	
 
 	@Transactional
 	public String bestellen() {
@@ -71,9 +74,6 @@ public class BestellungController implements Serializable {
 			return JSF_DEFAULT_ERROR;
 		}
 		
-		// Den eingeloggten Kunden mit seinen Bestellungen ermitteln, und dann die neue Bestellung zu ergaenzen
-		kunde = ks.findKundeById(kunde.getId(), FetchType.MIT_BESTELLUNGEN, locale);
-		
 		// Aus dem Warenkorb nur Positionen mit Anzahl > 0
 		final List<Bestellposition> positionen = warenkorb.getPositionen();
 		final List<Bestellposition> neuePositionen = new ArrayList<>(positionen.size());
@@ -83,25 +83,29 @@ public class BestellungController implements Serializable {
 			}
 		}
 		
-		// Warenkorb zuruecksetzen
-		warenkorb.endConversation();
-		
 		// Neue Bestellung mit neuen Bestellpositionen erstellen
 		Bestellung bestellung = new Bestellung();
 		bestellung.setBestellpositionen(neuePositionen);
 		LOGGER.tracef("Neue Bestellung: %s\nBestellpositionen: %s", bestellung, bestellung.getBestellpositionen());
 		
-		// Bestellung mit VORHANDENEM Kunden verknuepfen:
-		// dessen Bestellungen muessen geladen sein, weil es eine bidirektionale Beziehung ist
+		// Bestellung mit VORHANDENEM Kunden verknuepfen: nur ueber den Fremdschluessel, d.h. ohne dessen Bestellungen
 		try {
 			bestellung = bs.createBestellung(bestellung, kunde, locale);
 		}
+		catch (BestandException e) {
+			// Der Warenkorb bleibt erhalten, damit die Anzahl geaendert werden kann
+			messages.error(BESTELLVERWALTUNG, MSG_KEY_BESTAND, null, e.getArtikelId(), e.getVerfuegbar());
+			return null;
+		}
 		catch (AbstractBestellungValidationException e) {
 			// Validierungsfehler KOENNEN NICHT AUFTRETEN, da Attribute durch JSF validiert wurden
 			// und in der Klasse Bestellung keine Validierungs-Methoden vorhanden sind
 			throw new IllegalStateException(e);
 		}
 		
+		// Warenkorb zuruecksetzen
+		warenkorb.endConversation();
+		
 		// Bestellung im Flash speichern wegen anschliessendem Redirect
 		flash.put("bestellung", bestellung);
 		
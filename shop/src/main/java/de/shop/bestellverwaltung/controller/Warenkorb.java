@@ -17,7 +17,7 @@ import javax.inject.Named;
 import org.jboss.logging.Logger;
 
 import de.shop.artikelverwaltung.domain.Artikel;
-import de.shop.artikelverwaltung.service.ArtikelService;
+import de.shop.artikelverwaltung.service.ArtikelKatalog;
 import de.shop.bestellverwaltung.domain.Bestellposition;
 import de.shop.util.Log;
 
@@ -39,7 +39,7 @@ public class Warenkorb implements Serializable {
 	private transient Conversation conversation;
 	
 	@Inject
-	private ArtikelService as;
+	private ArtikelKatalog katalog;
 
 	@PostConstruct
 	private void postConstruct() {
@@ -88,9 +88,10 @@ public class Warenkorb implements Serializable {
 	}
 	
 	/**
+	 * Den in selectArtikel.xhtml ausgewaehlten Artikel aus dem Katalog der verfuegbaren Artikel hinzufuegen
 	 */
 	public String add() {
-		final Artikel artikel = as.findArtikelById(artikelId);
+		final Artikel artikel = katalog.findArtikelById(artikelId);
 		if (artikel == null) {
 			return null;
 		}
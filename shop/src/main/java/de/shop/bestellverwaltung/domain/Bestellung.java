@@ -75,10 +75,18 @@ import de.shop.kundenverwaltung.domain.Kunde;
  		    	query = "SELECT b.kunde"
                       + " FROM   Bestellung b"
                       + " WHERE  b.id = :" + Bestellung.PARAM_ID),
-    @NamedQuery(name  = Bestellung.FIND_BESTELLUNG_BY_ID_FETCH_LIEFERUNGEN,
-  				query = "SELECT DISTINCT b"
-  					 + " FROM   Bestellung b LEFT JOIN FETCH b.lieferungen"
-	   				 + " WHERE  b.id = :" + Bestellung.PARAM_ID)
+   	@NamedQuery(name  = Bestellung.FIND_IDS_BY_KUNDEID,
+				query = "SELECT b.id"
+			        + " FROM   Bestellung b"
+		            + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID),
+   	@NamedQuery(name  = Bestellung.COUNT_BESTELLUNGEN_BY_KUNDEID,
+				query = "SELECT COUNT(b)"
+			        + " FROM   Bestellung b"
+		            + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID),
+   	@NamedQuery(name  = Bestellung.FIND_EINGAENGE_UND_IDS,
+				query = "SELECT b.eingang, b.id"
+			        + " FROM   Bestellung b"
+		            + " WHERE  b.eingang IN :" + Bestellung.PARAM_EINGAENGE)
 })
 @Cacheable
 public class Bestellung implements Serializable {
@@ -88,14 +96,18 @@ public class Bestellung implements Serializable {
 	private static final String PREFIX = "Bestellung.";
 	public static final String FIND_BESTELLUNGEN_BY_KUNDEID = PREFIX + "findBestellungenByKundeId";
 	public static final String FIND_BESTELLUNGEN_BY_KUNDE = PREFIX + "findBestellungenByKunde";
-	public static final String FIND_BESTELLUNG_BY_ID_FETCH_LIEFERUNGEN =
-            				   PREFIX + "findBestellungenByIdFetchLieferungen";
 	public static final String FIND_BESTELLUNGEN_BY_KUNDEID_FETCH_LIEFERUNGEN =
             				   PREFIX + "findBestellungenByKundeIdFetchLieferungen";
 	public static final String FIND_KUNDE_BY_ID = PREFIX + "findBestellungKundeById";
+	public static final String FIND_IDS_BY_KUNDEID = PREFIX + "findIdsByKundeId";
+	public static final String COUNT_BESTELLUNGEN_BY_KUNDEID = PREFIX + "countBestellungenByKundeId";
+	public static final String FIND_EINGAENGE_UND_IDS = PREFIX + "findEingaengeUndIds";
 	
 	public static final String PARAM_KUNDEID = "kundeId";
 	public static final String PARAM_ID = "id";
+	public static final String PARAM_EINGAENGE = "eingaenge";
+	
+	public static final int EINGANG_LENGTH = 36;
 
 	
 	@Id
@@ -114,7 +126,7 @@ public class Bestellung implements Serializable {
 	private List<Bestellposition> bestellpositionen;
 
 	@ManyToOne(optional = false)
-	@JoinColumn(name = "kunde_fk", nullable = false, insertable = false, updatable = false)
+	@JoinColumn(name = "kunde_fk", nullable = false)
 	@NotNull(message = "{bestellverwaltung.bestellung.kunde.notNull}")
 	@JsonIgnore
 	private Kunde kunde;
@@ -134,6 +146,11 @@ public class Bestellung implements Serializable {
 
 	@Column
 	private String status;
+	
+	// ID des asynchronen Eingangs, damit die Bestellung nach einem Neustart nicht nochmals angelegt wird
+	@Column(length = EINGANG_LENGTH, unique = true, updatable = false)
+	@JsonIgnore
+	private String eingang;
 
 	@Column(nullable = false)
 	@Temporal(TIMESTAMP)
@@ -232,6 +249,14 @@ public class Bestellung implements Serializable {
 		this.kundeUri = kundeUri;
 	}
 	
+	public String getEingang() {
+		return eingang;
+	}
+	
+	public void setEingang(String eingang) {
+		this.eingang = eingang;
+	}
+	
 	public Set<Lieferung> getLieferungen() {
 		return lieferungen == null ? null : Collections.unmodifiableSet(lieferungen);
 	}
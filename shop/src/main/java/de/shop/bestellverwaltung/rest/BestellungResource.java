@@ -1,12 +1,14 @@
 package de.shop.bestellverwaltung.rest;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -14,12 +16,17 @@ import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
@@ -32,9 +39,15 @@ import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.domain.Lieferung;
 import de.shop.bestellverwaltung.service.BestellungService;
 import de.shop.bestellverwaltung.service.BestellungService.FetchType;
+import de.shop.bestellverwaltung.service.Eingang;
+import de.shop.bestellverwaltung.service.EingangService;
+import de.shop.bestellverwaltung.service.EingangStatus;
 import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.rest.KundeResource;
 import de.shop.kundenverwaltung.rest.UriHelperKunde;
 import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.util.EntityTags;
+import de.shop.util.FetchPlan;
 import de.shop.util.LocaleHelper;
 import de.shop.util.Log;
 import de.shop.util.NotFoundException;
@@ -50,12 +63,20 @@ import de.shop.util.Transactional;
 public class BestellungResource {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
 	
+	// Asynchrone Annahme einer Bestellung mit dem Header "Prefer: respond-async" gemaess RFC 7240
+	private static final String HEADER_PREFER = "Prefer";
+	private static final String HEADER_PREFERENCE_APPLIED = "Preference-Applied";
+	private static final String PREFER_RESPOND_ASYNC = "respond-async";
+	
 	@Context
 	private UriInfo uriInfo;
 	
     @Context
     private HttpHeaders headers;
 	
+	@Context
+	private Request request;
+	
 	@Inject
 	private BestellungService bs;
 	
@@ -65,6 +86,9 @@ public class BestellungResource {
 	@Inject
 	private ArtikelService as;
 	
+	@Inject
+	private EingangService eingangService;
+	
 	@Inject
 	private UriHelperBestellung uriHelperBestellung;
 	
@@ -85,35 +109,58 @@ public class BestellungResource {
 	}
 	
 	/**
-	 * Mit der URL /bestellungen/{id} eine Bestellung ermitteln
+	 * Mit der URL /bestellungen/{id} eine Bestellung ermitteln.
+	 * Mit ?expand=kunde,lieferungen werden Assoziationen mitgeladen und eingebettet,
+	 * mit ?fields=id,status werden nur die angegebenen Attribute gelesen.
 	 * @param id ID der Bestellung
-	 * @return Objekt mit Bestelldaten, falls die ID vorhanden ist
+	 * @param expand Durch Komma getrennte Pfade der mitzuladenden Assoziationen
+	 * @param fields Durch Komma getrennte Attribute
+	 * @return Response mit den Bestelldaten, falls die ID vorhanden ist, ohne "expand" und "fields" mit ETag
+	 *         bzw. mit 304 bei passendem If-None-Match
 	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}")
-	public Bestellung findBestellungById(@PathParam("id") Long id) {
+	public Response findBestellungById(@PathParam("id") Long id,
+	                                   @QueryParam(FetchPlan.QUERY_PARAM_EXPAND) String expand,
+	                                   @QueryParam(FetchPlan.QUERY_PARAM_FIELDS) String fields) {
 		final Locale locale = localeHelper.getLocale(headers);
-		final Bestellung bestellung = bs.findBestellungById(id, FetchType.NUR_BESTELLUNG, locale);
+		final FetchPlan plan = FetchPlan.parse(expand, fields, BestellungService.EXPAND_PFADE,
+		                                       BestellungService.FIELDS);
+		// TODO msg passend zu locale
+		final String msg = "Keine Bestellung gefunden mit der ID " + id;
+		if (plan.isProjektion()) {
+			final Map<String, Object> bestellung = bs.findBestellungFieldsById(id, plan, locale);
+			if (bestellung == null) {
+				throw new NotFoundException(msg);
+			}
+			return Response.ok(bestellung).build();
+		}
+
+		final Bestellung bestellung = bs.findBestellungById(id, plan, locale);
 		if (bestellung == null) {
-			// TODO msg passend zu locale
-			final String msg = "Keine Bestellung gefunden mit der ID " + id;
 			throw new NotFoundException(msg);
 		}
 
 		// URLs innerhalb der gefundenen Bestellung anpassen
 		uriHelperBestellung.updateUrlBestellung(bestellung, uriInfo);
+		if (plan.getExpand().isEmpty()) {
+			return EntityTags.ok(request, EntityTags.of(bestellung.getId(), bestellung.getVersion()), bestellung);
+		}
 
-		return bestellung;
+		if (plan.isExpanded(BestellungService.PFAD_KUNDE)) {
+			uriHelperKunde.updateUriKunde(bestellung.getKunde(), uriInfo);
+		}
+		return Response.ok(plan.toJson(bestellung)).build();
 	}
 	
 	/**
 	 * Mit der URL /bestellungen/{id}/kunde den Kunden einer Bestellung ermitteln
 	 * @param id ID der Bestellung
-	 * @return Objekt mit Kundendaten, falls die ID vorhanden ist
+	 * @return Response mit den Kundendaten und dem ETag des Kunden, falls die ID vorhanden ist
 	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}/kunde")
-	public Kunde findKundeByBestellungId(@PathParam("id") Long id) {
+	public Response findKundeByBestellungId(@PathParam("id") Long id) {
 		final Locale locale = localeHelper.getLocale(headers);
 		Kunde kunde = bs.findKundeById(id, locale);
 		if (kunde == null) {
@@ -127,18 +174,18 @@ public class BestellungResource {
 		// URLs innerhalb der gefundenen Bestellung anpassen
 		uriHelperKunde.updateUriKunde(kunde, uriInfo);
 		
-		return kunde;
+		return EntityTags.ok(request, KundeResource.toEntityTag(kunde), kunde);
 	}
 	
 	/**
 	 * Mit der URL /bestellungen/{id}/lieferungen die Lieferung ermitteln
 	 * zu einer bestimmten Bestellung ermitteln
 	 * @param id ID der Bestellung
-	 * @return Objekt mit Lieferdaten, falls die ID vorhanden ist
+	 * @return Response mit den Lieferdaten und dem ETag der Liste, falls die ID vorhanden ist
 	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}/lieferungen")
-	public Collection<Lieferung> findLieferungenByBestellungId(@PathParam("id") Long id) {
+	public Response findLieferungenByBestellungId(@PathParam("id") Long id) {
 		final Locale locale = localeHelper.getLocale(headers);
 		final Bestellung bestellung = bs.findBestellungById(id, FetchType.MIT_LIEFERUNGEN, locale);
 		if (bestellung == null) {
@@ -153,20 +200,50 @@ public class BestellungResource {
 		}
 		
 		uriHelperBestellung.updateUrlBestellung(bestellung, uriInfo);
-		return lieferungen;
+		final EntityTags.ListBuilder etag = EntityTags.list();
+		for (Lieferung lieferung : lieferungen) {
+			etag.add(lieferung.getId(), lieferung.getVersion());
+		}
+		return EntityTags.ok(request, etag.build(), new GenericEntity<Collection<Lieferung>>(lieferungen) { });
 	}
 
 
 
 	
 	/**
-	 * Mit der URL /bestellungen eine neue Bestellung anlegen
+	 * Mit der URL /bestellungen/eingaenge/{id} den Stand einer asynchron angenommenen Bestellung ermitteln
+	 * @param id ID des Eingangs aus der URI im Header "Location" von POST /bestellungen
+	 * @return 200 mit dem Status und nach dem Schreiben mit der URI der Bestellung oder 404
+	 */
+	@GET
+	@Path("eingaenge/{id}")
+	public Response findEingangStatus(@PathParam("id") String id) {
+		final EingangStatus status = eingangService.getStatus(id);
+		if (status == null) {
+			throw new NotFoundException("Keine Bestellung angenommen mit der ID " + id);
+		}
+		if (status.getBestellungId() != null) {
+			status.setBestellungUri(uriHelperBestellung.getUriBestellung(status.getBestellungId(), uriInfo));
+		}
+		
+		final CacheControl cacheControl = new CacheControl();
+		cacheControl.setNoStore(true);
+		return Response.ok(status)
+		               .cacheControl(cacheControl)
+		               .build();
+	}
+	
+	/**
+	 * Mit der URL /bestellungen eine neue Bestellung anlegen. Mit dem Header "Prefer: respond-async" wird die
+	 * Bestellung nur geprueft und angenommen; sie wird spaeter zusammen mit anderen Bestellungen geschrieben.
 	 * @param bestellung die neue Bestellung
-	 * @return Objekt mit Bestelldaten, falls die ID vorhanden ist
+	 * @param prefer Header "Prefer"
+	 * @return 201 mit der URI der Bestellung, asynchron 202 mit der URI fuer den Status oder 503 mit dem Header
+	 *         "Retry-After", falls bereits zu viele Bestellungen warten
 	 */
 	@POST
 	@Consumes(APPLICATION_JSON)
-	public Response createBestellung(Bestellung bestellung) {
+	public Response createBestellung(Bestellung bestellung, @HeaderParam(HEADER_PREFER) String prefer) {
 		// Schluessel des Kunden extrahieren
 		final String kundeUriStr = bestellung.getKundeUri().toString();
 		int startPos = kundeUriStr.lastIndexOf('/') + 1;
@@ -182,6 +259,7 @@ public class BestellungResource {
 		// persistente Artikel ermitteln
 		final Collection<Bestellposition> bestellpositionen = bestellung.getBestellpositionen();
 		final List<Long> artikelIds = new ArrayList<>(bestellpositionen.size());
+		final List<Bestellposition> positionenMitId = new ArrayList<>(bestellpositionen.size());
 		for (Bestellposition bp : bestellpositionen) {
 			final String artikelUriStr = bp.getArtikelUri().toString();
 			startPos = artikelUriStr.lastIndexOf('/') + 1;
@@ -196,6 +274,7 @@ public class BestellungResource {
 			}
 					
 			artikelIds.add(artikelId);
+			positionenMitId.add(bp);
 		}
 				
 		if (artikelIds.isEmpty()) {
@@ -210,38 +289,42 @@ public class BestellungResource {
 			throw new NotFoundException(sb.toString());
 		}
 				
-		final List<Artikel> gefundeneArtikel = as.findArtikelByIds(artikelIds);
+		final Map<Long, Artikel> gefundeneArtikel = as.findArtikelMapByIds(artikelIds);
 		if (gefundeneArtikel.isEmpty()) {
 			// TODO msg passend zu locale
 			throw new NotFoundException("Keine Artikel gefunden mit den IDs " + artikelIds);
 		}
 				
 		// Bestellpositionen haben URIs fuer persistente Artikel.
-		// Diese persistenten Artikel wurden in einem DB-Zugriff ermittelt (s.o.)
+		// Diese persistenten Artikel wurden gebuendelt ermittelt (s.o.)
 		// Fuer jede Bestellposition wird der Artikel passend zur Artikel-URL bzw. Artikel-ID gesetzt.
 		// Bestellpositionen mit nicht-gefundene Artikel werden eliminiert.
 		int i = 0;
 		final List<Bestellposition> neueBestellpositionen =
 			                        new ArrayList<>(bestellpositionen.size());
-		for (Bestellposition bp : bestellpositionen) {
+		for (Bestellposition bp : positionenMitId) {
 			// Artikel-ID der aktuellen Bestellposition (s.o.):
-			// artikelIds haben gleiche Reihenfolge wie bestellpositionen
-			final long artikelId = artikelIds.get(i++);
+			// artikelIds haben gleiche Reihenfolge wie positionenMitId
+			final Long artikelId = artikelIds.get(i++);
 			
 			// Wurde der Artikel beim DB-Zugriff gefunden?
-			for (Artikel artikel : gefundeneArtikel) {
-				if (artikel.getId().longValue() == artikelId) {
-					// Der Artikel wurde gefunden
-					bp.setArtikel(artikel);
-					neueBestellpositionen.add(bp);
-					break;					
-				}
+			final Artikel artikel = gefundeneArtikel.get(artikelId);
+			if (artikel != null) {
+				bp.setArtikel(artikel);
+				neueBestellpositionen.add(bp);
 			}
 		}
 		bestellung.setBestellpositionen(neueBestellpositionen);
 				
-		// Kunde mit den vorhandenen ("alten") Bestellungen ermitteln
 		final Locale locale = localeHelper.getLocale(headers);
+		if (prefer != null && prefer.contains(PREFER_RESPOND_ASYNC)) {
+			final Eingang eingang = eingangService.annehmen(bestellung, kundeId, locale);
+			return Response.status(ACCEPTED)
+			               .location(uriHelperBestellung.getUriEingang(eingang.getId(), uriInfo))
+			               .header(HEADER_PREFERENCE_APPLIED, PREFER_RESPOND_ASYNC)
+			               .build();
+		}
+		
 		bestellung = bs.createBestellung(bestellung, kundeId, locale);
 		final URI bestellungUri = uriHelperBestellung.getUriBestellung(bestellung, uriInfo);
 		LOGGER.trace(bestellungUri);
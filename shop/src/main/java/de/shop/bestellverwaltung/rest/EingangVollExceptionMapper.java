@@ -0,0 +1,32 @@
+package de.shop.bestellverwaltung.rest;
+
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+import de.shop.bestellverwaltung.service.EingangVollException;
+import de.shop.util.Log;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class EingangVollExceptionMapper implements ExceptionMapper<EingangVollException> {
+	private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+	@Override
+	public Response toResponse(EingangVollException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(SERVICE_UNAVAILABLE)
+		                                  .header(HEADER_RETRY_AFTER, e.getRetryAfter())
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
@@ -56,10 +56,22 @@ public class UriHelperBestellung {
 	}
 
 	public URI getUriBestellung(Bestellung bestellung, UriInfo uriInfo) {
+		return getUriBestellung(bestellung.getId(), uriInfo);
+	}
+	
+	public URI getUriBestellung(Long id, UriInfo uriInfo) {
 		final URI uri = uriInfo.getBaseUriBuilder()
 		                       .path(BestellungResource.class)
 		                       .path(BestellungResource.class, "findBestellungById")
-		                       .build(bestellung.getId());
+		                       .build(id);
+		return uri;
+	}
+	
+	public URI getUriEingang(String id, UriInfo uriInfo) {
+		final URI uri = uriInfo.getBaseUriBuilder()
+		                       .path(BestellungResource.class)
+		                       .path(BestellungResource.class, "findEingangStatus")
+		                       .build(id);
 		return uri;
 	}
 }
@@ -2,18 +2,52 @@ package de.shop.bestellverwaltung.service;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.domain.Lieferung;
 import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.util.FetchPlan;
 
 public interface BestellungService {
+	// Pfade und Attribute fuer Fetch-Plaene, z.B. ?expand=lieferungen oder ?fields=id,status
+	String PFAD_KUNDE = "kunde";
+	String PFAD_LIEFERUNGEN = "lieferungen";
+	Set<String> EXPAND_PFADE = ImmutableSet.of(PFAD_KUNDE, "bestellpositionen", "bestellpositionen.artikel",
+	                                           PFAD_LIEFERUNGEN);
+	Set<String> FIELDS = ImmutableSet.of("id", "version", "status", "kunde.id", "kunde.nachname");
+
+	// Eager geladene Assoziationen: per Fetch-Join statt mit je einer Abfrage pro Bestellung bzw. Position.
+	// Nur eine Collection pro Abfrage, sonst liefert die Abfrage das kartesische Produkt der Collections:
+	// die Rollen des Kunden laedt Hibernate per Subselect, die Lieferungen eine zweite Abfrage.
+	List<String> BASIS_PFADE = ImmutableList.of("bestellpositionen", "bestellpositionen.artikel",
+	                                            "kunde", "kunde.adresse");
+
+	/**
+	 * Benannte Fetch-Plaene
+	 */
 	public enum FetchType {
-		NUR_BESTELLUNG,
-		MIT_LIEFERUNGEN
+		NUR_BESTELLUNG(),
+		MIT_LIEFERUNGEN(PFAD_LIEFERUNGEN);
+
+		private final FetchPlan plan;
+
+		private FetchType(String... pfade) {
+			plan = FetchPlan.of(pfade);
+		}
+
+		public FetchPlan getPlan() {
+			return plan;
+		}
 	}
 
 	Bestellung findBestellungById(Long id, FetchType fetch, Locale locale);
+	Bestellung findBestellungById(Long id, FetchPlan plan, Locale locale);
+	Map<String, Object> findBestellungFieldsById(Long id, FetchPlan plan, Locale locale);
 	List<Bestellung> findBestellungenByKunde(Kunde kunde);
 	Kunde findKundeById(Long id, Locale locale);
 	List<Bestellung> findBestellungenMitLieferungenByKunde(Kunde kunde);
@@ -3,9 +3,13 @@ package de.shop.bestellverwaltung.service;
 import static de.shop.util.Constants.KEINE_ID;
 import java.io.Serializable;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -20,18 +24,23 @@ import javax.validation.groups.Default;
 
 import org.jboss.logging.Logger;
 
+import de.shop.artikelverwaltung.service.BestandService;
 import de.shop.bestellverwaltung.domain.Bestellposition;
 import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.domain.Lieferung;
 import de.shop.kundenverwaltung.domain.Kunde;
 import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.util.FetchPlan;
 import de.shop.util.Log;
+import de.shop.util.NotFoundException;
 import de.shop.util.ValidatorProvider;
 
 @Log
 public class BestellungServiceImpl implements Serializable, BestellungService {
 	private static final long serialVersionUID = -9145947650157430928L;
 	
+	private static final String ALIAS = "b";
+	
 	@PersistenceContext
 	private transient EntityManager em;
 	
@@ -44,6 +53,9 @@ public class BestellungServiceImpl implements Serializable, BestellungService {
 	@Inject
 	private ValidatorProvider validatorProvider;
 	
+	@Inject
+	private BestandService bestandService;
+	
 	@Inject
 	@NeueBestellung
 	private transient Event<Bestellung> event;
@@ -62,21 +74,55 @@ public class BestellungServiceImpl implements Serializable, BestellungService {
 	 */
 	@Override
 	public Bestellung findBestellungById(Long id, FetchType fetch, Locale locale) {
-		Bestellung bestellung = null;
-		if (fetch == null || FetchType.NUR_BESTELLUNG.equals(fetch)) {
-			bestellung = em.find(Bestellung.class, id);
+		return findBestellungById(id, fetch == null ? FetchPlan.LEER : fetch.getPlan(), locale);
+	}
+	
+	/**
+	 * Eine Bestellung laden: die eager geladenen Assoziationen und die Pfade des Fetch-Plans werden per
+	 * Fetch-Join gelesen. Die Lieferungen liest eine zweite Abfrage, damit die Zeilen der Bestellpositionen
+	 * nicht fuer jede Lieferung wiederholt werden.
+	 */
+	@Override
+	public Bestellung findBestellungById(Long id, FetchPlan plan, Locale locale) {
+		if (plan.getExpand().isEmpty()) {
+			return em.find(Bestellung.class, id);
 		}
-		else if (FetchType.MIT_LIEFERUNGEN.equals(fetch)) {
-			try {
-			bestellung = em.createNamedQuery(Bestellung.FIND_BESTELLUNG_BY_ID_FETCH_LIEFERUNGEN, Bestellung.class)
-					       .setParameter(Bestellung.PARAM_ID, id)
-					       .getSingleResult();
-			}
-			catch (NoResultException e) {
-				return null;
-			}
+		
+		final SortedSet<String> pfade = new TreeSet<>(BASIS_PFADE);
+		pfade.addAll(plan.getExpand());
+		pfade.remove(PFAD_LIEFERUNGEN);
+		final List<Bestellung> bestellungen = em.createQuery("SELECT DISTINCT b FROM Bestellung b"
+		                                                     + FetchPlan.createFetchJoins(ALIAS, pfade)
+		                                                     + " WHERE b.id = :" + Bestellung.PARAM_ID,
+		                                                     Bestellung.class)
+		                                        .setParameter(Bestellung.PARAM_ID, id)
+		                                        .getResultList();
+		if (bestellungen.isEmpty()) {
+			return null;
 		}
-		return bestellung;
+		
+		if (plan.isExpanded(PFAD_LIEFERUNGEN)) {
+			// Initialisiert die Lieferungen der Bestellung im Persistenzkontext
+			em.createQuery("SELECT DISTINCT b FROM Bestellung b"
+			               + FetchPlan.createFetchJoins(ALIAS, Collections.singletonList(PFAD_LIEFERUNGEN))
+			               + " WHERE b.id = :" + Bestellung.PARAM_ID, Bestellung.class)
+			  .setParameter(Bestellung.PARAM_ID, id)
+			  .getResultList();
+		}
+		return bestellungen.get(0);
+	}
+	
+	/**
+	 * Attribute einer Bestellung als Projektion lesen, d.h. ohne Entity und ohne Assoziationen
+	 */
+	@Override
+	public Map<String, Object> findBestellungFieldsById(Long id, FetchPlan plan, Locale locale) {
+		final List<?> rows = em.createQuery(plan.createSelect(ALIAS) + " FROM Bestellung b WHERE b.id = :"
+		                                    + Bestellung.PARAM_ID)
+		                       .setParameter(Bestellung.PARAM_ID, id)
+		                       .getResultList();
+		final List<Map<String, Object>> maps = plan.toMaps(rows);
+		return maps.isEmpty() ? null : maps.get(0);
 	}
 	
 	@Override
@@ -123,26 +169,31 @@ public class BestellungServiceImpl implements Serializable, BestellungService {
 			return null;
 		}
 
-		// Den persistenten Kunden mit der transienten Bestellung verknuepfen
-		final Kunde kunde = ks.findKundeById(kundeId, KundeService.FetchType.MIT_BESTELLUNGEN, locale);
-		return createBestellung(bestellung, kunde, locale);
+		if (!ks.existsKundeById(kundeId, locale)) {
+			throw new NotFoundException("Kein Kunde gefunden mit der ID " + kundeId);
+		}
+		return createBestellung(bestellung, em.getReference(Kunde.class, kundeId), locale);
 	}
 
 
 	/**
+	 * Die Bestellung wird nur ueber den Fremdschluessel mit dem Kunden verknuepft: weder der Kunde noch seine
+	 * bisherigen Bestellungen werden geladen oder geaendert. Der Aufwand ist deshalb unabhaengig von der Anzahl
+	 * der bisherigen Bestellungen, und gleichzeitige Bestellungen desselben Kunden scheitern nicht an dessen
+	 * Versionsnummer.
 	 */
 	@Override
 	public Bestellung createBestellung(Bestellung bestellung, Kunde kunde, Locale locale) {
 		if (bestellung == null) {
 			return null;
 		}
+		
+		// Zuerst den Bestand reservieren, damit bei zu geringem Bestand noch nichts veraendert ist.
+		// Bei einem Rollback der Transaktion wird die Reservierung wieder freigegeben.
+		bestandService.reservieren(getMengen(bestellung));
 
-		// Den persistenten Kunden mit der transienten Bestellung verknuepfen
-		if (!em.contains(kunde)) {
-			kunde = ks.findKundeById(kunde.getId(), KundeService.FetchType.MIT_BESTELLUNGEN, locale);
-		}
-		bestellung.setKunde(kunde);
-		kunde.addBestellung(bestellung);
+		// Die transiente Bestellung mit einer Referenz auf den Kunden verknuepfen
+		bestellung.setKunde(em.contains(kunde) ? kunde : em.getReference(Kunde.class, kunde.getId()));
 		
 		// Vor dem Abspeichern IDs zuruecksetzen:
 		// IDs koennten einen Wert != null haben, wenn sie durch einen Web Service uebertragen wurden
@@ -158,6 +209,22 @@ public class BestellungServiceImpl implements Serializable, BestellungService {
 		return bestellung;
 	}
 	
+	/**
+	 * Bestellte Menge je Artikel, falls ein Artikel in mehreren Positionen vorkommt
+	 */
+	private static Map<Long, Integer> getMengen(Bestellung bestellung) {
+		final Map<Long, Integer> mengen = new HashMap<>();
+		for (Bestellposition bp : bestellung.getBestellpositionen()) {
+			if (bp.getArtikel() == null) {
+				continue;
+			}
+			final Long artikelId = bp.getArtikel().getId();
+			final Integer menge = mengen.get(artikelId);
+			mengen.put(artikelId, menge == null ? bp.getAnzahl() : menge + bp.getAnzahl());
+		}
+		return mengen;
+	}
+	
 	private void validateBestellung(Bestellung bestellung, Locale locale, Class<?> groups) {
 		final Validator validator = validatorProvider.getValidator(locale);
 		final Set<ConstraintViolation<Bestellung>> violations =
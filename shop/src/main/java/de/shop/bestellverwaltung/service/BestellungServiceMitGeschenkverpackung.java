@@ -3,6 +3,7 @@ package de.shop.bestellverwaltung.service;
 import java.lang.invoke.MethodHandles;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.decorator.Decorator;
 import javax.decorator.Delegate;
@@ -14,6 +15,7 @@ import org.jboss.logging.Logger;
 import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.domain.Lieferung;
 import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.util.FetchPlan;
 import de.shop.util.Log;
 
 @Decorator
@@ -31,6 +33,16 @@ public abstract class BestellungServiceMitGeschenkverpackung implements Bestellu
 		return bs.findBestellungById(id, fetch, locale);
 	}
 
+	@Override
+	public Bestellung findBestellungById(Long id, FetchPlan plan, Locale locale) {
+		return bs.findBestellungById(id, plan, locale);
+	}
+
+	@Override
+	public Map<String, Object> findBestellungFieldsById(Long id, FetchPlan plan, Locale locale) {
+		return bs.findBestellungFieldsById(id, plan, locale);
+	}
+
 	@Override
 	public List<Bestellung> findBestellungenByKunde(Kunde kunde) {
 		return bs.findBestellungenByKunde(kunde);
@@ -0,0 +1,106 @@
+package de.shop.bestellverwaltung.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+/**
+ * Eine asynchron angenommene Bestellung, die noch in die Datenbank geschrieben werden muss. Sie enthaelt nur
+ * die IDs des Kunden und der Artikel sowie die Anzahlen und wird als eine Zeile im Journal gespeichert, z.B.
+ * "4f1c...;102;de;300:1,301:2".
+ */
+public class Eingang {
+	private static final char TRENNER = ';';
+	private static final char POSITIONEN_TRENNER = ',';
+	private static final char ANZAHL_TRENNER = ':';
+	private static final int ANZAHL_FELDER = 4;
+
+	private final String id;
+	private final Long kundeId;
+	private final Locale locale;
+	private final List<Long> artikelIds;
+	private final List<Short> anzahlen;
+
+	Eingang(String id, Long kundeId, Locale locale, List<Long> artikelIds, List<Short> anzahlen) {
+		this.id = id;
+		this.kundeId = kundeId;
+		this.locale = locale;
+		this.artikelIds = Collections.unmodifiableList(new ArrayList<>(artikelIds));
+		this.anzahlen = Collections.unmodifiableList(new ArrayList<>(anzahlen));
+	}
+
+	/**
+	 * @param zeile Zeile aus dem Journal
+	 * @return Der Eingang oder null, falls die Zeile unvollstaendig ist, z.B. nach einem Absturz beim Schreiben
+	 */
+	static Eingang valueOf(String zeile) {
+		final List<String> felder = Lists.newArrayList(Splitter.on(TRENNER).split(zeile));
+		if (felder.size() != ANZAHL_FELDER) {
+			return null;
+		}
+
+		final List<Long> artikelIds = new ArrayList<>();
+		final List<Short> anzahlen = new ArrayList<>();
+		try {
+			final Long kundeId = Long.valueOf(felder.get(1));
+			final Locale locale = Locale.forLanguageTag(felder.get(2));
+			for (String position : Splitter.on(POSITIONEN_TRENNER).omitEmptyStrings().split(felder.get(3))) {
+				final int pos = position.indexOf(ANZAHL_TRENNER);
+				if (pos < 0) {
+					return null;
+				}
+				artikelIds.add(Long.valueOf(position.substring(0, pos)));
+				anzahlen.add(Short.valueOf(position.substring(pos + 1)));
+			}
+			return artikelIds.isEmpty() ? null : new Eingang(felder.get(0), kundeId, locale, artikelIds, anzahlen);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return Zeile fuer das Journal ohne Zeilenumbruch
+	 */
+	String toZeile() {
+		final StringBuilder sb = new StringBuilder(id).append(TRENNER)
+		                                              .append(kundeId).append(TRENNER)
+		                                              .append(locale.toLanguageTag()).append(TRENNER);
+		for (int i = 0; i < artikelIds.size(); i++) {
+			if (i > 0) {
+				sb.append(POSITIONEN_TRENNER);
+			}
+			sb.append(artikelIds.get(i)).append(ANZAHL_TRENNER).append(anzahlen.get(i));
+		}
+		return sb.toString();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Long getKundeId() {
+		return kundeId;
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public List<Long> getArtikelIds() {
+		return artikelIds;
+	}
+
+	public List<Short> getAnzahlen() {
+		return anzahlen;
+	}
+
+	@Override
+	public String toString() {
+		return "Eingang [" + toZeile() + "]";
+	}
+}
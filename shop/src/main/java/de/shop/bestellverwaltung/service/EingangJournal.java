@@ -0,0 +1,197 @@
+package de.shop.bestellverwaltung.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Journal der asynchron angenommenen Bestellungen im Dateisystem. Jede Zeile wird nur angehaengt: "A;..." fuer
+ * eine angenommene Bestellung, "E;id;bestellungId" fuer eine geschriebene und "F;id" fuer eine fehlgeschlagene.
+ * Eine angenommene Bestellung wird mit force() auf die Platte geschrieben, bevor der Client die Antwort erhaelt.
+ * Dabei wird unter der Sperre nur angehaengt; force() ruft ausserhalb der Sperre jeweils nur ein Thread auf und
+ * sichert damit alle bis dahin angehaengten Bestellungen (Group Commit). Die Abschluesse werden ohne force()
+ * geschrieben: geht einer bei einem Absturz verloren, wird die Bestellung beim Start anhand der Spalte
+ * "eingang" in der DB erkannt. Die Methoden sind synchronisiert; wer mehrere Aufrufe atomar ausfuehren will,
+ * synchronisiert ebenfalls auf dem Journal.
+ */
+class EingangJournal implements Closeable {
+	private static final String DATEI = "bestellungen.journal";
+	private static final String DATEI_NEU = "bestellungen.journal.neu";
+	private static final char ANGENOMMEN = 'A';
+	private static final char ERLEDIGT = 'E';
+	private static final char FEHLGESCHLAGEN = 'F';
+	private static final char TRENNER = ';';
+	private static final char ZEILENENDE = '\n';
+	private static final int PREFIX_LAENGE = 2;
+
+	private final Path verzeichnis;
+	private final Path datei;
+	private FileChannel channel;
+
+	// Group Commit: laufende Nummer der zuletzt angehaengten und der zuletzt gesicherten Bestellung
+	private long angehaengt;
+	private long gesichert;
+	private boolean sichert;
+
+	EingangJournal(Path verzeichnis) throws IOException {
+		this.verzeichnis = verzeichnis;
+		datei = verzeichnis.resolve(DATEI);
+		Files.createDirectories(verzeichnis);
+	}
+
+	/**
+	 * @return Die angenommenen, aber noch nicht abgeschlossenen Bestellungen in der Reihenfolge der Annahme
+	 */
+	synchronized Map<String, Eingang> lesen() throws IOException {
+		final Map<String, Eingang> offen = new LinkedHashMap<>();
+		if (!Files.exists(datei)) {
+			return offen;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(datei, UTF_8)) {
+			for (String zeile = reader.readLine(); zeile != null; zeile = reader.readLine()) {
+				if (zeile.length() <= PREFIX_LAENGE || zeile.charAt(1) != TRENNER) {
+					continue;
+				}
+				final String rest = zeile.substring(PREFIX_LAENGE);
+				switch (zeile.charAt(0)) {
+					case ANGENOMMEN:
+						final Eingang eingang = Eingang.valueOf(rest);
+						if (eingang != null) {
+							offen.put(eingang.getId(), eingang);
+						}
+						break;
+
+					case ERLEDIGT:
+					case FEHLGESCHLAGEN:
+						final int pos = rest.indexOf(TRENNER);
+						offen.remove(pos < 0 ? rest : rest.substring(0, pos));
+						break;
+
+					default:
+						break;
+				}
+			}
+		}
+		return offen;
+	}
+
+	/**
+	 * Das Journal mit nur den offenen Bestellungen neu schreiben und danach zum Anhaengen oeffnen. Die neue
+	 * Datei ersetzt die bisherige atomar.
+	 */
+	synchronized void verdichten(Collection<Eingang> offen) throws IOException {
+		close();
+		final Path neu = verzeichnis.resolve(DATEI_NEU);
+		try (FileChannel ch = FileChannel.open(neu, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			for (Eingang eingang : offen) {
+				schreiben(ch, ANGENOMMEN + String.valueOf(TRENNER) + eingang.toZeile());
+			}
+			ch.force(true);
+		}
+		Files.move(neu, datei, ATOMIC_MOVE, REPLACE_EXISTING);
+		channel = FileChannel.open(datei, CREATE, WRITE, APPEND);
+	}
+
+	/**
+	 * Eine angenommene Bestellung anhaengen. Dauerhaft gespeichert ist sie erst nach sichern().
+	 * @return Laufende Nummer fuer sichern()
+	 */
+	synchronized long angenommen(Eingang eingang) throws IOException {
+		schreiben(channel, ANGENOMMEN + String.valueOf(TRENNER) + eingang.toZeile());
+		return ++angehaengt;
+	}
+
+	/**
+	 * Warten, bis die Bestellung mit der laufenden Nummer auf der Platte ist. Laeuft bereits ein force(), wird
+	 * darauf gewartet; sonst ruft dieser Thread force() fuer alle bisher angehaengten Bestellungen auf und weckt
+	 * danach alle wartenden Threads. Der Aufrufer darf nicht auf dem Journal synchronisiert sein.
+	 * @param nummer Laufende Nummer von angenommen()
+	 */
+	void sichern(long nummer) throws IOException {
+		final long bis;
+		final FileChannel ch;
+		synchronized (this) {
+			while (sichert && gesichert < nummer) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Unterbrochen beim Warten auf force()");
+				}
+			}
+			if (gesichert >= nummer) {
+				return;
+			}
+			sichert = true;
+			bis = angehaengt;
+			ch = channel;
+		}
+
+		boolean ok = false;
+		try {
+			ch.force(false);
+			ok = true;
+		}
+		finally {
+			synchronized (this) {
+				if (ok) {
+					gesichert = Math.max(gesichert, bis);
+				}
+				// Bei einem Fehler versucht es der naechste wartende Thread selbst
+				sichert = false;
+				notifyAll();
+			}
+		}
+	}
+
+	synchronized void erledigt(String id, Long bestellungId) throws IOException {
+		schreiben(channel, ERLEDIGT + String.valueOf(TRENNER) + id + TRENNER + bestellungId);
+	}
+
+	synchronized void fehlgeschlagen(String id) throws IOException {
+		schreiben(channel, FEHLGESCHLAGEN + String.valueOf(TRENNER) + id);
+	}
+
+	/**
+	 * Das Journal leeren, falls es zu gross ist. Der Aufrufer stellt sicher, dass keine Bestellung offen ist.
+	 */
+	synchronized void leeren(long groesseMax) throws IOException {
+		if (channel.size() > groesseMax) {
+			channel.truncate(0);
+			channel.force(true);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private static void schreiben(FileChannel ch, String zeile) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap((zeile + ZEILENENDE).getBytes(UTF_8));
+		while (buffer.hasRemaining()) {
+			ch.write(buffer);
+		}
+	}
+}
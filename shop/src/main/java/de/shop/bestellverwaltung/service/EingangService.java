@@ -0,0 +1,405 @@
+package de.shop.bestellverwaltung.service;
+
+import static de.shop.bestellverwaltung.service.EingangStatus.Status.ERLEDIGT;
+import static de.shop.bestellverwaltung.service.EingangStatus.Status.FEHLGESCHLAGEN;
+import static de.shop.bestellverwaltung.service.EingangStatus.Status.WARTEND;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.transaction.Status.STATUS_NO_TRANSACTION;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.UserTransaction;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.groups.Default;
+
+import org.jboss.logging.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.service.ArtikelService;
+import de.shop.artikelverwaltung.service.BestandException;
+import de.shop.artikelverwaltung.service.BestandService;
+import de.shop.bestellverwaltung.domain.Bestellposition;
+import de.shop.bestellverwaltung.domain.Bestellung;
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.util.AbstractShopException;
+import de.shop.util.Config;
+import de.shop.util.InternalError;
+import de.shop.util.Log;
+import de.shop.util.NotFoundException;
+import de.shop.util.ValidatorProvider;
+
+/**
+ * Asynchrone Annahme von Bestellungen, z.B. bei einem Flash Sale: eine Bestellung wird synchron geprueft, im
+ * Journal gespeichert und in eine Warteschlange eingereiht. Alle INTERVALL_MS Millisekunden schreibt ein Timer
+ * die wartenden Bestellungen in Transaktionen mit jeweils bis zu BATCH_GROESSE Bestellungen (Group Commit).
+ * Scheitert eine solche Transaktion, z.B. weil der Bestand eines Artikels inzwischen nicht mehr reicht, wird
+ * jede Bestellung des Batches in einer eigenen Transaktion geschrieben, damit nur die fehlerhafte scheitert.
+ * Warten bereits KAPAZITAET Bestellungen, wird eine neue Bestellung abgelehnt. Beim Start werden die offenen
+ * Bestellungen aus dem Journal wieder eingereiht, sofern sie nicht schon in der DB sind.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+@Log
+public class EingangService {
+	private static final int KAPAZITAET = 10000;
+	private static final int BATCH_GROESSE = 100;
+	private static final long INTERVALL_MS = 50;
+	private static final int RETRY_AFTER_SEKUNDEN = 1;
+	private static final long JOURNAL_GROESSE_MAX = 16 * 1024 * 1024;
+	private static final int ABGESCHLOSSEN_MAX = 100000;
+	private static final int ABGESCHLOSSEN_STUNDEN = 1;
+	private static final int IN_CHUNK_SIZE = 500;
+	private static final String FEHLER_UNERWARTET = "Unerwarteter Fehler beim Schreiben der Bestellung";
+
+	// Relative Pfade beziehen sich auf standalone/data von JBoss
+	private static final String DATA_DIR = "jboss.server.data.dir";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Resource
+	private UserTransaction trans;
+
+	@Resource
+	private TimerService timerService;
+
+	@Inject
+	private Logger logger;
+
+	@Inject
+	private Config config;
+
+	@Inject
+	private BestellungService bs;
+
+	@Inject
+	private KundeService ks;
+
+	@Inject
+	private ArtikelService as;
+
+	@Inject
+	private BestandService bestandService;
+
+	@Inject
+	private ValidatorProvider validatorProvider;
+
+	private final BlockingQueue<Eingang> warteschlange = new LinkedBlockingQueue<>();
+	private final ConcurrentMap<String, Eingang> wartend = new ConcurrentHashMap<>();
+	private final Warteplaetze warteplaetze = new Warteplaetze(KAPAZITAET, RETRY_AFTER_SEKUNDEN);
+	private final AtomicBoolean schreibt = new AtomicBoolean();
+
+	// Abgeschlossene Eingaenge fuer die Abfrage des Status; erledigte werden notfalls in der DB gesucht
+	private final Cache<String, EingangStatus> abgeschlossen = CacheBuilder.newBuilder()
+	                                                                       .maximumSize(ABGESCHLOSSEN_MAX)
+	                                                                       .expireAfterWrite(ABGESCHLOSSEN_STUNDEN,
+	                                                                                         HOURS)
+	                                                                       .build();
+
+	private EingangJournal journal;
+
+	@PostConstruct
+	private void postConstruct() {
+		final Path pfad = Paths.get(config.getEingangJournal());
+		final String dataDir = System.getProperty(DATA_DIR);
+		final Path verzeichnis = pfad.isAbsolute() || dataDir == null ? pfad : Paths.get(dataDir).resolve(pfad);
+
+		final Map<String, Eingang> offen;
+		try {
+			journal = new EingangJournal(verzeichnis);
+			offen = journal.lesen();
+			// Geschrieben, aber der Abschluss war beim Absturz noch nicht im Journal
+			offen.keySet().removeAll(findBestellungIds(offen.keySet()).keySet());
+			journal.verdichten(offen.values());
+		}
+		catch (IOException e) {
+			throw new InternalError(e);
+		}
+
+		for (Eingang eingang : offen.values()) {
+			wartend.put(eingang.getId(), eingang);
+			warteschlange.add(eingang);
+		}
+		warteplaetze.setBelegt(offen.size());
+		timerService.createIntervalTimer(INTERVALL_MS, INTERVALL_MS, new TimerConfig(null, false));
+		logger.infof("Journal fuer Bestellungen in %s mit %d offenen Bestellungen", verzeichnis, offen.size());
+	}
+
+	@PreDestroy
+	private void preDestroy() {
+		try {
+			journal.close();
+		}
+		catch (IOException e) {
+			logger.warnf("Journal fuer Bestellungen nicht geschlossen: %s", e.getMessage());
+		}
+	}
+
+	/**
+	 * Eine Bestellung pruefen und zum asynchronen Schreiben annehmen
+	 * @param bestellung Bestellung mit den persistenten Artikeln in den Bestellpositionen
+	 * @param kundeId ID des Kunden
+	 * @return Der Eingang, dessen ID fuer die Abfrage des Status verwendet wird
+	 * @throws EingangVollException Falls bereits zu viele Bestellungen warten
+	 */
+	public Eingang annehmen(Bestellung bestellung, Long kundeId, Locale locale) {
+		if (!ks.existsKundeById(kundeId, locale)) {
+			throw new NotFoundException("Kein Kunde gefunden mit der ID " + kundeId);
+		}
+		bestellung.setKunde(em.getReference(Kunde.class, kundeId));
+		final Set<ConstraintViolation<Bestellung>> violations =
+		                                           validatorProvider.getValidator(locale)
+		                                                            .validate(bestellung, Default.class);
+		if (!violations.isEmpty()) {
+			throw new InvalidBestellungException(bestellung, violations);
+		}
+
+		// Der Bestand wird nur geprueft und erst beim Schreiben reserviert
+		final List<Long> artikelIds = new ArrayList<>();
+		final List<Short> anzahlen = new ArrayList<>();
+		final Map<Long, Integer> mengen = new HashMap<>();
+		for (Bestellposition bp : bestellung.getBestellpositionen()) {
+			final Long artikelId = bp.getArtikel().getId();
+			artikelIds.add(artikelId);
+			anzahlen.add(bp.getAnzahl());
+			final Integer menge = mengen.get(artikelId);
+			mengen.put(artikelId, menge == null ? bp.getAnzahl() : menge + bp.getAnzahl());
+		}
+		for (Map.Entry<Long, Integer> entry : mengen.entrySet()) {
+			final int bestand = bestandService.getBestand(entry.getKey());
+			if (bestand < entry.getValue()) {
+				throw new BestandException(entry.getKey(), bestand, entry.getValue());
+			}
+		}
+
+		warteplaetze.belegen();
+
+		final Eingang eingang = new Eingang(UUID.randomUUID().toString(), kundeId, locale, artikelIds, anzahlen);
+		try {
+			final long nummer;
+			synchronized (journal) {
+				nummer = journal.angenommen(eingang);
+				wartend.put(eingang.getId(), eingang);
+			}
+			// Ausserhalb der Sperre, damit ein force() die Bestellungen aller wartenden Threads sichert
+			journal.sichern(nummer);
+		}
+		catch (IOException e) {
+			// Falls die Zeile trotzdem auf der Platte ist, wird die Bestellung beim Start nicht geschrieben
+			abschliessen(new EingangStatus(eingang.getId(), FEHLGESCHLAGEN, null, e.getMessage()));
+			throw new InternalError(e);
+		}
+		warteschlange.add(eingang);
+		return eingang;
+	}
+
+	/**
+	 * @param id ID des Eingangs
+	 * @return Status des Eingangs oder null, falls er unbekannt ist
+	 */
+	public EingangStatus getStatus(String id) {
+		if (wartend.containsKey(id)) {
+			return new EingangStatus(id, WARTEND, null, null);
+		}
+		final EingangStatus status = abgeschlossen.getIfPresent(id);
+		if (status != null) {
+			return status;
+		}
+
+		// z.B. nach einem Neustart
+		if (id.length() > Bestellung.EINGANG_LENGTH) {
+			return null;
+		}
+		final Long bestellungId = findBestellungIds(Collections.singletonList(id)).get(id);
+		return bestellungId == null ? null : new EingangStatus(id, ERLEDIGT, bestellungId, null);
+	}
+
+	/**
+	 * Die wartenden Bestellungen in Batches schreiben. Laeuft das Schreiben noch vom vorherigen Intervall, wird
+	 * dieser Aufruf ausgelassen.
+	 */
+	@Timeout
+	public void timeout() {
+		if (!schreibt.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final List<Eingang> batch = new ArrayList<>(BATCH_GROESSE);
+			while (warteschlange.drainTo(batch, BATCH_GROESSE) > 0) {
+				schreiben(batch);
+				batch.clear();
+			}
+
+			synchronized (journal) {
+				if (wartend.isEmpty()) {
+					journal.leeren(JOURNAL_GROESSE_MAX);
+				}
+			}
+		}
+		catch (IOException e) {
+			logger.warnf("Journal fuer Bestellungen nicht geleert: %s", e.getMessage());
+		}
+		finally {
+			schreibt.set(false);
+		}
+	}
+
+	private void schreiben(List<Eingang> eingaenge) {
+		final List<Bestellung> bestellungen = new ArrayList<>(eingaenge.size());
+		boolean geschrieben = false;
+		try {
+			trans.begin();
+			for (Eingang eingang : eingaenge) {
+				bestellungen.add(createBestellung(eingang));
+			}
+			trans.commit();
+			geschrieben = true;
+		}
+		catch (NotSupportedException | SystemException | RollbackException | HeuristicMixedException
+		       | HeuristicRollbackException | PersistenceException | ConstraintViolationException
+		       | AbstractShopException | NotFoundException e) {
+			rollback();
+			if (eingaenge.size() > 1) {
+				logger.debugf("Batch mit %d Bestellungen einzeln schreiben: %s", eingaenge.size(), e.getMessage());
+				for (Eingang eingang : eingaenge) {
+					schreiben(Collections.singletonList(eingang));
+				}
+				return;
+			}
+			logger.warnf("Bestellung %s nicht geschrieben: %s", eingaenge.get(0).getId(), e.getMessage());
+			abschliessen(new EingangStatus(eingaenge.get(0).getId(), FEHLGESCHLAGEN, null, e.getMessage()));
+			return;
+		}
+		finally {
+			if (!geschrieben) {
+				// Auch bei einer anderen RuntimeException, z.B. InternalError oder IllegalStateException, keine
+				// offene Transaktion hinterlassen. Sonst blieben die Eingaenge wartend und ihre Warteplaetze belegt.
+				rollback();
+				for (Eingang eingang : eingaenge) {
+					if (wartend.containsKey(eingang.getId())) {
+						logger.warnf("Bestellung %s nicht geschrieben: %s", eingang.getId(), FEHLER_UNERWARTET);
+						abschliessen(new EingangStatus(eingang.getId(), FEHLGESCHLAGEN, null, FEHLER_UNERWARTET));
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < eingaenge.size(); i++) {
+			abschliessen(new EingangStatus(eingaenge.get(i).getId(), ERLEDIGT, bestellungen.get(i).getId(), null));
+		}
+	}
+
+	private Bestellung createBestellung(Eingang eingang) {
+		final Map<Long, Artikel> artikel = as.findArtikelMapByIds(eingang.getArtikelIds());
+		final List<Bestellposition> positionen = new ArrayList<>(eingang.getArtikelIds().size());
+		for (int i = 0; i < eingang.getArtikelIds().size(); i++) {
+			final Long artikelId = eingang.getArtikelIds().get(i);
+			if (!artikel.containsKey(artikelId)) {
+				throw new NotFoundException("Kein Artikel gefunden mit der ID " + artikelId);
+			}
+			positionen.add(new Bestellposition(artikel.get(artikelId), eingang.getAnzahlen().get(i)));
+		}
+
+		final Bestellung bestellung = new Bestellung();
+		bestellung.setBestellpositionen(positionen);
+		bestellung.setEingang(eingang.getId());
+		final Kunde kunde = em.getReference(Kunde.class, eingang.getKundeId());
+		return bs.createBestellung(bestellung, kunde, eingang.getLocale());
+	}
+
+	private void rollback() {
+		try {
+			if (trans.getStatus() != STATUS_NO_TRANSACTION) {
+				trans.rollback();
+			}
+		}
+		catch (SystemException e) {
+			logger.warnf("Rollback nicht moeglich: %s", e.getMessage());
+		}
+	}
+
+	private void abschliessen(EingangStatus status) {
+		abgeschlossen.put(status.getId(), status);
+		try {
+			synchronized (journal) {
+				try {
+					if (status.getStatus() == ERLEDIGT) {
+						journal.erledigt(status.getId(), status.getBestellungId());
+					}
+					else {
+						journal.fehlgeschlagen(status.getId());
+					}
+				}
+				finally {
+					wartend.remove(status.getId());
+				}
+			}
+		}
+		catch (IOException e) {
+			// Die erledigte Bestellung wird beim naechsten Start anhand der DB erkannt
+			logger.warnf("Abschluss von %s nicht im Journal: %s", status.getId(), e.getMessage());
+		}
+		warteplaetze.freigeben();
+	}
+
+	/**
+	 * @return IDs der bereits geschriebenen Bestellungen zu den IDs der Eingaenge
+	 */
+	private Map<String, Long> findBestellungIds(Collection<String> eingaenge) {
+		final Map<String, Long> ids = new HashMap<>();
+		for (List<String> chunk : Lists.partition(new ArrayList<>(eingaenge), IN_CHUNK_SIZE)) {
+			final List<Object[]> rows = em.createNamedQuery(Bestellung.FIND_EINGAENGE_UND_IDS, Object[].class)
+			                              .setParameter(Bestellung.PARAM_EINGAENGE, chunk)
+			                              .getResultList();
+			for (Object[] row : rows) {
+				ids.put((String) row[0], (Long) row[1]);
+			}
+		}
+		return ids;
+	}
+}
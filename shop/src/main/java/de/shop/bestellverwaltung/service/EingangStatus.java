@@ -0,0 +1,60 @@
+package de.shop.bestellverwaltung.service;
+
+import java.net.URI;
+
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+/**
+ * Stand einer asynchron angenommenen Bestellung
+ */
+public class EingangStatus {
+	public enum Status {
+		WARTEND,
+		ERLEDIGT,
+		FEHLGESCHLAGEN
+	}
+
+	private final String id;
+	private final Status status;
+	private final Long bestellungId;
+	private final String fehler;
+	private URI bestellungUri;
+
+	EingangStatus(String id, Status status, Long bestellungId, String fehler) {
+		this.id = id;
+		this.status = status;
+		this.bestellungId = bestellungId;
+		this.fehler = fehler;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	@JsonIgnore
+	public Long getBestellungId() {
+		return bestellungId;
+	}
+
+	public String getFehler() {
+		return fehler;
+	}
+
+	public URI getBestellungUri() {
+		return bestellungUri;
+	}
+
+	public void setBestellungUri(URI bestellungUri) {
+		this.bestellungUri = bestellungUri;
+	}
+
+	@Override
+	public String toString() {
+		return "EingangStatus [id=" + id + ", status=" + status + ", bestellungId=" + bestellungId + ", fehler="
+		       + fehler + "]";
+	}
+}
@@ -0,0 +1,25 @@
+package de.shop.bestellverwaltung.service;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Die Warteschlange fuer asynchron angenommene Bestellungen ist voll
+ */
+@ApplicationException(rollback = true)
+public class EingangVollException extends AbstractBestellungServiceException {
+	private static final long serialVersionUID = -2937163170852094861L;
+
+	private final int retryAfter;
+
+	public EingangVollException(int anzahl, int retryAfter) {
+		super("Es warten bereits " + anzahl + " Bestellungen auf die Verarbeitung");
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return Sekunden bis zum naechsten Versuch
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,45 @@
+package de.shop.bestellverwaltung.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Begrenzte Anzahl an Plaetzen fuer asynchron angenommene Bestellungen, die noch nicht geschrieben sind.
+ * Ein Platz wird bei der Annahme belegt und beim Abschluss wieder freigegeben.
+ */
+class Warteplaetze {
+	private final int kapazitaet;
+	private final int retryAfter;
+	private final AtomicInteger belegt = new AtomicInteger();
+
+	Warteplaetze(int kapazitaet, int retryAfter) {
+		this.kapazitaet = kapazitaet;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Einen Platz belegen
+	 * @throws EingangVollException Falls bereits alle Plaetze belegt sind
+	 */
+	void belegen() {
+		if (belegt.incrementAndGet() > kapazitaet) {
+			belegt.decrementAndGet();
+			throw new EingangVollException(kapazitaet, retryAfter);
+		}
+	}
+
+	void freigeben() {
+		belegt.decrementAndGet();
+	}
+
+	/**
+	 * Beim Start die Plaetze fuer die offenen Bestellungen aus dem Journal belegen, auch ueber die Kapazitaet
+	 * hinaus
+	 */
+	void setBelegt(int anzahl) {
+		belegt.set(anzahl);
+	}
+
+	int getBelegt() {
+		return belegt.get();
+	}
+}
@@ -7,10 +7,11 @@ import static javax.ejb.TransactionAttributeType.REQUIRED;
 import static javax.ejb.TransactionAttributeType.SUPPORTS;
 import static javax.persistence.PersistenceContextType.EXTENDED;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -28,7 +29,6 @@ import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.ConstraintViolation;
-import javax.xml.bind.DatatypeConverter;
 
 import org.jboss.logging.Logger;
 import org.richfaces.cdi.push.Push;
@@ -54,6 +54,8 @@ import de.shop.util.ConcurrentDeletedException;
 import de.shop.util.Messages;
 import de.shop.util.File;
 import de.shop.util.FileHelper;
+import de.shop.util.IdPrefix;
+import de.shop.util.InternalError;
 
 /**
  * Dialogsteuerung fuer die Kundenverwaltung
@@ -136,7 +138,8 @@ public class KundeController implements Serializable {
 	
 	private String nachname;
 	
-	private List<Kunde> kunden = Collections.emptyList();
+	// Nur die angezeigte Seite wird geladen
+	private KundeDataModel kunden;
 	
 	private SortOrder vornameSortOrder = SortOrder.unsorted;
 	private String vornameFilter = "";
@@ -144,8 +147,8 @@ public class KundeController implements Serializable {
 	private boolean geaendertKunde;    // fuer ValueChangeListener
 	private Kunde neuerKunde;
 	
-	private byte[] bytes;
-	private String contentType;
+	// RichFaces haelt den Inhalt bis zum Aufruf von upload()
+	private transient UploadedFile uploadedFile;
 
 	private transient UIPanelMenuItem menuItemEmail;   // eigentlich nicht dynamisch, nur zur Demo
 	
@@ -204,9 +207,13 @@ public class KundeController implements Serializable {
 		this.nachname = nachname;
 	}
 
-	public List<Kunde> getKunden() {
+	public KundeDataModel getKunden() {
 		return kunden;
 	}
+	
+	public int getAnzahlKunden() {
+		return kunden == null ? 0 : kunden.getRowCount();
+	}
 
 	public SortOrder getVornameSortOrder() {
 		return vornameSortOrder;
@@ -220,7 +227,21 @@ public class KundeController implements Serializable {
 		vornameSortOrder = vornameSortOrder.equals(SortOrder.ascending)
 						   ? SortOrder.descending
 						   : SortOrder.ascending;
-	} 
+		if (kunden != null) {
+			kunden.setOrder(getOrderByVorname());
+		}
+	}
+	
+	private OrderByType getOrderByVorname() {
+		switch (vornameSortOrder) {
+			case ascending:
+				return OrderByType.VORNAME;
+			case descending:
+				return OrderByType.VORNAME_DESC;
+			default:
+				return OrderByType.ID;
+		}
+	}
 	
 	public String getVornameFilter() {
 		return vornameFilter;
@@ -228,6 +249,9 @@ public class KundeController implements Serializable {
 	
 	public void setVornameFilter(String vornameFilter) {
 		this.vornameFilter = vornameFilter;
+		if (kunden != null) {
+			kunden.setVornameFilter(vornameFilter);
+		}
 	}
 
 	public Kunde getNeuerKunde() {
@@ -276,25 +300,19 @@ public class KundeController implements Serializable {
 	@TransactionAttribute(REQUIRED)
 	public List<Kunde> findKundenByIdPrefix(String idPrefix) {
 		List<Kunde> kundenPrefix = null;
-		Long id = null; 
-		try {
-			id = Long.valueOf(idPrefix);
-		}
-		catch (NumberFormatException e) {
+		final Long id = IdPrefix.parse(idPrefix);
+		if (id == null) {
 			findKundeByIdErrorMsg(idPrefix);
 			return null;
 		}
 		
-		kundenPrefix = ks.findKundenByIdPrefix(id);
+		kundenPrefix = ks.findKundenByIdPrefix(id, MAX_AUTOCOMPLETE);
 		if (kundenPrefix == null || kundenPrefix.isEmpty()) {
 			// Kein Kunde zu gegebenem ID-Praefix vorhanden
 			findKundeByIdErrorMsg(idPrefix);
 			return null;
 		}
 		
-		if (kundenPrefix.size() > MAX_AUTOCOMPLETE) {
-			return kundenPrefix.subList(0, MAX_AUTOCOMPLETE);
-		}
 		return kundenPrefix;
 	}
 	
@@ -323,13 +341,14 @@ public class KundeController implements Serializable {
 	 */
 	@TransactionAttribute(REQUIRED)
 	public String findKundenByNachname() {
-		if (nachname == null || nachname.isEmpty()) {
-			kunden = ks.findAllKunden(FetchType.MIT_BESTELLUNGEN, OrderByType.UNORDERED);
-			return JSF_LIST_KUNDEN;
-		}
-
+		// Ohne Nachname alle Kunden, aber nur die angezeigte Seite samt Bestellungen laden
+		final KundeDataModel model = new KundeDataModel(ks, nachname, locale);
+		model.setVornameFilter(vornameFilter);
+		model.setOrder(getOrderByVorname());
 		try {
-			kunden = ks.findKundenByNachname(nachname, FetchType.MIT_BESTELLUNGEN, locale);
+			// Validierung des Nachnamens; die Anzahl ist danach im Query-Cache
+			model.getRowCount();
+			kunden = model;
 		}
 		catch (InvalidNachnameException e) {
 			final Collection<ConstraintViolation<Kunde>> violations = e.getViolations();
@@ -346,16 +365,12 @@ public class KundeController implements Serializable {
 	@TransactionAttribute(REQUIRED)
 	public List<String> findNachnamenByPrefix(String nachnamePrefix) {
 		// NICHT: Liste von Kunden. Sonst waeren gleiche Nachnamen mehrfach vorhanden.
-		final List<String> nachnamen = ks.findNachnamenByPrefix(nachnamePrefix);
+		final List<String> nachnamen = ks.findNachnamenByPrefix(nachnamePrefix, MAX_AUTOCOMPLETE);
 		if (nachnamen.isEmpty()) {
 			messages.error(KUNDENVERWALTUNG, MSG_KEY_KUNDEN_NOT_FOUND_BY_NACHNAME, CLIENT_ID_KUNDEN_NACHNAME, kundeId);
 			return nachnamen;
 		}
 
-		if (nachnamen.size() > MAX_AUTOCOMPLETE) {
-			return nachnamen.subList(0, MAX_AUTOCOMPLETE);
-		}
-
 		return nachnamen;
 	}
 	
@@ -555,14 +570,14 @@ public class KundeController implements Serializable {
 			return null;
 		}
 
-		kunden.remove(ausgewaehlterKunde);
+		if (kunden != null) {
+			kunden.refresh();
+		}
 		return null;
 	}
 
 	public void uploadListener(FileUploadEvent event) {
-		final UploadedFile uploadedFile = event.getUploadedFile();
-		contentType = uploadedFile.getContentType();
-		bytes = uploadedFile.getData();
+		uploadedFile = event.getUploadedFile();
 	}
 
 	@TransactionAttribute(REQUIRED)
@@ -571,26 +586,25 @@ public class KundeController implements Serializable {
 		if (kunde == null) {
 			return null;
 		}
-		ks.setFile(kunde, bytes, contentType);
+		try (InputStream inputStream = uploadedFile.getInputStream()) {
+			// Der MIME-Type wird aus dem Inhalt ermittelt, nicht aus dem Content-Type des Browsers
+			ks.setFile(kunde, inputStream, uploadedFile.getSize());
+		}
+		catch (IOException e) {
+			throw new InternalError(e);
+		}
 
 		kundeId = null;
-		bytes = null;
-		contentType = null;
+		uploadedFile = null;
 		kunde = null;
 
 		return JSF_INDEX;
 	}
 	
-	public String getFilename(File file) {
-		if (file == null) {
-			return "";
-		}
-		
-		fileHelper.store(file);
-		return file.getFilename();
-	}
-	
-	public String getBase64(File file) {
-		return DatatypeConverter.printBase64Binary(file.getBytes());
+	/**
+	 * URL fuer MediaServlet, relativ zum Kontext der Web-Anwendung
+	 */
+	public String getMediaUrl(File file) {
+		return fileHelper.getMediaUrl(file);
 	}
 }
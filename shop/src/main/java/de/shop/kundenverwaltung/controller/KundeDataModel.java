@@ -0,0 +1,160 @@
+package de.shop.kundenverwaltung.controller;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.faces.context.FacesContext;
+
+import org.ajax4jsf.model.DataVisitor;
+import org.ajax4jsf.model.ExtendedDataModel;
+import org.ajax4jsf.model.Range;
+import org.ajax4jsf.model.SequenceRange;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.kundenverwaltung.service.KundeService.FetchType;
+import de.shop.kundenverwaltung.service.KundeService.OrderByType;
+
+/**
+ * Datenmodell fuer rich:dataTable mit rich:dataScroller, das nur die angezeigte Seite aus der DB laedt.
+ * Sortierung nach dem Vornamen, Filter ueber den Vornamen und Paginierung erfolgen in der Abfrage. Die Anzahl
+ * kommt aus dem Query-Cache. Der Zeilenschluessel ist die ID des Kunden. Seite und Anzahl werden in jedem
+ * Request neu gelesen, damit z.B. nach dem Loeschen eines Kunden keine veralteten Daten angezeigt werden.
+ */
+public class KundeDataModel extends ExtendedDataModel<Kunde> implements Serializable {
+	private static final long serialVersionUID = 2893408165029371346L;
+
+	private final KundeService ks;
+	private final String nachname;
+	private final Locale locale;
+
+	private String vornameFilter = "";
+	private OrderByType order = OrderByType.ID;
+
+	private Long rowKey;
+
+	// Ergebnisse des aktuellen Requests: die Seite bleibt fuer einen Postback erhalten. Ohne FacesContext,
+	// z.B. in Tests, gelten die Ergebnisse bis zum naechsten refresh().
+	private transient boolean anzahlGelesen;
+	private transient FacesContext anzahlContext;
+	private transient long anzahl;
+	private transient boolean seiteGelesen;
+	private transient FacesContext seiteContext;
+	private transient int seiteFirst;
+	private transient int seiteRows;
+	private List<Kunde> seite = Collections.emptyList();
+
+	public KundeDataModel(KundeService ks, String nachname, Locale locale) {
+		super();
+		this.ks = ks;
+		this.nachname = nachname;
+		this.locale = locale;
+	}
+
+	public void setVornameFilter(String vornameFilter) {
+		this.vornameFilter = vornameFilter;
+		refresh();
+	}
+
+	public void setOrder(OrderByType order) {
+		this.order = order;
+		refresh();
+	}
+
+	/**
+	 * Seite und Anzahl beim naechsten Zugriff erneut lesen, z.B. nach dem Loeschen eines Kunden
+	 */
+	public void refresh() {
+		anzahlGelesen = false;
+		anzahlContext = null;
+		seiteGelesen = false;
+		seiteContext = null;
+	}
+
+	@Override
+	public int getRowCount() {
+		final FacesContext ctx = FacesContext.getCurrentInstance();
+		if (!anzahlGelesen || anzahlContext != ctx) {
+			anzahl = ks.countKunden(nachname, vornameFilter, locale);
+			anzahlGelesen = true;
+			anzahlContext = ctx;
+		}
+		return (int) Math.min(anzahl, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void walk(FacesContext ctx, DataVisitor visitor, Range range, Object argument) {
+		final SequenceRange sequenceRange = (SequenceRange) range;
+		final int first = sequenceRange.getFirstRow();
+		final int rows = sequenceRange.getRows() > 0 ? sequenceRange.getRows() : getRowCount();
+		if (!seiteGelesen || seiteContext != ctx || seiteFirst != first || seiteRows != rows) {
+			seite = ks.findKundenSeite(nachname, vornameFilter, order, first, rows, FetchType.NUR_KUNDE);
+			seiteGelesen = true;
+			seiteContext = ctx;
+			seiteFirst = first;
+			seiteRows = rows;
+		}
+
+		for (Kunde kunde : seite) {
+			visitor.process(ctx, kunde.getId(), argument);
+		}
+	}
+
+	@Override
+	public Object getRowKey() {
+		return rowKey;
+	}
+
+	@Override
+	public void setRowKey(Object key) {
+		rowKey = (Long) key;
+	}
+
+	@Override
+	public boolean isRowAvailable() {
+		return getRowData() != null;
+	}
+
+	@Override
+	public Kunde getRowData() {
+		if (rowKey == null) {
+			return null;
+		}
+		for (Kunde kunde : seite) {
+			if (rowKey.equals(kunde.getId())) {
+				return kunde;
+			}
+		}
+		// z.B. beim Postback mit einer Action zu einer Zeile, bevor die Seite erneut gelesen wurde
+		return ks.findKundeById(rowKey, FetchType.NUR_KUNDE, locale);
+	}
+
+	/**
+	 * Zugriff ueber den Index wird nicht unterstuetzt, sondern nur ueber den Zeilenschluessel
+	 */
+	@Override
+	public int getRowIndex() {
+		return -1;
+	}
+
+	@Override
+	public void setRowIndex(int rowIndex) {
+		// Zugriff nur ueber den Zeilenschluessel
+	}
+
+	@Override
+	public Object getWrappedData() {
+		return seite;
+	}
+
+	/**
+	 * Die Daten werden seitenweise aus der DB gelesen und koennen deshalb nicht von aussen gesetzt werden.
+	 * Ein Aufruf, z.B. durch JSF beim Wiederherstellen des Komponentenbaums, wird ignoriert.
+	 */
+	@Override
+	public void setWrappedData(Object data) {
+		// Die Seite wird bei walk() aus der DB gelesen
+	}
+}
@@ -5,6 +5,9 @@ import static de.shop.util.Constants.KEINE_ID;
 import static de.shop.util.Constants.MIN_ID;
 import static javax.persistence.TemporalType.TIMESTAMP;
 import static de.shop.util.Constants.ERSTE_VERSION;
+import static de.shop.util.Constants.ALLOCATION_SIZE;
+import static de.shop.util.Constants.SEQUENCE_START;
+import static javax.persistence.GenerationType.SEQUENCE;
 
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
@@ -16,11 +19,13 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
 import javax.persistence.PostPersist;
 import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Version;
@@ -41,6 +46,9 @@ import de.shop.util.IdGroup;
  */
 @Entity
 @Table(name = "adresse")
+@NamedQuery(name  = Adresse.DELETE_ADRESSEN_BY_KUNDE_IDS,
+            query = "DELETE FROM Adresse a"
+                  + " WHERE a.kunde.id IN :" + Adresse.PARAM_KUNDE_IDS)
 public class Adresse implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
@@ -51,9 +59,16 @@ public class Adresse implements Serializable {
 	public static final int STRASSE_LENGTH_MIN = 2;
 	public static final int STRASSE_LENGTH_MAX = 32;
 	public static final int HAUSNR_LENGTH_MAX = 4;
+	
+	private static final String PREFIX = "Adresse.";
+	public static final String DELETE_ADRESSEN_BY_KUNDE_IDS = PREFIX + "deleteAdressenByKundeIds";
+	public static final String PARAM_KUNDE_IDS = "kundeIds";
 
 	@Id
-	@GeneratedValue
+	// Pooled Optimizer: ein Zugriff auf die Sequenz fuer ALLOCATION_SIZE IDs, z.B. beim Import
+	@GeneratedValue(strategy = SEQUENCE, generator = "adresseGenerator")
+	@SequenceGenerator(name = "adresseGenerator", sequenceName = "adresse_seq",
+	                   initialValue = SEQUENCE_START, allocationSize = ALLOCATION_SIZE)
 	@Column(name = "id", nullable = false, updatable = false)
 	@Min(value = MIN_ID, message = "{kundenverwaltung.adresse.id.min}", groups = IdGroup.class)
 	private Long id = KEINE_ID;
@@ -9,6 +9,11 @@ import static javax.persistence.TemporalType.TIMESTAMP;
 import static de.shop.util.Constants.ERSTE_VERSION;
 import static javax.persistence.FetchType.EAGER;
 import static javax.persistence.FetchType.LAZY;
+import static javax.persistence.GenerationType.SEQUENCE;
+import static de.shop.util.Constants.ALLOCATION_SIZE;
+import static de.shop.util.Constants.SEQUENCE_START;
+import static de.shop.util.Constants.HINT_CACHEABLE;
+import static de.shop.util.Constants.HINT_CACHE_REGION;
 
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
@@ -21,6 +26,7 @@ import java.util.Set;
 
 import javax.persistence.UniqueConstraint;
 import javax.persistence.Basic;
+import javax.persistence.Cacheable;
 import javax.persistence.CollectionTable;
 import javax.persistence.Column;
 import javax.persistence.ElementCollection;
@@ -30,6 +36,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.PostLoad;
@@ -37,6 +44,7 @@ import javax.persistence.PostPersist;
 import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Transient;
@@ -49,6 +57,8 @@ import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import org.hibernate.validator.constraints.Email;
 import org.hibernate.validator.constraints.SafeHtml;
 import org.hibernate.validator.constraints.ScriptAssert;
@@ -65,7 +75,8 @@ import de.shop.util.IdGroup;
  * 
  */
 @Entity
-@Table(name = "kunde")
+@Table(name = "kunde", uniqueConstraints = @UniqueConstraint(name = Kunde.UNIQUE_EMAIL, columnNames = "email"))
+@Cacheable
 	@NamedQueries({
 		@NamedQuery(name  = Kunde.FIND_KUNDEN,
                 	query = "SELECT k"
@@ -74,10 +85,11 @@ import de.shop.util.IdGroup;
             		query = "SELECT   k"
             		      + " FROM  Kunde k"
             		      + " ORDER BY k.id"),
-        @NamedQuery(name  = Kunde.FIND_KUNDEN_BY_NACHNAME,
-                    query = "SELECT k"
-                    		+ " FROM   Kunde k"
-            	       		+ " WHERE  UPPER(k.nachname) = UPPER(:" + Kunde.PARAM_KUNDE_NACHNAME + ")"),
+        @NamedQuery(name  = Kunde.FIND_KUNDEN_AFTER_ID,
+            		query = "SELECT   k"
+            		      + " FROM  Kunde k"
+            		      + " WHERE k.id > :" + Kunde.PARAM_KUNDE_ID
+            		      + " ORDER BY k.id"),
         @NamedQuery(name  = Kunde.FIND_KUNDEN_BY_PLZ,
         			query = "SELECT   k"
             			  + " FROM  Kunde k"
@@ -85,45 +97,32 @@ import de.shop.util.IdGroup;
         @NamedQuery(name  = Kunde.FIND_KUNDE_BY_EMAIL,
        				query = "SELECT DISTINCT k"
         		          + " FROM   Kunde k"
-        		          + " WHERE  k.email = :" + Kunde.PARAM_KUNDE_EMAIL),
-        @NamedQuery(name  = Kunde.FIND_KUNDEN_FETCH_BESTELLUNGEN,
-        			query = "SELECT  DISTINCT k"
-        				  + " FROM Kunde k LEFT JOIN FETCH k.bestellungen"),
-        @NamedQuery(name  = Kunde.FIND_KUNDEN_BY_NACHNAME_FETCH_BESTELLUNGEN,
-        			query = "SELECT DISTINCT k"
-        		          + " FROM   Kunde k LEFT JOIN FETCH k.bestellungen"
-        		          + " WHERE  UPPER(k.nachname) = UPPER(:" + Kunde.PARAM_KUNDE_NACHNAME + ")"),
-        @NamedQuery(name  = Kunde.FIND_KUNDE_BY_ID_FETCH_BESTELLUNGEN,
-        			query = "SELECT DISTINCT k"
-        			      + " FROM   Kunde k LEFT JOIN FETCH k.bestellungen"
-        			      + " WHERE  k.id = :" + Kunde.PARAM_KUNDE_ID),	
-        @NamedQuery(name  = Kunde.FIND_KUNDE_BY_USERNAME,
-        	        query = "SELECT   k"
-        				  + " FROM  Kunde k"
-        	              + " WHERE CONCAT('', k.id) = :" + Kunde.PARAM_KUNDE_USERNAME),
-		@NamedQuery(name  = Kunde.FIND_USERNAME_BY_USERNAME_PREFIX,
-          			query = "SELECT   CONCAT('', k.id)"
-          				  + " FROM  Kunde k"
-          				  + " WHERE CONCAT('', k.id) LIKE :" + Kunde.PARAM_USERNAME_PREFIX),
+        		          + " WHERE  k.email = :" + Kunde.PARAM_KUNDE_EMAIL,
+        		    hints = { @QueryHint(name = HINT_CACHEABLE, value = "true"),
+        		              @QueryHint(name = HINT_CACHE_REGION, value = Kunde.FIND_KUNDE_BY_EMAIL) }),
+        @NamedQuery(name  = Kunde.FIND_EMAILS_BY_EMAILS,
+       				query = "SELECT k.email"
+        		          + " FROM   Kunde k"
+        		          + " WHERE  k.email IN :" + Kunde.PARAM_KUNDE_EMAILS),
         @NamedQuery(name  = Kunde.FIND_ALL_NACHNAMEN,
           	   	   query = "SELECT      DISTINCT k.nachname"
           	   			 + " FROM     Kunde k"
           	   			 + " ORDER BY k.nachname"),
-        @NamedQuery(name  = Kunde.FIND_KUNDEN_BY_ID_PREFIX,
-        		        	query = "SELECT   k"
-        		            + " FROM  Kunde k"
-        		            + " WHERE CONCAT('', k.id) LIKE :" + Kunde.PARAM_KUNDE_ID_PREFIX
-        		            + " ORDER BY k.id"),
-        @NamedQuery(name  = Kunde.FIND_IDS_BY_PREFIX,
-        		    query = "SELECT   k.id"
-        				  + " FROM  Kunde k"
-        				  + " WHERE CONCAT('', k.id) LIKE :" + Kunde.PARAM_KUNDE_ID_PREFIX
-        				  + " ORDER BY k.id"),
-        @NamedQuery(name  = Kunde.FIND_NACHNAMEN_BY_PREFIX,
-        	   	    query = "SELECT   DISTINCT k.nachname"
-        			      + " FROM  Kunde k "
-        	   	          + " WHERE UPPER(k.nachname) LIKE UPPER(:"
-        	   	          + Kunde.PARAM_KUNDE_NACHNAME_PREFIX + ")")
+        @NamedQuery(name  = Kunde.FIND_ID_BY_ID,
+        	   	    query = "SELECT   k.id"
+        			      + " FROM  Kunde k"
+        			      + " WHERE k.id = :" + Kunde.PARAM_KUNDE_ID),
+        @NamedQuery(name  = Kunde.FIND_IDS_UND_NACHNAMEN,
+        	   	    query = "SELECT   k.id, k.nachname"
+        			      + " FROM  Kunde k"),
+        @NamedQuery(name  = Kunde.FIND_IDS_UND_FILE_IDS_OHNE_BESTELLUNGEN,
+        	   	    query = "SELECT   k.id, f.id"
+        			      + " FROM  Kunde k LEFT JOIN k.file f"
+        			      + " WHERE k.id IN :" + Kunde.PARAM_KUNDE_IDS
+        			      + " AND   NOT EXISTS (SELECT b.id FROM Bestellung b WHERE b.kunde = k)"),
+        @NamedQuery(name  = Kunde.DELETE_KUNDEN_BY_IDS,
+        	   	    query = "DELETE FROM Kunde k"
+        			      + " WHERE k.id IN :" + Kunde.PARAM_KUNDE_IDS)
 	})
                     		
 @ScriptAssert(lang = "javascript",
@@ -149,35 +148,40 @@ public class Kunde implements Serializable, Cloneable {
 	public static final int BEMERKUNGEN_LENGTH_MAX = 2000;
 	public static final int USERNAME_LENGTH_MAX = 32;
 	
+	// Name der UNIQUE-Constraint fuer die Email-Adresse, damit ihre Verletzung erkannt werden kann
+	public static final String UNIQUE_EMAIL = "kunde_email_uk";
+	
 	private static final String PREFIX = "Kunde.";
 	public static final String FIND_KUNDEN = PREFIX + "findKunden";
 	public static final String FIND_KUNDEN_ORDER_BY_ID = PREFIX + "findKundenOrderById";
-	public static final String FIND_KUNDEN_FETCH_BESTELLUNGEN = PREFIX + "findKundenFetchBestellungen";
-	public static final String FIND_KUNDEN_BY_NACHNAME_FETCH_BESTELLUNGEN =
-            PREFIX + "findKundenByNachnameFetchBestellungen";
-	public static final String FIND_KUNDE_BY_ID_FETCH_BESTELLUNGEN =
-            PREFIX + "findKundeByIdFetchBestellungen";
-	public static final String FIND_NACHNAMEN_BY_PREFIX = PREFIX + "findNachnamenByPrefix";
+	public static final String FIND_KUNDEN_AFTER_ID = PREFIX + "findKundenAfterId";
+	public static final String FIND_ID_BY_ID = PREFIX + "findIdById";
+	public static final String FIND_IDS_UND_NACHNAMEN = PREFIX + "findIdsUndNachnamen";
 	public static final String FIND_ALL_NACHNAMEN = PREFIX + "findAllNachnamen";
-	public static final String FIND_IDS_BY_PREFIX = PREFIX + "findIdsByIdPrefix";
-	public static final String FIND_KUNDEN_BY_ID_PREFIX = PREFIX + "findKundenByIdPrefix";
-	public static final String FIND_KUNDEN_BY_NACHNAME = PREFIX + "findKundenByNachname";
 	public static final String FIND_KUNDE_BY_EMAIL = PREFIX + "findKundeByEmail";
+	// Region im Query-Cache fuer die Anzahl in der Tabelle der Kunden
+	public static final String COUNT_KUNDEN = PREFIX + "countKunden";
+	public static final String FIND_EMAILS_BY_EMAILS = PREFIX + "findEmailsByEmails";
 	public static final String FIND_KUNDEN_BY_PLZ = PREFIX + "findKundenByPlz";
-	public static final String FIND_KUNDE_BY_USERNAME = PREFIX + "findKundeByUsername";
-	public static final String FIND_USERNAME_BY_USERNAME_PREFIX = PREFIX + "findKundeByUsernamePrefix";
+	public static final String FIND_IDS_UND_FILE_IDS_OHNE_BESTELLUNGEN = PREFIX + "findIdsUndFileIdsOhneBestellungen";
+	public static final String DELETE_KUNDEN_BY_IDS = PREFIX + "deleteKundenByIds";
+	
+	// Die Rollen sind eine ElementCollection und koennen nicht mit JPQL geloescht werden
+	public static final String SQL_DELETE_ROLLEN_BY_KUNDE_IDS =
+            "DELETE FROM kunde_rolle WHERE kunde_fk IN (:" + Kunde.PARAM_KUNDE_IDS + ")";
 	
 	public static final String PARAM_KUNDE_ID = "kundeId";
-	public static final String PARAM_KUNDE_NACHNAME_PREFIX = "nachnamePrefix";
-	public static final String PARAM_KUNDE_ID_PREFIX = "idPrefix";
 	public static final String PARAM_KUNDE_NACHNAME = "name";
 	public static final String PARAM_KUNDE_ADRESSE_PLZ = "plz";
 	public static final String PARAM_KUNDE_EMAIL = "email";
-	public static final String PARAM_USERNAME_PREFIX = "usernamePrefix";
-	public static final String PARAM_KUNDE_USERNAME = "username";
+	public static final String PARAM_KUNDE_EMAILS = "emails";
+	public static final String PARAM_KUNDE_IDS = "kundeIds";
 
 	@Id
-	@GeneratedValue
+	// Pooled Optimizer: ein Zugriff auf die Sequenz fuer ALLOCATION_SIZE IDs, z.B. beim Import
+	@GeneratedValue(strategy = SEQUENCE, generator = "kundeGenerator")
+	@SequenceGenerator(name = "kundeGenerator", sequenceName = "kunde_seq",
+	                   initialValue = SEQUENCE_START, allocationSize = ALLOCATION_SIZE)
 	@Column(name = "id", nullable = false, updatable = false)
 	@Min(value = MIN_ID, message = "{kundenverwaltung.kunde.id.min}", groups = IdGroup.class)
 	private Long id = KEINE_ID;
@@ -197,7 +201,7 @@ public class Kunde implements Serializable, Cloneable {
 	@Size(max = VORNAME_LENGTH_MAX, message = "{kundenverwaltung.kunde.vorname.length}")
 	private String vorname = "";
 
-	@Column(length = EMAIL_LENGTH_MAX, unique = true)
+	@Column(length = EMAIL_LENGTH_MAX)
 	@Email(message = "{kundenverwaltung.kunde.email}")
 	private String email = "";
 
@@ -223,15 +227,17 @@ public class Kunde implements Serializable, Cloneable {
 	@NotNull(message = "{kundenverwaltung.kunde.adresse.notNull}")
 	private Adresse adresse;
 	
-	@OneToMany
-	@JoinColumn(name = "kunde_fk", nullable = false)
+	// Der Fremdschluessel gehoert zur Bestellung: eine neue Bestellung aendert den Kunden nicht
+	@OneToMany(mappedBy = "kunde")
 	@JsonIgnore
 	private List<Bestellung> bestellungen;
 	
 	@Transient
 	private URI bestellungenUri;
 	
+	// Ohne Fetch-Join mit einer Abfrage fuer alle Kunden einer Abfrage, z.B. neben den Bestellungen
 	@ElementCollection(fetch = EAGER)
+	@Fetch(FetchMode.SUBSELECT)
 	@CollectionTable(name = "kunde_rolle",
 	                 joinColumns = @JoinColumn(name = "kunde_fk", nullable = false),
 	                 uniqueConstraints =  @UniqueConstraint(columnNames = { "kunde_fk", "rolle_fk" }))
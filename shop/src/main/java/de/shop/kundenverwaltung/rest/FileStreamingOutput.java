@@ -0,0 +1,36 @@
+package de.shop.kundenverwaltung.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import de.shop.util.BlobStore;
+import de.shop.util.ByteRange;
+import de.shop.util.FileHelper;
+
+/**
+ * Schreibt einen Inhalt, z.B. eine Datei oder ihr Vorschaubild, oder einen Bereich daraus aus dem BlobStore
+ * in den Response. Der Inhalt wird
+ * per FileChannel.transferTo() kopiert, d.h. auch bei Videos gibt es kein byte[] mit dem ganzen Inhalt.
+ * Da ein Inhalt ueber seinen Hashwert adressiert wird und sich nie aendert, ist keine Transaktion notwendig.
+ */
+class FileStreamingOutput implements StreamingOutput {
+	private final BlobStore blobStore;
+	private final String hash;
+	private final long start;
+	private final long laenge;
+
+	FileStreamingOutput(BlobStore blobStore, String hash, long groesse, ByteRange range) {
+		this.blobStore = blobStore;
+		this.hash = hash;
+		this.start = range == null ? 0L : range.getStart();
+		this.laenge = range == null ? groesse : range.getLaenge();
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		// Der OutputStream gehoert dem Container und wird nicht geschlossen
+		FileHelper.transferTo(blobStore, hash, start, laenge, out);
+	}
+}
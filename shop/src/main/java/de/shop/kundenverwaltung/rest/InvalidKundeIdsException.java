@@ -0,0 +1,23 @@
+package de.shop.kundenverwaltung.rest;
+
+import de.shop.kundenverwaltung.service.AbstractKundeServiceException;
+
+public class InvalidKundeIdsException extends AbstractKundeServiceException {
+	private static final long serialVersionUID = -3190727335467915327L;
+	
+	private final String invalidIds;
+	
+	public InvalidKundeIdsException(String invalidIds) {
+		super("Ungueltige Kunde-IDs: " + invalidIds);
+		this.invalidIds = invalidIds;
+	}
+	
+	public InvalidKundeIdsException(String invalidIds, Exception e) {
+		super("Ungueltige Kunde-IDs: " + invalidIds, e);
+		this.invalidIds = invalidIds;
+	}
+	
+	public String getInvalidIds() {
+		return invalidIds;
+	}
+}
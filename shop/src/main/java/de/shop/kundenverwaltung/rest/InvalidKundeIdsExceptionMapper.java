@@ -0,0 +1,29 @@
+package de.shop.kundenverwaltung.rest;
+
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+
+/**
+ * Ungueltige IDs sind ein Fehler in der Anfrage, kein Konflikt wie bei den uebrigen Exceptions des
+ * KundeService, die KundeResourceExceptionMapper abbildet
+ */
+@Provider
+@ApplicationScoped
+public class InvalidKundeIdsExceptionMapper implements ExceptionMapper<InvalidKundeIdsException> {
+	@Override
+	public Response toResponse(InvalidKundeIdsException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(BAD_REQUEST)
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
@@ -0,0 +1,94 @@
+package de.shop.kundenverwaltung.rest;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Locale;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.logging.Logger;
+
+import de.shop.kundenverwaltung.service.KundeImportErgebnis;
+import de.shop.kundenverwaltung.service.KundeImportService;
+import de.shop.kundenverwaltung.service.KundenImport;
+import de.shop.util.LocaleHelper;
+import de.shop.util.Log;
+
+/**
+ * Import vieler Kunden mit POST /kunden/batch.
+ * Im Gegensatz zu KundeResource ohne @Transactional, weil jeder Abschnitt des Imports eine eigene
+ * Transaktion hat. Die Ergebnisse werden abschnittsweise in die Response geschrieben, d.h. der Status 200
+ * steht fest, bevor der Import beginnt, und Fehler werden pro Zeile gemeldet.
+ */
+@Path("/kunden/batch")
+@Produces(APPLICATION_JSON)
+@RequestScoped
+@Log
+public class KundeImportResource {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Context
+	private HttpHeaders headers;
+
+	@Inject
+	private KundeImportService kis;
+
+	@Inject
+	private LocaleHelper localeHelper;
+
+	/**
+	 * Mit der URL /kunden/batch viele Kunden als JSON-Array oder als NDJSON anlegen
+	 * @param in Request-Body, der abschnittsweise gelesen wird
+	 * @return JSON-Array mit dem Ergebnis fuer jede Zeile, d.h. die ID des neuen Kunden oder der Fehler
+	 */
+	@POST
+	@Consumes({ APPLICATION_JSON, APPLICATION_NDJSON })
+	public Response importKunden(final InputStream in) {
+		final Locale locale = localeHelper.getLocale(headers);
+
+		final StreamingOutput output = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				final JsonGenerator generator = MAPPER.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+				generator.writeStartArray();
+				final KundenImport kundenImport = kis.importKunden(in, locale, new KundeImportService.Ergebnisse() {
+					@Override
+					public void add(List<KundeImportErgebnis> ergebnisse) throws IOException {
+						for (KundeImportErgebnis ergebnis : ergebnisse) {
+							MAPPER.writeValue(generator, ergebnis);
+						}
+						// Die Ergebnisse eines Abschnitts sofort an den Client senden
+						generator.flush();
+					}
+				});
+				generator.writeEndArray();
+				generator.close();
+				LOGGER.debugf("%s", kundenImport);
+			}
+		};
+
+		return Response.ok(output)
+		               .build();
+	}
+}
@@ -1,24 +1,43 @@
 package de.shop.kundenverwaltung.rest;
 
+import static de.shop.util.ByteRange.ACCEPT_RANGES;
+import static de.shop.util.ByteRange.BYTES;
+import static de.shop.util.ByteRange.CONTENT_RANGE;
+import static de.shop.util.ByteRange.IF_RANGE;
+import static de.shop.util.ByteRange.RANGE;
+import static de.shop.util.ByteRange.STATUS_PARTIAL_CONTENT;
 import static de.shop.util.Constants.KEINE_ID;
+import static de.shop.util.Messages.MessagesType.KUNDENVERWALTUNG;
+import static de.shop.util.VorschauService.QUERY_PARAM_SIZE;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.MediaType.WILDCARD;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.persistence.OptimisticLockException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -26,25 +45,46 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.codehaus.jackson.JsonNode;
 import org.jboss.logging.Logger;
 
+import com.google.common.collect.ImmutableMap;
+
 import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.rest.UriHelperBestellung;
 import de.shop.bestellverwaltung.service.BestellungService;
 import de.shop.kundenverwaltung.domain.Kunde;
 import de.shop.kundenverwaltung.domain.Adresse;
 import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.kundenverwaltung.service.NachnameIndex;
 import de.shop.kundenverwaltung.service.KundeService.FetchType;
-import de.shop.kundenverwaltung.service.KundeService.OrderByType;
-import de.shop.util.JsonFile;
+import de.shop.util.BlobStore;
+import de.shop.util.ByteRange;
+import de.shop.util.EntityTags;
+import de.shop.util.FetchPlan;
+import de.shop.util.File;
+import de.shop.util.FileHelper.MimeType;
+import de.shop.util.InvalidFetchPlanException;
+import de.shop.util.InvalidMergePatchException;
 import de.shop.util.LocaleHelper;
 import de.shop.util.Log;
+import de.shop.util.MergePatch;
+import de.shop.util.Messages;
 import de.shop.util.NotFoundException;
+import de.shop.util.PATCH;
+import de.shop.util.PreconditionRequiredException;
 import de.shop.util.Transactional;
+import de.shop.util.VorschauService;
+import de.shop.util.VorschauService.Groesse;
 
 
 @Path("/kunden")
@@ -56,16 +96,35 @@ import de.shop.util.Transactional;
 public class KundeResource {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	private static final String VERSION = "1.0";
-	
+
+	private static final String QUERY_PARAM_AFTER = "after";
+	private static final String QUERY_PARAM_LIMIT = "limit";
+	private static final String QUERY_PARAM_IDS = "ids";
+	private static final String HEADER_LINK = "Link";
+	private static final String MSG_KEY_KUNDE_NOT_FOUND = "viewKunde.notFound";
+	private static final String HEADER_RETRY_AFTER = "Retry-After";
+	// FileJob migriert alle 5 Minuten die naechsten Inhalte aus der Datenbank in den BlobStore
+	private static final int RETRY_AFTER_MIGRATION = 300;
+	private static final int LIMIT_DEFAULT = 100;
+	private static final int LIMIT_MAX = 1000;
+	// Obergrenze fuer IN-Listen, z.B. bei Oracle
+	private static final int IDS_MAX = 1000;
+
 	@Context
 	private UriInfo uriInfo;
 	
     @Context
     private HttpHeaders headers;
 	
+	@Context
+	private Request request;
+	
 	@Inject
 	private KundeService ks;
 	
+	@Inject
+	private NachnameIndex nachnameIndex;
+	
 	@Inject
 	private BestellungService bs;
 	
@@ -78,6 +137,12 @@ public class KundeResource {
 	@Inject
 	private LocaleHelper localeHelper;
 	
+	@Inject
+	private BlobStore blobStore;
+	
+	@Inject
+	private VorschauService vorschauService;
+	
 	@PostConstruct
 	private void postConstruct() {
 		LOGGER.debugf("CDI-faehiges Bean %s wurde erzeugt", this);
@@ -96,70 +161,230 @@ public class KundeResource {
 	}
 	
 	/**
-	 * Mit der URL /kunden/{id} einen Kunden ermitteln
+	 * Mit der URL /kunden/nachnamen/statistik die Kennzahlen des Nachname-Index ermitteln
+	 * @return Anzahl Nachnamen, geschaetzter Speicherbedarf und mittlere Dauer einer Abfrage
+	 */
+	@GET
+	@Path("nachnamen/statistik")
+	public Map<String, Number> getNachnameIndexStatistik() {
+		return nachnameIndex.getStatistik();
+	}
+	
+	/**
+	 * Mit der URL /kunden/{id} einen Kunden ermitteln.
+	 * Mit /kunden/{id}?expand=bestellungen werden Assoziationen in derselben Abfrage mitgeladen und
+	 * eingebettet, mit /kunden/{id}?fields=id,nachname werden nur die angegebenen Attribute gelesen.
 	 * @param id ID des Kunden
-	 * @return Objekt mit Kundendaten, falls die ID vorhanden ist
+	 * @param expand Durch Komma getrennte Pfade der mitzuladenden Assoziationen
+	 * @param fields Durch Komma getrennte Attribute
+	 * @return Response mit den Kundendaten, falls die ID vorhanden ist, ohne "expand" und "fields" mit ETag
+	 *         bzw. mit 304 bei passendem If-None-Match
 	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}")
-	public Kunde findKundeById(@PathParam("id") Long id) {
+	public Response findKundeById(@PathParam("id") Long id,
+	                              @QueryParam(FetchPlan.QUERY_PARAM_EXPAND) String expand,
+	                              @QueryParam(FetchPlan.QUERY_PARAM_FIELDS) String fields) {
 		final Locale locale = localeHelper.getLocale(headers);
-		final Kunde kunde = ks.findKundeById(id, FetchType.NUR_KUNDE, locale);
+		final FetchPlan plan = FetchPlan.parse(expand, fields, KundeService.EXPAND_PFADE, KundeService.FIELDS);
+		// msg passend zu locale
+		final String msg = "Kein Kunde gefunden mit der ID " + id;
+		if (plan.isProjektion()) {
+			final Map<String, Object> kunde = ks.findKundeFieldsById(id, plan, locale);
+			if (kunde == null) {
+				throw new NotFoundException(msg);
+			}
+			return Response.ok(kunde).build();
+		}
+
+		final Kunde kunde = ks.findKundeById(id, plan, locale);
 		if (kunde == null) {
-			// msg passend zu locale
-			final String msg = "Kein Kunde gefunden mit der ID " + id;
 			throw new NotFoundException(msg);
 		}
 	
 		// URLs innerhalb des gefundenen Kunden anpassen
 		uriHelperKunde.updateUriKunde(kunde, uriInfo);
 		
-		return kunde;
+		if (plan.getExpand().isEmpty()) {
+			return EntityTags.ok(request, toEntityTag(kunde), kunde);
+		}
+		return Response.ok(toEntity(kunde, plan)).build();
+	}
+	
+	/**
+	 * Ohne expandierte Assoziationen wird der Kunde unveraendert geliefert, sonst ein JSON-Datensatz
+	 * mit den eingebetteten Assoziationen
+	 */
+	private Object toEntity(Kunde kunde, FetchPlan plan) {
+		if (plan.getExpand().isEmpty()) {
+			return kunde;
+		}
+		if (plan.isExpanded(KundeService.PFAD_BESTELLUNGEN)) {
+			for (Bestellung bestellung : kunde.getBestellungen()) {
+				uriHelperBestellung.updateUrlBestellung(bestellung, uriInfo);
+			}
+		}
+		return plan.toJson(kunde);
 	}
 	
 	/**
-	 * Mit der URL /kunden werden alle Kunden ermittelt oder
+	 * Mit der URL /kunden werden die Kunden seitenweise ermittelt oder
 	 * mit kundenverwaltung/kunden?nachname=... diejenigen mit einem bestimmten Nachnamen.
-	 * @return Collection mit den gefundenen Kundendaten
+	 * Ohne Nachnamen wird mit /kunden?after=...&amp;limit=... eine Seite nach der ID sortiert geliefert;
+	 * die URL der naechsten Seite steht im Header "Link" mit rel="next".
+	 * Mit /kunden?stream=true werden alle Kunden ab "after" als JSON-Array gestreamt.
+	 * Wie bei /kunden/{id} koennen Assoziationen mit "expand" mitgeladen oder mit "fields" einzelne
+	 * Attribute gelesen werden; beim seitenweisen Lesen muss "fields" dann auch "id" enthalten.
+	 * @return Response mit den gefundenen Kundendaten
 	 */
 	@GET
-	public Collection<Kunde> findKundenByNachname(@QueryParam("nachname") @DefaultValue("") String nachname) {
-		Collection<Kunde> kunden = null;
+	public Response findKundenByNachname(@QueryParam("nachname") @DefaultValue("") String nachname,
+			                             @QueryParam(QUERY_PARAM_AFTER) @DefaultValue("0") Long after,
+			                             @QueryParam(QUERY_PARAM_LIMIT) @DefaultValue("0") int limit,
+			                             @QueryParam("stream") @DefaultValue("false") boolean stream,
+			                             @QueryParam(FetchPlan.QUERY_PARAM_EXPAND) String expand,
+			                             @QueryParam(FetchPlan.QUERY_PARAM_FIELDS) String fields) {
+		final FetchPlan plan = FetchPlan.parse(expand, fields, KundeService.EXPAND_PFADE, KundeService.FIELDS);
 		if ("".equals(nachname)) {
-			kunden = ks.findAllKunden(FetchType.NUR_KUNDE, OrderByType.UNORDERED);
-			if (kunden.isEmpty()) {
-				final String msg = "Keine Kunden vorhanden";
-				throw new NotFoundException(msg);
+			if (stream) {
+				final StreamingOutput output = new KundenStreamingOutput(ks, uriHelperKunde, uriInfo, after);
+				return Response.ok(output).build();
 			}
+			return findKundenAfterId(after, limit, plan);
 		}
-		else {
-			final Locale locale = localeHelper.getLocale(headers);
-			kunden = ks.findKundenByNachname(nachname, FetchType.NUR_KUNDE, locale);
+
+		final Locale locale = localeHelper.getLocale(headers);
+		final String msg = "Kein Kunde gefunden mit Nachname " + nachname;
+		if (plan.isProjektion()) {
+			final List<Map<String, Object>> kunden = ks.findKundenFieldsByNachname(nachname, plan, locale);
 			if (kunden.isEmpty()) {
-				final String msg = "Kein Kunde gefunden mit Nachname " + nachname;
 				throw new NotFoundException(msg);
 			}
+			return Response.ok(new GenericEntity<List<Map<String, Object>>>(kunden) { }).build();
 		}
-		
+
+		final List<Kunde> kunden = ks.findKundenByNachname(nachname, plan, locale);
+		if (kunden.isEmpty()) {
+			throw new NotFoundException(msg);
+		}
+
 		// URLs innerhalb der gefundenen Kunden anpassen
 		for (Kunde kunde : kunden) {
 			uriHelperKunde.updateUriKunde(kunde, uriInfo);
 		}
-		
+
 		// Konvertierung in eigene Collection-Klasse wg. Wurzelelement
 		//final KundeCollection kundeColl = new KundeCollection(kunden);
-		
-		return kunden;
+
+		if (plan.getExpand().isEmpty()) {
+			return EntityTags.ok(request, toEntityTag(kunden), new GenericEntity<List<Kunde>>(kunden) { });
+		}
+		return Response.ok(new GenericEntity<List<Object>>(toEntities(kunden, plan)) { }).build();
+	}
+
+	private static EntityTag toEntityTag(List<Kunde> kunden) {
+		final EntityTags.ListBuilder etag = EntityTags.list();
+		for (Kunde kunde : kunden) {
+			etag.add(kunde.getId(), kunde.getVersion(), getAdresseVersion(kunde));
+		}
+		return etag.build();
+	}
+
+	/**
+	 * Der Kunde wird mit seiner Adresse geliefert, die eine eigene Version hat. Deshalb gehoert auch sie zum
+	 * ETag, z.B. "101.3.1"
+	 * @param kunde Kunde mit Adresse
+	 * @return ETag aus ID und Version des Kunden und der Version der Adresse
+	 */
+	public static EntityTag toEntityTag(Kunde kunde) {
+		return EntityTags.of(kunde.getId(), kunde.getVersion(), getAdresseVersion(kunde));
+	}
+
+	private static int getAdresseVersion(Kunde kunde) {
+		final Adresse adresse = kunde.getAdresse();
+		return adresse == null ? 0 : adresse.getVersion();
+	}
+
+	private List<Object> toEntities(List<Kunde> kunden, FetchPlan plan) {
+		final List<Object> entities = new ArrayList<>(kunden.size());
+		for (Kunde kunde : kunden) {
+			entities.add(toEntity(kunde, plan));
+		}
+		return entities;
+	}
+
+	private Response findKundenAfterId(Long after, int limit, FetchPlan plan) {
+		final int pageSize = limit <= 0 ? LIMIT_DEFAULT : Math.min(limit, LIMIT_MAX);
+		final String msg = "Keine Kunden vorhanden";
+		final List<Object> entities;
+		final Long lastId;
+		final EntityTag etag;
+		if (plan.isProjektion()) {
+			if (!plan.getFields().contains(MergePatch.ATTR_ID)) {
+				throw new InvalidFetchPlanException("Beim seitenweisen Lesen muss " + FetchPlan.QUERY_PARAM_FIELDS
+				                                    + " das Attribut " + MergePatch.ATTR_ID + " enthalten");
+			}
+			final List<Map<String, Object>> kunden = ks.findKundenFieldsAfterId(after, pageSize, plan);
+			if (kunden.isEmpty()) {
+				throw new NotFoundException(msg);
+			}
+			entities = new ArrayList<Object>(kunden);
+			lastId = (Long) kunden.get(kunden.size() - 1).get(MergePatch.ATTR_ID);
+			etag = null;
+		}
+		else {
+			final List<Kunde> kunden = plan.getExpand().isEmpty()
+			                           ? ks.findKundenAfterId(after, pageSize)
+			                           : ks.findKundenAfterId(after, pageSize, plan);
+			if (kunden.isEmpty()) {
+				throw new NotFoundException(msg);
+			}
+
+			// URLs innerhalb der gefundenen Kunden anpassen
+			for (Kunde kunde : kunden) {
+				uriHelperKunde.updateUriKunde(kunde, uriInfo);
+			}
+			entities = toEntities(kunden, plan);
+			lastId = kunden.get(kunden.size() - 1).getId();
+			// Expandierte Assoziationen haben eigene Versionen
+			etag = plan.getExpand().isEmpty() ? toEntityTag(kunden) : null;
+		}
+
+		if (etag != null) {
+			final ResponseBuilder notModified = request.evaluatePreconditions(etag);
+			if (notModified != null) {
+				return notModified.tag(etag).build();
+			}
+		}
+		final ResponseBuilder rb = Response.ok(new GenericEntity<List<Object>>(entities) { }).tag(etag);
+		if (entities.size() == pageSize) {
+			// Es gibt evtl. weitere Kunden
+			final URI next = uriInfo.getRequestUriBuilder()
+			                        .replaceQueryParam(QUERY_PARAM_AFTER, lastId)
+			                        .replaceQueryParam(QUERY_PARAM_LIMIT, pageSize)
+			                        .build();
+			rb.header(HEADER_LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return rb.build();
 	}
 	
 	/**
 	 * Mit der URL /kunden/{id}/bestellungen die Bestellungen zu eine Kunden ermitteln
 	 * @param kundeId ID des Kunden
-	 * @return Objekt mit Bestellungsdaten, falls die ID vorhanden ist
+	 * @return Response mit den Bestellungsdaten und dem ETag der Liste, falls die ID vorhanden ist
 	 */
 	@GET
 	@Path("{id:[1-9][0-9]*}/bestellungen")
-	public Collection<Bestellung> findBestellungenByKundeId(@PathParam("id") Long kundeId) {
+	public Response findBestellungenByKundeId(@PathParam("id") Long kundeId) {
+		final Collection<Bestellung> bestellungen = findBestellungen(kundeId);
+		final EntityTags.ListBuilder etag = EntityTags.list();
+		for (Bestellung bestellung : bestellungen) {
+			etag.add(bestellung.getId(), bestellung.getVersion());
+		}
+		return EntityTags.ok(request, etag.build(), new GenericEntity<Collection<Bestellung>>(bestellungen) { });
+	}
+	
+	private Collection<Bestellung> findBestellungen(Long kundeId) {
 		final Locale locale = localeHelper.getLocale(headers);
 
 		final Kunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE, locale);
@@ -178,7 +403,7 @@ public class KundeResource {
 	@GET
 	@Path("{id:[1-9][0-9]*}/bestellungenIds")
 	public Collection<Long> findBestellungenIdsByKundeId(@PathParam("id") Long kundeId) {
-		final Collection<Bestellung> bestellungen = findBestellungenByKundeId(kundeId);
+		final Collection<Bestellung> bestellungen = findBestellungen(kundeId);
 		if (bestellungen.isEmpty()) {
 			final String msg = "Kein Kunde gefunden mit der ID " + kundeId;
 			throw new NotFoundException(msg);
@@ -222,12 +447,14 @@ public class KundeResource {
 	}
 	
 	/**
-	 * Mit der URL /kunden einen Kunden per PUT aktualisieren
+	 * Mit der URL /kunden einen Kunden per PUT aktualisieren. Mit dem Header If-Match und dem ETag aus
+	 * GET /kunden/{id} wird statt mit der Version im Request-Body optimistisch synchronisiert.
 	 * @param kunde zu aktualisierende Daten des Kunden
+	 * @return 204 mit dem neuen ETag oder 412, falls das ETag bei If-Match nicht mehr aktuell ist
 	 */
 	@PUT
 	@Consumes(APPLICATION_JSON)
-	public void updateKunde(Kunde kunde) {
+	public Response updateKunde(Kunde kunde) {
 		final Locale locale = localeHelper.getLocale(headers);
 
 		// Vorhandenen Kunden ermitteln
@@ -238,13 +465,82 @@ public class KundeResource {
 			throw new NotFoundException(msg);
 		}
 		LOGGER.tracef("Kunde vorher = %s", origKunde);
+		if (headers.getRequestHeaders().containsKey(HttpHeaders.IF_MATCH)) {
+			final ResponseBuilder rb =
+			    request.evaluatePreconditions(toEntityTag(origKunde));
+			if (rb != null) {
+				// 412: Der Kunde wurde seit dem GET geaendert
+				return rb.build();
+			}
+			kunde.setVersion(origKunde.getVersion());
+		}
+		else if (origKunde.getVersion() != kunde.getVersion()) {
+			// Konkurrierendes Update: setValues wuerde die Version des verwalteten Objekts ueberschreiben
+			throw new OptimisticLockException(origKunde);
+		}
 	
 		// Daten des vorhandenen Kunden ueberschreiben
 		origKunde.setValues(kunde);
 		LOGGER.tracef("Kunde nachher = %s", origKunde);
 		
-		// Update durchfuehren
-		ks.updateKunde(origKunde, locale, false);
+		// Update durchfuehren: origKunde ist bereits verwaltet, d.h. nur noch das UPDATE ... AND version = ?
+		final Kunde updatedKunde = ks.updateKunde(origKunde, locale, false);
+		return Response.noContent()
+		               .tag(toEntityTag(updatedKunde))
+		               .build();
+	}
+	
+	/**
+	 * Mit der URL /kunden/{id} einen Kunden per JSON Merge Patch aendern. Nur die uebergebenen Attribute
+	 * werden mit einem einzigen UPDATE geschrieben. Wie bei PUT wird mit dem Header If-Match und dem ETag aus
+	 * GET /kunden/{id} optimistisch synchronisiert, ohne If-Match mit "version" im Patch.
+	 * @param id ID des Kunden
+	 * @param patch JSON-Objekt mit den zu aendernden Attributen
+	 * @return 204 mit dem ETag der neuen Version, 412 bei einem veralteten ETag oder 428, falls weder If-Match
+	 *         noch "version" angegeben sind
+	 */
+	@PATCH
+	@Path("{id:[1-9][0-9]*}")
+	@Consumes({ MergePatch.MEDIA_TYPE, APPLICATION_JSON })
+	public Response patchKunde(@PathParam("id") Long id, JsonNode patch) {
+		final Long patchId = MergePatch.getId(patch);
+		if (patchId != null && !patchId.equals(id)) {
+			throw new InvalidMergePatchException("Die ID " + patchId + " im Patch passt nicht zur ID " + id);
+		}
+		
+		final Locale locale = localeHelper.getLocale(headers);
+		final Map<String, Object> werte = MergePatch.getWerte(patch, KundeService.PATCH_ATTRIBUTE);
+		Integer version = MergePatch.getVersion(patch);
+		if (headers.getRequestHeaders().containsKey(HttpHeaders.IF_MATCH)) {
+			// Nur die Versionen lesen: ein geladener Kunde waere nach dem UPDATE im Persistenzkontext veraltet
+			final int[] versionen = ks.findVersionenById(id);
+			if (versionen == null) {
+				final String msg = Messages.getMessage(KUNDENVERWALTUNG, MSG_KEY_KUNDE_NOT_FOUND, locale, id);
+				throw new NotFoundException(msg);
+			}
+			final ResponseBuilder rb = request.evaluatePreconditions(EntityTags.of(id, versionen[0], versionen[1]));
+			if (rb != null) {
+				// 412: Der Kunde wurde seit dem GET geaendert
+				return rb.build();
+			}
+			version = versionen[0];
+		}
+		else if (version == null) {
+			throw new PreconditionRequiredException("Der Header If-Match oder das Attribut version ist erforderlich");
+		}
+		final Kunde patchedKunde = ks.patchKunde(id, version, werte, locale);
+		if (patchedKunde == null) {
+			// Nur im Fehlerfall: existiert der Kunde nicht oder ist die Version veraltet?
+			final Kunde kunde = ks.findKundeById(id, FetchType.NUR_KUNDE, locale);
+			if (kunde == null) {
+				final String msg = Messages.getMessage(KUNDENVERWALTUNG, MSG_KEY_KUNDE_NOT_FOUND, locale, id);
+				throw new NotFoundException(msg);
+			}
+			throw new OptimisticLockException(kunde);
+		}
+		return Response.noContent()
+		               .tag(toEntityTag(patchedKunde))
+		               .build();
 	}
 	
 	/**
@@ -258,25 +554,125 @@ public class KundeResource {
 		ks.deleteKundeById(kundeId);
 	}
 	
+	/**
+	 * Mit der URL /kunden?ids=1,2,3 mehrere Kunden per DELETE l&ouml;schen. Kunden mit Bestellungen
+	 * und nicht vorhandene Kunden werden nicht gel&ouml;scht.
+	 * @param ids IDs der Kunden, durch Komma getrennt oder als wiederholter Query-Parameter
+	 * @return IDs der gel&ouml;schten und der nicht gel&ouml;schten Kunden
+	 */
+	@DELETE
+	public Map<String, Collection<Long>> deleteKunden(@QueryParam(QUERY_PARAM_IDS) List<String> ids) {
+		final Set<Long> kundeIds = new LinkedHashSet<>();
+		for (String str : ids) {
+			for (String id : str.split(",")) {
+				if (id.trim().isEmpty()) {
+					continue;
+				}
+				try {
+					kundeIds.add(Long.valueOf(id.trim()));
+				}
+				catch (NumberFormatException e) {
+					throw new InvalidKundeIdsException(str, e);
+				}
+			}
+		}
+		if (kundeIds.size() > IDS_MAX) {
+			throw new InvalidKundeIdsException("mehr als " + IDS_MAX + " IDs");
+		}
+
+		final List<Long> geloescht = ks.deleteKundenByIds(kundeIds);
+		kundeIds.removeAll(geloescht);
+		return ImmutableMap.<String, Collection<Long>>of("geloescht", geloescht, "nichtGeloescht", kundeIds);
+	}
+	
+	/**
+	 * Mit der URL /kunden/{id}/file eine Datei als Binaerdaten hochladen, z.B. ein Bild oder ein Video.
+	 * Der Request-Body wird ohne Base64-Kodierung und ohne byte[] in den BlobStore gestreamt.
+	 * @param kundeId ID des Kunden
+	 * @param groesse Header "Content-Length", falls vorhanden
+	 * @param inputStream Request-Body
+	 * @return 201 mit der URI fuer den Download, 409 bei einem nicht unterstuetzten MIME-Type oder
+	 *         413 (Request Entity Too Large)
+	 */
 	@Path("{id:[1-9][0-9]*}/file")
 	@POST
-	@Consumes(APPLICATION_JSON)
-	public Response upload(@PathParam("id") Long kundeId, JsonFile file) {
+	@Consumes(APPLICATION_OCTET_STREAM)
+	public Response upload(@PathParam("id") Long kundeId, @HeaderParam(CONTENT_LENGTH) Long groesse,
+	                       InputStream inputStream) throws IOException {
 		final Locale locale = localeHelper.getLocale(headers);
-		ks.setFile(kundeId, file.getBytes(), locale);
+		ks.setFile(kundeId, inputStream, groesse, locale);
 		final URI location = uriHelperKunde.getUriDownload(kundeId, uriInfo);
 		return Response.created(location).build();
 	}
 	
+	/**
+	 * Mit der URL /kunden/{id}/file die Datei eines Kunden herunterladen. Mit dem Header "Range" wird nur
+	 * ein Bereich geliefert, z.B. beim Spulen in einem Video. Mit ?size=small bzw. ?size=medium wird bei einem
+	 * Bild ein Vorschaubild geliefert, sobald es erzeugt ist, und bis dahin das Original.
+	 * @param kundeId ID des Kunden
+	 * @param size Query-Parameter "size" fuer ein Vorschaubild oder null
+	 * @param range Header "Range", z.B. "bytes=1000-"
+	 * @param ifRange Header "If-Range": der Bereich wird nur bei diesem ETag geliefert, sonst die ganze Datei
+	 * @return 200 mit der ganzen Datei, 206 (Partial Content) mit dem Bereich, 304 bei passendem
+	 *         If-None-Match oder 416 (Range Not Satisfiable); jeweils mit ETag. 503 (Service Unavailable) mit
+	 *         "Retry-After", falls der Inhalt noch nicht aus der Datenbank in den BlobStore migriert ist.
+	 */
 	@Path("{id:[1-9][0-9]*}/file")
 	@GET
-	public JsonFile download(@PathParam("id") Long kundeId) throws IOException {
+	@Produces(WILDCARD)
+	public Response download(@PathParam("id") Long kundeId, @QueryParam(QUERY_PARAM_SIZE) String size,
+	                         @HeaderParam(RANGE) String range, @HeaderParam(IF_RANGE) String ifRange)
+	                         throws IOException {
 		final Locale locale = localeHelper.getLocale(headers);
 		final Kunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE, locale);
-		if (kunde.getFile() == null) {
-			return new JsonFile(new byte[] {});
+		if (kunde == null || kunde.getFile() == null) {
+			final String msg = "Keine Datei gefunden zum Kunden mit der ID " + kundeId;
+			throw new NotFoundException(msg);
 		}
 		
-		return new JsonFile(kunde.getFile().getBytes());
+		final File file = kunde.getFile();
+		if (file.getHash() == null) {
+			// Ein GET schreibt nicht: die Migration ist Aufgabe von FileJob
+			return Response.status(SERVICE_UNAVAILABLE)
+			               .header(HEADER_RETRY_AFTER, RETRY_AFTER_MIGRATION)
+			               .build();
+		}
+		
+		String hash = file.getHash();
+		MimeType mimeType = file.getMimeType();
+		long groesse = file.getGroesse();
+		final Groesse vorschauGroesse = Groesse.get(size);
+		if (vorschauGroesse != null) {
+			final String vorschau = vorschauService.findVorschau(hash, mimeType, vorschauGroesse);
+			if (vorschau != null) {
+				hash = vorschau;
+				mimeType = VorschauService.getMimeType(mimeType);
+				groesse = blobStore.getGroesse(vorschau);
+			}
+		}
+		
+		// Der Hashwert adressiert einen unveraenderlichen Inhalt und ist deshalb ein starkes ETag. Das ETag
+		// einer Vorschau enthaelt zusaetzlich die Groesse.
+		final EntityTag etag = new EntityTag(hash);
+		final ResponseBuilder rbVorbedingung = request.evaluatePreconditions(etag);
+		if (rbVorbedingung != null) {
+			return rbVorbedingung.tag(etag).build();
+		}
+		
+		// Bei einem veralteten If-Range wird die ganze Datei geliefert
+		final ByteRange byteRange = ifRange == null || etag.toString().equals(ifRange.trim())
+		                            ? ByteRange.parse(range, groesse)
+		                            : null;
+		final ResponseBuilder rb = byteRange == null
+		                           ? Response.ok()
+		                           : Response.status(STATUS_PARTIAL_CONTENT)
+		                                     .header(CONTENT_RANGE, byteRange.getContentRange());
+		
+		return rb.entity(new FileStreamingOutput(blobStore, hash, groesse, byteRange))
+		         .type(mimeType.toString())
+		         .header(CONTENT_LENGTH, byteRange == null ? groesse : byteRange.getLaenge())
+		         .header(ACCEPT_RANGES, BYTES)
+		         .tag(etag)
+		         .build();
 	}
 }
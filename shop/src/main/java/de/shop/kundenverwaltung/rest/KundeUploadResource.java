@@ -0,0 +1,168 @@
+package de.shop.kundenverwaltung.rest;
+
+import static de.shop.util.UploadService.UPLOAD_LENGTH;
+import static de.shop.util.UploadService.UPLOAD_OFFSET;
+import static java.net.HttpURLConnection.HTTP_LENGTH_REQUIRED;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Locale;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.kundenverwaltung.service.KundeService.FetchType;
+import de.shop.util.LocaleHelper;
+import de.shop.util.Log;
+import de.shop.util.NotFoundException;
+import de.shop.util.Transactional;
+import de.shop.util.UploadOffsetException;
+import de.shop.util.UploadService;
+
+/**
+ * Fortsetzbarer Upload einer Datei zu einem Kunden, z.B. eines Videos von einem Smartphone:
+ * <ol>
+ * <li>POST /kunden/{id}/file/uploads mit dem Header "Upload-Length" legt einen Upload an.</li>
+ * <li>PUT /kunden/{id}/file/uploads/{uploadId} mit dem Header "Upload-Offset" schreibt einen Abschnitt.</li>
+ * <li>HEAD /kunden/{id}/file/uploads/{uploadId} liefert nach einem Verbindungsabbruch den Offset, ab dem der
+ * naechste Abschnitt geschrieben wird.</li>
+ * <li>POST /kunden/{id}/file/uploads/{uploadId} schliesst den Upload ab und ersetzt die Datei des Kunden.</li>
+ * </ol>
+ * Im Gegensatz zu KundeResource ist nur das Anlegen und Abschliessen transaktional, damit ein langsam
+ * uebertragener Abschnitt keine Transaktion offen haelt.
+ */
+@Path("/kunden/{id:[1-9][0-9]*}/file/uploads")
+@Produces
+@RequestScoped
+@Log
+public class KundeUploadResource {
+	@Context
+	private UriInfo uriInfo;
+
+	@Context
+	private HttpHeaders headers;
+
+	@Inject
+	private KundeService ks;
+
+	@Inject
+	private UploadService uploadService;
+
+	@Inject
+	private UriHelperKunde uriHelperKunde;
+
+	@Inject
+	private LocaleHelper localeHelper;
+
+	/**
+	 * Einen Upload anlegen
+	 * @param kundeId ID des Kunden
+	 * @param laenge Header "Upload-Length" mit der Laenge der Datei in Bytes
+	 * @return 201 mit der URI des Uploads, 411 (Length Required) ohne "Upload-Length" oder
+	 *         413 (Request Entity Too Large)
+	 */
+	@POST
+	@Transactional
+	public Response create(@PathParam("id") Long kundeId, @HeaderParam(UPLOAD_LENGTH) Long laenge)
+		throws IOException {
+		if (laenge == null || laenge <= 0) {
+			return Response.status(HTTP_LENGTH_REQUIRED).build();
+		}
+		final Locale locale = localeHelper.getLocale(headers);
+		final Kunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE, locale);
+		if (kunde == null) {
+			throw new NotFoundException("Kein Kunde gefunden mit der ID " + kundeId);
+		}
+
+		final String uploadId = uploadService.create(kundeId, laenge);
+		final URI location = uriInfo.getAbsolutePathBuilder()
+		                            .path(uploadId)
+		                            .build();
+		return Response.created(location)
+		               .header(UPLOAD_OFFSET, 0L)
+		               .build();
+	}
+
+	/**
+	 * Den Stand eines Uploads ermitteln, z.B. nach einem Verbindungsabbruch
+	 * @return 200 mit den Headern "Upload-Offset" und "Upload-Length" oder 404
+	 */
+	@Path("{uploadId}")
+	@HEAD
+	public Response getOffset(@PathParam("id") Long kundeId, @PathParam("uploadId") String uploadId) {
+		final CacheControl cacheControl = new CacheControl();
+		cacheControl.setNoStore(true);
+		return Response.ok()
+		               .header(UPLOAD_OFFSET, uploadService.getOffset(uploadId, kundeId))
+		               .header(UPLOAD_LENGTH, uploadService.getLaenge(uploadId, kundeId))
+		               .cacheControl(cacheControl)
+		               .build();
+	}
+
+	/**
+	 * Einen Abschnitt ab dem bisherigen Offset schreiben
+	 * @param offset Header "Upload-Offset", der mit dem Offset des Uploads uebereinstimmen muss
+	 * @param inputStream Request-Body mit dem Abschnitt
+	 * @return 204 mit dem neuen Offset im Header "Upload-Offset", 409 mit dem gespeicherten Offset oder
+	 *         413 (Request Entity Too Large), falls der Abschnitt ueber die Laenge der Datei hinausgeht
+	 */
+	@Path("{uploadId}")
+	@PUT
+	@Consumes(APPLICATION_OCTET_STREAM)
+	public Response write(@PathParam("id") Long kundeId, @PathParam("uploadId") String uploadId,
+	                      @HeaderParam(UPLOAD_OFFSET) Long offset, InputStream inputStream) throws IOException {
+		if (offset == null) {
+			throw new UploadOffsetException("Kein Header " + UPLOAD_OFFSET,
+			                                uploadService.getOffset(uploadId, kundeId));
+		}
+		final long neuerOffset = uploadService.write(uploadId, kundeId, offset, inputStream);
+		return Response.noContent()
+		               .header(UPLOAD_OFFSET, neuerOffset)
+		               .build();
+	}
+
+	/**
+	 * Einen vollstaendigen Upload abschliessen: der Inhalt wird in den BlobStore verschoben und ist die neue
+	 * Datei des Kunden
+	 * @return 201 mit der URI fuer den Download, 409 bei einem unvollstaendigen Upload oder einem nicht
+	 *         unterstuetzten MIME-Type
+	 */
+	@Path("{uploadId}")
+	@POST
+	@Transactional
+	public Response complete(@PathParam("id") Long kundeId, @PathParam("uploadId") String uploadId)
+		throws IOException {
+		final String hash = uploadService.complete(uploadId, kundeId);
+		final Locale locale = localeHelper.getLocale(headers);
+		ks.setFile(kundeId, hash, locale);
+		final URI location = uriHelperKunde.getUriDownload(kundeId, uriInfo);
+		return Response.created(location).build();
+	}
+
+	/**
+	 * Einen Upload abbrechen
+	 */
+	@Path("{uploadId}")
+	@DELETE
+	public void delete(@PathParam("id") Long kundeId, @PathParam("uploadId") String uploadId) throws IOException {
+		uploadService.delete(uploadId, kundeId);
+	}
+}
@@ -0,0 +1,67 @@
+package de.shop.kundenverwaltung.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.logging.Logger;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeService;
+
+/**
+ * Schreibt alle Kunden ab einer ID als JSON-Array Zeile fuer Zeile in den Response.
+ * Die Kunden werden abschnittsweise per Keyset-Pagination gelesen. Da die Ausgabe erst nach dem
+ * Ende der Transaktion erfolgt, sind die gelesenen Kunden sofort detached und koennen nach dem
+ * Serialisieren freigegeben werden, d.h. der Speicherbedarf waechst nicht mit der Tabellengroesse.
+ */
+class KundenStreamingOutput implements StreamingOutput {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
+	private static final int CHUNK_SIZE = 500;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final KundeService ks;
+	private final UriHelperKunde uriHelperKunde;
+	private final UriInfo uriInfo;
+	private final Long afterId;
+
+	KundenStreamingOutput(KundeService ks, UriHelperKunde uriHelperKunde, UriInfo uriInfo, Long afterId) {
+		this.ks = ks;
+		this.uriHelperKunde = uriHelperKunde;
+		this.uriInfo = uriInfo;
+		this.afterId = afterId;
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		final JsonGenerator generator = MAPPER.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+		// Der OutputStream gehoert dem Container
+		generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+		generator.writeStartArray();
+		Long lastId = afterId;
+		int anzahl = 0;
+		List<Kunde> kunden;
+		do {
+			kunden = ks.findKundenAfterId(lastId, CHUNK_SIZE);
+			for (Kunde kunde : kunden) {
+				uriHelperKunde.updateUriKunde(kunde, uriInfo);
+				MAPPER.writeValue(generator, kunde);
+				lastId = kunde.getId();
+			}
+			anzahl += kunden.size();
+			generator.flush();
+		} while (kunden.size() == CHUNK_SIZE);
+		generator.writeEndArray();
+		generator.close();
+
+		LOGGER.debugf("%d Kunden gestreamt", anzahl);
+	}
+}
@@ -0,0 +1,24 @@
+package de.shop.kundenverwaltung.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Event fuer Kunden, die mit Bulk-Statements geloescht wurden und deshalb nur ueber ihre IDs bekannt sind
+ */
+public class GeloeschteKunden {
+	private final List<Long> kundeIds;
+
+	public GeloeschteKunden(List<Long> kundeIds) {
+		this.kundeIds = Collections.unmodifiableList(kundeIds);
+	}
+
+	public List<Long> getKundeIds() {
+		return kundeIds;
+	}
+
+	@Override
+	public String toString() {
+		return "GeloeschteKunden [kundeIds=" + kundeIds + "]";
+	}
+}
@@ -0,0 +1,26 @@
+package de.shop.kundenverwaltung.service;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+
+/**
+ * Event fuer einen Abschnitt von Kunden, die beim Import in einer Transaktion gespeichert wurden
+ */
+public class ImportierteKunden {
+	private final List<Kunde> kunden;
+
+	public ImportierteKunden(List<Kunde> kunden) {
+		this.kunden = Collections.unmodifiableList(kunden);
+	}
+
+	public List<Kunde> getKunden() {
+		return kunden;
+	}
+
+	@Override
+	public String toString() {
+		return "ImportierteKunden [anzahl=" + kunden.size() + "]";
+	}
+}
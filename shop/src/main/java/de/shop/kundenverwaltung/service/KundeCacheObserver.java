@@ -0,0 +1,51 @@
+package de.shop.kundenverwaltung.service;
+
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.io.Serializable;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.util.CacheService;
+import de.shop.util.Log;
+
+/**
+ * Leert die Region des Query-Cache mit der Anzahl der Kunden fuer die Tabellen mit Paginierung nach dem Commit
+ * einer Transaktion, in der Kunden erzeugt, geloescht oder im Nachnamen bzw. Vornamen geaendert wurden.
+ * So haengt die angezeigte Anzahl nicht davon ab, ob Hibernate die Aenderung der Tabelle kunde erkennt.
+ */
+@ApplicationScoped
+@Log
+public class KundeCacheObserver implements Serializable {
+	private static final long serialVersionUID = 6219330457150813262L;
+
+	@Inject
+	private CacheService cacheService;
+
+	public void onCreateKunde(@Observes(during = AFTER_SUCCESS) @NeuerKunde Kunde kunde) {
+		evictCountKunden();
+	}
+
+	public void onImportKunden(@Observes(during = AFTER_SUCCESS) @NeuerKunde ImportierteKunden kunden) {
+		evictCountKunden();
+	}
+
+	public void onUpdateKunde(@Observes(during = AFTER_SUCCESS) @GeaenderterKunde Kunde kunde) {
+		evictCountKunden();
+	}
+
+	public void onDeleteKunde(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde Kunde kunde) {
+		evictCountKunden();
+	}
+
+	public void onDeleteKunden(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde GeloeschteKunden kunden) {
+		evictCountKunden();
+	}
+
+	private void evictCountKunden() {
+		cacheService.evictQueryRegion(Kunde.COUNT_KUNDEN);
+	}
+}
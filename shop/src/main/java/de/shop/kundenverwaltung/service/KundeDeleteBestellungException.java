@@ -1,8 +1,8 @@
 package de.shop.kundenverwaltung.service;
 
-import javax.ejb.ApplicationException;
+import java.util.Collection;
 
-import de.shop.kundenverwaltung.domain.Kunde;
+import javax.ejb.ApplicationException;
 
 
 /**
@@ -14,11 +14,22 @@ public class KundeDeleteBestellungException extends AbstractKundeServiceExceptio
 	private final Long kundeId;
 	private final int anzahlBestellungen;
 	
-	public KundeDeleteBestellungException(Kunde kunde) {
-		super("Kunde mit ID=" + kunde.getId() + " kann nicht geloescht werden: "
-			  + kunde.getBestellungen().size() + " Bestellung(en)");
-		this.kundeId = kunde.getId();
-		this.anzahlBestellungen = kunde.getBestellungen().size();
+	public KundeDeleteBestellungException(Long kundeId, int anzahlBestellungen) {
+		super("Kunde mit ID=" + kundeId + " kann nicht geloescht werden: "
+			  + anzahlBestellungen + " Bestellung(en)");
+		this.kundeId = kundeId;
+		this.anzahlBestellungen = anzahlBestellungen;
+	}
+	
+	/**
+	 * Beim Loeschen mehrerer Kunden wurde zwischenzeitlich eine Bestellung angelegt
+	 * @param kundeIds IDs der Kunden, die geloescht werden sollten
+	 * @param t Verletzung des Fremdschluessels
+	 */
+	public KundeDeleteBestellungException(Collection<Long> kundeIds, Throwable t) {
+		super("Kunden mit IDs=" + kundeIds + " koennen nicht geloescht werden: neue Bestellung(en)", t);
+		this.kundeId = null;
+		this.anzahlBestellungen = 0;
 	}
 
 	public Long getKundeId() {
@@ -0,0 +1,58 @@
+package de.shop.kundenverwaltung.service;
+
+import java.io.Serializable;
+
+/**
+ * Ergebnis fuer eine Zeile beim Import von Kunden
+ */
+public class KundeImportErgebnis implements Serializable {
+	private static final long serialVersionUID = 6021817468407593528L;
+
+	public enum Status {
+		ERZEUGT,
+		UNGUELTIG,
+		EMAIL_EXISTIERT,
+		FEHLER
+	}
+
+	private final int zeile;
+	private final Status status;
+	private final Long id;
+	private final String meldung;
+
+	public KundeImportErgebnis(int zeile, Long id) {
+		this.zeile = zeile;
+		this.status = Status.ERZEUGT;
+		this.id = id;
+		this.meldung = null;
+	}
+
+	public KundeImportErgebnis(int zeile, Status status, String meldung) {
+		this.zeile = zeile;
+		this.status = status;
+		this.id = null;
+		this.meldung = meldung;
+	}
+
+	public int getZeile() {
+		return zeile;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getMeldung() {
+		return meldung;
+	}
+
+	@Override
+	public String toString() {
+		return "KundeImportErgebnis [zeile=" + zeile + ", status=" + status + ", id=" + id
+			   + ", meldung=" + meldung + "]";
+	}
+}
@@ -0,0 +1,15 @@
+package de.shop.kundenverwaltung.service;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Exception, die ausgeloest wird, wenn ein Abschnitt eines Kunden-Imports nicht gespeichert werden kann
+ */
+@ApplicationException(rollback = true)
+public class KundeImportException extends AbstractKundeServiceException {
+	private static final long serialVersionUID = -3284306171580127763L;
+
+	public KundeImportException(String msg, Throwable t) {
+		super(msg, t);
+	}
+}
@@ -0,0 +1,101 @@
+package de.shop.kundenverwaltung.service;
+
+import static de.shop.util.Constants.KEINE_ID;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import javax.validation.groups.Default;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import de.shop.auth.service.jboss.AuthService;
+import de.shop.kundenverwaltung.domain.Adresse;
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.domain.PasswordGroup;
+import de.shop.kundenverwaltung.service.KundeImportErgebnis.Status;
+import de.shop.util.Log;
+import de.shop.util.ValidatorProvider;
+
+/**
+ * Validierung und Verschluesselung der Passwoerter beim Import von Kunden. Beides braucht vor allem CPU und
+ * keine Transaktion; ein Abschnitt wird deshalb in Teilen asynchron in den Threads des EJB-Containers geprueft.
+ */
+@Stateless
+@Log
+public class KundeImportPruefung {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Inject
+	private AuthService authService;
+
+	@Inject
+	private ValidatorProvider validatorProvider;
+
+	/**
+	 * @param nodes Teil eines Abschnitts mit einem JSON-Objekt pro Zeile
+	 * @param ersteNr Nummer der ersten Zeile
+	 * @param locale Locale fuer die Fehlermeldungen der Validierung
+	 * @return Die geprueften Zeilen in der Reihenfolge der Eingabe
+	 */
+	@Asynchronous
+	@TransactionAttribute(SUPPORTS)
+	public Future<List<KundeImportZeile>> pruefen(List<JsonNode> nodes, int ersteNr, Locale locale) {
+		final Validator validator = validatorProvider.getValidator(locale);
+		final List<KundeImportZeile> zeilen = new ArrayList<>(nodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			zeilen.add(pruefen(ersteNr + i, nodes.get(i), validator));
+		}
+		return new AsyncResult<>(zeilen);
+	}
+
+	private KundeImportZeile pruefen(int nr, JsonNode node, Validator validator) {
+		final Kunde kunde;
+		try {
+			kunde = MAPPER.readValue(node, Kunde.class);
+		}
+		catch (IOException e) {
+			return new KundeImportZeile(nr, null, new KundeImportErgebnis(nr, Status.UNGUELTIG, e.getMessage()));
+		}
+
+		// wie bei POST /kunden
+		kunde.setId(KEINE_ID);
+		final Adresse adresse = kunde.getAdresse();
+		if (adresse != null) {
+			adresse.setKunde(kunde);
+		}
+		kunde.setBestellungenUri(null);
+		kunde.setPasswortWdh(kunde.getPasswort());
+
+		final Set<ConstraintViolation<Kunde>> violations = validator.validate(kunde, Default.class,
+		                                                                      PasswordGroup.class);
+		if (!violations.isEmpty()) {
+			final StringBuilder sb = new StringBuilder();
+			for (ConstraintViolation<Kunde> violation : violations) {
+				if (sb.length() > 0) {
+					sb.append("; ");
+				}
+				sb.append(violation.getPropertyPath()).append(": ").append(violation.getMessage());
+			}
+			return new KundeImportZeile(nr, null, new KundeImportErgebnis(nr, Status.UNGUELTIG, sb.toString()));
+		}
+
+		final String passwort = authService.verschluesseln(kunde.getPasswort());
+		kunde.setPasswort(passwort);
+		kunde.setPasswortWdh(passwort);
+		return new KundeImportZeile(nr, kunde, null);
+	}
+}
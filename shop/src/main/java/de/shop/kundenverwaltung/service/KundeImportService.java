@@ -0,0 +1,248 @@
+package de.shop.kundenverwaltung.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.jboss.logging.Logger;
+
+import com.google.common.collect.Lists;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeImportErgebnis.Status;
+import de.shop.util.InternalError;
+import de.shop.util.Log;
+
+/**
+ * Import vieler Kunden aus einem JSON-Array oder aus NDJSON (ein JSON-Objekt pro Zeile).
+ * Die Eingabe wird abschnittsweise gelesen. Pro Abschnitt werden die Kunden in den Threads des EJB-Containers
+ * parallel validiert und ihre Passwoerter verschluesselt, die Email-Adressen mit einer einzigen Abfrage geprueft
+ * und die Kunden in einer eigenen Transaktion mit JDBC-Batches gespeichert. Die Ergebnisse eines Abschnitts
+ * werden sofort an den Aufrufer weitergereicht, damit auch ein grosser Import nur einen Abschnitt im Speicher
+ * haelt.
+ */
+@ApplicationScoped
+@Log
+public class KundeImportService implements Serializable {
+	private static final long serialVersionUID = -1939466437227087207L;
+
+	// Vielfaches von hibernate.jdbc.batch_size und der allocationSize der Sequenzen
+	private static final int CHUNK_SIZE = 500;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Empfaenger der Ergebnisse, z.B. die Response, in die sie geschrieben werden
+	 */
+	public interface Ergebnisse {
+		/**
+		 * @param ergebnisse Ergebnisse eines Abschnitts in der Reihenfolge der Eingabe
+		 * @throws IOException falls die Ergebnisse nicht weitergereicht werden koennen. Der Import wird dann
+		 *         abgebrochen; die bereits gespeicherten Abschnitte bleiben gespeichert.
+		 */
+		void add(List<KundeImportErgebnis> ergebnisse) throws IOException;
+	}
+
+	@Inject
+	private transient Logger logger;
+
+	@Inject
+	private KundeService ks;
+
+	@Inject
+	private KundeImportPruefung pruefung;
+
+	@Inject
+	@NeuerKunde
+	private transient Event<KundenImport> event;
+
+	/**
+	 * @param in JSON-Array oder NDJSON mit den Kunden
+	 * @param locale Locale fuer die Fehlermeldungen der Validierung
+	 * @param ergebnisse Empfaenger des Ergebnisses fuer jede Zeile in der Reihenfolge der Eingabe
+	 * @return Zusammenfassung des Imports
+	 * @throws IOException falls die Eingabe nicht gelesen oder die Ergebnisse nicht weitergereicht werden koennen
+	 */
+	public KundenImport importKunden(InputStream in, Locale locale, Ergebnisse ergebnisse) throws IOException {
+		// Email-Adressen, die in diesem Import bereits vorkommen
+		final Set<String> emails = new HashSet<>();
+		final int[] anzahlen = new int[2];
+
+		final JsonParser parser = MAPPER.getJsonFactory().createJsonParser(in);
+		final List<JsonNode> chunk = new ArrayList<>(CHUNK_SIZE);
+		int nr = 0;
+		try {
+			KundeImportErgebnis syntaxfehler = null;
+			try {
+				JsonToken token = parser.nextToken();
+				final boolean isArray = token == JsonToken.START_ARRAY;
+				if (isArray) {
+					token = parser.nextToken();
+				}
+
+				while (token != null && token != JsonToken.END_ARRAY) {
+					chunk.add(MAPPER.readTree(parser));
+					nr++;
+					if (chunk.size() == CHUNK_SIZE) {
+						weiterreichen(importChunk(chunk, nr - chunk.size() + 1, locale, emails), anzahlen,
+						              ergebnisse);
+						chunk.clear();
+					}
+					token = parser.nextToken();
+				}
+			}
+			catch (JsonParseException e) {
+				// Syntaxfehler: der Rest der Eingabe wird nicht gelesen
+				syntaxfehler = new KundeImportErgebnis(nr + 1, Status.FEHLER, e.getMessage());
+			}
+
+			// Auch nach einem Syntaxfehler die bereits gelesenen Zeilen des letzten Abschnitts importieren
+			weiterreichen(importChunk(chunk, nr - chunk.size() + 1, locale, emails), anzahlen, ergebnisse);
+			if (syntaxfehler != null) {
+				weiterreichen(Lists.newArrayList(syntaxfehler), anzahlen, ergebnisse);
+			}
+		}
+		finally {
+			parser.close();
+		}
+
+		final KundenImport kundenImport = new KundenImport(anzahlen[0], anzahlen[1]);
+		logger.infof("%s", kundenImport);
+		if (kundenImport.getAnzahlErzeugt() > 0) {
+			event.fire(kundenImport);
+		}
+		return kundenImport;
+	}
+
+	/**
+	 * Die Ergebnisse eines Abschnitts zaehlen und weiterreichen
+	 * @param anzahlen Anzahl erzeugter und abgelehnter Zeilen, wird aktualisiert
+	 */
+	private static void weiterreichen(List<KundeImportErgebnis> chunkErgebnisse, int[] anzahlen,
+	                                  Ergebnisse ergebnisse) throws IOException {
+		if (chunkErgebnisse.isEmpty()) {
+			return;
+		}
+		for (KundeImportErgebnis ergebnis : chunkErgebnisse) {
+			anzahlen[ergebnis.getStatus() == Status.ERZEUGT ? 0 : 1]++;
+		}
+		ergebnisse.add(chunkErgebnisse);
+	}
+
+	private List<KundeImportErgebnis> importChunk(List<JsonNode> chunk, int ersteNr, Locale locale,
+	                                              Set<String> emails) {
+		final List<KundeImportErgebnis> ergebnisse = new ArrayList<>(chunk.size());
+		if (chunk.isEmpty()) {
+			return ergebnisse;
+		}
+
+		final List<KundeImportZeile> zeilen = pruefen(chunk, ersteNr, locale);
+
+		// Email-Adressen innerhalb des Imports und mit einer Abfrage gegen die DB pruefen
+		final List<String> neueEmails = new ArrayList<>(zeilen.size());
+		for (KundeImportZeile zeile : zeilen) {
+			if (zeile.getKunde() != null && zeile.getKunde().getEmail() != null) {
+				neueEmails.add(zeile.getKunde().getEmail());
+			}
+		}
+		final Set<String> vorhandeneEmails = new HashSet<>(ks.findEmailsByEmails(neueEmails));
+
+		final List<Kunde> kunden = new ArrayList<>(zeilen.size());
+		for (int i = 0; i < zeilen.size(); i++) {
+			final KundeImportZeile zeile = zeilen.get(i);
+			if (zeile.getKunde() == null) {
+				continue;
+			}
+			final String email = zeile.getKunde().getEmail();
+			if (email != null && (vorhandeneEmails.contains(email) || !emails.add(email))) {
+				final KundeImportErgebnis fehler = new KundeImportErgebnis(zeile.getNr(), Status.EMAIL_EXISTIERT,
+				                                                           "Die Email-Adresse " + email
+				                                                           + " existiert bereits");
+				zeilen.set(i, new KundeImportZeile(zeile.getNr(), null, fehler));
+				continue;
+			}
+			kunden.add(zeile.getKunde());
+		}
+
+		String fehlerChunk = null;
+		if (!kunden.isEmpty()) {
+			try {
+				ks.createKunden(kunden);
+			}
+			catch (KundeImportException e) {
+				fehlerChunk = e.getMessage();
+				for (Kunde kunde : kunden) {
+					emails.remove(kunde.getEmail());
+				}
+			}
+		}
+
+		for (KundeImportZeile zeile : zeilen) {
+			if (zeile.getFehler() != null) {
+				ergebnisse.add(zeile.getFehler());
+			}
+			else if (fehlerChunk != null) {
+				ergebnisse.add(new KundeImportErgebnis(zeile.getNr(), Status.FEHLER, fehlerChunk));
+			}
+			else {
+				ergebnisse.add(new KundeImportErgebnis(zeile.getNr(), zeile.getKunde().getId()));
+			}
+		}
+		return ergebnisse;
+	}
+
+	/**
+	 * Einen Abschnitt in so viele Teile zerlegen, wie es Prozessoren gibt, und die Teile asynchron pruefen.
+	 * Die Anzahl der Threads begrenzt der EJB-Container.
+	 */
+	private List<KundeImportZeile> pruefen(List<JsonNode> chunk, int ersteNr, Locale locale) {
+		final int anzahlTeile = Runtime.getRuntime().availableProcessors();
+		final int teilGroesse = (chunk.size() + anzahlTeile - 1) / anzahlTeile;
+		final List<List<JsonNode>> teile = Lists.partition(chunk, teilGroesse);
+		final List<Future<List<KundeImportZeile>>> futures = new ArrayList<>(teile.size());
+		int nr = ersteNr;
+		for (List<JsonNode> teil : teile) {
+			// Kopie, weil der Abschnitt nach dem Import wiederverwendet wird
+			futures.add(pruefung.pruefen(new ArrayList<>(teil), nr, locale));
+			nr += teil.size();
+		}
+
+		final List<KundeImportZeile> zeilen = new ArrayList<>(chunk.size());
+		nr = ersteNr;
+		for (int i = 0; i < futures.size(); i++) {
+			final int anzahl = teile.get(i).size();
+			try {
+				zeilen.addAll(futures.get(i).get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InternalError(e);
+			}
+			catch (ExecutionException e) {
+				// Nur die Zeilen dieses Teils sind fehlerhaft
+				for (int j = 0; j < anzahl; j++) {
+					final KundeImportErgebnis fehler = new KundeImportErgebnis(nr + j, Status.FEHLER,
+					                                                           e.getCause().getMessage());
+					zeilen.add(new KundeImportZeile(nr + j, null, fehler));
+				}
+			}
+			nr += anzahl;
+		}
+		return zeilen;
+	}
+}
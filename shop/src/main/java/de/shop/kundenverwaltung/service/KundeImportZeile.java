@@ -0,0 +1,30 @@
+package de.shop.kundenverwaltung.service;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+
+/**
+ * Eine gelesene Zeile beim Import von Kunden: entweder ein gueltiger Kunde oder das Ergebnis mit dem Fehler
+ */
+final class KundeImportZeile {
+	private final int nr;
+	private final Kunde kunde;
+	private final KundeImportErgebnis fehler;
+
+	KundeImportZeile(int nr, Kunde kunde, KundeImportErgebnis fehler) {
+		this.nr = nr;
+		this.kunde = kunde;
+		this.fehler = fehler;
+	}
+
+	int getNr() {
+		return nr;
+	}
+
+	Kunde getKunde() {
+		return kunde;
+	}
+
+	KundeImportErgebnis getFehler() {
+		return fehler;
+	}
+}
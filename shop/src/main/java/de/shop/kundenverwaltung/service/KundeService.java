@@ -1,12 +1,26 @@
 package de.shop.kundenverwaltung.service;
 
+import static de.shop.util.Constants.HINT_CACHEABLE;
+import static de.shop.util.Constants.HINT_CACHE_REGION;
 import static de.shop.util.Constants.KEINE_ID;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -14,7 +28,10 @@ import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
@@ -25,24 +42,39 @@ import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import javax.validation.groups.Default;
 
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
 import org.jboss.logging.Logger;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
 import de.shop.auth.service.jboss.AuthService;
 import de.shop.bestellverwaltung.domain.Bestellposition;
 import de.shop.bestellverwaltung.domain.Bestellposition_;
 import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.domain.Bestellung_;
+import de.shop.bestellverwaltung.service.BestellungService;
+import de.shop.kundenverwaltung.domain.Adresse;
 import de.shop.kundenverwaltung.domain.Kunde;
 import de.shop.kundenverwaltung.domain.Kunde_;
 import de.shop.kundenverwaltung.domain.PasswordGroup;
+import de.shop.util.BlobStore;
 import de.shop.util.ConcurrentDeletedException;
+import de.shop.util.FetchPlan;
 import de.shop.util.File;
 import de.shop.util.FileHelper.MimeType;
 import de.shop.util.FileHelper;
+import de.shop.util.FileTooLargeException;
 import de.shop.util.IdGroup;
+import de.shop.util.IdPrefix;
 import de.shop.util.Log;
+import de.shop.util.MergePatch;
 import de.shop.util.NoMimeTypeException;
+import de.shop.util.Transactional;
 import de.shop.util.ValidatorProvider;
+import de.shop.util.VorschauService;
 
 /**
  * Anwendungslogik fuer die Kundenverwaltung
@@ -50,15 +82,75 @@ import de.shop.util.ValidatorProvider;
 @Log
 public class KundeService implements Serializable {
 	private static final long serialVersionUID = -5520738420154763865L;
+
+	// Query Hints von Hibernate
+	private static final String HINT_READ_ONLY = "org.hibernate.readOnly";
+	private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
 	
+	private static final String LIKE_ESCAPE = "\\";
+
+	// Attribute, die per JSON Merge Patch geaendert werden duerfen
+	public static final Map<String, Class<?>> PATCH_ATTRIBUTE = ImmutableMap.<String, Class<?>>builder()
+	                                                                      .put("nachname", String.class)
+	                                                                      .put("vorname", String.class)
+	                                                                      .put("email", String.class)
+	                                                                      .put("geschlecht", String.class)
+	                                                                      .put("newsletter", boolean.class)
+	                                                                      .put("bemerkungen", String.class)
+	                                                                      .build();
+
+	// SQLSTATE-Klasse fuer die Verletzung einer Constraint, z.B. UNIQUE
+	private static final String SQL_STATE_INTEGRITY_CONSTRAINT_VIOLATION = "23";
+	// Die Datenbank kann den Namen der Constraint in Grossbuchstaben melden
+	private static final String UNIQUE_EMAIL = Kunde.UNIQUE_EMAIL.toUpperCase(Locale.ENGLISH);
+	// Query Space fuer das native DELETE der Rollen: Hibernate raeumt nur die Region von Kunde.rollen im L2C ab
+	private static final String QUERY_SPACE_ROLLEN = "kunde_rolle";
+
+	// Pfade und Attribute fuer Fetch-Plaene, z.B. ?expand=bestellungen.lieferungen oder ?fields=id,nachname
+	public static final String PFAD_BESTELLUNGEN = "bestellungen";
+	public static final Set<String> EXPAND_PFADE = ImmutableSet.of(PFAD_BESTELLUNGEN,
+	                                                               "bestellungen.bestellpositionen",
+	                                                               "bestellungen.bestellpositionen.artikel",
+	                                                               "bestellungen.lieferungen");
+	public static final Set<String> FIELDS = ImmutableSet.of("id", "version", "nachname", "vorname", "email",
+	                                                         "geschlecht", "newsletter", "bemerkungen",
+	                                                         "adresse.plz", "adresse.ort", "adresse.strasse",
+	                                                         "adresse.hausnummer");
+
+	// Eager geladene Assoziationen: per Fetch-Join statt mit je einer Abfrage pro Kunde
+	private static final String PFAD_ROLLEN = "rollen";
+	private static final List<String> BASIS_PFADE = ImmutableList.of("adresse", PFAD_ROLLEN);
+
+	private static final String ALIAS = "k";
+	private static final String WHERE_ID = " WHERE k.id = :" + Kunde.PARAM_KUNDE_ID;
+	private static final String WHERE_IDS = " WHERE k.id IN :" + Kunde.PARAM_KUNDE_IDS;
+	private static final String WHERE_AFTER_ID = " WHERE k.id > :" + Kunde.PARAM_KUNDE_ID + " ORDER BY k.id";
+	private static final String WHERE_NACHNAME = " WHERE UPPER(k.nachname) = UPPER(:"
+	                                             + Kunde.PARAM_KUNDE_NACHNAME + ")";
+
+	/**
+	 * Benannte Fetch-Plaene
+	 */
 	public enum FetchType {
-		NUR_KUNDE,
-		MIT_BESTELLUNGEN,
+		NUR_KUNDE(),
+		MIT_BESTELLUNGEN(PFAD_BESTELLUNGEN);
+
+		private final FetchPlan plan;
+
+		private FetchType(String... pfade) {
+			plan = FetchPlan.of(pfade);
+		}
+
+		public FetchPlan getPlan() {
+			return plan;
+		}
 	}
 	
 	public enum OrderByType {
 		UNORDERED,
-		ID
+		ID,
+		VORNAME,
+		VORNAME_DESC
 	}
 	
 	@PersistenceContext
@@ -76,10 +168,35 @@ public class KundeService implements Serializable {
 	@Inject
 	private FileHelper fileHelper;
 	
+	@Inject
+	private BlobStore blobStore;
+	
+	@Inject
+	private VorschauService vorschauService;
+	
 	@Inject
 	@NeuerKunde
 	private transient Event<Kunde> event;
 	
+	@Inject
+	@GeaenderterKunde
+	private transient Event<Kunde> eventGeaendert;
+	
+	@Inject
+	@GeloeschterKunde
+	private transient Event<Kunde> eventGeloescht;
+	
+	@Inject
+	@GeloeschterKunde
+	private transient Event<GeloeschteKunden> eventGeloeschtBulk;
+	
+	@Inject
+	@NeuerKunde
+	private transient Event<ImportierteKunden> eventImport;
+	
+	@Inject
+	private NachnameIndex nachnameIndex;
+	
 	@PostConstruct
 	private void postConstruct() {
 		logger.debugf("CDI-faehiges Bean %s wurde erzeugt", this);
@@ -91,15 +208,62 @@ public class KundeService implements Serializable {
 	}
 	
 	public List<Kunde> findKundenByIdPrefix(Long id) {
+		return findKundenByIdPrefix(id, 0);
+	}
+
+	/**
+	 * Kunden, deren ID mit dem Praefix beginnt, ueber Intervalle des Primaerschluessels suchen.
+	 * @param id Praefix der ID
+	 * @param max Maximale Anzahl an Kunden, 0 fuer unbegrenzt
+	 * @return Nach der ID sortierte Liste der Kunden
+	 */
+	public List<Kunde> findKundenByIdPrefix(Long id, int max) {
 		if (id == null) {
 			return Collections.emptyList();
 		}
 		
-		final List<Kunde> kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_BY_ID_PREFIX,
-				                                               Kunde.class)
-				                             .setParameter(Kunde.PARAM_KUNDE_ID_PREFIX, id.toString() + '%')
-				                             .getResultList();
-		return kunden;
+		// SELECT   k
+		// FROM     Kunde k
+		// WHERE    k.id = ? OR k.id BETWEEN ? AND ? OR ...
+		// ORDER BY k.id
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<Kunde> criteriaQuery = builder.createQuery(Kunde.class);
+		final Root<Kunde> k = criteriaQuery.from(Kunde.class);
+		final Path<Long> idPath = k.get(Kunde_.id);
+		criteriaQuery.where(IdPrefix.createPredicate(builder, idPath, id))
+		             .orderBy(builder.asc(idPath));
+		
+		final TypedQuery<Kunde> query = em.createQuery(criteriaQuery);
+		if (max > 0) {
+			query.setMaxResults(max);
+		}
+		return query.getResultList();
+	}
+
+	/**
+	 * IDs, die mit dem Praefix beginnen, ohne die Kunden selbst zu laden.
+	 * @param id Praefix der ID
+	 * @param max Maximale Anzahl an IDs, 0 fuer unbegrenzt
+	 * @return Sortierte Liste der IDs
+	 */
+	public List<Long> findIdsByPrefix(Long id, int max) {
+		if (id == null) {
+			return Collections.emptyList();
+		}
+		
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+		final Root<Kunde> k = criteriaQuery.from(Kunde.class);
+		final Path<Long> idPath = k.get(Kunde_.id);
+		criteriaQuery.select(idPath)
+		             .where(IdPrefix.createPredicate(builder, idPath, id))
+		             .orderBy(builder.asc(idPath));
+		
+		final TypedQuery<Long> query = em.createQuery(criteriaQuery);
+		if (max > 0) {
+			query.setMaxResults(max);
+		}
+		return query.getResultList();
 	}
 
 	/**
@@ -116,8 +280,7 @@ public class KundeService implements Serializable {
 				break;
 			
 			case MIT_BESTELLUNGEN:
-				kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_FETCH_BESTELLUNGEN, Kunde.class)
-						   .getResultList();
+				kunden = findKunden("", null, null, fetch.getPlan());
 				break;
 
 			default:
@@ -131,35 +294,251 @@ public class KundeService implements Serializable {
 		
 		return kunden;
 	}
+
+	/**
+	 * Anzahl der Kunden fuer eine Tabelle mit Paginierung. Das Ergebnis ist im Query-Cache; KundeCacheObserver
+	 * leert die Region nach dem Erzeugen, Loeschen und nach Aenderungen der Namen von Kunden.
+	 * @param nachname Nachname oder null bzw. "" fuer alle Kunden
+	 * @param vornameFilter Teil des Vornamens ohne Beruecksichtigung der Gross-/Kleinschreibung oder null
+	 * @return Anzahl der Kunden
+	 * @throws InvalidNachnameException bei einem ungueltigen Nachnamen
+	 */
+	public long countKunden(String nachname, String vornameFilter, Locale locale) {
+		if (nachname != null && !nachname.isEmpty()) {
+			validateNachname(nachname, locale);
+		}
+		
+		// SELECT COUNT(k)
+		// FROM   Kunde k
+		// WHERE  UPPER(k.nachname) = UPPER(?) AND LOWER(k.vorname) LIKE ?
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+		final Root<Kunde> k = criteriaQuery.from(Kunde.class);
+		criteriaQuery.select(builder.count(k))
+		             .where(createPredicates(builder, k, nachname, vornameFilter));
+		return em.createQuery(criteriaQuery)
+		         .setHint(HINT_CACHEABLE, Boolean.TRUE)
+		         .setHint(HINT_CACHE_REGION, Kunde.COUNT_KUNDEN)
+		         .getSingleResult();
+	}
 	
 	/**
+	 * Eine Seite von Kunden fuer eine Tabelle mit Paginierung. Sortierung, Filter und Paginierung erfolgen in
+	 * der DB, danach werden nur die Kunden der Seite mit den Assoziationen gemaess dem Fetch-Plan geladen.
+	 * @param nachname Nachname oder null bzw. "" fuer alle Kunden
+	 * @param vornameFilter Teil des Vornamens ohne Beruecksichtigung der Gross-/Kleinschreibung oder null
+	 * @param order UNORDERED bzw. ID, VORNAME oder VORNAME_DESC; bei gleichem Vornamen nach der ID
+	 * @param first Index des ersten Kunden
+	 * @param max Maximale Anzahl an Kunden
+	 * @return Kunden der Seite in der Reihenfolge der Sortierung
 	 */
-	public List<Kunde> findKundenByNachname(String nachname, FetchType fetch, Locale locale) {
-		validateNachname(nachname, locale);
-		List<Kunde> kunden;
-		switch (fetch) {
-			case NUR_KUNDE:
-				kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_BY_NACHNAME, Kunde.class)
-						   .setParameter(Kunde.PARAM_KUNDE_NACHNAME, nachname)
-                           .getResultList();
+	public List<Kunde> findKundenSeite(String nachname, String vornameFilter, OrderByType order, int first, int max,
+	                                   FetchType fetch) {
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+		final Root<Kunde> k = criteriaQuery.from(Kunde.class);
+		final Path<Long> idPath = k.get(Kunde_.id);
+		final Path<String> vornamePath = k.get(Kunde_.vorname);
+		criteriaQuery.select(idPath)
+		             .where(createPredicates(builder, k, nachname, vornameFilter));
+		switch (order) {
+			case VORNAME:
+				criteriaQuery.orderBy(builder.asc(vornamePath), builder.asc(idPath));
 				break;
-			
-			case MIT_BESTELLUNGEN:
-				kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_BY_NACHNAME_FETCH_BESTELLUNGEN,
-						                     Kunde.class)
-						   .setParameter(Kunde.PARAM_KUNDE_NACHNAME, nachname)
-                           .getResultList();
+			case VORNAME_DESC:
+				criteriaQuery.orderBy(builder.desc(vornamePath), builder.asc(idPath));
 				break;
-
 			default:
-				kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_BY_NACHNAME, Kunde.class)
-						   .setParameter(Kunde.PARAM_KUNDE_NACHNAME, nachname)
-                           .getResultList();
+				// Eine stabile Reihenfolge ist fuer die Paginierung notwendig
+				criteriaQuery.orderBy(builder.asc(idPath));
 				break;
 		}
-
+		
+		final List<Long> ids = em.createQuery(criteriaQuery)
+		                         .setFirstResult(first)
+		                         .setMaxResults(max)
+		                         .getResultList();
+		return findKundenByIds(ids, fetch.getPlan());
+	}
+	
+	private static Predicate[] createPredicates(CriteriaBuilder builder, Root<Kunde> k, String nachname,
+	                                            String vornameFilter) {
+		final List<Predicate> predicates = new ArrayList<>(2);
+		if (nachname != null && !nachname.isEmpty()) {
+			predicates.add(builder.equal(builder.upper(k.get(Kunde_.nachname)),
+			                             nachname.toUpperCase(Locale.ROOT)));
+		}
+		if (vornameFilter != null && !vornameFilter.isEmpty()) {
+			// % und _ im Filter sind keine Platzhalter
+			final String muster = '%' + vornameFilter.toLowerCase(Locale.ROOT)
+			                                         .replace(LIKE_ESCAPE, LIKE_ESCAPE + LIKE_ESCAPE)
+			                                         .replace("%", LIKE_ESCAPE + '%')
+			                                         .replace("_", LIKE_ESCAPE + '_')
+			                      + '%';
+			predicates.add(builder.like(builder.lower(k.get(Kunde_.vorname)), muster, LIKE_ESCAPE.charAt(0)));
+		}
+		return predicates.toArray(new Predicate[predicates.size()]);
+	}
+	
+	/**
+	 * Keyset-Pagination: hoechstens limit Kunden mit einer ID groesser als kundeId,
+	 * sortiert nach der ID. Die Kunden werden nur lesend geladen, damit der Persistenzkontext
+	 * keine Snapshots fuer Dirty Checking anlegt.
+	 */
+	public List<Kunde> findKundenAfterId(Long kundeId, int limit) {
+		final long afterId = kundeId == null ? 0L : kundeId.longValue();
+		final List<Kunde> kunden = em.createNamedQuery(Kunde.FIND_KUNDEN_AFTER_ID, Kunde.class)
+				                     .setParameter(Kunde.PARAM_KUNDE_ID, afterId)
+				                     .setMaxResults(limit)
+				                     .setHint(HINT_READ_ONLY, Boolean.TRUE)
+				                     .setHint(HINT_FETCH_SIZE, limit)
+				                     .getResultList();
 		return kunden;
 	}
+
+	/**
+	 * Keyset-Pagination wie findKundenAfterId(), aber mit den Assoziationen gemaess dem Fetch-Plan.
+	 * Zuerst werden die IDs der Seite ermittelt, damit die Fetch-Joins nicht mit setMaxResults() kollidieren.
+	 */
+	public List<Kunde> findKundenAfterId(Long kundeId, int limit, FetchPlan plan) {
+		final long afterId = kundeId == null ? 0L : kundeId.longValue();
+		final List<Long> ids = em.createQuery("SELECT k.id FROM Kunde k" + WHERE_AFTER_ID, Long.class)
+		                         .setParameter(Kunde.PARAM_KUNDE_ID, afterId)
+		                         .setMaxResults(limit)
+		                         .getResultList();
+		return findKundenByIds(ids, plan);
+	}
+
+	/**
+	 */
+	public List<Kunde> findKundenByNachname(String nachname, FetchType fetch, Locale locale) {
+		return findKundenByNachname(nachname, fetch.getPlan(), locale);
+	}
+
+	/**
+	 * Kunden zu einem Nachnamen mit den Assoziationen gemaess dem Fetch-Plan
+	 */
+	public List<Kunde> findKundenByNachname(String nachname, FetchPlan plan, Locale locale) {
+		validateNachname(nachname, locale);
+		return findKunden(WHERE_NACHNAME, Kunde.PARAM_KUNDE_NACHNAME, nachname, plan);
+	}
+
+	/**
+	 * Kunden zu IDs mit den Assoziationen gemaess dem Fetch-Plan. Mit "bestellungen" werden zuerst die
+	 * Bestellungen samt Positionen und Artikeln in einer Abfrage geladen, weil Hibernate die beiden Listen
+	 * bestellungen und bestellpositionen nicht in einer Abfrage per Fetch-Join lesen kann. Die Lieferungen
+	 * liest eine eigene Abfrage. Die Abfrage der Kunden findet die Bestellungen dann im Persistenzkontext vor
+	 * und liest neben den Bestellungen keine weitere Collection; die Rollen laedt Hibernate per Subselect.
+	 * @param ids IDs der Kunden
+	 * @param plan Fetch-Plan ohne Projektion
+	 * @return Kunden in der Reihenfolge der IDs
+	 */
+	public List<Kunde> findKundenByIds(List<Long> ids, FetchPlan plan) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<String> pfade = new ArrayList<>(BASIS_PFADE);
+		if (plan.isExpanded(PFAD_BESTELLUNGEN)) {
+			final SortedSet<String> bestellungPfade = new TreeSet<>(BestellungService.BASIS_PFADE);
+			bestellungPfade.addAll(plan.getUnterpfade(PFAD_BESTELLUNGEN));
+			final boolean mitLieferungen = bestellungPfade.remove(BestellungService.PFAD_LIEFERUNGEN);
+			findBestellungenByKundeIds(ids, bestellungPfade);
+			if (mitLieferungen) {
+				findBestellungenByKundeIds(ids, Collections.singletonList(BestellungService.PFAD_LIEFERUNGEN));
+			}
+			pfade.remove(PFAD_ROLLEN);
+			pfade.add(PFAD_BESTELLUNGEN);
+		}
+
+		final List<Kunde> kunden = em.createQuery("SELECT DISTINCT k FROM Kunde k"
+		                                          + FetchPlan.createFetchJoins(ALIAS, pfade) + WHERE_IDS,
+		                                          Kunde.class)
+		                             .setParameter(Kunde.PARAM_KUNDE_IDS, ids)
+		                             .getResultList();
+
+		final Map<Long, Kunde> kundenById = new HashMap<>();
+		for (Kunde kunde : kunden) {
+			kundenById.put(kunde.getId(), kunde);
+		}
+		final List<Kunde> sortierteKunden = new ArrayList<>(kunden.size());
+		for (Long id : ids) {
+			final Kunde kunde = kundenById.get(id);
+			if (kunde != null) {
+				sortierteKunden.add(kunde);
+			}
+		}
+		return sortierteKunden;
+	}
+
+	/**
+	 * Bestellungen der Kunden mit den Assoziationen per Fetch-Join in den Persistenzkontext laden
+	 */
+	private void findBestellungenByKundeIds(List<Long> ids, Collection<String> pfade) {
+		em.createQuery("SELECT DISTINCT b FROM Bestellung b" + FetchPlan.createFetchJoins("b", pfade)
+		               + " WHERE b.kunde.id IN :" + Kunde.PARAM_KUNDE_IDS, Bestellung.class)
+		  .setParameter(Kunde.PARAM_KUNDE_IDS, ids)
+		  .getResultList();
+	}
+
+	private List<Kunde> findKunden(String where, String paramName, Object paramWert, FetchPlan plan) {
+		if (plan.isExpanded(PFAD_BESTELLUNGEN)) {
+			// Zuerst die IDs, damit die Bestellungen separat geladen werden koennen
+			final TypedQuery<Long> query = em.createQuery("SELECT k.id FROM Kunde k" + where, Long.class);
+			if (paramName != null) {
+				query.setParameter(paramName, paramWert);
+			}
+			return findKundenByIds(query.getResultList(), plan);
+		}
+
+		final TypedQuery<Kunde> query = em.createQuery("SELECT DISTINCT k FROM Kunde k"
+		                                               + FetchPlan.createFetchJoins(ALIAS, BASIS_PFADE) + where,
+		                                               Kunde.class);
+		if (paramName != null) {
+			query.setParameter(paramName, paramWert);
+		}
+		return query.getResultList();
+	}
+
+	/**
+	 * Attribute eines Kunden als Projektion lesen, d.h. ohne Entity und ohne Assoziationen
+	 * @param plan Fetch-Plan mit "fields"
+	 * @return Attribute oder null, falls es keinen Kunden mit der ID gibt
+	 */
+	public Map<String, Object> findKundeFieldsById(Long id, FetchPlan plan, Locale locale) {
+		validateKundeId(id, locale);
+		final List<?> rows = em.createQuery(plan.createSelect(ALIAS) + " FROM Kunde k" + WHERE_ID)
+		                       .setParameter(Kunde.PARAM_KUNDE_ID, id)
+		                       .getResultList();
+		final List<Map<String, Object>> maps = plan.toMaps(rows);
+		return maps.isEmpty() ? null : maps.get(0);
+	}
+
+	/**
+	 * Attribute der Kunden zu einem Nachnamen als Projektion lesen
+	 * @param plan Fetch-Plan mit "fields"
+	 */
+	public List<Map<String, Object>> findKundenFieldsByNachname(String nachname, FetchPlan plan, Locale locale) {
+		validateNachname(nachname, locale);
+		final List<?> rows = em.createQuery(plan.createSelect(ALIAS) + " FROM Kunde k" + WHERE_NACHNAME)
+		                       .setParameter(Kunde.PARAM_KUNDE_NACHNAME, nachname)
+		                       .getResultList();
+		return plan.toMaps(rows);
+	}
+
+	/**
+	 * Keyset-Pagination wie findKundenAfterId(), aber nur mit den Attributen aus dem Fetch-Plan
+	 * @param plan Fetch-Plan mit "fields"
+	 */
+	public List<Map<String, Object>> findKundenFieldsAfterId(Long kundeId, int limit, FetchPlan plan) {
+		final long afterId = kundeId == null ? 0L : kundeId.longValue();
+		final List<?> rows = em.createQuery(plan.createSelect(ALIAS) + " FROM Kunde k" + WHERE_AFTER_ID)
+		                       .setParameter(Kunde.PARAM_KUNDE_ID, afterId)
+		                       .setMaxResults(limit)
+		                       .setHint(HINT_FETCH_SIZE, limit)
+		                       .getResultList();
+		return plan.toMaps(rows);
+	}
 	
 	private void validateNachname(String nachname, Locale locale) {
 		final Validator validator = validatorProvider.getValidator(locale);
@@ -172,40 +551,52 @@ public class KundeService implements Serializable {
 	}
 	
 	public List<String> findNachnamenByPrefix(String nachnamePrefix) {
-		final List<String> nachnamen = em.createNamedQuery(Kunde.FIND_NACHNAMEN_BY_PREFIX, String.class)
-				                         .setParameter(Kunde.PARAM_KUNDE_NACHNAME_PREFIX, nachnamePrefix + '%')
-				                         .getResultList();
-		return nachnamen;
+		return findNachnamenByPrefix(nachnamePrefix, 0);
+	}
+
+	/**
+	 * Nachnamen zu einem Praefix aus dem Index im Hauptspeicher, d.h. ohne Datenbankzugriff
+	 * @param nachnamePrefix Praefix des Nachnamens
+	 * @param max Maximale Anzahl an Nachnamen, 0 fuer unbegrenzt
+	 * @return Liste der Nachnamen ohne Duplikate
+	 */
+	public List<String> findNachnamenByPrefix(String nachnamePrefix, int max) {
+		return nachnameIndex.findNachnamenByPrefix(nachnamePrefix, max);
 	}
 
 	/**
 	 */
 	public Kunde findKundeById(Long id, FetchType fetch, Locale locale) {
+		return findKundeById(id, fetch.getPlan(), locale);
+	}
+
+	/**
+	 * Einen Kunden mit den Assoziationen gemaess dem Fetch-Plan laden
+	 * @param plan Fetch-Plan ohne Projektion
+	 */
+	public Kunde findKundeById(Long id, FetchPlan plan, Locale locale) {
 		validateKundeId(id, locale);
-		
-		Kunde kunde = null;
-		
-		try {
-			switch (fetch) {
-				case NUR_KUNDE:
-					kunde = em.find(Kunde.class, id);
-					break;
-				
-				case MIT_BESTELLUNGEN:
-					kunde = em.createNamedQuery(Kunde.FIND_KUNDE_BY_ID_FETCH_BESTELLUNGEN, Kunde.class)
-					          .setParameter(Kunde.PARAM_KUNDE_ID, id)
-							  .getSingleResult();
-					break;
-	
-				default:
-					kunde = em.find(Kunde.class, id);
-					break;
-			}
+		if (plan.getExpand().isEmpty()) {
+			return em.find(Kunde.class, id);
 		}
-		catch (NoResultException e) {
-			kunde = null;
+
+		final List<Kunde> kunden = findKundenByIds(Collections.singletonList(id), plan);
+		return kunden.isEmpty() ? null : kunden.get(0);
+	}
+	
+	/**
+	 * Pruefen, ob es einen Kunden gibt, ohne ihn zu laden, z.B. bevor eine Bestellung nur ueber den
+	 * Fremdschluessel mit ihm verknuepft wird
+	 */
+	public boolean existsKundeById(Long id, Locale locale) {
+		validateKundeId(id, locale);
+		if (em.getEntityManagerFactory().getCache().contains(Kunde.class, id)) {
+			return true;
 		}
-		return kunde;
+		return !em.createNamedQuery(Kunde.FIND_ID_BY_ID, Long.class)
+		          .setParameter(Kunde.PARAM_KUNDE_ID, id)
+		          .getResultList()
+		          .isEmpty();
 	}
 	
 	private void validateKundeId(Long id, Locale locale) {
@@ -271,6 +662,46 @@ public class KundeService implements Serializable {
 		return kunde;
 	}
 	
+	/**
+	 * Welche der Email-Adressen sind bereits vergeben? Eine Abfrage fuer alle Email-Adressen anstatt pro Kunde.
+	 * @param emails Zu pruefende Email-Adressen
+	 * @return Die bereits vorhandenen Email-Adressen
+	 */
+	public List<String> findEmailsByEmails(Collection<String> emails) {
+		if (emails == null || emails.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return em.createNamedQuery(Kunde.FIND_EMAILS_BY_EMAILS, String.class)
+		         .setParameter(Kunde.PARAM_KUNDE_EMAILS, emails)
+		         .getResultList();
+	}
+
+	/**
+	 * Bereits validierte Kunden mit verschluesselten Passwoertern in einer eigenen Transaktion speichern.
+	 * Die INSERT-Anweisungen werden als JDBC-Batches gesendet, danach wird der Persistence Context geleert.
+	 * Statt eines Events pro Kunde gibt es ein Event fuer den gesamten Abschnitt.
+	 * @param kunden Neue Kunden mit Adresse
+	 * @throws KundeImportException falls die Kunden nicht gespeichert werden koennen
+	 */
+	@Transactional
+	public void createKunden(List<Kunde> kunden) {
+		try {
+			for (Kunde kunde : kunden) {
+				kunde.setId(KEINE_ID);
+				em.persist(kunde);
+			}
+			em.flush();
+		}
+		catch (PersistenceException e) {
+			final String msg = isEmailConstraintViolation(e)
+			                   ? "Eine Email-Adresse wurde konkurrierend vergeben"
+			                   : "Die Kunden konnten nicht gespeichert werden";
+			throw new KundeImportException(msg, e);
+		}
+		em.clear();
+		eventImport.fire(new ImportierteKunden(kunden));
+	}
+	
 	private void validateKunde(Kunde kunde, Locale locale, Class<?>... groups) {
 		final Validator validator = validatorProvider.getValidator(locale);
 		final Set<ConstraintViolation<Kunde>> violations =
@@ -282,6 +713,11 @@ public class KundeService implements Serializable {
 	}
 	
 	/**
+	 * Kunden aktualisieren mit einem SELECT ueber den Primaerschluessel und einem UPDATE.
+	 * Die Eindeutigkeit der Email-Adresse wird nicht vorab abgefragt, sondern ueber die UNIQUE-Constraint
+	 * beim Flush geprueft. Die Version wird beim UPDATE geprueft.
+	 * Ist der Kunde nicht im Persistence Context, wird er ueber den Primaerschluessel gelesen, um
+	 * Existenz und Version zu pruefen; ein bereits verwalteter Kunde wird ohne weiteres SELECT geschrieben.
 	 */
 	public Kunde updateKunde(Kunde kunde,
             							Locale locale,
@@ -293,36 +729,146 @@ public class KundeService implements Serializable {
 		// Werden alle Constraints beim Modifizieren gewahrt?
 		validateKunde(kunde, locale, Default.class, PasswordGroup.class, IdGroup.class);
 
-		// kunde vom EntityManager trennen, weil anschliessend z.B. nach Id und Email gesucht wird
-		em.detach(kunde);
+		Kunde managedKunde = kunde;
+		if (!em.contains(kunde)) {
+			// Wurde das Objekt konkurrierend geloescht oder geaendert?
+			final Kunde tmp = em.find(Kunde.class, kunde.getId());
+			if (tmp == null) {
+				throw new ConcurrentDeletedException(kunde.getId());
+			}
+			if (tmp.getVersion() != kunde.getVersion()) {
+				throw new OptimisticLockException(tmp);
+			}
+			// merge verwendet das soeben gelesene Objekt, d.h. kein weiteres SELECT
+			managedKunde = em.merge(kunde);
+		}
 
-		// Wurde das Objekt konkurrierend geloescht?
-		Kunde tmp = findKundeById(kunde.getId(), FetchType.NUR_KUNDE, locale);
-		if (tmp == null) {
-			throw new ConcurrentDeletedException(kunde.getId());
+		// Password verschluesseln
+		if (geaendertPassword) {
+			passwortVerschluesseln(managedKunde);
 		}
-		em.detach(tmp);
 
-		// Gibt es ein anderes Objekt mit gleicher Email-Adresse?
-		tmp = findKundeByEmail(kunde.getEmail(), locale);
-		if (tmp != null) {
-			em.detach(tmp);
-			if (tmp.getId().longValue() != kunde.getId().longValue()) {
-				// anderes Objekt mit gleichem Attributwert fuer email
-				throw new EmailExistsException(kunde.getEmail());
+		try {
+			// UPDATE ... WHERE id = ? AND version = ?
+			em.flush();   // OptimisticLockException
+		}
+		catch (PersistenceException e) {
+			if (!(e instanceof OptimisticLockException) && isEmailConstraintViolation(e)) {
+				throw new EmailExistsException(managedKunde.getEmail());
 			}
+			throw e;
 		}
+		managedKunde.setPasswortWdh(managedKunde.getPasswort());
+		eventGeaendert.fire(managedKunde);
 
-		// Password verschluesseln
-		if (geaendertPassword) {
-			passwortVerschluesseln(kunde);
+		return managedKunde;
+	}
+
+	/**
+	 * Die Versionen fuer das ETag eines Kunden lesen, ohne den Kunden in den Persistenzkontext zu laden
+	 * @param id ID des Kunden
+	 * @return Version des Kunden und Version seiner Adresse oder null, falls es keinen Kunden mit der ID gibt
+	 */
+	public int[] findVersionenById(Long id) {
+		final List<Object[]> rows = em.createQuery("SELECT k.version, a.version FROM Kunde k LEFT JOIN k.adresse a"
+		                                           + WHERE_ID, Object[].class)
+		                              .setParameter(Kunde.PARAM_KUNDE_ID, id)
+		                              .getResultList();
+		if (rows.isEmpty()) {
+			return null;
 		}
+		final Object[] row = rows.get(0);
+		return new int[] { (Integer) row[0], row[1] == null ? 0 : (Integer) row[1] };
+	}
 
-		kunde = em.merge(kunde);   // OptimisticLockException
-		kunde.setPasswortWdh(kunde.getPasswort());
+	/**
+	 * JSON Merge Patch: nur die uebergebenen Attribute mit einem einzigen UPDATE-Statement aendern.
+	 * @param id ID des Kunden
+	 * @param version Erwartete Version
+	 * @param werte Attributname und neuer Wert, nur Attribute aus PATCH_ATTRIBUTE
+	 * Das UPDATE umgeht Bean Validation und die Entity Listener. Deshalb werden die Attribute vorab einzeln
+	 * und der geaenderte Kunde danach vollstaendig validiert; Version und Zeitstempel setzt das UPDATE selbst.
+	 * @param locale Locale fuer die Fehlermeldungen der Validierung
+	 * @return Der geaenderte Kunde mit der neuen Version oder null, falls er nicht existiert oder die Version
+	 *         nicht passt
+	 */
+	public Kunde patchKunde(Long id, int version, Map<String, Object> werte, Locale locale) {
+		// Werden alle Constraints der geaenderten Attribute gewahrt?
+		final Validator validator = validatorProvider.getValidator(locale);
+		final Set<ConstraintViolation<Kunde>> violations = new HashSet<>();
+		for (Map.Entry<String, Object> wert : werte.entrySet()) {
+			violations.addAll(validator.validateValue(Kunde.class, wert.getKey(), wert.getValue(), Default.class));
+		}
+		if (!violations.isEmpty()) {
+			throw new InvalidKundeException(id, violations);
+		}
+
+		final int anzahl;
+		try {
+			anzahl = MergePatch.update(em, Kunde.class, id, version, werte);
+		}
+		catch (PersistenceException e) {
+			if (isEmailConstraintViolation(e)) {
+				throw new EmailExistsException((String) werte.get(Kunde_.email.getName()));
+			}
+			throw e;
+		}
+		if (anzahl == 0) {
+			return null;
+		}
+
+		// Der Kunde wurde vor dem UPDATE nicht gelesen, d.h. er wird jetzt mit der neuen Version geladen.
+		// Constraints ueber mehrere Attribute und fuer die Adresse werden erst am ganzen Kunden geprueft;
+		// bei einer Verletzung wird das UPDATE zurueckgerollt.
+		final Kunde kunde = em.find(Kunde.class, id);
+		validateKunde(kunde, locale, Default.class);
 
+		if (werte.containsKey(Kunde_.nachname.getName()) || werte.containsKey(Kunde_.vorname.getName())) {
+			// Der Index der Nachnamen benoetigt den geaenderten Kunden, die Anzahl im Query-Cache haengt auch
+			// vom Filter ueber den Vornamen ab
+			eventGeaendert.fire(kunde);
+		}
 		return kunde;
-}
+	}
+
+	private static boolean isConstraintViolation(PersistenceException e) {
+		final SQLException sqlException = getSQLException(e);
+		if (sqlException == null) {
+			return false;
+		}
+		final String sqlState = sqlException.getSQLState();
+		return sqlState != null && sqlState.startsWith(SQL_STATE_INTEGRITY_CONSTRAINT_VIOLATION);
+	}
+
+	/**
+	 * Nur die UNIQUE-Constraint der Email-Adresse, nicht z.B. NOT NULL oder ein Fremdschluessel mit derselben
+	 * SQLSTATE-Klasse. Den Namen der Constraint liefert Hibernate nicht bei jedem Dialekt; er steht aber in der
+	 * Meldung der Datenbank, bei H2 z.B. als Teil des Indexnamens.
+	 */
+	private static boolean isEmailConstraintViolation(PersistenceException e) {
+		if (!isConstraintViolation(e)) {
+			return false;
+		}
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				final String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+				if (constraintName != null && constraintName.toUpperCase(Locale.ENGLISH).contains(UNIQUE_EMAIL)) {
+					return true;
+				}
+			}
+		}
+		final String msg = getSQLException(e).getMessage();
+		return msg != null && msg.toUpperCase(Locale.ENGLISH).contains(UNIQUE_EMAIL);
+	}
+
+	private static SQLException getSQLException(PersistenceException e) {
+		for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				return (SQLException) cause;
+			}
+		}
+		return null;
+	}
 
 	public void deleteKunde(Kunde kunde) {
 		if (kunde == null) {
@@ -333,27 +879,94 @@ public class KundeService implements Serializable {
 	}
 	
 	/**
+	 * Einen Kunden ohne Bestellungen loeschen. Ob es Bestellungen gibt, wird mit einer Abfrage auf den
+	 * Fremdschluessel geprueft, ohne die Bestellungen zu laden.
 	 */
 	public void deleteKundeById(Long kundeId) {
-		Kunde kunde;
-		try {
-			kunde = findKundeById(kundeId, FetchType.MIT_BESTELLUNGEN, Locale.getDefault());
-		}
-		catch (InvalidKundeIdException e) {
+		if (kundeId == null) {
 			return;
 		}
+		final Kunde kunde = em.find(Kunde.class, kundeId);
 		if (kunde == null) {
 			// Der Kunde existiert nicht oder ist bereits geloescht
 			return;
 		}
 
-		final boolean hasBestellungen = hasBestellungen(kunde);
+		final boolean hasBestellungen = !em.createNamedQuery(Bestellung.FIND_IDS_BY_KUNDEID, Long.class)
+		                                   .setParameter(Bestellung.PARAM_KUNDEID, kundeId)
+		                                   .setMaxResults(1)
+		                                   .getResultList()
+		                                   .isEmpty();
 		if (hasBestellungen) {
-			throw new KundeDeleteBestellungException(kunde);
+			// Die Anzahl wird nur fuer die Fehlermeldung ermittelt
+			final Long anzahl = em.createNamedQuery(Bestellung.COUNT_BESTELLUNGEN_BY_KUNDEID, Long.class)
+			                      .setParameter(Bestellung.PARAM_KUNDEID, kundeId)
+			                      .getSingleResult();
+			throw new KundeDeleteBestellungException(kundeId, anzahl.intValue());
 		}
 
 		// Kundendaten loeschen
 		em.remove(kunde);
+		eventGeloescht.fire(kunde);
+	}
+	
+	/**
+	 * Mehrere Kunden ohne Bestellungen mit Bulk-Statements loeschen. Welche Kunden geloescht werden koennen,
+	 * wird fuer alle IDs mit einer einzigen Abfrage entschieden. Adressen, Rollen und Dateien werden
+	 * ebenfalls geloescht.
+	 * @param kundeIds IDs der zu loeschenden Kunden
+	 * @return IDs der geloeschten Kunden; nicht vorhandene Kunden und Kunden mit Bestellungen fehlen
+	 */
+	public List<Long> deleteKundenByIds(Collection<Long> kundeIds) {
+		if (kundeIds == null || kundeIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<Object[]> rows = em.createNamedQuery(Kunde.FIND_IDS_UND_FILE_IDS_OHNE_BESTELLUNGEN,
+		                                                Object[].class)
+		                              .setParameter(Kunde.PARAM_KUNDE_IDS, kundeIds)
+		                              .getResultList();
+		if (rows.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final List<Long> ids = new ArrayList<>(rows.size());
+		final List<Long> fileIds = new ArrayList<>();
+		for (Object[] row : rows) {
+			ids.add((Long) row[0]);
+			if (row[1] != null) {
+				fileIds.add((Long) row[1]);
+			}
+		}
+
+		// Reihenfolge wegen der Fremdschluessel: Rollen und Adressen, dann Kunden, zuletzt Dateien
+		em.unwrap(Session.class)
+		  .createSQLQuery(Kunde.SQL_DELETE_ROLLEN_BY_KUNDE_IDS)
+		  .addSynchronizedQuerySpace(QUERY_SPACE_ROLLEN)
+		  .setParameterList(Kunde.PARAM_KUNDE_IDS, ids)
+		  .executeUpdate();
+		em.createNamedQuery(Adresse.DELETE_ADRESSEN_BY_KUNDE_IDS)
+		  .setParameter(Adresse.PARAM_KUNDE_IDS, ids)
+		  .executeUpdate();
+		try {
+			em.createNamedQuery(Kunde.DELETE_KUNDEN_BY_IDS)
+			  .setParameter(Kunde.PARAM_KUNDE_IDS, ids)
+			  .executeUpdate();
+		}
+		catch (PersistenceException e) {
+			// Seit der Abfrage wurde eine Bestellung angelegt
+			if (isConstraintViolation(e)) {
+				throw new KundeDeleteBestellungException(ids, e);
+			}
+			throw e;
+		}
+		if (!fileIds.isEmpty()) {
+			em.createNamedQuery(File.DELETE_FILES_BY_IDS)
+			  .setParameter(File.PARAM_IDS, fileIds)
+			  .executeUpdate();
+		}
+
+		eventGeloeschtBulk.fire(new GeloeschteKunden(ids));
+		return ids;
 	}
 
 	/**
@@ -365,18 +978,18 @@ public class KundeService implements Serializable {
 		return kunden;
 	}
 	
+	/**
+	 * Der Username ist die ID des Kunden, d.h. die Suche erfolgt ueber den Primaerschluessel.
+	 * Nur die Dezimaldarstellung der ID ohne Vorzeichen und fuehrende Nullen ist ein Username, d.h. "012"
+	 * oder "+12" liefern null, obwohl sie als Zahl 12 waeren.
+	 */
 	public Kunde findKundeByUserName(String userName) {
-		Kunde kunde;
-		try {
-			kunde = em.createNamedQuery(Kunde.FIND_KUNDE_BY_USERNAME, Kunde.class)
-					  .setParameter(Kunde.PARAM_KUNDE_USERNAME, userName)
-					  .getSingleResult();
-		}
-		catch (NoResultException e) {
+		final Long id = IdPrefix.parse(userName);
+		if (id == null) {
 			return null;
 		}
 		
-		return kunde;
+		return em.find(Kunde.class, id);
 	}
 	
 	/**
@@ -421,22 +1034,6 @@ public class KundeService implements Serializable {
 		return kunden;
 	}
 	
-	private boolean hasBestellungen(Kunde kunde) {
-		logger.debugf("hasBestellungen BEGINN: %s", kunde);
-		
-		boolean result = false;
-		
-		// Gibt es den Kunden und hat er mehr als eine Bestellung?
-		// Bestellungen nachladen wegen Hibernate-Caching
-		if (kunde != null && kunde.getBestellungen() != null && !kunde.getBestellungen().isEmpty()) {
-			result = true;
-		}
-		
-		logger.debugf("hasBestellungen ENDE: %s", result);
-		return result;
-	}
-
-	
 	private void passwortVerschluesseln(Kunde kunde) {
 		logger.debugf("passwordVerschluesseln BEGINN: %s", kunde);
 
@@ -449,42 +1046,91 @@ public class KundeService implements Serializable {
 	}
 	
 	/**
-	 * Ohne MIME Type fuer Upload bei RESTful WS
+	 * Ohne MIME Type fuer Upload bei RESTful WS. Der MIME-Type wird aus den ersten Bytes ermittelt.
+	 * @param inputStream Request-Body, der vom Aufrufer geschlossen wird
+	 * @param groesse Angegebene Groesse in Bytes oder null, falls unbekannt
+	 * @throws IOException falls der Inhalt nicht gelesen oder gespeichert werden kann
 	 */
-	public void setFile(Long kundeId, byte[] bytes, Locale locale) {
+	public void setFile(Long kundeId, InputStream inputStream, Long groesse, Locale locale) throws IOException {
 		final Kunde kunde = findKundeById(kundeId, FetchType.NUR_KUNDE, locale);
 		if (kunde == null) {
 			return;
 		}
-		final MimeType mimeType = fileHelper.getMimeType(bytes);
-		setFile(kunde, bytes, mimeType);
+		setFile(kunde, inputStream, groesse);
 	}
 	
 	/**
-	 * Mit MIME-Type fuer Upload bei Webseiten
+	 * Fuer einen fortsetzbaren Upload, dessen Inhalt bereits im BlobStore gespeichert ist. Der MIME-Type wird
+	 * aus den ersten Bytes ermittelt, ohne den ganzen Inhalt zu lesen.
+	 * @param hash Hashwert des Inhalts
+	 * @throws IOException falls der Inhalt nicht gelesen werden kann
 	 */
-	public void setFile(Kunde kunde, byte[] bytes, String mimeTypeStr) {
-		final MimeType mimeType = MimeType.get(mimeTypeStr);
-		setFile(kunde, bytes, mimeType);
+	public void setFile(Long kundeId, String hash, Locale locale) throws IOException {
+		final Kunde kunde = findKundeById(kundeId, FetchType.NUR_KUNDE, locale);
+		if (kunde == null) {
+			return;
+		}
+		final MimeType mimeType;
+		try (InputStream in = new BufferedInputStream(Channels.newInputStream(blobStore.open(hash)))) {
+			mimeType = fileHelper.getMimeType(in);
+		}
+		if (mimeType == null) {
+			throw new NoMimeTypeException();
+		}
+		final long maxGroesse = mimeType.getMultimediaType().getMaxGroesse();
+		if (blobStore.getGroesse(hash) > maxGroesse) {
+			throw new FileTooLargeException(maxGroesse);
+		}
+		setFile(kunde, hash, mimeType);
 	}
 	
-	private void setFile(Kunde kunde, byte[] bytes, MimeType mimeType) {
+	/**
+	 * Fuer Upload bei Webseiten. Wie bei RESTful WS wird der MIME-Type aus den ersten Bytes ermittelt und
+	 * nicht der Content-Type des Browsers verwendet.
+	 * @param inputStream Inhalt der Datei, der vom Aufrufer geschlossen wird
+	 * @param groesse Angegebene Groesse in Bytes oder null, falls unbekannt
+	 * @throws IOException falls der Inhalt nicht gelesen oder gespeichert werden kann
+	 */
+	public void setFile(Kunde kunde, InputStream inputStream, Long groesse) throws IOException {
+		final InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+		final MimeType mimeType = fileHelper.getMimeType(in);
+		setFile(kunde, in, groesse, mimeType);
+	}
+	
+	private void setFile(Kunde kunde, InputStream inputStream, Long groesse, MimeType mimeType)
+		throws IOException {
+		// Nicht unterstuetzte oder zu grosse Dateien ablehnen, bevor der Request-Body gelesen wird
 		if (mimeType == null) {
 			throw new NoMimeTypeException();
 		}
+		final long maxGroesse = mimeType.getMultimediaType().getMaxGroesse();
+		if (groesse != null && groesse > maxGroesse) {
+			throw new FileTooLargeException(maxGroesse);
+		}
 		
+		// Der Inhalt wird vor dem Commit gespeichert. Bei einem Rollback bleibt er ohne File zurueck und wird
+		// spaeter von FileJob geloescht.
+		// Ohne bzw. mit falscher Content-Length wird beim Lesen abgebrochen
+		final String hash = blobStore.put(FileHelper.begrenzen(inputStream, maxGroesse));
+		setFile(kunde, hash, mimeType);
+	}
+	
+	private void setFile(Kunde kunde, String hash, MimeType mimeType) throws IOException {
 		final String filename = fileHelper.getFilename(kunde.getClass(), kunde.getId(), mimeType);
 		
 		// Gibt es noch kein (Multimedia-) File
 		File file = kunde.getFile();
 		if (file == null) {
-			file = new File(bytes, filename, mimeType);
+			file = new File(hash, blobStore.getGroesse(hash), filename, mimeType);
 			kunde.setFile(file);
 			em.persist(file);
 		}
 		else {
-			file.set(bytes, filename, mimeType);
+			file.set(hash, blobStore.getGroesse(hash), filename, mimeType);
 			em.merge(file);
 		}
+		
+		// Bis die Vorschaubilder erzeugt sind, wird das Original geliefert
+		vorschauService.erzeugen(hash, mimeType);
 	}
 }
@@ -0,0 +1,27 @@
+package de.shop.kundenverwaltung.service;
+
+/**
+ * Event mit der Zusammenfassung eines Imports von Kunden anstatt eines Events pro Kunde
+ */
+public class KundenImport {
+	private final int anzahlErzeugt;
+	private final int anzahlAbgelehnt;
+
+	public KundenImport(int anzahlErzeugt, int anzahlAbgelehnt) {
+		this.anzahlErzeugt = anzahlErzeugt;
+		this.anzahlAbgelehnt = anzahlAbgelehnt;
+	}
+
+	public int getAnzahlErzeugt() {
+		return anzahlErzeugt;
+	}
+
+	public int getAnzahlAbgelehnt() {
+		return anzahlAbgelehnt;
+	}
+
+	@Override
+	public String toString() {
+		return "KundenImport [anzahlErzeugt=" + anzahlErzeugt + ", anzahlAbgelehnt=" + anzahlAbgelehnt + "]";
+	}
+}
@@ -0,0 +1,208 @@
+package de.shop.kundenverwaltung.service;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.SUPPORTS;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.jboss.logging.Logger;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.util.Log;
+
+/**
+ * Index der Nachnamen im Hauptspeicher fuer die Autovervollstaendigung.
+ * Die Nachnamen sind nach ihrer Schreibweise in Grossbuchstaben sortiert, so dass eine Suche nach einem Praefix
+ * ohne Datenbankzugriff die ersten N Treffer liefert. Der Index wird beim Deployment geladen und ueber die
+ * CDI-Events zu neuen, geaenderten und geloeschten Kunden nach dem Commit der Transaktion aktualisiert.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@Log
+public class NachnameIndex {
+	// Trennt im Schluessel den Nachnamen in Grossbuchstaben vom Original, z.B. "MUELLER\0Mueller"
+	private static final char TRENNER = '\0';
+
+	// Grobe Schaetzung des Speicherbedarfs: Knoten der Skip-Liste, Schluessel und Eintrag je Nachname
+	// sowie HashMap-Eintrag und Long je Kunde; Strings mit 2 Bytes je Zeichen
+	private static final long BYTES_PRO_NACHNAME = 160L;
+	private static final long BYTES_PRO_KUNDE = 48L;
+	private static final long BYTES_PRO_ZEICHEN = 2L;
+
+	private static final String STAT_NACHNAMEN = "nachnamen";
+	private static final String STAT_KUNDEN = "kunden";
+	private static final String STAT_BYTES = "geschaetzteBytes";
+	private static final String STAT_ABFRAGEN = "abfragen";
+	private static final String STAT_DAUER_NANOS = "mittlereDauerNanos";
+
+	private static final class Eintrag {
+		private final String nachname;
+		private int anzahlKunden;
+
+		private Eintrag(String nachname) {
+			this.nachname = nachname;
+		}
+	}
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private Logger logger;
+
+	// Lesende Zugriffe ohne Sperre, schreibende Zugriffe sind synchronized
+	private final ConcurrentSkipListMap<String, Eintrag> eintraege = new ConcurrentSkipListMap<>();
+	private final Map<Long, String> nachnameByKundeId = new HashMap<>();
+	private volatile long anzahlZeichen;
+
+	private final AtomicLong anzahlAbfragen = new AtomicLong();
+	private final AtomicLong summeDauerNanos = new AtomicLong();
+
+	@PostConstruct
+	private synchronized void postConstruct() {
+		final List<Object[]> rows = em.createNamedQuery(Kunde.FIND_IDS_UND_NACHNAMEN, Object[].class)
+		                              .getResultList();
+		for (Object[] row : rows) {
+			add((Long) row[0], (String) row[1]);
+		}
+		logger.infof("Nachname-Index mit %d Nachnamen von %d Kunden geladen",
+		             eintraege.size(), nachnameByKundeId.size());
+	}
+
+	/**
+	 * Die ersten Nachnamen zu einem Praefix, unabhaengig von Gross- und Kleinschreibung
+	 * @param nachnamePrefix Praefix des Nachnamens
+	 * @param max Maximale Anzahl an Nachnamen, 0 fuer unbegrenzt
+	 * @return Liste der Nachnamen ohne Duplikate
+	 */
+	public List<String> findNachnamenByPrefix(String nachnamePrefix, int max) {
+		final long start = System.nanoTime();
+		final String prefix = normalisieren(nachnamePrefix == null ? "" : nachnamePrefix);
+
+		final ConcurrentNavigableMap<String, Eintrag> tail = eintraege.tailMap(prefix);
+		final List<String> nachnamen = max > 0 ? new ArrayList<String>(max) : new ArrayList<String>();
+		for (Map.Entry<String, Eintrag> entry : tail.entrySet()) {
+			if (!entry.getKey().startsWith(prefix) || (max > 0 && nachnamen.size() >= max)) {
+				break;
+			}
+			nachnamen.add(entry.getValue().nachname);
+		}
+
+		anzahlAbfragen.incrementAndGet();
+		summeDauerNanos.addAndGet(System.nanoTime() - start);
+		return nachnamen;
+	}
+
+	/**
+	 * Kennzahlen zum Index: Anzahl Nachnamen und Kunden, geschaetzter Speicherbedarf in Bytes,
+	 * Anzahl der Abfragen und deren mittlere Dauer in Nanosekunden
+	 * @return Kennzahlen in fester Reihenfolge
+	 */
+	public Map<String, Number> getStatistik() {
+		final Map<String, Number> statistik = new LinkedHashMap<>();
+		final int anzahlNachnamen = eintraege.size();
+		final int anzahlKunden;
+		synchronized (this) {
+			anzahlKunden = nachnameByKundeId.size();
+		}
+		statistik.put(STAT_NACHNAMEN, anzahlNachnamen);
+		statistik.put(STAT_KUNDEN, anzahlKunden);
+		statistik.put(STAT_BYTES, anzahlNachnamen * BYTES_PRO_NACHNAME + anzahlKunden * BYTES_PRO_KUNDE
+		                          + anzahlZeichen * BYTES_PRO_ZEICHEN);
+
+		final long abfragen = anzahlAbfragen.get();
+		statistik.put(STAT_ABFRAGEN, abfragen);
+		statistik.put(STAT_DAUER_NANOS, abfragen == 0 ? 0L : summeDauerNanos.get() / abfragen);
+		return Collections.unmodifiableMap(statistik);
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public synchronized void onCreateKunde(@Observes(during = AFTER_SUCCESS) @NeuerKunde Kunde kunde) {
+		add(kunde.getId(), kunde.getNachname());
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public synchronized void onImportKunden(@Observes(during = AFTER_SUCCESS) @NeuerKunde ImportierteKunden kunden) {
+		for (Kunde kunde : kunden.getKunden()) {
+			add(kunde.getId(), kunde.getNachname());
+		}
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public synchronized void onUpdateKunde(@Observes(during = AFTER_SUCCESS) @GeaenderterKunde Kunde kunde) {
+		remove(kunde.getId());
+		add(kunde.getId(), kunde.getNachname());
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public synchronized void onDeleteKunde(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde Kunde kunde) {
+		remove(kunde.getId());
+	}
+
+	@TransactionAttribute(SUPPORTS)
+	public synchronized void onDeleteKunden(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde
+	                                        GeloeschteKunden kunden) {
+		for (Long kundeId : kunden.getKundeIds()) {
+			remove(kundeId);
+		}
+	}
+
+	private void add(Long kundeId, String nachname) {
+		if (kundeId == null || nachname == null) {
+			return;
+		}
+		nachnameByKundeId.put(kundeId, nachname);
+
+		final String key = normalisieren(nachname) + TRENNER + nachname;
+		Eintrag eintrag = eintraege.get(key);
+		if (eintrag == null) {
+			eintrag = new Eintrag(nachname);
+			eintraege.put(key, eintrag);
+			anzahlZeichen += key.length() + nachname.length();
+		}
+		eintrag.anzahlKunden++;
+	}
+
+	private void remove(Long kundeId) {
+		final String nachname = nachnameByKundeId.remove(kundeId);
+		if (nachname == null) {
+			return;
+		}
+
+		final String key = normalisieren(nachname) + TRENNER + nachname;
+		final Eintrag eintrag = eintraege.get(key);
+		if (eintrag == null) {
+			return;
+		}
+		eintrag.anzahlKunden--;
+		if (eintrag.anzahlKunden <= 0) {
+			eintraege.remove(key);
+			anzahlZeichen -= key.length() + nachname.length();
+		}
+	}
+
+	private static String normalisieren(String str) {
+		return str.toUpperCase(Locale.ROOT);
+	}
+}
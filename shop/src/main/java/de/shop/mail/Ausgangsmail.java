@@ -0,0 +1,161 @@
+package de.shop.mail;
+
+import static de.shop.util.Constants.ALLOCATION_SIZE;
+import static de.shop.util.Constants.KEINE_ID;
+import static de.shop.util.Constants.SEQUENCE_START;
+import static javax.persistence.GenerationType.SEQUENCE;
+import static javax.persistence.TemporalType.TIMESTAMP;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.PrePersist;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Temporal;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Email im Postausgang (Transactional Outbox): sie wird in derselben Transaktion wie z.B. die Bestellung
+ * gespeichert und erst nach dem Commit von MailAusgangService versendet. Nach dem Versand wird sie geloescht.
+ * Ist "naechsterVersuch" null, wurde der Versand nach zu vielen Fehlversuchen aufgegeben.
+ */
+@Entity
+@NamedQueries({
+	@NamedQuery(name  = Ausgangsmail.FIND_FAELLIGE,
+	            query = "SELECT m"
+	                  + " FROM Ausgangsmail m"
+	                  + " WHERE m.naechsterVersuch <= :" + Ausgangsmail.PARAM_JETZT
+	                  + " ORDER BY m.naechsterVersuch"),
+	@NamedQuery(name  = Ausgangsmail.FIND_ANZAHL_UND_AELTESTE,
+	            query = "SELECT COUNT(m), MIN(m.erzeugt)"
+	                  + " FROM Ausgangsmail m"
+	                  + " WHERE m.naechsterVersuch IS NOT NULL"),
+	@NamedQuery(name  = Ausgangsmail.FIND_ANZAHL_AUFGEGEBEN,
+	            query = "SELECT COUNT(m)"
+	                  + " FROM Ausgangsmail m"
+	                  + " WHERE m.naechsterVersuch IS NULL"),
+	@NamedQuery(name  = Ausgangsmail.DELETE_BY_IDS,
+	            query = "DELETE FROM Ausgangsmail m"
+	                  + " WHERE m.id IN :" + Ausgangsmail.PARAM_IDS)
+})
+public class Ausgangsmail implements Serializable {
+	private static final long serialVersionUID = -6013957318563072211L;
+
+	private static final String PREFIX = "Ausgangsmail.";
+	public static final String FIND_FAELLIGE = PREFIX + "findFaellige";
+	public static final String FIND_ANZAHL_UND_AELTESTE = PREFIX + "findAnzahlUndAelteste";
+	public static final String FIND_ANZAHL_AUFGEGEBEN = PREFIX + "findAnzahlAufgegeben";
+	public static final String DELETE_BY_IDS = PREFIX + "deleteByIds";
+	public static final String PARAM_JETZT = "jetzt";
+	public static final String PARAM_IDS = "ids";
+
+	public static final int ADRESSE_LENGTH_MAX = 128;
+	public static final int BETREFF_LENGTH_MAX = 255;
+
+	@Id
+	@GeneratedValue(strategy = SEQUENCE, generator = "ausgangsmailGenerator")
+	@SequenceGenerator(name = "ausgangsmailGenerator", sequenceName = "ausgangsmail_seq",
+	                   initialValue = SEQUENCE_START, allocationSize = ALLOCATION_SIZE)
+	@Column(nullable = false, updatable = false)
+	private Long id = KEINE_ID;
+
+	@Column(length = ADRESSE_LENGTH_MAX, nullable = false)
+	private String empfaengerMail;
+
+	@Column(length = ADRESSE_LENGTH_MAX)
+	private String empfaengerName;
+
+	@Column(length = BETREFF_LENGTH_MAX, nullable = false)
+	private String betreff;
+
+	@Lob
+	@Column(nullable = false)
+	private String text;
+
+	@Column(nullable = false, updatable = false)
+	@Temporal(TIMESTAMP)
+	private Date erzeugt;
+
+	// Der Dispatcher sucht per Index nur die faelligen Emails
+	@Temporal(TIMESTAMP)
+	@Index(name = "ausgangsmail_naechster_versuch_idx")
+	private Date naechsterVersuch;
+
+	@Basic(optional = false)
+	private int versuche;
+
+	public Ausgangsmail() {
+		super();
+	}
+
+	public Ausgangsmail(String empfaengerMail, String empfaengerName, String betreff, String text) {
+		super();
+		this.empfaengerMail = empfaengerMail;
+		this.empfaengerName = empfaengerName;
+		this.betreff = betreff;
+		this.text = text;
+	}
+
+	@PrePersist
+	protected void prePersist() {
+		erzeugt = new Date();
+		if (naechsterVersuch == null) {
+			naechsterVersuch = erzeugt;
+		}
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getEmpfaengerMail() {
+		return empfaengerMail;
+	}
+
+	public String getEmpfaengerName() {
+		return empfaengerName;
+	}
+
+	public String getBetreff() {
+		return betreff;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public Date getErzeugt() {
+		return erzeugt == null ? null : (Date) erzeugt.clone();
+	}
+
+	public Date getNaechsterVersuch() {
+		return naechsterVersuch == null ? null : (Date) naechsterVersuch.clone();
+	}
+
+	public void setNaechsterVersuch(Date naechsterVersuch) {
+		this.naechsterVersuch = naechsterVersuch == null ? null : (Date) naechsterVersuch.clone();
+	}
+
+	public int getVersuche() {
+		return versuche;
+	}
+
+	public void setVersuche(int versuche) {
+		this.versuche = versuche;
+	}
+
+	@Override
+	public String toString() {
+		return "Ausgangsmail [id=" + id + ", empfaengerMail=" + empfaengerMail + ", betreff=" + betreff
+		       + ", erzeugt=" + erzeugt + ", naechsterVersuch=" + naechsterVersuch + ", versuche=" + versuche + "]";
+	}
+}
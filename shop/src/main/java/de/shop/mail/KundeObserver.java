@@ -23,6 +23,7 @@ import org.jboss.logging.Logger;
 
 import de.shop.kundenverwaltung.domain.Kunde;
 import de.shop.kundenverwaltung.domain.Adresse;
+import de.shop.kundenverwaltung.service.KundenImport;
 import de.shop.kundenverwaltung.service.NeuerKunde;
 import de.shop.util.Config;
 import de.shop.util.Log;
@@ -108,4 +109,31 @@ public class KundeObserver {
 			return;
 		}
 	}
+	
+	/**
+	 * Eine einzige Email mit der Zusammenfassung eines Imports anstatt einer Email pro Kunde
+	 */
+	@Asynchronous
+	@TransactionAttribute(SUPPORTS)
+	public void onImportKunden(@Observes @NeuerKunde KundenImport kundenImport) {
+		if (absenderMail == null || empfaengerMail == null) {
+			return;
+		}
+		
+		final MimeMessage message = new MimeMessage(mailSession);
+		try {
+			message.setFrom(new InternetAddress(absenderMail, absenderName));
+			message.setRecipient(RecipientType.TO, new InternetAddress(empfaengerMail, empfaengerName));
+			message.setSubject("Import von Kunden");
+			
+			final String text = "<p><b>" + kundenImport.getAnzahlErzeugt() + " neue Kunden</b></p>" + NEWLINE
+			                    + "<p>" + kundenImport.getAnzahlAbgelehnt() + " Datensaetze abgelehnt</p>" + NEWLINE;
+			message.setContent(text, "text/html");
+			Transport.send(message);
+		}
+		catch (MessagingException | UnsupportedEncodingException e) {
+			logger.error(e.getMessage());
+			return;
+		}
+	}
 }
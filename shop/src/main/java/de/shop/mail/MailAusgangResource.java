@@ -0,0 +1,36 @@
+package de.shop.mail;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import de.shop.util.Log;
+
+/**
+ * Ueberwachung des Postausgangs, nur fuer die Rolle admin
+ */
+@Path("/admin/mail")
+@Produces(APPLICATION_JSON)
+@Consumes
+@RequestScoped
+@Log
+public class MailAusgangResource {
+	@Inject
+	private MailAusgangService mailAusgangService;
+
+	/**
+	 * Mit der URL /admin/mail den Rueckstand und die Latenz des Versands ermitteln
+	 * @return Kennzahlen des Postausgangs
+	 */
+	@GET
+	public Map<String, Number> getStatistik() {
+		return mailAusgangService.getStatistik();
+	}
+}
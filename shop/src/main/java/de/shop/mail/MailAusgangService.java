@@ -0,0 +1,302 @@
+package de.shop.mail;
+
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.transaction.Status.STATUS_NO_TRANSACTION;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.inject.Inject;
+import javax.mail.Message.RecipientType;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.UserTransaction;
+
+import org.jboss.logging.Logger;
+
+import de.shop.util.Config;
+import de.shop.util.Log;
+
+/**
+ * Versand der Emails aus dem Postausgang im Hintergrund. Alle paar Sekunden werden die faelligen Emails in
+ * Batches mit jeweils bis zu BATCH_GROESSE Emails gelesen und ueber eine einzige SMTP-Verbindung versendet.
+ * Danach werden die versendeten Emails in einer Transaktion geloescht und fuer die fehlgeschlagenen der naechste
+ * Versuch mit exponentiellem Backoff eingetragen; nach MAX_VERSUCHE Versuchen wird der Versand aufgegeben.
+ * Scheitert das Loeschen, wird eine Email erneut versendet (mindestens einmal statt hoechstens einmal).
+ */
+@Singleton
+@ConcurrencyManagement(BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+@Log
+public class MailAusgangService {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int BATCH_GROESSE = 50;
+	private static final int MAX_VERSUCHE = 10;
+	private static final long BACKOFF_BASIS_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final long BACKOFF_MAX_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final String STAT_WARTEND = "wartend";
+	private static final String STAT_AELTESTE_SEKUNDEN = "aeltesteSekunden";
+	private static final String STAT_AUFGEGEBEN = "aufgegeben";
+	private static final String STAT_VERSENDET = "versendet";
+	private static final String STAT_FEHLVERSUCHE = "fehlversuche";
+	private static final String STAT_LATENZ_MITTEL_MS = "latenzMittelMs";
+	private static final String STAT_LATENZ_MAX_MS = "latenzMaxMs";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Resource
+	private UserTransaction trans;
+
+	@Resource(lookup = "java:jboss/mail/Default")
+	private Session mailSession;
+
+	@Inject
+	private Config config;
+
+	private final AtomicBoolean versendetGerade = new AtomicBoolean();
+
+	// Zaehler seit dem Start; die Latenz ist die Zeit vom Commit der Bestellung bis zur Annahme durch den Server
+	private final AtomicLong anzahlVersendet = new AtomicLong();
+	private final AtomicLong anzahlFehlversuche = new AtomicLong();
+	private final AtomicLong latenzSumme = new AtomicLong();
+	private final AtomicLong latenzMax = new AtomicLong();
+
+	public MailAusgangService() {
+		super();
+	}
+
+	/**
+	 * Ohne EJB-Container, z.B. fuer Tests
+	 */
+	MailAusgangService(Session mailSession, Config config) {
+		super();
+		this.mailSession = mailSession;
+		this.config = config;
+	}
+
+	/**
+	 * Die faelligen Emails versenden. Laeuft der Versand noch vom vorherigen Aufruf, wird dieser ausgelassen.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/2", persistent = false)
+	public void versenden() {
+		if (config.getAbsenderMail() == null || !versendetGerade.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			List<Ausgangsmail> mails;
+			do {
+				mails = em.createNamedQuery(Ausgangsmail.FIND_FAELLIGE, Ausgangsmail.class)
+				          .setParameter(Ausgangsmail.PARAM_JETZT, new Date())
+				          .setMaxResults(BATCH_GROESSE)
+				          .getResultList();
+				if (mails.isEmpty() || !versenden(mails)) {
+					break;
+				}
+			} while (mails.size() == BATCH_GROESSE);
+		}
+		finally {
+			versendetGerade.set(false);
+		}
+	}
+
+	/**
+	 * Kennzahlen fuer die Ueberwachung des Postausgangs
+	 * @return Anzahl der wartenden Emails, Alter der aeltesten in Sekunden, Anzahl der aufgegebenen sowie seit
+	 *         dem Start versendete Emails, Fehlversuche und die mittlere bzw. maximale Latenz in Millisekunden
+	 */
+	public Map<String, Number> getStatistik() {
+		final Object[] wartend = em.createNamedQuery(Ausgangsmail.FIND_ANZAHL_UND_AELTESTE, Object[].class)
+		                           .getSingleResult();
+		final Long aufgegeben = em.createNamedQuery(Ausgangsmail.FIND_ANZAHL_AUFGEGEBEN, Long.class)
+		                          .getSingleResult();
+		final Date aelteste = (Date) wartend[1];
+		final long versendet = anzahlVersendet.get();
+
+		final Map<String, Number> statistik = new LinkedHashMap<>();
+		statistik.put(STAT_WARTEND, (Long) wartend[0]);
+		statistik.put(STAT_AELTESTE_SEKUNDEN, aelteste == null
+		                                      ? 0L
+		                                      : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()
+		                                                                        - aelteste.getTime()));
+		statistik.put(STAT_AUFGEGEBEN, aufgegeben);
+		statistik.put(STAT_VERSENDET, versendet);
+		statistik.put(STAT_FEHLVERSUCHE, anzahlFehlversuche.get());
+		statistik.put(STAT_LATENZ_MITTEL_MS, versendet == 0 ? 0L : latenzSumme.get() / versendet);
+		statistik.put(STAT_LATENZ_MAX_MS, latenzMax.get());
+		return Collections.unmodifiableMap(statistik);
+	}
+
+	/**
+	 * Einen Batch ueber eine SMTP-Verbindung versenden. Lehnt der Server nur einzelne Empfaenger ab, werden nur
+	 * diese Emails erneut versucht; bricht die Verbindung ab, alle noch nicht versendeten.
+	 * @return false, falls der Server nicht erreichbar war oder das Ergebnis nicht gespeichert werden konnte
+	 */
+	private boolean versenden(List<Ausgangsmail> mails) {
+		final List<Long> versendet = new ArrayList<>(mails.size());
+		final List<Ausgangsmail> fehlgeschlagen = new ArrayList<>();
+		final int anzahl = senden(mails, versendet, fehlgeschlagen);
+		return speichern(versendet, fehlgeschlagen) && anzahl == mails.size();
+	}
+
+	/**
+	 * Die Emails ueber eine SMTP-Verbindung senden, ohne das Ergebnis zu speichern
+	 * @param versendet IDs der angenommenen Emails, wird ergaenzt
+	 * @param fehlgeschlagen Abgelehnte und wegen eines Abbruchs nicht gesendete Emails, wird ergaenzt
+	 * @return Anzahl der Emails vor dem Abbruch der Verbindung, ohne Abbruch also alle
+	 */
+	int senden(List<Ausgangsmail> mails, List<Long> versendet, List<Ausgangsmail> fehlgeschlagen) {
+		Transport transport = null;
+		int i = 0;
+		try {
+			transport = mailSession.getTransport();
+			transport.connect();
+			while (i < mails.size()) {
+				final Ausgangsmail mail = mails.get(i);
+				try {
+					final MimeMessage message = createMessage(mail);
+					transport.sendMessage(message, message.getAllRecipients());
+					versendet.add(mail.getId());
+					messen(mail);
+				}
+				catch (SendFailedException | AddressException | UnsupportedEncodingException e) {
+					LOGGER.warnf("Email %d nicht versendet: %s", mail.getId(), e.getMessage());
+					fehlgeschlagen.add(mail);
+				}
+				i++;
+			}
+		}
+		catch (MessagingException e) {
+			LOGGER.warnf("Versand von %d Emails abgebrochen: %s", mails.size() - i, e.getMessage());
+			fehlgeschlagen.addAll(mails.subList(i, mails.size()));
+		}
+		finally {
+			schliessen(transport);
+		}
+		return i;
+	}
+
+	private MimeMessage createMessage(Ausgangsmail mail) throws MessagingException, UnsupportedEncodingException {
+		final MimeMessage message = new MimeMessage(mailSession);
+		message.setFrom(new InternetAddress(config.getAbsenderMail(), config.getAbsenderName()));
+		message.setRecipient(RecipientType.TO, new InternetAddress(mail.getEmpfaengerMail(),
+		                                                           mail.getEmpfaengerName()));
+		message.setSubject(mail.getBetreff());
+		message.setText(mail.getText());
+		return message;
+	}
+
+	private void messen(Ausgangsmail mail) {
+		final long latenz = System.currentTimeMillis() - mail.getErzeugt().getTime();
+		anzahlVersendet.incrementAndGet();
+		latenzSumme.addAndGet(latenz);
+		// Nur der Dispatcher schreibt, deshalb genuegt get() und set()
+		if (latenz > latenzMax.get()) {
+			latenzMax.set(latenz);
+		}
+	}
+
+	private void schliessen(Transport transport) {
+		if (transport == null || !transport.isConnected()) {
+			return;
+		}
+		try {
+			transport.close();
+		}
+		catch (MessagingException e) {
+			LOGGER.debugf("SMTP-Verbindung nicht geschlossen: %s", e.getMessage());
+		}
+	}
+
+	/**
+	 * Versendete Emails loeschen und fuer fehlgeschlagene den naechsten Versuch eintragen
+	 * @return false, falls die Transaktion gescheitert ist
+	 */
+	private boolean speichern(List<Long> versendet, List<Ausgangsmail> fehlgeschlagen) {
+		if (versendet.isEmpty() && fehlgeschlagen.isEmpty()) {
+			return true;
+		}
+		try {
+			trans.begin();
+			if (!versendet.isEmpty()) {
+				em.createNamedQuery(Ausgangsmail.DELETE_BY_IDS)
+				  .setParameter(Ausgangsmail.PARAM_IDS, versendet)
+				  .executeUpdate();
+			}
+			final long jetzt = System.currentTimeMillis();
+			for (Ausgangsmail mail : fehlgeschlagen) {
+				final Ausgangsmail gespeichert = em.find(Ausgangsmail.class, mail.getId());
+				if (gespeichert == null) {
+					continue;
+				}
+				final int versuche = gespeichert.getVersuche() + 1;
+				gespeichert.setVersuche(versuche);
+				if (versuche >= MAX_VERSUCHE) {
+					LOGGER.errorf("Versand der Email %d nach %d Versuchen aufgegeben", mail.getId(), versuche);
+					gespeichert.setNaechsterVersuch(null);
+				}
+				else {
+					gespeichert.setNaechsterVersuch(new Date(jetzt + getBackoff(versuche)));
+				}
+			}
+			trans.commit();
+		}
+		catch (NotSupportedException | SystemException | RollbackException | HeuristicMixedException
+		       | HeuristicRollbackException | PersistenceException e) {
+			rollback();
+			LOGGER.warnf("Ergebnis des Versands nicht gespeichert: %s", e.getMessage());
+			return false;
+		}
+		anzahlFehlversuche.addAndGet(fehlgeschlagen.size());
+		return true;
+	}
+
+	/**
+	 * @return Wartezeit vor dem naechsten Versuch: 30 s, 1 min, 2 min, ... bis hoechstens 1 h
+	 */
+	static long getBackoff(int versuche) {
+		// versuche < MAX_VERSUCHE, d.h. kein Ueberlauf
+		return Math.min(BACKOFF_BASIS_MILLIS << (versuche - 1), BACKOFF_MAX_MILLIS);
+	}
+
+	private void rollback() {
+		try {
+			if (trans.getStatus() != STATUS_NO_TRANSACTION) {
+				trans.rollback();
+			}
+		}
+		catch (SystemException e) {
+			LOGGER.warnf("Rollback nicht moeglich: %s", e.getMessage());
+		}
+	}
+}
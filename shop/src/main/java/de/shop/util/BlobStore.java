@@ -0,0 +1,88 @@
+package de.shop.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Speicher fuer die Inhalte hochgeladener Dateien ausserhalb der Datenbank. Ein Inhalt wird ueber den
+ * SHA-256-Hashwert adressiert, d.h. gleiche Inhalte werden nur einmal gespeichert und ein gespeicherter
+ * Inhalt aendert sich nie. Die Entity File enthaelt nur die Metadaten und den Hashwert.
+ * Zu einem Inhalt kann es Varianten geben, z.B. Vorschaubilder. Sie werden ueber den Schluessel aus
+ * getSchluessel() wie ein Inhalt gelesen und zusammen mit dem Inhalt geloescht.
+ */
+public interface BlobStore {
+	/**
+	 * Einen Inhalt speichern. Er ist erst sichtbar, wenn er vollstaendig geschrieben ist.
+	 * @param inputStream Inhalt, der vom Aufrufer geschlossen wird
+	 * @return Hashwert als 64 Hexadezimalziffern in Kleinbuchstaben
+	 */
+	String put(InputStream inputStream) throws IOException;
+
+	/**
+	 * Eine temporaere Datei fuer einen Inhalt anlegen, der in mehreren Schritten geschrieben wird, z.B. bei
+	 * einem fortsetzbaren Upload. Sie liegt neben den Inhalten und kann deshalb ohne Kopieren gespeichert werden.
+	 * @return Pfad der leeren Datei
+	 */
+	Path createTempFile() throws IOException;
+
+	/**
+	 * Eine Datei aus createTempFile() als Inhalt speichern. Die Datei wird dabei verschoben bzw. geloescht.
+	 * @param datei Vollstaendig geschriebene Datei
+	 * @param hash SHA-256-Hashwert, den der Aufrufer beim Schreiben berechnet hat
+	 */
+	void putTempFile(Path datei, String hash) throws IOException;
+
+	/**
+	 * Die temporaeren Dateien, deren Name zu einem Muster passt, z.B. um fortsetzbare Uploads nach einem
+	 * Neustart wiederherzustellen. Dateien aus createTempFile() bleiben bei einem Neustart erhalten.
+	 * @param glob Muster fuer den Dateinamen, z.B. "*.upload"
+	 * @return Pfade der Dateien
+	 */
+	List<Path> findTempFiles(String glob) throws IOException;
+
+	/**
+	 * Eine Variante zu einem gespeicherten Inhalt speichern bzw. ersetzen
+	 * @param variante Name der Variante aus Kleinbuchstaben, z.B. "small"
+	 * @param inhalt Inhalt der Variante
+	 */
+	void putVariante(String hash, String variante, byte[] inhalt) throws IOException;
+
+	/**
+	 * @param variante Name der Variante
+	 * @return Schluessel fuer exists(), getGroesse() und open()
+	 */
+	String getSchluessel(String hash, String variante);
+
+	boolean exists(String hash);
+
+	/**
+	 * @return Groesse des Inhalts in Bytes
+	 */
+	long getGroesse(String hash) throws IOException;
+
+	/**
+	 * Einen Inhalt zum Lesen oeffnen
+	 * @return Kanal, der vom Aufrufer geschlossen wird
+	 */
+	FileChannel open(String hash) throws IOException;
+
+	/**
+	 * Die gespeicherten Inhalte mit einem Praefix, die laenger nicht mehr geschrieben wurden, z.B. um
+	 * Inhalte zu loeschen, auf die keine File mehr verweist
+	 * @param prefix Die ersten beiden Hexadezimalziffern
+	 * @param aelterAlsMillis Mindestalter in Millisekunden
+	 * @return Hashwerte der Inhalte
+	 */
+	List<String> findHashes(String prefix, long aelterAlsMillis) throws IOException;
+
+	/**
+	 * Einen Inhalt mit seinen Varianten loeschen, falls er laenger nicht mehr geschrieben wurde. Ein erneuter
+	 * Upload mit gleichem Inhalt verhindert so das Loeschen.
+	 * @param aelterAlsMillis Mindestalter in Millisekunden
+	 * @return true, falls der Inhalt geloescht wurde
+	 */
+	boolean delete(String hash, long aelterAlsMillis) throws IOException;
+}
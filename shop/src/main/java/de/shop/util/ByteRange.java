@@ -0,0 +1,110 @@
+package de.shop.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ein Bereich aus dem Request-Header "Range", z.B. "bytes=0-499", "bytes=500-" oder "bytes=-500".
+ * Mehrere Bereiche in einem Header werden nicht unterstuetzt, dann wird wie bei einem Header mit
+ * ungueltiger Syntax die ganze Datei geliefert.
+ */
+public final class ByteRange {
+	public static final String ACCEPT_RANGES = "Accept-Ranges";
+	public static final String CONTENT_RANGE = "Content-Range";
+	public static final String RANGE = "Range";
+	public static final String IF_RANGE = "If-Range";
+	public static final String BYTES = "bytes";
+
+	// In JAX-RS 1.1 gibt es fuer diese Statuscodes keine Konstanten
+	public static final int STATUS_PARTIAL_CONTENT = 206;
+	public static final int STATUS_NICHT_ERFUELLBAR = 416;
+
+	private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+	private final long start;
+	private final long ende;
+	private final long groesse;
+
+	private ByteRange(long start, long ende, long groesse) {
+		this.start = start;
+		this.ende = ende;
+		this.groesse = groesse;
+	}
+
+	/**
+	 * Den Header "Range" zu einer Datei auswerten
+	 * @param range Wert des Headers oder null
+	 * @param groesse Groesse der Datei in Bytes
+	 * @return Bereich innerhalb der Datei oder null, falls die ganze Datei geliefert wird
+	 * @throws RangeNotSatisfiableException falls der Bereich ausserhalb der Datei liegt
+	 */
+	public static ByteRange parse(String range, long groesse) {
+		if (range == null) {
+			return null;
+		}
+		final Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+		if (!matcher.matches()) {
+			return null;
+		}
+		final String von = matcher.group(1);
+		final String bis = matcher.group(2);
+		if (von.isEmpty() && bis.isEmpty()) {
+			return null;
+		}
+
+		final long start;
+		final long ende;
+		try {
+			if (von.isEmpty()) {
+				// Suffix, z.B. die letzten 500 Bytes
+				final long suffix = Long.parseLong(bis);
+				if (suffix == 0) {
+					throw new RangeNotSatisfiableException(groesse);
+				}
+				start = Math.max(0L, groesse - suffix);
+				ende = groesse - 1;
+			}
+			else {
+				start = Long.parseLong(von);
+				ende = bis.isEmpty() ? groesse - 1 : Math.min(Long.parseLong(bis), groesse - 1);
+			}
+		}
+		catch (NumberFormatException e) {
+			// mehr als 19 Ziffern
+			return null;
+		}
+
+		if (start >= groesse) {
+			throw new RangeNotSatisfiableException(groesse);
+		}
+		if (start > ende) {
+			// z.B. "bytes=500-499" hat eine ungueltige Syntax
+			return null;
+		}
+		return new ByteRange(start, ende, groesse);
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnde() {
+		return ende;
+	}
+
+	public long getLaenge() {
+		return ende - start + 1;
+	}
+
+	/**
+	 * @return Wert fuer den Response-Header "Content-Range", z.B. "bytes 0-499/1234"
+	 */
+	public String getContentRange() {
+		return BYTES + ' ' + start + '-' + ende + '/' + groesse;
+	}
+
+	@Override
+	public String toString() {
+		return "ByteRange [start=" + start + ", ende=" + ende + ", groesse=" + groesse + "]";
+	}
+}
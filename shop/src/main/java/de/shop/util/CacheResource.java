@@ -0,0 +1,62 @@
+package de.shop.util;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Administration des L2C und des Query-Cache, nur fuer die Rolle admin
+ */
+@Path("/admin/cache")
+@Produces(APPLICATION_JSON)
+@Consumes
+@RequestScoped
+@Transactional
+@Log
+public class CacheResource {
+	private static final String REGIONEN = "regionen";
+	private static final String QUERY_CACHE = "queryCache";
+
+	@Inject
+	private CacheService cacheService;
+
+	/**
+	 * Mit der URL /admin/cache die Statistik je Region ermitteln, um die Regionen dimensionieren zu koennen
+	 * @return Treffer, Fehlzugriffe, Einfuegungen, Evictions und Eintraege je Region sowie die Summen des
+	 *         Query-Cache
+	 */
+	@GET
+	public Map<String, Object> getStatistik() {
+		return ImmutableMap.<String, Object>of(REGIONEN, cacheService.getRegionStatistik(),
+		                                       QUERY_CACHE, cacheService.getQueryCacheStatistik());
+	}
+
+	/**
+	 * Mit der URL /admin/cache alle Regionen leeren
+	 */
+	@DELETE
+	@Produces
+	public void evictAll() {
+		cacheService.evictAll();
+	}
+
+	/**
+	 * Mit der URL /admin/cache/statistik die Zaehler der Statistik zuruecksetzen
+	 */
+	@DELETE
+	@Path("statistik")
+	@Produces
+	public void resetStatistik() {
+		cacheService.resetStatistik();
+	}
+}
@@ -0,0 +1,152 @@
+package de.shop.util;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.jboss.logging.Logger;
+
+/**
+ * Statistik und Verwaltung des L2C und des Query-Cache.
+ * Treffer, Fehlzugriffe und Eintraege je Region liefert die Statistik von Hibernate. Die Evictions zaehlt nur
+ * Infinispan, deshalb werden sie per JMX gelesen, sofern die Statistik des Cache-Containers aktiviert ist.
+ */
+@Log
+public class CacheService implements Serializable {
+	private static final long serialVersionUID = 4702216357871829341L;
+
+	// z.B. jboss.infinispan:type=Cache,name="shop.de.shop.kundenverwaltung.domain.Kunde(local)",...
+	private static final String INFINISPAN_STATISTIK = "jboss.infinispan:type=Cache,component=Statistics,*";
+	private static final String INFINISPAN_CACHE_NAME = "name";
+	private static final String INFINISPAN_EVICTIONS = "evictions";
+	private static final char INFINISPAN_MODUS = '(';
+	private static final String QUOTE = "\"";
+
+	private static final String STAT_TREFFER = "treffer";
+	private static final String STAT_FEHLZUGRIFFE = "fehlzugriffe";
+	private static final String STAT_EINFUEGUNGEN = "einfuegungen";
+	private static final String STAT_EVICTIONS = "evictions";
+	private static final String STAT_EINTRAEGE = "eintraege";
+
+	@PersistenceContext
+	private transient EntityManager em;
+
+	@Inject
+	private transient Logger logger;
+
+	/**
+	 * Statistik je Region, d.h. je Entity-Klasse, Collection und benannter Query mit Query-Cache
+	 * @return Region und deren Kennzahlen, nach dem Namen der Region sortiert. "evictions" ist null,
+	 *         falls Infinispan keine Statistik liefert.
+	 */
+	public SortedMap<String, Map<String, Number>> getRegionStatistik() {
+		final Statistics statistics = getSessionFactory().getStatistics();
+		final Map<String, Long> evictions = getEvictions();
+
+		final SortedMap<String, Map<String, Number>> regionen = new TreeMap<>();
+		for (String region : statistics.getSecondLevelCacheRegionNames()) {
+			final SecondLevelCacheStatistics regionStatistik = statistics.getSecondLevelCacheStatistics(region);
+			if (regionStatistik == null) {
+				continue;
+			}
+			final Map<String, Number> werte = new LinkedHashMap<>();
+			werte.put(STAT_TREFFER, regionStatistik.getHitCount());
+			werte.put(STAT_FEHLZUGRIFFE, regionStatistik.getMissCount());
+			werte.put(STAT_EINFUEGUNGEN, regionStatistik.getPutCount());
+			werte.put(STAT_EVICTIONS, evictions.get(region));
+			werte.put(STAT_EINTRAEGE, regionStatistik.getElementCountInMemory());
+			regionen.put(region, Collections.unmodifiableMap(werte));
+		}
+		return Collections.unmodifiableSortedMap(regionen);
+	}
+
+	/**
+	 * Summen des Query-Cache ueber alle Regionen
+	 * @return Treffer, Fehlzugriffe und Einfuegungen
+	 */
+	public Map<String, Number> getQueryCacheStatistik() {
+		final Statistics statistics = getSessionFactory().getStatistics();
+		final Map<String, Number> werte = new LinkedHashMap<>();
+		werte.put(STAT_TREFFER, statistics.getQueryCacheHitCount());
+		werte.put(STAT_FEHLZUGRIFFE, statistics.getQueryCacheMissCount());
+		werte.put(STAT_EINFUEGUNGEN, statistics.getQueryCachePutCount());
+		return Collections.unmodifiableMap(werte);
+	}
+
+	/**
+	 * Die Zaehler der Statistik zuruecksetzen, z.B. vor einem Lasttest
+	 */
+	public void resetStatistik() {
+		getSessionFactory().getStatistics().clear();
+		logger.info("Statistik des L2C zurueckgesetzt");
+	}
+
+	/**
+	 * Alle Regionen leeren: Entities, Collections und Query-Cache
+	 */
+	public void evictAll() {
+		final Cache cache = getSessionFactory().getCache();
+		cache.evictEntityRegions();
+		cache.evictCollectionRegions();
+		cache.evictDefaultQueryRegion();
+		cache.evictQueryRegions();
+		logger.info("Alle Regionen des L2C geleert");
+	}
+
+	/**
+	 * Eine Region des Query-Cache leeren
+	 * @param region Name der Region wie beim Hint "org.hibernate.cacheRegion", z.B. Kunde.COUNT_KUNDEN
+	 */
+	public void evictQueryRegion(String region) {
+		getSessionFactory().getCache().evictQueryRegion(region);
+		logger.debugf("Region %s des Query-Cache geleert", region);
+	}
+
+	private SessionFactory getSessionFactory() {
+		return em.unwrap(Session.class).getSessionFactory();
+	}
+
+	private Map<String, Long> getEvictions() {
+		final Map<String, Long> evictions = new HashMap<>();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ObjectName name : server.queryNames(new ObjectName(INFINISPAN_STATISTIK), null)) {
+				String cacheName = name.getKeyProperty(INFINISPAN_CACHE_NAME);
+				if (cacheName == null) {
+					continue;
+				}
+				if (cacheName.startsWith(QUOTE)) {
+					cacheName = ObjectName.unquote(cacheName);
+				}
+				// Modus abschneiden, z.B. "(local)" oder "(invalidation_sync)"
+				final int pos = cacheName.lastIndexOf(INFINISPAN_MODUS);
+				if (pos > 0) {
+					cacheName = cacheName.substring(0, pos);
+				}
+				final Number anzahl = (Number) server.getAttribute(name, INFINISPAN_EVICTIONS);
+				evictions.put(cacheName, anzahl.longValue());
+			}
+		}
+		catch (JMException e) {
+			logger.debugf("Keine Evictions von Infinispan: %s", e.getMessage());
+		}
+		return evictions;
+	}
+}
@@ -17,6 +17,8 @@ import com.google.common.collect.Lists;
 @ApplicationScoped
 public class Config implements Serializable {
 	private static final long serialVersionUID = 3916523726340426731L;
+	private static final String BLOB_STORE_DEFAULT = "shopBlobs";
+	private static final String EINGANG_JOURNAL_DEFAULT = "shopJournal";
 	
 	// In META-INF\ejb-jar.xml kann der Wert gesetzt bzw. ueberschrieben werden
 	@Resource(name = "absenderMail")
@@ -34,6 +36,14 @@ public class Config implements Serializable {
 	@Resource(name = "locales")
 	private String localesStr;
 	
+	// Verzeichnis fuer die Inhalte hochgeladener Dateien, relativ zu standalone/data
+	@Resource(name = "blobStore")
+	private String blobStore;
+	
+	// Verzeichnis fuer das Journal asynchron angenommener Bestellungen, relativ zu standalone/data
+	@Resource(name = "eingangJournal")
+	private String eingangJournal;
+	
 	private List<Locale> locales;
 	private Locale defaultLocale = Locale.GERMAN;
 
@@ -102,6 +112,14 @@ public class Config implements Serializable {
 		return empfaengerName;
 	}
 
+	public String getBlobStore() {
+		return Strings.isNullOrEmpty(blobStore) ? BLOB_STORE_DEFAULT : blobStore;
+	}
+
+	public String getEingangJournal() {
+		return Strings.isNullOrEmpty(eingangJournal) ? EINGANG_JOURNAL_DEFAULT : eingangJournal;
+	}
+
 	public void setEmpfaengerName(String empfaengerName) {
 		this.empfaengerName = empfaengerName;
 	}
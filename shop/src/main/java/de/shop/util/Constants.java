@@ -5,6 +5,12 @@ public final class Constants {
 	public static final Long KEINE_ID = null;
 	public static final long MIN_ID = 1L;
 	public static final int ERSTE_VERSION = 0;
+	// Sequenzen mit Pooled Optimizer: Start oberhalb der IDs aus den SQL-Skripten
+	public static final int SEQUENCE_START = 5000;
+	public static final int ALLOCATION_SIZE = 50;
+	// Query-Cache von Hibernate: Hints fuer @NamedQuery, die Region ist jeweils der Name der Query
+	public static final String HINT_CACHEABLE = "org.hibernate.cacheable";
+	public static final String HINT_CACHE_REGION = "org.hibernate.cacheRegion";
 	
 	// JAAS
 	public static final String SECURITY_DOMAIN = "shop";
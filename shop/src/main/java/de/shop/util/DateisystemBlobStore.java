@@ -0,0 +1,294 @@
+package de.shop.util;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.jboss.logging.Logger;
+
+/**
+ * BlobStore im Dateisystem des Servers. Ein Inhalt liegt in einem Verzeichnis aus den ersten beiden und den
+ * naechsten beiden Hexadezimalziffern des Hashwerts, z.B. 3f/a2/3fa2..., damit kein Verzeichnis zu viele
+ * Eintraege hat. Ein Inhalt wird zunaechst in eine temporaere Datei geschrieben und dabei der Hashwert
+ * berechnet. Danach wird die temporaere Datei atomar umbenannt oder geloescht, falls es den Inhalt schon gibt.
+ * Varianten liegen neben dem Inhalt, z.B. 3fa2...-small.
+ */
+@ApplicationScoped
+public class DateisystemBlobStore implements BlobStore, SendfileQuelle, Serializable {
+	private static final long serialVersionUID = -4290718763315066093L;
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final String ALGORITHMUS = "SHA-256";
+	private static final Pattern HASH_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+	private static final Pattern SCHLUESSEL_PATTERN = Pattern.compile("^[0-9a-f]{64}(-[a-z]+)?$");
+	private static final Pattern VARIANTE_PATTERN = Pattern.compile("^[a-z]+$");
+	private static final char VARIANTE_TRENNER = '-';
+	private static final int SHARD_LAENGE = 2;
+	private static final int PUFFER_GROESSE = 8192;
+	private static final int HEX_BASIS = 16;
+	private static final int HALBBYTE = 4;
+	private static final int HALBBYTE_MASKE = 0x0f;
+	private static final String TMP_VERZEICHNIS = "tmp";
+	private static final String TMP_PREFIX = "upload";
+	private static final String TMP_PREFIX_PUT = "put";
+
+	// Relative Pfade beziehen sich auf standalone/data von JBoss
+	private static final String DATA_DIR = "jboss.server.data.dir";
+
+	@Inject
+	private Config config;
+
+	private transient Path verzeichnis;
+	private transient Path tmpVerzeichnis;
+
+	public DateisystemBlobStore() {
+		super();
+	}
+
+	/**
+	 * BlobStore ohne CDI, z.B. fuer Tests mit einem temporaeren Verzeichnis
+	 * @param verzeichnis Verzeichnis fuer die Inhalte
+	 */
+	DateisystemBlobStore(Path verzeichnis) {
+		super();
+		init(verzeichnis);
+	}
+
+	@PostConstruct
+	private void postConstruct() {
+		final Path pfad = Paths.get(config.getBlobStore());
+		final String dataDir = System.getProperty(DATA_DIR);
+		init(pfad.isAbsolute() || dataDir == null ? pfad : Paths.get(dataDir).resolve(pfad));
+	}
+
+	private void init(Path pfad) {
+		verzeichnis = pfad;
+		tmpVerzeichnis = verzeichnis.resolve(TMP_VERZEICHNIS);
+		try {
+			Files.createDirectories(tmpVerzeichnis);
+			// Uebrig nach einem Absturz waehrend put() oder putVariante(). Die Dateien fortsetzbarer Uploads
+			// bleiben erhalten, damit ein Upload nach einem Neustart fortgesetzt werden kann.
+			try (DirectoryStream<Path> dateien = Files.newDirectoryStream(tmpVerzeichnis, TMP_PREFIX_PUT + '*')) {
+				for (Path datei : dateien) {
+					Files.deleteIfExists(datei);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new InternalError(e);
+		}
+		LOGGER.infof("Verzeichnis fuer hochgeladene Dateien: %s", verzeichnis);
+	}
+
+	@Override
+	public String put(InputStream inputStream) throws IOException {
+		final MessageDigest digest = createMessageDigest();
+		final Path tmp = Files.createTempFile(tmpVerzeichnis, TMP_PREFIX_PUT, null);
+		try {
+			try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+				final byte[] puffer = new byte[PUFFER_GROESSE];
+				int n;
+				while ((n = inputStream.read(puffer)) >= 0) {
+					digest.update(puffer, 0, n);
+					final ByteBuffer buffer = ByteBuffer.wrap(puffer, 0, n);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				// Vor dem Umbenennen auf die Platte schreiben, damit nach einem Absturz kein Inhalt fehlt
+				channel.force(true);
+			}
+
+			final String hash = toHex(digest.digest());
+			speichern(tmp, hash);
+			return hash;
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	@Override
+	public Path createTempFile() throws IOException {
+		return Files.createTempFile(tmpVerzeichnis, TMP_PREFIX, null);
+	}
+
+	@Override
+	public void putTempFile(Path datei, String hash) throws IOException {
+		if (!tmpVerzeichnis.equals(datei.getParent())) {
+			throw new IllegalArgumentException("Keine temporaere Datei des BlobStore: " + datei);
+		}
+		if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+			throw new IllegalArgumentException("Kein gueltiger Hashwert: " + hash);
+		}
+		try {
+			speichern(datei, hash);
+		}
+		finally {
+			Files.deleteIfExists(datei);
+		}
+	}
+
+	@Override
+	public List<Path> findTempFiles(String glob) throws IOException {
+		final List<Path> pfade = new ArrayList<>();
+		try (DirectoryStream<Path> dateien = Files.newDirectoryStream(tmpVerzeichnis, glob)) {
+			for (Path datei : dateien) {
+				pfade.add(datei);
+			}
+		}
+		return pfade;
+	}
+
+	private void speichern(Path tmp, String hash) throws IOException {
+		final Path ziel = getPfad(hash);
+		if (Files.exists(ziel)) {
+			// Deduplizierung: neuer Zeitstempel, damit der Inhalt nicht als unbenutzt geloescht wird
+			Files.setLastModifiedTime(ziel, FileTime.fromMillis(System.currentTimeMillis()));
+			LOGGER.debugf("Der Inhalt %s existiert bereits", hash);
+			return;
+		}
+
+		Files.createDirectories(ziel.getParent());
+		// Bei konkurrierenden Uploads mit gleichem Inhalt ersetzt der letzte Upload den gleichen Inhalt
+		Files.move(tmp, ziel, ATOMIC_MOVE);
+		LOGGER.debugf("Neuer Inhalt %s", hash);
+	}
+
+	@Override
+	public void putVariante(String hash, String variante, byte[] inhalt) throws IOException {
+		final Path ziel = getPfad(getSchluessel(hash, variante));
+		final Path tmp = Files.createTempFile(tmpVerzeichnis, TMP_PREFIX_PUT, null);
+		try {
+			Files.write(tmp, inhalt);
+			Files.createDirectories(ziel.getParent());
+			// Eine vorhandene Variante wird atomar ersetzt, d.h. ein Leser sieht nie eine halbe Datei
+			Files.move(tmp, ziel, ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	@Override
+	public String getSchluessel(String hash, String variante) {
+		if (variante == null || !VARIANTE_PATTERN.matcher(variante).matches()) {
+			throw new IllegalArgumentException("Kein gueltiger Name fuer eine Variante: " + variante);
+		}
+		return hash + VARIANTE_TRENNER + variante;
+	}
+
+	@Override
+	public boolean exists(String hash) {
+		return Files.exists(getPfad(hash));
+	}
+
+	@Override
+	public long getGroesse(String hash) throws IOException {
+		return Files.size(getPfad(hash));
+	}
+
+	@Override
+	public FileChannel open(String hash) throws IOException {
+		return FileChannel.open(getPfad(hash), READ);
+	}
+
+	@Override
+	public List<String> findHashes(String prefix, long aelterAlsMillis) throws IOException {
+		final List<String> hashes = new ArrayList<>();
+		final Path shard = verzeichnis.resolve(prefix);
+		if (prefix.length() != SHARD_LAENGE || !Files.isDirectory(shard)) {
+			return hashes;
+		}
+
+		final long grenze = System.currentTimeMillis() - aelterAlsMillis;
+		try (DirectoryStream<Path> unterverzeichnisse = Files.newDirectoryStream(shard)) {
+			for (Path unterverzeichnis : unterverzeichnisse) {
+				try (DirectoryStream<Path> dateien = Files.newDirectoryStream(unterverzeichnis)) {
+					for (Path datei : dateien) {
+						final String hash = datei.getFileName().toString();
+						if (HASH_PATTERN.matcher(hash).matches()
+							&& Files.getLastModifiedTime(datei).toMillis() < grenze) {
+							hashes.add(hash);
+						}
+					}
+				}
+			}
+		}
+		return hashes;
+	}
+
+	@Override
+	public boolean delete(String hash, long aelterAlsMillis) throws IOException {
+		final Path pfad = getPfad(hash);
+		if (!Files.exists(pfad)
+			|| Files.getLastModifiedTime(pfad).toMillis() >= System.currentTimeMillis() - aelterAlsMillis) {
+			return false;
+		}
+		if (!Files.deleteIfExists(pfad)) {
+			return false;
+		}
+
+		try (DirectoryStream<Path> varianten = Files.newDirectoryStream(pfad.getParent(),
+		                                                                hash + VARIANTE_TRENNER + '*')) {
+			for (Path variante : varianten) {
+				Files.deleteIfExists(variante);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Path getSendfilePfad(String hash) {
+		return getPfad(hash);
+	}
+
+	Path getPfad(String hash) {
+		// Kein Zugriff ausserhalb des Verzeichnisses, z.B. mit "../"
+		if (hash == null || !SCHLUESSEL_PATTERN.matcher(hash).matches()) {
+			throw new IllegalArgumentException("Kein gueltiger Hashwert: " + hash);
+		}
+		return verzeichnis.resolve(hash.substring(0, SHARD_LAENGE))
+		                  .resolve(hash.substring(SHARD_LAENGE, 2 * SHARD_LAENGE))
+		                  .resolve(hash);
+	}
+
+	private static MessageDigest createMessageDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHMUS);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new InternalError(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> HALBBYTE) & HALBBYTE_MASKE, HEX_BASIS))
+			  .append(Character.forDigit(b & HALBBYTE_MASKE, HEX_BASIS));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,84 @@
+package de.shop.util;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Starke ETags aus ID und Version einer Entity fuer bedingte Requests.
+ * Eine Entity hat das ETag "id.version", eine Liste einen Hashwert ueber die IDs und Versionen ihrer
+ * Elemente, der sich auch beim Hinzufuegen oder Entfernen eines Elements aendert.
+ */
+public final class EntityTags {
+	private static final char TRENNER = '.';
+
+	private EntityTags() {
+	}
+
+	/**
+	 * @param id ID der Entity
+	 * @param version Wert der Spalte mit @Version
+	 * @param versionenTeile Versionen der Entities, die mit der Entity geliefert werden, z.B. die Adresse
+	 *        eines Kunden
+	 * @return Starkes ETag, z.B. "101.3" bzw. "101.3.1"
+	 */
+	public static EntityTag of(Long id, int version, int... versionenTeile) {
+		final StringBuilder sb = new StringBuilder().append(id).append(TRENNER).append(version);
+		for (int versionTeil : versionenTeile) {
+			sb.append(TRENNER).append(versionTeil);
+		}
+		return new EntityTag(sb.toString());
+	}
+
+	/**
+	 * @return Builder fuer das ETag einer Liste
+	 */
+	public static ListBuilder list() {
+		return new ListBuilder();
+	}
+
+	/**
+	 * Vorbedingungen aus If-None-Match bzw. If-Match pruefen, bevor die Entity serialisiert wird
+	 * @param request Der aktuelle Request
+	 * @param etag ETag der aktuellen Version
+	 * @param entity Entity oder JSON-Datensatz fuer den Response-Body
+	 * @return 304 (Not Modified) bei GET mit passendem If-None-Match, 412 (Precondition Failed) bei
+	 *         nicht passendem If-Match, sonst 200 mit der Entity; jeweils mit dem ETag
+	 */
+	public static Response ok(Request request, EntityTag etag, Object entity) {
+		final ResponseBuilder rb = request.evaluatePreconditions(etag);
+		if (rb != null) {
+			return rb.tag(etag).build();
+		}
+		return Response.ok(entity).tag(etag).build();
+	}
+
+	/**
+	 * ETag einer Liste aus den IDs und Versionen der Elemente in ihrer Reihenfolge
+	 */
+	public static final class ListBuilder {
+		private final Hasher hasher = Hashing.md5().newHasher();
+		private int anzahl;
+
+		private ListBuilder() {
+		}
+
+		public ListBuilder add(Long id, int version, int... versionenTeile) {
+			hasher.putLong(id == null ? 0L : id.longValue())
+			      .putInt(version);
+			for (int versionTeil : versionenTeile) {
+				hasher.putInt(versionTeil);
+			}
+			anzahl++;
+			return this;
+		}
+
+		public EntityTag build() {
+			return new EntityTag(String.valueOf(anzahl) + TRENNER + hasher.hash());
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package de.shop.util;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Fetch-Plan fuer das Laden von Entities: Assoziationen, die mitgeladen und im JSON-Datensatz geliefert werden
+ * ("expand"), oder Attribute, die statt der ganzen Entity als Projektion gelesen werden ("fields").
+ * Ein Plan wird in die Fetch-Joins einer JPQL-Abfrage bzw. in die SELECT-Klausel einer Projektion uebersetzt.
+ * Erlaubt sind nur Pfade und Attribute, die von der jeweiligen Entity freigegeben sind.
+ */
+public final class FetchPlan implements Serializable {
+	private static final long serialVersionUID = -2914837027364578119L;
+
+	public static final String QUERY_PARAM_EXPAND = "expand";
+	public static final String QUERY_PARAM_FIELDS = "fields";
+
+	public static final FetchPlan LEER = new FetchPlan(new TreeSet<String>(), new ArrayList<String>());
+
+	private static final char TRENNER = '.';
+	private static final Splitter SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	// Pfade einschliesslich ihrer Anfaenge, z.B. "bestellungen" zu "bestellungen.bestellpositionen"
+	private final SortedSet<String> expand;
+	private final List<String> fields;
+
+	private FetchPlan(SortedSet<String> expand, List<String> fields) {
+		this.expand = Collections.unmodifiableSortedSet(expand);
+		this.fields = Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * Benannter Plan mit festen Pfaden
+	 * @param pfade Pfade der mitzuladenden Assoziationen, z.B. "bestellungen.lieferungen"
+	 * @return Plan ohne Projektion
+	 */
+	public static FetchPlan of(String... pfade) {
+		final SortedSet<String> expand = new TreeSet<>();
+		for (String pfad : pfade) {
+			addPfad(expand, pfad);
+		}
+		return new FetchPlan(expand, new ArrayList<String>());
+	}
+
+	/**
+	 * Plan aus den Query-Parametern, z.B. ?expand=bestellungen oder ?fields=id,nachname
+	 * @param expand Durch Komma getrennte Pfade oder null
+	 * @param fields Durch Komma getrennte Attribute oder null
+	 * @param erlaubteExpand Pfade, die expandiert werden duerfen
+	 * @param erlaubteFields Attribute, die projiziert werden duerfen
+	 * @return Plan zu den Query-Parametern
+	 * @throws InvalidFetchPlanException bei einem nicht erlaubten Pfad oder Attribut, oder falls sowohl
+	 *         Pfade als auch Attribute angegeben sind
+	 */
+	public static FetchPlan parse(String expand, String fields, Set<String> erlaubteExpand,
+	                              Set<String> erlaubteFields) {
+		final SortedSet<String> pfade = new TreeSet<>();
+		if (expand != null) {
+			for (String pfad : SPLITTER.split(expand)) {
+				if (!erlaubteExpand.contains(pfad)) {
+					throw new InvalidFetchPlanException("Die Assoziation " + pfad + " kann nicht expandiert werden");
+				}
+				addPfad(pfade, pfad);
+			}
+		}
+
+		final Set<String> attribute = new LinkedHashSet<>();
+		if (fields != null) {
+			for (String attr : SPLITTER.split(fields)) {
+				if (!erlaubteFields.contains(attr)) {
+					throw new InvalidFetchPlanException("Das Attribut " + attr + " kann nicht gelesen werden");
+				}
+				attribute.add(attr);
+			}
+		}
+
+		if (!pfade.isEmpty() && !attribute.isEmpty()) {
+			throw new InvalidFetchPlanException(QUERY_PARAM_EXPAND + " und " + QUERY_PARAM_FIELDS
+			                                    + " koennen nicht kombiniert werden");
+		}
+		return new FetchPlan(pfade, new ArrayList<>(attribute));
+	}
+
+	private static void addPfad(SortedSet<String> pfade, String pfad) {
+		int pos = pfad.indexOf(TRENNER);
+		while (pos > 0) {
+			pfade.add(pfad.substring(0, pos));
+			pos = pfad.indexOf(TRENNER, pos + 1);
+		}
+		pfade.add(pfad);
+	}
+
+	public boolean isExpanded(String pfad) {
+		return expand.contains(pfad);
+	}
+
+	/**
+	 * @return Sortierte Pfade, d.h. jeder Pfad folgt auf seine Anfaenge
+	 */
+	public SortedSet<String> getExpand() {
+		return expand;
+	}
+
+	/**
+	 * Die Pfade unterhalb eines Pfades, z.B. "lieferungen" zu "bestellungen.lieferungen" und "bestellungen"
+	 * @param pfad Anfang der Pfade
+	 * @return Relative Pfade ohne den Anfang
+	 */
+	public List<String> getUnterpfade(String pfad) {
+		final String prefix = pfad + TRENNER;
+		final List<String> unterpfade = new ArrayList<>();
+		for (String p : expand.tailSet(prefix)) {
+			if (!p.startsWith(prefix)) {
+				break;
+			}
+			unterpfade.add(p.substring(prefix.length()));
+		}
+		return unterpfade;
+	}
+
+	public boolean isProjektion() {
+		return !fields.isEmpty();
+	}
+
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Fetch-Joins erzeugen, z.B. zu "bestellungen" und "bestellungen.lieferungen":
+	 * LEFT JOIN FETCH k.bestellungen k_bestellungen
+	 * LEFT JOIN FETCH k_bestellungen.lieferungen k_bestellungen_lieferungen
+	 * @param alias Alias der Entity in der FROM-Klausel
+	 * @param pfade Pfade, wobei jeder Pfad nach seinen Anfaengen kommen muss
+	 * @return Fetch-Joins mit fuehrendem Leerzeichen oder ein leerer String
+	 */
+	public static String createFetchJoins(String alias, Collection<String> pfade) {
+		final StringBuilder sb = new StringBuilder();
+		for (String pfad : pfade) {
+			final int pos = pfad.lastIndexOf(TRENNER);
+			final String parentAlias = pos < 0 ? alias : getAlias(alias, pfad.substring(0, pos));
+			sb.append(" LEFT JOIN FETCH ").append(parentAlias).append(TRENNER).append(pfad.substring(pos + 1))
+			  .append(' ').append(getAlias(alias, pfad));
+		}
+		return sb.toString();
+	}
+
+	private static String getAlias(String alias, String pfad) {
+		return alias + '_' + pfad.replace(TRENNER, '_');
+	}
+
+	/**
+	 * SELECT-Klausel fuer die Projektion erzeugen, z.B. SELECT k.id, k.adresse.ort
+	 * @param alias Alias der Entity in der FROM-Klausel
+	 * @return SELECT-Klausel ohne abschliessendes Leerzeichen
+	 */
+	public String createSelect(String alias) {
+		final StringBuilder sb = new StringBuilder("SELECT");
+		for (String attr : fields) {
+			if (sb.length() > "SELECT".length()) {
+				sb.append(',');
+			}
+			sb.append(' ').append(alias).append(TRENNER).append(attr);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Die Zeilen einer Projektion in Maps konvertieren. Attribute mit Pfad, z.B. "adresse.ort", werden
+	 * in geschachtelte Maps eingetragen.
+	 * @param rows Ergebnis der Abfrage mit der SELECT-Klausel von createSelect()
+	 * @return Je Zeile eine Map mit den Attributen in der Reihenfolge von "fields"
+	 */
+	public List<Map<String, Object>> toMaps(List<?> rows) {
+		final List<Map<String, Object>> maps = new ArrayList<>(rows.size());
+		for (Object row : rows) {
+			// Bei nur einem Attribut liefert JPA keine Arrays
+			final Object[] werte = fields.size() == 1 ? new Object[] {row} : (Object[]) row;
+			final Map<String, Object> map = new LinkedHashMap<>();
+			for (int i = 0; i < werte.length; i++) {
+				put(map, fields.get(i), werte[i]);
+			}
+			maps.add(map);
+		}
+		return maps;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void put(Map<String, Object> map, String attr, Object wert) {
+		final int pos = attr.indexOf(TRENNER);
+		if (pos < 0) {
+			map.put(attr, wert);
+			return;
+		}
+
+		final String name = attr.substring(0, pos);
+		Map<String, Object> unterMap = (Map<String, Object>) map.get(name);
+		if (unterMap == null) {
+			unterMap = new LinkedHashMap<>();
+			map.put(name, unterMap);
+		}
+		put(unterMap, attr.substring(pos + 1), wert);
+	}
+
+	/**
+	 * Ein Objekt in JSON konvertieren und dabei die expandierten Assoziationen einfuegen, die sonst wegen
+	 * JsonIgnore nur als URI geliefert werden. Die Assoziationen muessen bereits geladen sein.
+	 * @param obj Entity mit den Assoziationen gemaess dem Plan
+	 * @return JSON-Datensatz
+	 */
+	public JsonNode toJson(Object obj) {
+		return toJson(obj, "");
+	}
+
+	private JsonNode toJson(Object obj, String prefix) {
+		final JsonNode node = MAPPER.valueToTree(obj);
+		if (obj == null || !node.isObject()) {
+			return node;
+		}
+
+		for (String pfad : expand) {
+			if (!pfad.startsWith(prefix) || pfad.indexOf(TRENNER, prefix.length()) >= 0) {
+				// kein direkter Unterpfad
+				continue;
+			}
+			final String name = pfad.substring(prefix.length());
+			final Object wert = getWert(obj, name);
+			final String unterPrefix = pfad + TRENNER;
+			if (wert instanceof Collection) {
+				final ArrayNode array = MAPPER.createArrayNode();
+				for (Object element : (Collection<?>) wert) {
+					array.add(toJson(element, unterPrefix));
+				}
+				((ObjectNode) node).put(name, array);
+			}
+			else {
+				((ObjectNode) node).put(name, toJson(wert, unterPrefix));
+			}
+		}
+		return node;
+	}
+
+	private static Object getWert(Object obj, String name) {
+		final String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		try {
+			final Method method = obj.getClass().getMethod(getter);
+			return method.invoke(obj);
+		}
+		catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			throw new InternalError(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "FetchPlan [expand=" + expand + ", fields=" + fields + "]";
+	}
+}
@@ -2,9 +2,11 @@ package de.shop.util;
 
 import static de.shop.util.Constants.ERSTE_VERSION;
 import static de.shop.util.Constants.KEINE_ID;
+import static javax.persistence.FetchType.LAZY;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
 import java.io.Serializable;
+import java.sql.Blob;
 import java.util.Date;
 
 import javax.persistence.Basic;
@@ -13,23 +15,56 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.Index;
+
 import de.shop.util.FileHelper.MimeType;
 import de.shop.util.FileHelper.MultimediaType;
 
 
 @Entity
 @Table(name = "file_tbl")   // "file" ist in Oracle kein gueltiger Tabellenname
+@NamedQueries({
+	@NamedQuery(name  = File.DELETE_FILES_BY_IDS,
+	            query = "DELETE FROM File f"
+	                  + " WHERE f.id IN :" + File.PARAM_IDS),
+	@NamedQuery(name  = File.FIND_IDS_OHNE_HASH,
+	            query = "SELECT f.id"
+	                  + " FROM File f"
+	                  + " WHERE f.hash IS NULL"
+	                  + " ORDER BY f.id"),
+	@NamedQuery(name  = File.FIND_FILE_BY_FILENAME,
+	            query = "SELECT f"
+	                  + " FROM File f"
+	                  + " WHERE f.filename = :" + File.PARAM_FILENAME),
+	@NamedQuery(name  = File.FIND_HASHES_BY_HASHES,
+	            query = "SELECT DISTINCT f.hash"
+	                  + " FROM File f"
+	                  + " WHERE f.hash IN :" + File.PARAM_HASHES)
+})
 public class File implements Serializable {
 	private static final long serialVersionUID = 2632441781256478734L;
 
 	public static final int FILENAME_LENGTH_MAX = 128;
 	
+	private static final String PREFIX = "File.";
+	public static final String DELETE_FILES_BY_IDS = PREFIX + "deleteFilesByIds";
+	public static final String FIND_IDS_OHNE_HASH = PREFIX + "findIdsOhneHash";
+	public static final String FIND_HASHES_BY_HASHES = PREFIX + "findHashesByHashes";
+	public static final String FIND_FILE_BY_FILENAME = PREFIX + "findFileByFilename";
+	public static final String PARAM_IDS = "ids";
+	public static final String PARAM_FILENAME = "filename";
+	public static final String PARAM_HASHES = "hashes";
+	
+	public static final int HASH_LENGTH = 64;
+	
 	@Id
 	@GeneratedValue
 	@Column(nullable = false, updatable = false)
@@ -39,9 +74,20 @@ public class File implements Serializable {
 	@Basic(optional = false)
 	private int version = ERSTE_VERSION;
 	
+	// SHA-256-Hashwert des Inhalts im BlobStore, null bis der Inhalt aus der Spalte "bytes" migriert ist
+	@Column(length = HASH_LENGTH)
+	@Index(name = "file_hash_idx")
+	private String hash;
+	
+	// Nur noch fuer die Migration von Inhalten, die vor dem BlobStore hochgeladen wurden
 	@Lob
+	@Basic(fetch = LAZY)
+	@Column(name = "bytes")
+	private Blob inhalt;  // Spaltentyp BLOB bei Oracle und LONGBLOB bei MySQL
+	
+	// Groesse in Bytes, damit Content-Length und Range ohne Zugriff auf den Inhalt bestimmt werden koennen
 	@Basic(optional = false)
-	private byte[] bytes;  // Spaltentyp BLOB bei Oracle und LONGBLOB bei MySQL
+	private long groesse;
 	
 	@Column(length = FILENAME_LENGTH_MAX, unique = true, nullable = false)
 	private String filename;
@@ -64,9 +110,9 @@ public class File implements Serializable {
 		super();
 	}
 	
-	public File(byte[] bytes, String dateiname, MimeType mimeType) {
+	public File(String hash, long groesse, String dateiname, MimeType mimeType) {
 		super();
-		set(bytes, dateiname, mimeType);
+		set(hash, groesse, dateiname, mimeType);
 	}
 
 	@PrePersist
@@ -95,12 +141,28 @@ public class File implements Serializable {
 		this.version = version;
 	}
 
-	public byte[] getBytes() {
-		return bytes;
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
+	public Blob getInhalt() {
+		return inhalt;
+	}
+
+	public void setInhalt(Blob inhalt) {
+		this.inhalt = inhalt;
+	}
+
+	public long getGroesse() {
+		return groesse;
 	}
 
-	public void setBytes(byte[] bytes) {
-		this.bytes = bytes;
+	public void setGroesse(long groesse) {
+		this.groesse = groesse;
 	}
 
 	public String getFilename() {
@@ -143,8 +205,10 @@ public class File implements Serializable {
 		this.aktualisiert = aktualisiert == null ? null : (Date) aktualisiert.clone();
 	}
 
-	public final void set(byte[] bytes, String filename, MimeType mimeType) {
-		this.bytes = bytes;
+	public final void set(String hash, long groesse, String filename, MimeType mimeType) {
+		this.hash = hash;
+		this.inhalt = null;
+		this.groesse = groesse;
 		this.filename = filename;
 		this.mimeType = mimeType;
 		this.multimediaType = mimeType.getMultimediaType();
@@ -153,7 +217,8 @@ public class File implements Serializable {
 	@Override
 	public String toString() {
 		return "File [id=" + id + ", version=" + version
-			   + ", filename=" + filename + ", multimediaType=" + multimediaType
+			   + ", filename=" + filename + ", hash=" + hash + ", groesse=" + groesse
+			   + ", multimediaType=" + multimediaType
 			   + ", erzeugt=" + erzeugt + ", aktualisiert=" + aktualisiert + "]";
 	}
 
@@ -1,26 +1,29 @@
 package de.shop.util;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
-import java.net.URLConnection;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 import javax.inject.Named;
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
 
 import org.jboss.logging.Logger;
 
+import com.google.common.collect.ImmutableList;
+
 
 @ApplicationScoped
 @Named("mm")
@@ -28,10 +31,29 @@ public class FileHelper implements Serializable {
 	private static final long serialVersionUID = 12904207356717310L;
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
 	
+	// Anzahl der Bytes am Anfang einer Datei, in denen die Magic Numbers gesucht werden
+	private static final int KOPF_LAENGE = 64;
+	
+	private static final long MAX_GROESSE_IMAGE = 10L * 1024 * 1024;
+	private static final long MAX_GROESSE_VIDEO = 500L * 1024 * 1024;
+	private static final long MAX_GROESSE_AUDIO = 100L * 1024 * 1024;
+	
 	public enum MultimediaType {
 		IMAGE,
 		VIDEO,
 		AUDIO;
+		
+		/**
+		 * @return Maximale Groesse einer Datei in Bytes
+		 */
+		public long getMaxGroesse() {
+			switch (this) {
+				case IMAGE:	return MAX_GROESSE_IMAGE;
+				case VIDEO:	return MAX_GROESSE_VIDEO;
+				case AUDIO:	return MAX_GROESSE_AUDIO;
+				default:	throw new IllegalStateException("Der MultimediaType " + this + " wird nicht unterstuetzt");
+			}
+		}
 	}
 	
 	public enum MimeType {
@@ -65,6 +87,19 @@ public class FileHelper implements Serializable {
 			}
 		}
 		
+		/**
+		 * MIME-Type zur Extension eines Dateinamens, z.B. "gif"
+		 * @return MIME-Type oder null
+		 */
+		public static MimeType getByExtension(String extension) {
+			for (MimeType mimeType : values()) {
+				if (mimeType.getExtension().equals(extension)) {
+					return mimeType;
+				}
+			}
+			return null;
+		}
+		
 		public String getExtension() {
 			switch (this) {
 				case GIF:	return "gif";
@@ -97,67 +132,150 @@ public class FileHelper implements Serializable {
 		}
 	}
 	
+	/**
+	 * Magic Numbers an festen Positionen am Anfang einer Datei. PJPEG hat dieselbe Signatur wie JPEG.
+	 */
+	private static final class Signatur {
+		private final MimeType mimeType;
+		private final List<Integer> positionen = new ArrayList<>();
+		private final List<byte[]> muster = new ArrayList<>();
+		
+		private Signatur(MimeType mimeType) {
+			this.mimeType = mimeType;
+		}
+		
+		private Signatur bei(int position, byte... bytes) {
+			positionen.add(position);
+			muster.add(bytes);
+			return this;
+		}
+		
+		private Signatur bei(int position, String ascii) {
+			return bei(position, ascii.getBytes(US_ASCII));
+		}
+		
+		private boolean passt(byte[] kopf, int laenge) {
+			for (int i = 0; i < positionen.size(); i++) {
+				final int position = positionen.get(i);
+				final byte[] bytes = muster.get(i);
+				if (position + bytes.length > laenge) {
+					return false;
+				}
+				for (int j = 0; j < bytes.length; j++) {
+					if (kopf[position + j] != bytes[j]) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static final List<Signatur> SIGNATUREN = ImmutableList.of(
+		new Signatur(MimeType.GIF).bei(0, "GIF87a"),
+		new Signatur(MimeType.GIF).bei(0, "GIF89a"),
+		new Signatur(MimeType.JPEG).bei(0, (byte) 0xFF, (byte) 0xD8, (byte) 0xFF),
+		new Signatur(MimeType.PNG).bei(0, (byte) 0x89, (byte) 'P', (byte) 'N', (byte) 'G',
+		                               (byte) 0x0D, (byte) 0x0A, (byte) 0x1A, (byte) 0x0A),
+		// ISO Base Media File Format: Laenge der ersten Box, danach der Typ "ftyp"
+		new Signatur(MimeType.MP4).bei(4, "ftyp"),
+		new Signatur(MimeType.WAV).bei(0, "RIFF").bei(8, "WAVE"));
+	
 	// Zulaessige Extensionen fuer Upload mit einer Webseite
 	private String extensionen;
 	
-	// Verzeichnis fuer hochgeladene Dateien
-	private transient Path directory;
+	@Inject
+	private BlobStore blobStore;
 
 	@PostConstruct
 	private void init() {
 		// Bei .flv wird der Mime-Type weder bei RichFaces noch bei RESTEasy erkannt
 		extensionen = "gif, jpg, jpeg, png, mp4, wav";
 		LOGGER.infof("Extensionen fuer Datei-Upload: %s", extensionen);
-		
-		String appName = null;
-		Context ctx = null;
-		try {
-			ctx = new InitialContext();  // InitialContext implementiert nicht das Interface Autoclosable
-			appName = (String) ctx.lookup("java:app/AppName");				
-		}
-		catch (NamingException e) {
-			LOGGER.warn("java:app/AppName ist nicht im JNDI-Namensraum vorhanden");
-		}
-		finally {
-			try {
-				ctx.close();
-			}
-			catch (NamingException e) {
-				LOGGER.warn("JNDI-Kontext zum Nachschlagen von java:app/AppName kann nicht geschlossen werden");
-			}
-		}
-		
-		// Verzeichnis im Dateisystem des Betriebssystems
-		directory = Paths.get(System.getenv("JBOSS_HOME"), "standalone", "deployments",
-		                      appName + ".war", "resources", "filesDb");
-		
-		if (Files.exists(directory)) {
-			LOGGER.infof("Verzeichnis fuer hochgeladene Dateien: %s", directory);
-		}
-		else {
-			LOGGER.errorf("Kein Verzeichnis fuer hochgeladene Dateien: %s", directory);
-		}
 	}
 	
 	/**
-	 * MIME-Type zu einer Datei als byte[] ermitteln
+	 * MIME-Type zu einer Datei als Stream anhand der Magic Numbers ermitteln. Es werden nur die ersten 64 Bytes
+	 * gelesen, danach ist der Stream wieder am Anfang. Beim Upload muss also nicht der ganze Request-Body
+	 * empfangen sein, um eine nicht unterstuetzte Datei abzulehnen.
+	 * @param inputStream Stream, der mark() und reset() unterstuetzt, z.B. BufferedInputStream
+	 * @return MIME-Type oder null
 	 */
-	public MimeType getMimeType(byte[] bytes) {
-		if (bytes == null) {
+	public MimeType getMimeType(InputStream inputStream) {
+		if (inputStream == null) {
 			return null;
 		}
 
-		String mimeTypeStr = null;
-		try (ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes)) {
-			mimeTypeStr = URLConnection.guessContentTypeFromStream(inputStream);
+		final byte[] kopf = new byte[KOPF_LAENGE];
+		int laenge = 0;
+		try {
+			inputStream.mark(KOPF_LAENGE);
+			while (laenge < KOPF_LAENGE) {
+				final int n = inputStream.read(kopf, laenge, KOPF_LAENGE - laenge);
+				if (n < 0) {
+					break;
+				}
+				laenge += n;
+			}
+			inputStream.reset();
 		}
 		catch (IOException e) {
 			LOGGER.warn("Fehler beim Ermitteln des MIME-Types");
 			return null;
 		}
 		
-		LOGGER.tracef("MIME-Type: %s", mimeTypeStr);
-		return MimeType.get(mimeTypeStr);
+		for (Signatur signatur : SIGNATUREN) {
+			if (signatur.passt(kopf, laenge)) {
+				LOGGER.tracef("MIME-Type: %s", signatur.mimeType);
+				return signatur.mimeType;
+			}
+		}
+		LOGGER.tracef("Kein MIME-Type zu den ersten %d Bytes", laenge);
+		return null;
+	}
+	
+	/**
+	 * Einen Stream auf eine maximale Anzahl an Bytes begrenzen, z.B. bei einem Upload ohne Content-Length
+	 * @param inputStream Stream, der durch den neuen Stream geschlossen wird
+	 * @param maxGroesse Maximale Anzahl an Bytes
+	 * @return Stream, der FileTooLargeException wirft, sobald mehr Bytes gelesen werden
+	 */
+	public static InputStream begrenzen(InputStream inputStream, final long maxGroesse) {
+		return new FilterInputStream(inputStream) {
+			private long gelesen;
+			
+			@Override
+			public int read() throws IOException {
+				final int b = super.read();
+				if (b >= 0) {
+					pruefen(1);
+				}
+				return b;
+			}
+			
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				final int n = super.read(b, off, len);
+				if (n > 0) {
+					pruefen(n);
+				}
+				return n;
+			}
+			
+			@Override
+			public long skip(long n) throws IOException {
+				final long uebersprungen = super.skip(n);
+				pruefen(uebersprungen);
+				return uebersprungen;
+			}
+			
+			private void pruefen(long n) {
+				gelesen += n;
+				if (gelesen > maxGroesse) {
+					throw new FileTooLargeException(maxGroesse);
+				}
+			}
+		};
 	}
 	
 	public String getFilename(Class<?> clazz, Object id, MimeType mimeType) {
@@ -170,39 +288,62 @@ public class FileHelper implements Serializable {
 		return extensionen;
 	}
 	
-	public void store(File file) {
+	/**
+	 * URL einer Datei fuer MediaServlet relativ zum Kontext der Web-Anwendung. Nach der Migration in den
+	 * BlobStore enthaelt der Name den Hashwert, so dass der Browser den Inhalt unbegrenzt cachen kann.
+	 * @param file Datei
+	 * @return z.B. /media/3fa2....gif bzw. /media/Kunde_102.gif vor der Migration
+	 */
+	public String getMediaUrl(File file) {
 		if (file == null) {
-			return;
+			return "";
 		}
-		
-		final String filename = file.getFilename();
-		final Path absoluteFilename = directory.resolve(filename);
-		
-		// aktuelle Datei nicht ueberschreiben?
-		if (Files.exists(absoluteFilename)) {
-			long creationTime = 0L;
-			try {
-				creationTime = Files.getFileAttributeView(absoluteFilename, BasicFileAttributeView.class)
-				                    .readAttributes()
-									.creationTime()
-									.toMillis();
-			}
-			catch (IOException e) {
-				LOGGER.tracef("Fehler beim Lesen des Erzeugungsdatums der Datei %s: %s", filename, e.getMessage());
-			}
-			
-			if (creationTime > file.getAktualisiert().getTime()) {
-				LOGGER.tracef("Die Datei %s existiert bereits", filename);
-				return;
+		final String name = file.getHash() == null
+		                    ? file.getFilename()
+		                    : file.getHash() + '.' + file.getMimeType().getExtension();
+		return MediaServlet.PATH + '/' + name;
+	}
+	
+	/**
+	 * Einen Bereich eines Inhalts per FileChannel.transferTo() kopieren, d.h. ohne byte[] fuer den ganzen Inhalt
+	 * @param out Ziel, das nicht geschlossen wird, z.B. der OutputStream eines Response
+	 */
+	public static void transferTo(BlobStore blobStore, String hash, long start, long laenge, OutputStream out)
+		throws IOException {
+		final WritableByteChannel ziel = Channels.newChannel(out);
+		try (FileChannel channel = blobStore.open(hash)) {
+			long position = start;
+			final long ende = start + laenge;
+			while (position < ende) {
+				final long n = channel.transferTo(position, ende - position, ziel);
+				if (n <= 0) {
+					throw new IOException("Der Inhalt " + hash + " ist kuerzer als erwartet");
+				}
+				position += n;
 			}
 		}
+	}
+	
+	/**
+	 * Den Inhalt einer Datei, der noch in der Spalte "bytes" ist, in den BlobStore verschieben. Die Datei
+	 * muss in der aktuellen Transaktion gelesen worden sein, damit der Blob lesbar ist.
+	 * @param file Datei mit oder ohne Hashwert
+	 */
+	public void migrieren(File file) throws IOException {
+		if (file.getHash() != null) {
+			return;
+		}
 		
-		// byte[] als Datei abspeichern
-		try (ByteArrayInputStream inputStream = new ByteArrayInputStream(file.getBytes())) {
-			Files.copy(inputStream, absoluteFilename, REPLACE_EXISTING);
+		final String hash;
+		try (InputStream inputStream = file.getInhalt().getBinaryStream()) {
+			hash = blobStore.put(inputStream);
 		}
-		catch (IOException e) {
-			LOGGER.warnf("Fehler beim Speichern der Datei %s: %s", absoluteFilename, e.getMessage());
+		catch (SQLException e) {
+			throw new IOException(e);
 		}
+		file.setHash(hash);
+		file.setGroesse(blobStore.getGroesse(hash));
+		file.setInhalt(null);
+		LOGGER.debugf("Datei %s in den BlobStore migriert: %s", file.getFilename(), hash);
 	}
 }
@@ -0,0 +1,160 @@
+package de.shop.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.jboss.logging.Logger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Hintergrundjobs fuer den BlobStore: Inhalte, die noch in der Spalte "bytes" von file_tbl gespeichert sind,
+ * abschnittsweise in den BlobStore verschieben, Inhalte loeschen, auf die keine Datei mehr verweist, und
+ * fortsetzbare Uploads loeschen, die nicht abgeschlossen wurden.
+ * Jeder Aufruf laeuft in einer eigenen Transaktion.
+ */
+@Singleton
+@Log
+public class FileJob {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final int MIGRATION_CHUNK_SIZE = 20;
+	private static final int HASHES_CHUNK_SIZE = 500;
+	private static final int ANZAHL_SHARDS = 256;
+	private static final String SHARD_FORMAT = "%02x";
+
+	// Ein Inhalt wird vor dem Commit der zugehoerigen Datei gespeichert und darf solange nicht geloescht werden
+	private static final long MINDESTALTER_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Inject
+	private BlobStore blobStore;
+
+	@Inject
+	private FileHelper fileHelper;
+
+	@Inject
+	private UploadService uploadService;
+
+	public FileJob() {
+		super();
+	}
+
+	/**
+	 * Ohne EJB-Container, z.B. fuer Tests des Aufraeumens mit einem BlobStore in einem temporaeren Verzeichnis
+	 */
+	FileJob(BlobStore blobStore) {
+		super();
+		this.blobStore = blobStore;
+	}
+
+	/**
+	 * Die naechsten Dateien mit dem Inhalt in der Datenbank migrieren, bis keine mehr uebrig sind.
+	 * Danach findet jeder Aufruf nur noch per Index heraus, dass es nichts zu tun gibt.
+	 */
+	@Schedule(hour = "*", minute = "*/5", persistent = false)
+	public void migrieren() {
+		final List<Long> ids = em.createNamedQuery(File.FIND_IDS_OHNE_HASH, Long.class)
+		                         .setMaxResults(MIGRATION_CHUNK_SIZE)
+		                         .getResultList();
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		int anzahl = 0;
+		for (Long id : ids) {
+			final File file = em.find(File.class, id);
+			if (file == null) {
+				continue;
+			}
+			try {
+				fileHelper.migrieren(file);
+				// Den Blob nicht bis zum Ende der Transaktion im Persistence Context halten
+				em.flush();
+				em.detach(file);
+				anzahl++;
+			}
+			catch (IOException e) {
+				LOGGER.warnf("Die Datei mit der ID %d kann nicht migriert werden: %s", id, e.getMessage());
+			}
+		}
+		LOGGER.infof("%d Dateien in den BlobStore migriert", anzahl);
+	}
+
+	/**
+	 * Inhalte loeschen, auf die keine Datei mehr verweist, z.B. nach einem neuen Upload oder nach dem Loeschen
+	 * eines Kunden. Wegen der Deduplizierung kann ein Inhalt zu mehreren Dateien gehoeren.
+	 */
+	@Schedule(hour = "3", persistent = false)
+	public void aufraeumen() {
+		int anzahl = 0;
+		for (int i = 0; i < ANZAHL_SHARDS; i++) {
+			final String prefix = String.format(Locale.ROOT, SHARD_FORMAT, i);
+			try {
+				anzahl += aufraeumen(prefix);
+			}
+			catch (IOException e) {
+				LOGGER.warnf("Fehler beim Aufraeumen der Inhalte mit dem Praefix %s: %s", prefix, e.getMessage());
+			}
+		}
+		LOGGER.infof("%d unbenutzte Inhalte im BlobStore geloescht", anzahl);
+	}
+
+	/**
+	 * Die unbenutzten Inhalte mit einem Praefix loeschen
+	 * @param prefix Die ersten beiden Hexadezimalziffern
+	 * @return Anzahl der geloeschten Inhalte
+	 */
+	int aufraeumen(String prefix) throws IOException {
+		int anzahl = 0;
+		final List<String> hashes = blobStore.findHashes(prefix, MINDESTALTER_MILLIS);
+		for (List<String> chunk : Lists.partition(hashes, HASHES_CHUNK_SIZE)) {
+			final Set<String> benutzt = findBenutzt(chunk);
+			for (String hash : chunk) {
+				if (!benutzt.contains(hash) && blobStore.delete(hash, MINDESTALTER_MILLIS)) {
+					anzahl++;
+				}
+			}
+		}
+		return anzahl;
+	}
+
+	/**
+	 * @param hashes Hashwerte aus dem BlobStore
+	 * @return Die Hashwerte, auf die mindestens eine Datei verweist
+	 */
+	Set<String> findBenutzt(List<String> hashes) {
+		return new HashSet<>(em.createNamedQuery(File.FIND_HASHES_BY_HASHES, String.class)
+		                       .setParameter(File.PARAM_HASHES, hashes)
+		                       .getResultList());
+	}
+
+	/**
+	 * Fortsetzbare Uploads loeschen, die laenger nicht mehr geschrieben wurden
+	 */
+	@Schedule(hour = "*", minute = "30", persistent = false)
+	public void uploadsAufraeumen() {
+		try {
+			final int anzahl = uploadService.deleteInaktiv();
+			if (anzahl > 0) {
+				LOGGER.infof("%d abgebrochene Uploads geloescht", anzahl);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.warnf("Fehler beim Loeschen abgebrochener Uploads: %s", e.getMessage());
+		}
+	}
+}
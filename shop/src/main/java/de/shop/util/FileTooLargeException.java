@@ -0,0 +1,19 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+@ApplicationException(rollback = true)
+public class FileTooLargeException extends AbstractShopException {
+	private static final long serialVersionUID = -2385710964718620345L;
+
+	private final long maxGroesse;
+
+	public FileTooLargeException(long maxGroesse) {
+		super("Die Datei ist groesser als " + maxGroesse + " Bytes");
+		this.maxGroesse = maxGroesse;
+	}
+
+	public long getMaxGroesse() {
+		return maxGroesse;
+	}
+}
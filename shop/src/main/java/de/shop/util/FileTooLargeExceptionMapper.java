@@ -0,0 +1,26 @@
+package de.shop.util;
+
+import static java.net.HttpURLConnection.HTTP_ENTITY_TOO_LARGE;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class FileTooLargeExceptionMapper implements ExceptionMapper<FileTooLargeException> {
+	@Override
+	public Response toResponse(FileTooLargeException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(HTTP_ENTITY_TOO_LARGE)
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
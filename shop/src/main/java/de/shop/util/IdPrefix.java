@@ -0,0 +1,91 @@
+package de.shop.util;
+
+import static de.shop.util.Constants.MIN_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+
+/**
+ * Suche nach einem Praefix einer numerischen ID ohne String-Konvertierung in der DB.
+ * Ein Praefix wie 12 wird in die Intervalle [12, 12], [120, 129], [1200, 1299], ... zerlegt,
+ * die jeweils ueber den Index des Primaerschluessels gelesen werden koennen.
+ * Das entspricht CONCAT(id, '') LIKE '12%', solange der Praefix die Dezimaldarstellung einer positiven
+ * ID ohne fuehrende Nullen ist; parse() prueft das fuer eine Eingabe als String.
+ */
+public final class IdPrefix {
+	private static final long BASIS = 10L;
+
+	private IdPrefix() {
+	}
+
+	/**
+	 * Den Praefix einer Eingabe wie bei einem Vergleich der Dezimaldarstellung interpretieren.
+	 * @param prefix Praefix als String, z.B. aus einem Eingabefeld
+	 * @return Numerischer Praefix oder null, falls keine ID mit diesem String beginnen kann, z.B. bei "012",
+	 *         "+1", "1a" oder einem Praefix, der laenger als jede ID ist
+	 */
+	public static Long parse(String prefix) {
+		if (prefix == null || prefix.isEmpty() || prefix.charAt(0) == '0') {
+			return null;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (prefix.charAt(i) < '0' || prefix.charAt(i) > '9') {
+				return null;
+			}
+		}
+		try {
+			return Long.valueOf(prefix);
+		}
+		catch (NumberFormatException e) {
+			// groesser als Long.MAX_VALUE
+			return null;
+		}
+	}
+
+	/**
+	 * Intervalle aller positiven IDs, deren Dezimaldarstellung mit dem Praefix beginnt.
+	 * @param prefix Praefix der ID
+	 * @return Liste mit Paaren [von, bis], leer bei nicht-positivem Praefix
+	 */
+	public static List<long[]> getIntervalle(long prefix) {
+		final List<long[]> intervalle = new ArrayList<>();
+		if (prefix < MIN_ID) {
+			return intervalle;
+		}
+
+		long von = prefix;
+		long bis = prefix;
+		for (;;) {
+			intervalle.add(new long[] {von, bis});
+			if (von > Long.MAX_VALUE / BASIS) {
+				break;
+			}
+			von = von * BASIS;
+			bis = bis > (Long.MAX_VALUE - BASIS + 1) / BASIS ? Long.MAX_VALUE : bis * BASIS + BASIS - 1;
+		}
+		return intervalle;
+	}
+
+	/**
+	 * Predicate fuer eine Criteria-Query: OR-Verknuepfung der Intervalle zum Praefix.
+	 * @param builder CriteriaBuilder des EntityManager
+	 * @param id Pfad zur ID
+	 * @param prefix Praefix der ID
+	 * @return Predicate, das bei nicht-positivem Praefix immer false ist
+	 */
+	public static Predicate createPredicate(CriteriaBuilder builder, Expression<Long> id, long prefix) {
+		final List<long[]> intervalle = getIntervalle(prefix);
+		final List<Predicate> predicates = new ArrayList<>(intervalle.size());
+		for (long[] intervall : intervalle) {
+			predicates.add(intervall[0] == intervall[1]
+					       ? builder.equal(id, intervall[0])
+					       : builder.between(id, intervall[0], intervall[1]));
+		}
+		// or() ohne Elemente ist immer false
+		return builder.or(predicates.toArray(new Predicate[predicates.size()]));
+	}
+}
@@ -0,0 +1,16 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+@ApplicationException(rollback = true)
+public class InvalidFetchPlanException extends AbstractShopException {
+	private static final long serialVersionUID = -6021473905418306227L;
+
+	public InvalidFetchPlanException(String msg) {
+		super(msg);
+	}
+
+	public InvalidFetchPlanException(String msg, Throwable t) {
+		super(msg, t);
+	}
+}
@@ -0,0 +1,16 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+@ApplicationException(rollback = true)
+public class InvalidMergePatchException extends AbstractShopException {
+	private static final long serialVersionUID = 7340986105741285127L;
+
+	public InvalidMergePatchException(String msg) {
+		super(msg);
+	}
+
+	public InvalidMergePatchException(String msg, Throwable t) {
+		super(msg, t);
+	}
+}
@@ -0,0 +1,272 @@
+package de.shop.util;
+
+import static de.shop.util.ByteRange.ACCEPT_RANGES;
+import static de.shop.util.ByteRange.BYTES;
+import static de.shop.util.ByteRange.CONTENT_RANGE;
+import static de.shop.util.ByteRange.IF_RANGE;
+import static de.shop.util.ByteRange.RANGE;
+import static de.shop.util.ByteRange.STATUS_NICHT_ERFUELLBAR;
+import static de.shop.util.ByteRange.STATUS_PARTIAL_CONTENT;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.logging.Logger;
+
+import com.google.common.base.Splitter;
+
+import de.shop.util.FileHelper.MimeType;
+import de.shop.util.VorschauService.Groesse;
+
+/**
+ * Liefert die Inhalte hochgeladener Dateien fuer die Webseiten, z.B. die Bilder und Videos der Kunden.
+ * Unter /media/{hash}.{extension} aendert sich der Inhalt nie, deshalb darf der Browser ihn unbegrenzt cachen
+ * und es gibt keinen Zugriff auf die Datenbank. Unter /media/{filename}, z.B. /media/Kunde_102.gif, gibt es
+ * den aktuellen Inhalt mit ETag und Last-Modified zum Zeitpunkt der letzten Aenderung der Datei.
+ * Mit ?size=small bzw. ?size=medium gibt es bei Bildern ein Vorschaubild. Solange es noch nicht erzeugt ist,
+ * wird das Original ohne unbegrenztes Caching geliefert.
+ * Bereiche per "Range" werden wie bei KundeResource unterstuetzt. Die Bytes werden per sendfile des Connectors
+ * oder per FileChannel.transferTo() uebertragen. Nur FileChannel.transferTo() belegt einen Worker-Thread fuer
+ * die Dauer der Uebertragung, deshalb ist nur dafuer die Anzahl gleichzeitiger Uebertragungen begrenzt. Bei
+ * sendfile endet doGet() vor der Uebertragung; die Anzahl begrenzt der Connector, z.B. durch die Anzahl seiner
+ * Threads fuer sendfile bei APR.
+ */
+@WebServlet(urlPatterns = MediaServlet.PATH + "/*")
+public class MediaServlet extends HttpServlet {
+	private static final long serialVersionUID = -3650180127748843916L;
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String PATH = "/media";
+
+	private static final Pattern HASH_NAME = Pattern.compile("^([0-9a-f]{64})\\.([a-z0-9]+)$");
+
+	private static final int MAX_UEBERTRAGUNGEN = 32;
+	private static final long WARTEZEIT_MILLIS = 2000L;
+	private static final String RETRY_AFTER_SEKUNDEN = "1";
+
+	private static final String CACHE_CONTROL = "Cache-Control";
+	private static final String CACHE_CONTROL_IMMUTABLE = "public, max-age=31536000, immutable";
+	private static final String CACHE_CONTROL_VALIDIEREN = "no-cache";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String ETAG = "ETag";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String RETRY_AFTER = "Retry-After";
+	private static final String ALLE = "*";
+	private static final Splitter ETAG_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final long MILLIS_PRO_SEKUNDE = 1000L;
+
+	// sendfile bei JBoss Web mit NIO- bzw. APR-Connector: das Ende ist exklusiv
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	// Begrenzt die Threads, die Bytes kopieren, damit z.B. viele Videos nicht alle Worker-Threads belegen.
+	// Uebertragungen per sendfile belegen keinen Worker-Thread und werden nicht mitgezaehlt.
+	private final Semaphore uebertragungen;
+	private final int maxUebertragungen;
+	private final long wartezeitMillis;
+
+	@Inject
+	private transient BlobStore blobStore;
+
+	@Inject
+	private transient VorschauService vorschauService;
+
+	@PersistenceContext
+	private transient EntityManager em;
+
+	public MediaServlet() {
+		this(null, MAX_UEBERTRAGUNGEN, WARTEZEIT_MILLIS);
+	}
+
+	/**
+	 * Ohne Servlet-Container, z.B. fuer Tests
+	 */
+	MediaServlet(BlobStore blobStore, int maxUebertragungen, long wartezeitMillis) {
+		super();
+		this.blobStore = blobStore;
+		this.maxUebertragungen = maxUebertragungen;
+		this.wartezeitMillis = wartezeitMillis;
+		uebertragungen = new Semaphore(maxUebertragungen);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		final String name = request.getPathInfo() == null ? "" : request.getPathInfo().substring(1);
+
+		String hash;
+		MimeType mimeType;
+		final String etagBasis;
+		final long lastModified;
+		final Matcher matcher = HASH_NAME.matcher(name);
+		if (matcher.matches()) {
+			hash = matcher.group(1);
+			mimeType = MimeType.getByExtension(matcher.group(2));
+			etagBasis = hash;
+			lastModified = -1L;
+			response.setHeader(CACHE_CONTROL, CACHE_CONTROL_IMMUTABLE);
+		}
+		else {
+			final File file = findFileByFilename(name);
+			if (file == null || file.getHash() == null) {
+				response.sendError(SC_NOT_FOUND);
+				return;
+			}
+			hash = file.getHash();
+			mimeType = file.getMimeType();
+			// HTTP-Datumswerte haben nur Sekunden
+			lastModified = file.getAktualisiert().getTime() / MILLIS_PRO_SEKUNDE * MILLIS_PRO_SEKUNDE;
+			etagBasis = String.valueOf(file.getId()) + '.' + lastModified;
+			response.setHeader(CACHE_CONTROL, CACHE_CONTROL_VALIDIEREN);
+			response.setDateHeader(LAST_MODIFIED, lastModified);
+		}
+		if (mimeType == null || !blobStore.exists(hash)) {
+			response.sendError(SC_NOT_FOUND);
+			return;
+		}
+
+		String etag = '"' + etagBasis + '"';
+		final Groesse vorschauGroesse = Groesse.get(request.getParameter(VorschauService.QUERY_PARAM_SIZE));
+		if (vorschauGroesse != null) {
+			final String vorschau = vorschauService.findVorschau(hash, mimeType, vorschauGroesse);
+			if (vorschau == null) {
+				// Das Original darf nicht unter der URL der Vorschau gecacht werden
+				response.setHeader(CACHE_CONTROL, CACHE_CONTROL_VALIDIEREN);
+			}
+			else {
+				hash = vorschau;
+				mimeType = VorschauService.getMimeType(mimeType);
+				etag = '"' + etagBasis + '-' + vorschauGroesse.getVariante() + '"';
+			}
+		}
+		response.setHeader(ETAG, etag);
+		response.setHeader(ACCEPT_RANGES, BYTES);
+
+		if (isNichtGeaendert(request, etag, lastModified)) {
+			response.setStatus(SC_NOT_MODIFIED);
+			return;
+		}
+
+		final long groesse = blobStore.getGroesse(hash);
+		final String ifRange = request.getHeader(IF_RANGE);
+		ByteRange byteRange = null;
+		if (ifRange == null || ifRange.trim().equals(etag)) {
+			try {
+				byteRange = ByteRange.parse(request.getHeader(RANGE), groesse);
+			}
+			catch (RangeNotSatisfiableException e) {
+				response.setHeader(CONTENT_RANGE, BYTES + " */" + groesse);
+				response.sendError(STATUS_NICHT_ERFUELLBAR);
+				return;
+			}
+		}
+		final long start = byteRange == null ? 0L : byteRange.getStart();
+		final long laenge = byteRange == null ? groesse : byteRange.getLaenge();
+		if (byteRange != null) {
+			response.setStatus(STATUS_PARTIAL_CONTENT);
+			response.setHeader(CONTENT_RANGE, byteRange.getContentRange());
+		}
+		response.setContentType(mimeType.toString());
+		// setContentLength() hat nur int
+		response.setHeader(CONTENT_LENGTH, String.valueOf(laenge));
+
+		final Path pfad = blobStore instanceof SendfileQuelle
+		                  ? ((SendfileQuelle) blobStore).getSendfilePfad(hash)
+		                  : null;
+		if (pfad != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			// Der Connector uebertraegt die Datei nach dem Ende von doGet() ohne Worker-Thread, deshalb
+			// wird hier kein Platz in "uebertragungen" belegt
+			request.setAttribute(SENDFILE_FILENAME, pfad.toString());
+			request.setAttribute(SENDFILE_START, Long.valueOf(start));
+			request.setAttribute(SENDFILE_END, Long.valueOf(start + laenge));
+			return;
+		}
+
+		uebertragen(hash, start, laenge, response);
+	}
+
+	/**
+	 * Die Bytes im Worker-Thread kopieren. Sind schon zu viele Uebertragungen aktiv, gibt es nach einer kurzen
+	 * Wartezeit den Status 503 mit "Retry-After".
+	 */
+	void uebertragen(String hash, long start, long laenge, HttpServletResponse response) throws IOException {
+		if (!acquire()) {
+			response.reset();
+			response.setHeader(RETRY_AFTER, RETRY_AFTER_SEKUNDEN);
+			response.sendError(SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+		try {
+			FileHelper.transferTo(blobStore, hash, start, laenge, response.getOutputStream());
+		}
+		finally {
+			uebertragungen.release();
+		}
+	}
+
+	private File findFileByFilename(String filename) {
+		final List<File> files = em.createNamedQuery(File.FIND_FILE_BY_FILENAME, File.class)
+		                           .setParameter(File.PARAM_FILENAME, filename)
+		                           .getResultList();
+		return files.isEmpty() ? null : files.get(0);
+	}
+
+	/**
+	 * If-None-Match hat Vorrang vor If-Modified-Since
+	 */
+	private static boolean isNichtGeaendert(HttpServletRequest request, String etag, long lastModified) {
+		final String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String tag : ETAG_SPLITTER.split(ifNoneMatch)) {
+				if (tag.equals(etag) || ALLE.equals(tag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		if (lastModified < 0 || request.getHeader(IF_MODIFIED_SINCE) == null) {
+			return false;
+		}
+		try {
+			return lastModified <= request.getDateHeader(IF_MODIFIED_SINCE);
+		}
+		catch (IllegalArgumentException e) {
+			// ungueltiges Datum
+			return false;
+		}
+	}
+
+	private boolean acquire() {
+		try {
+			if (uebertragungen.tryAcquire(wartezeitMillis, MILLISECONDS)) {
+				return true;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LOGGER.debugf("Mehr als %d gleichzeitige Uebertragungen", maxUebertragungen);
+		return false;
+	}
+}
@@ -0,0 +1,148 @@
+package de.shop.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.persistence.EntityManager;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+/**
+ * JSON Merge Patch (RFC 7386) fuer die einfachen Attribute einer Entity.
+ * Die Werte eines Patch werden mit einem einzigen UPDATE-Statement geschrieben, das nur die uebergebenen
+ * Spalten, die Version und den Zeitstempel "aktualisiert" aendert. Die Entity muss deshalb die Attribute
+ * id, version und aktualisiert besitzen. Ein Patch wird immer optimistisch synchronisiert: mit If-Match oder
+ * mit "version" im Patch.
+ */
+public final class MergePatch {
+	public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+	public static final String ATTR_ID = "id";
+	public static final String ATTR_VERSION = "version";
+
+	private static final String PARAM_ID = "patchId";
+	private static final String PARAM_VERSION = "patchVersion";
+
+	// Query Space fuer das native UPDATE: keine Entity hat ihn, deshalb raeumt Hibernate keine Region im L2C
+	// ab. Stattdessen wird nur das geaenderte Objekt entfernt.
+	private static final String QUERY_SPACE = "merge_patch";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private MergePatch() {
+	}
+
+	/**
+	 * Die Werte eines Patch in die Java-Typen der Attribute konvertieren.
+	 * "id" und "version" werden nicht als Werte geliefert, sondern sind ueber getId() und getVersion() abfragbar.
+	 * @param patch JSON-Objekt des Patch
+	 * @param attribute Namen und Typen der Attribute, die geaendert werden duerfen
+	 * @return Attributname und Wert in der Reihenfolge des Patch
+	 * @throws InvalidMergePatchException bei einem unbekannten Attribut oder einem Wert mit falschem Typ
+	 */
+	public static Map<String, Object> getWerte(JsonNode patch, Map<String, Class<?>> attribute) {
+		if (patch == null || !patch.isObject()) {
+			throw new InvalidMergePatchException("Der Patch muss ein JSON-Objekt sein");
+		}
+
+		final Map<String, Object> werte = new LinkedHashMap<>();
+		final Iterator<Entry<String, JsonNode>> fields = patch.getFields();
+		while (fields.hasNext()) {
+			final Entry<String, JsonNode> field = fields.next();
+			final String name = field.getKey();
+			if (ATTR_ID.equals(name) || ATTR_VERSION.equals(name)) {
+				continue;
+			}
+
+			final Class<?> typ = attribute.get(name);
+			if (typ == null) {
+				throw new InvalidMergePatchException("Das Attribut " + name + " kann nicht geaendert werden");
+			}
+
+			final JsonNode node = field.getValue();
+			if (node.isNull()) {
+				if (typ.isPrimitive()) {
+					throw new InvalidMergePatchException("Das Attribut " + name + " kann nicht geloescht werden");
+				}
+				werte.put(name, null);
+				continue;
+			}
+			try {
+				werte.put(name, MAPPER.readValue(node, typ));
+			}
+			catch (IOException e) {
+				throw new InvalidMergePatchException("Ungueltiger Wert fuer das Attribut " + name, e);
+			}
+		}
+		return werte;
+	}
+
+	/**
+	 * @param patch JSON-Objekt des Patch
+	 * @return Die ID im Patch oder null
+	 */
+	public static Long getId(JsonNode patch) {
+		final JsonNode id = patch == null ? null : patch.get(ATTR_ID);
+		return id == null || !id.isIntegralNumber() ? null : id.getLongValue();
+	}
+
+	/**
+	 * @param patch JSON-Objekt des Patch
+	 * @return Die erwartete Version im Patch oder null, z.B. falls mit If-Match synchronisiert wird
+	 */
+	public static Integer getVersion(JsonNode patch) {
+		final JsonNode version = patch == null ? null : patch.get(ATTR_VERSION);
+		return version == null || !version.isIntegralNumber() ? null : version.getIntValue();
+	}
+
+	/**
+	 * Das Objekt mit einem UPDATE-Statement aendern, z.B.
+	 * UPDATE kunde SET nachname = :nachname, version = version + 1, aktualisiert = CURRENT_TIMESTAMP
+	 * WHERE id = :patchId AND version = :patchVersion
+	 * Die Tabelle und die Spalten liefern die Mapping-Informationen von Hibernate. Anders als bei einem
+	 * UPDATE mit JPQL wird nur das geaenderte Objekt aus dem L2C entfernt und nicht die ganze Region.
+	 * @param em EntityManager
+	 * @param entityClass Klasse der Entity
+	 * @param id ID des zu aendernden Objekts
+	 * @param version Erwartete Version
+	 * @param werte Attributname und neuer Wert
+	 * @return 1 oder 0, falls das Objekt nicht existiert oder die Version nicht passt
+	 */
+	public static int update(EntityManager em, Class<?> entityClass, Long id, int version,
+	                         Map<String, Object> werte) {
+		final Session session = em.unwrap(Session.class);
+		final AbstractEntityPersister persister =
+		                              (AbstractEntityPersister) session.getSessionFactory()
+		                                                               .getClassMetadata(entityClass);
+		final String versionSpalte = persister.getVersionColumnName();
+		final StringBuilder sb = new StringBuilder("UPDATE ").append(persister.getTableName()).append(" SET");
+		for (String name : werte.keySet()) {
+			sb.append(' ').append(persister.getPropertyColumnNames(name)[0]).append(" = :").append(name).append(',');
+		}
+		sb.append(' ').append(versionSpalte).append(" = ").append(versionSpalte).append(" + 1, ")
+		  .append(persister.getPropertyColumnNames("aktualisiert")[0]).append(" = CURRENT_TIMESTAMP")
+		  .append(" WHERE ").append(persister.getIdentifierColumnNames()[0]).append(" = :").append(PARAM_ID)
+		  .append(" AND ").append(versionSpalte).append(" = :").append(PARAM_VERSION);
+
+		final SQLQuery query = session.createSQLQuery(sb.toString());
+		query.addSynchronizedQuerySpace(QUERY_SPACE);
+		for (Entry<String, Object> wert : werte.entrySet()) {
+			query.setParameter(wert.getKey(), wert.getValue(), persister.getPropertyType(wert.getKey()));
+		}
+		query.setLong(PARAM_ID, id)
+		     .setInteger(PARAM_VERSION, version);
+
+		final int anzahl = query.executeUpdate();
+		if (anzahl > 0) {
+			em.getEntityManagerFactory().getCache().evict(entityClass, id);
+		}
+		return anzahl;
+	}
+}
@@ -138,6 +138,17 @@ public class Messages implements Serializable {
 		}
 	}
 	
+	/**
+	 * Fuer Fehlermeldungen ohne JSF, z.B. bei REST mit der Locale aus dem Header Accept-Language
+	 * @param locale Locale des Clients oder null fuer die Default-Locale
+	 */
+	public static String getMessage(MessagesType messagesType, String msgKey, Locale locale, Object... args) {
+		final Locale lc = locale == null ? Locale.getDefault() : locale;
+		final ResourceBundle bundle = ResourceBundle.getBundle(messagesType.value, lc);
+		final MessageFormat formatter = new MessageFormat(bundle.getString(msgKey), lc);
+		return formatter.format(args);
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder("Messages [ bundles= {");
@@ -0,0 +1,20 @@
+package de.shop.util;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.ws.rs.HttpMethod;
+
+/**
+ * HTTP-Methode PATCH, die es erst ab JAX-RS 2.1 als Annotation gibt
+ */
+@Target(METHOD)
+@Retention(RUNTIME)
+@HttpMethod("PATCH")
+@Documented
+public @interface PATCH {
+}
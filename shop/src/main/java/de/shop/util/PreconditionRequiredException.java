@@ -0,0 +1,12 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+@ApplicationException(rollback = true)
+public class PreconditionRequiredException extends AbstractShopException {
+	private static final long serialVersionUID = -3318945602471856203L;
+
+	public PreconditionRequiredException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,28 @@
+package de.shop.util;
+
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class PreconditionRequiredExceptionMapper implements ExceptionMapper<PreconditionRequiredException> {
+	// 428 (Precondition Required) nach RFC 6585
+	private static final int STATUS_PRECONDITION_REQUIRED = 428;
+
+	@Override
+	public Response toResponse(PreconditionRequiredException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(STATUS_PRECONDITION_REQUIRED)
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
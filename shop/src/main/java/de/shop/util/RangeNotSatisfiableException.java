@@ -0,0 +1,19 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+@ApplicationException(rollback = true)
+public class RangeNotSatisfiableException extends AbstractShopException {
+	private static final long serialVersionUID = 8146029137752906315L;
+
+	private final long groesse;
+
+	public RangeNotSatisfiableException(long groesse) {
+		super("Der angeforderte Bereich liegt nicht innerhalb der " + groesse + " Bytes");
+		this.groesse = groesse;
+	}
+
+	public long getGroesse() {
+		return groesse;
+	}
+}
@@ -0,0 +1,29 @@
+package de.shop.util;
+
+import static de.shop.util.ByteRange.BYTES;
+import static de.shop.util.ByteRange.CONTENT_RANGE;
+import static de.shop.util.ByteRange.STATUS_NICHT_ERFUELLBAR;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class RangeNotSatisfiableExceptionMapper implements ExceptionMapper<RangeNotSatisfiableException> {
+	@Override
+	public Response toResponse(RangeNotSatisfiableException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(STATUS_NICHT_ERFUELLBAR)
+		                                  .header(CONTENT_RANGE, BYTES + " */" + e.getGroesse())
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
@@ -0,0 +1,15 @@
+package de.shop.util;
+
+import java.nio.file.Path;
+
+/**
+ * Zugriff auf die Datei eines Inhalts nur fuer MediaServlet, damit der Servlet-Container sie per sendfile
+ * uebertragen kann. Das Interface ist nicht oeffentlich, weil BlobStore keine Pfade herausgibt.
+ */
+interface SendfileQuelle {
+	/**
+	 * @param hash Schluessel wie bei BlobStore.open()
+	 * @return Pfad der Datei oder null, falls der Inhalt nicht als Datei im Dateisystem gespeichert ist
+	 */
+	Path getSendfilePfad(String hash);
+}
@@ -0,0 +1,23 @@
+package de.shop.util;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Ein Abschnitt eines fortsetzbaren Uploads passt nicht zum bisher gespeicherten Offset, oder der Upload
+ * wird gerade von einem anderen Request geschrieben bzw. ist beim Abschliessen noch nicht vollstaendig.
+ */
+@ApplicationException(rollback = true)
+public class UploadOffsetException extends AbstractShopException {
+	private static final long serialVersionUID = 3417206618839201574L;
+
+	private final long offset;
+
+	public UploadOffsetException(String msg, long offset) {
+		super(msg + ", gespeichert sind " + offset + " Bytes");
+		this.offset = offset;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+}
@@ -0,0 +1,28 @@
+package de.shop.util;
+
+import static de.shop.util.UploadService.UPLOAD_OFFSET;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+
+@Provider
+@ApplicationScoped
+@Log
+public class UploadOffsetExceptionMapper implements ExceptionMapper<UploadOffsetException> {
+	@Override
+	public Response toResponse(UploadOffsetException e) {
+		final String msg = e.getMessage();
+		final Response response = Response.status(CONFLICT)
+		                                  .header(UPLOAD_OFFSET, e.getOffset())
+		                                  .type(TEXT_PLAIN)
+		                                  .entity(msg)
+		                                  .build();
+		return response;
+	}
+
+}
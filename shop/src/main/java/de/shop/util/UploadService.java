@@ -0,0 +1,388 @@
+package de.shop.util;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.jboss.logging.Logger;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import de.shop.util.FileHelper.MultimediaType;
+
+/**
+ * Fortsetzbare Uploads grosser Dateien, z.B. Videos von einem Smartphone mit instabiler Verbindung.
+ * Ein Upload wird mit seiner Laenge angelegt und danach in Abschnitten geschrieben, die jeweils beim bisher
+ * gespeicherten Offset beginnen. Nach einem Verbindungsabbruch gilt alles, was bis dahin geschrieben wurde.
+ * Die Abschnitte werden per positionalem FileChannel.write() in eine temporaere Datei des BlobStore geschrieben
+ * und der Hashwert dabei fortlaufend berechnet, so dass die Datei beim Abschliessen nicht erneut gelesen wird.
+ * Neben der temporaeren Datei liegen die Metadaten eines Uploads als Properties-Datei, die nach jedem
+ * Abschnitt ersetzt wird. Nach einem Neustart wird ein Upload damit am gespeicherten Offset fortgesetzt;
+ * der Hashwert der bisherigen Bytes wird dann beim naechsten Abschnitt einmalig neu berechnet.
+ */
+@ApplicationScoped
+@Log
+public class UploadService implements Serializable {
+	private static final long serialVersionUID = -6271460932150283374L;
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	public static final String UPLOAD_LENGTH = "Upload-Length";
+	public static final String UPLOAD_OFFSET = "Upload-Offset";
+
+	private static final int PUFFER_GROESSE = 8192;
+
+	private static final String METADATEN_SUFFIX = ".upload";
+	private static final String METADATEN_TMP_SUFFIX = ".tmp";
+	private static final String PROP_KUNDE_ID = "kundeId";
+	private static final String PROP_LAENGE = "laenge";
+	private static final String PROP_OFFSET = "offset";
+	private static final String PROP_DATEI = "datei";
+
+	// Nicht abgeschlossene Uploads werden danach von FileJob geloescht
+	private static final long MAX_INAKTIV_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+	/**
+	 * Zustand eines Uploads. Es schreibt immer nur ein Request, weitere Requests erhalten sofort 409.
+	 */
+	private static final class Upload {
+		private final String id;
+		private final Long kundeId;
+		private final long laenge;
+		private final Path datei;
+		private final Path metadaten;
+		private final Lock lock = new ReentrantLock();
+		// null nach einem Neustart, bis der Hashwert der bisherigen Bytes neu berechnet ist
+		private Hasher hasher;
+		private volatile long offset;
+		private volatile long letzterZugriff;
+
+		private Upload(String id, Long kundeId, long laenge, Path datei, long offset, long letzterZugriff) {
+			this.id = id;
+			this.kundeId = kundeId;
+			this.laenge = laenge;
+			this.datei = datei;
+			this.metadaten = datei.resolveSibling(id + METADATEN_SUFFIX);
+			this.offset = offset;
+			this.letzterZugriff = letzterZugriff;
+		}
+	}
+
+	@Inject
+	private BlobStore blobStore;
+
+	private transient ConcurrentMap<String, Upload> uploads;
+
+	private long maxLaenge;
+
+	public UploadService() {
+		super();
+	}
+
+	/**
+	 * Ohne CDI, z.B. fuer Tests mit einem BlobStore in einem temporaeren Verzeichnis
+	 */
+	UploadService(BlobStore blobStore) {
+		super();
+		this.blobStore = blobStore;
+		postConstruct();
+	}
+
+	@PostConstruct
+	private void postConstruct() {
+		uploads = new ConcurrentHashMap<>();
+		for (MultimediaType multimediaType : MultimediaType.values()) {
+			maxLaenge = Math.max(maxLaenge, multimediaType.getMaxGroesse());
+		}
+
+		try {
+			for (Path metadaten : blobStore.findTempFiles('*' + METADATEN_SUFFIX)) {
+				wiederherstellen(metadaten);
+			}
+		}
+		catch (IOException e) {
+			throw new InternalError(e);
+		}
+		if (!uploads.isEmpty()) {
+			LOGGER.infof("%d nicht abgeschlossene Uploads wiederhergestellt", uploads.size());
+		}
+	}
+
+	/**
+	 * Einen Upload nach einem Neustart aus seinen Metadaten wiederherstellen. Bytes hinter dem gespeicherten
+	 * Offset stammen von einem Abschnitt, der nicht mehr bestaetigt wurde, und werden abgeschnitten.
+	 */
+	private void wiederherstellen(Path metadaten) {
+		final String dateiname = metadaten.getFileName().toString();
+		final String uploadId = dateiname.substring(0, dateiname.length() - METADATEN_SUFFIX.length());
+		try {
+			final Properties props = new Properties();
+			try (InputStream in = Files.newInputStream(metadaten)) {
+				props.load(in);
+			}
+			final Path datei = metadaten.resolveSibling(getProperty(props, PROP_DATEI));
+			if (!Files.exists(datei)) {
+				// Abgeschlossen, aber vor dem Loeschen der Metadaten abgebrochen
+				Files.delete(metadaten);
+				return;
+			}
+			final long offset = Math.min(Long.parseLong(getProperty(props, PROP_OFFSET)), Files.size(datei));
+			try (FileChannel channel = FileChannel.open(datei, WRITE)) {
+				channel.truncate(offset);
+			}
+			final Upload upload = new Upload(uploadId, Long.valueOf(getProperty(props, PROP_KUNDE_ID)),
+			                                 Long.parseLong(getProperty(props, PROP_LAENGE)), datei, offset,
+			                                 Files.getLastModifiedTime(metadaten).toMillis());
+			uploads.put(uploadId, upload);
+		}
+		catch (IOException | NumberFormatException e) {
+			LOGGER.warnf("Der Upload %s kann nicht wiederhergestellt werden: %s", uploadId, e.getMessage());
+		}
+	}
+
+	private static String getProperty(Properties props, String name) throws IOException {
+		final String wert = props.getProperty(name);
+		if (wert == null) {
+			throw new IOException("Die Metadaten enthalten kein " + name);
+		}
+		return wert;
+	}
+
+	/**
+	 * Einen Upload anlegen
+	 * @param kundeId ID des Kunden, zu dem die Datei gehoert
+	 * @param laenge Laenge der Datei in Bytes
+	 * @return ID des Uploads
+	 * @throws FileTooLargeException falls die Datei groesser als die maximale Groesse eines Videos ist
+	 */
+	public String create(Long kundeId, long laenge) throws IOException {
+		if (laenge > maxLaenge) {
+			throw new FileTooLargeException(maxLaenge);
+		}
+		final String uploadId = UUID.randomUUID().toString();
+		final Upload upload = new Upload(uploadId, kundeId, laenge, blobStore.createTempFile(), 0L,
+		                                 System.currentTimeMillis());
+		upload.hasher = Hashing.sha256().newHasher();
+		speichern(upload);
+		uploads.put(uploadId, upload);
+		LOGGER.debugf("Upload %s fuer den Kunden %d mit %d Bytes angelegt", uploadId, kundeId, laenge);
+		return uploadId;
+	}
+
+	/**
+	 * @return Anzahl der bisher gespeicherten Bytes
+	 * @throws NotFoundException falls es den Upload nicht oder nicht mehr gibt
+	 */
+	public long getOffset(String uploadId, Long kundeId) {
+		return getUpload(uploadId, kundeId).offset;
+	}
+
+	/**
+	 * @return Laenge der Datei in Bytes
+	 * @throws NotFoundException falls es den Upload nicht oder nicht mehr gibt
+	 */
+	public long getLaenge(String uploadId, Long kundeId) {
+		return getUpload(uploadId, kundeId).laenge;
+	}
+
+	/**
+	 * Einen Abschnitt an der Position des bisherigen Offsets schreiben
+	 * @param offset Position des Abschnitts aus dem Header "Upload-Offset"
+	 * @param inputStream Abschnitt, der vom Aufrufer geschlossen wird
+	 * @return Neuer Offset
+	 * @throws UploadOffsetException falls der Offset nicht passt oder der Upload gerade geschrieben wird
+	 * @throws FileTooLargeException falls der Abschnitt ueber die Laenge der Datei hinausgeht
+	 */
+	public long write(String uploadId, Long kundeId, long offset, InputStream inputStream) throws IOException {
+		final Upload upload = getUpload(uploadId, kundeId);
+		if (!upload.lock.tryLock()) {
+			throw new UploadOffsetException("Der Upload " + uploadId + " wird gerade geschrieben", upload.offset);
+		}
+		try {
+			if (offset != upload.offset) {
+				throw new UploadOffsetException("Falscher Offset " + offset, upload.offset);
+			}
+			if (upload.hasher == null) {
+				upload.hasher = hashen(upload);
+			}
+			try {
+				write(upload, inputStream);
+			}
+			finally {
+				// Der Offset gilt erst, wenn die Bytes auf der Platte sind
+				speichern(upload);
+			}
+			return upload.offset;
+		}
+		finally {
+			upload.letzterZugriff = System.currentTimeMillis();
+			upload.lock.unlock();
+		}
+	}
+
+	private static void write(Upload upload, InputStream inputStream) throws IOException {
+		try (FileChannel channel = FileChannel.open(upload.datei, WRITE)) {
+			long position = upload.offset;
+			try {
+				final byte[] puffer = new byte[PUFFER_GROESSE];
+				int n;
+				while ((n = inputStream.read(puffer)) >= 0) {
+					if (position + n > upload.laenge) {
+						throw new FileTooLargeException(upload.laenge);
+					}
+					final ByteBuffer buffer = ByteBuffer.wrap(puffer, 0, n);
+					long p = position;
+					while (buffer.hasRemaining()) {
+						p += channel.write(buffer, p);
+					}
+					upload.hasher.putBytes(puffer, 0, n);
+					position = p;
+				}
+			}
+			finally {
+				// Auch bei einem Verbindungsabbruch gilt alles bis hierher Geschriebene. Ein teilweise
+				// geschriebener Puffer ist nicht im Hashwert enthalten und wird abgeschnitten.
+				channel.truncate(position);
+				channel.force(false);
+				upload.offset = position;
+			}
+		}
+	}
+
+	/**
+	 * Den Hashwert der bisher geschriebenen Bytes berechnen, z.B. nach einem Neustart
+	 */
+	private static Hasher hashen(Upload upload) throws IOException {
+		final Hasher hasher = Hashing.sha256().newHasher();
+		try (FileChannel channel = FileChannel.open(upload.datei, READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(PUFFER_GROESSE);
+			long rest = upload.offset;
+			while (rest > 0) {
+				buffer.clear();
+				if (rest < buffer.capacity()) {
+					buffer.limit((int) rest);
+				}
+				final int n = channel.read(buffer);
+				if (n < 0) {
+					throw new IOException("Der Upload " + upload.id + " ist kuerzer als sein Offset");
+				}
+				hasher.putBytes(buffer.array(), 0, n);
+				rest -= n;
+			}
+		}
+		return hasher;
+	}
+
+	/**
+	 * Die Metadaten eines Uploads atomar ersetzen, d.h. nach einem Absturz gibt es die alte oder die neue Datei
+	 */
+	private static void speichern(Upload upload) throws IOException {
+		final Properties props = new Properties();
+		props.setProperty(PROP_KUNDE_ID, upload.kundeId.toString());
+		props.setProperty(PROP_LAENGE, String.valueOf(upload.laenge));
+		props.setProperty(PROP_OFFSET, String.valueOf(upload.offset));
+		props.setProperty(PROP_DATEI, upload.datei.getFileName().toString());
+
+		final Path tmp = upload.metadaten.resolveSibling(upload.metadaten.getFileName() + METADATEN_TMP_SUFFIX);
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			props.store(out, null);
+		}
+		Files.move(tmp, upload.metadaten, ATOMIC_MOVE, REPLACE_EXISTING);
+	}
+
+	/**
+	 * Einen vollstaendig geschriebenen Upload in den BlobStore verschieben. Danach gibt es den Upload nicht mehr.
+	 * @return Hashwert des Inhalts
+	 * @throws UploadOffsetException falls noch nicht alle Bytes geschrieben sind
+	 */
+	public String complete(String uploadId, Long kundeId) throws IOException {
+		final Upload upload = getUpload(uploadId, kundeId);
+		if (!upload.lock.tryLock()) {
+			throw new UploadOffsetException("Der Upload " + uploadId + " wird gerade geschrieben", upload.offset);
+		}
+		try {
+			if (upload.offset != upload.laenge) {
+				throw new UploadOffsetException("Der Upload " + uploadId + " ist unvollstaendig", upload.offset);
+			}
+			if (upload.hasher == null) {
+				upload.hasher = hashen(upload);
+			}
+			uploads.remove(uploadId);
+			final String hash = upload.hasher.hash().toString();
+			blobStore.putTempFile(upload.datei, hash);
+			Files.deleteIfExists(upload.metadaten);
+			LOGGER.debugf("Upload %s als Inhalt %s gespeichert", uploadId, hash);
+			return hash;
+		}
+		finally {
+			upload.lock.unlock();
+		}
+	}
+
+	/**
+	 * Einen Upload abbrechen und die bisher geschriebenen Bytes loeschen
+	 */
+	public void delete(String uploadId, Long kundeId) throws IOException {
+		final Upload upload = getUpload(uploadId, kundeId);
+		if (uploads.remove(uploadId, upload)) {
+			Files.deleteIfExists(upload.datei);
+			Files.deleteIfExists(upload.metadaten);
+		}
+	}
+
+	/**
+	 * Uploads loeschen, die laenger nicht mehr geschrieben wurden
+	 * @return Anzahl der geloeschten Uploads
+	 */
+	public int deleteInaktiv() throws IOException {
+		final long grenze = System.currentTimeMillis() - MAX_INAKTIV_MILLIS;
+		int anzahl = 0;
+		final Iterator<Upload> it = uploads.values().iterator();
+		while (it.hasNext()) {
+			final Upload upload = it.next();
+			if (upload.letzterZugriff < grenze && upload.lock.tryLock()) {
+				try {
+					it.remove();
+					Files.deleteIfExists(upload.datei);
+					Files.deleteIfExists(upload.metadaten);
+					anzahl++;
+				}
+				finally {
+					upload.lock.unlock();
+				}
+			}
+		}
+		return anzahl;
+	}
+
+	private Upload getUpload(String uploadId, Long kundeId) {
+		final Upload upload = uploadId == null ? null : uploads.get(uploadId);
+		if (upload == null || !upload.kundeId.equals(kundeId)) {
+			throw new NotFoundException("Kein Upload mit der ID " + uploadId);
+		}
+		return upload;
+	}
+}
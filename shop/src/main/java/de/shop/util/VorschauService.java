@@ -0,0 +1,333 @@
+package de.shop.util;
+
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+
+import java.awt.Graphics2D;
+import java.awt.color.CMMException;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImagingOpException;
+import java.awt.image.RasterFormatException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionManagement;
+import javax.ejb.TransactionManagementType;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.inject.Inject;
+
+import org.jboss.logging.Logger;
+
+import de.shop.util.FileHelper.MimeType;
+import de.shop.util.FileHelper.MultimediaType;
+
+/**
+ * Verkleinerte Varianten hochgeladener Bilder, z.B. fuer einen Avatar statt eines Fotos mit mehreren MB.
+ * Die Varianten werden im Hintergrund mit ImageIO erzeugt und als Varianten des Inhalts im BlobStore
+ * gespeichert. Ein Auftrag wird in eine begrenzte Warteschlange gestellt, die alle INTERVALL_MS Millisekunden
+ * durch einen Timer des Containers abgearbeitet wird. Ist sie voll, wird der Auftrag verworfen und beim
+ * naechsten Abruf der Variante erneut erteilt. Bis dahin wird das Original geliefert.
+ */
+@Singleton
+@ConcurrencyManagement(BEAN)
+@TransactionManagement(TransactionManagementType.BEAN)
+@Log
+public class VorschauService {
+	public static final String QUERY_PARAM_SIZE = "size";
+
+	static final int MAX_AUFTRAEGE = 100;
+
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass());
+	private static final long INTERVALL_MS = 200;
+	private static final String FORMAT_JPEG = "jpeg";
+	private static final String FORMAT_PNG = "png";
+
+	public enum Groesse {
+		SMALL(96),
+		MEDIUM(480);
+
+		private final int maxKante;
+
+		private Groesse(int maxKante) {
+			this.maxKante = maxKante;
+		}
+
+		/**
+		 * @return Maximale Breite bzw. Hoehe in Pixel
+		 */
+		public int getMaxKante() {
+			return maxKante;
+		}
+
+		/**
+		 * @return Name der Variante im BlobStore und Wert des Query-Parameters "size"
+		 */
+		public String getVariante() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * @param value Wert des Query-Parameters "size" oder null
+		 * @return Groesse oder null, falls das Original geliefert wird
+		 */
+		public static Groesse get(String value) {
+			if (value == null) {
+				return null;
+			}
+			for (Groesse groesse : values()) {
+				if (groesse.getVariante().equals(value)) {
+					return groesse;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Auftrag fuer die Varianten eines Bildes
+	 */
+	private static class Auftrag {
+		private final String hash;
+		private final MimeType mimeType;
+
+		Auftrag(String hash, MimeType mimeType) {
+			this.hash = hash;
+			this.mimeType = mimeType;
+		}
+	}
+
+	@Inject
+	private BlobStore blobStore;
+
+	@Resource
+	private TimerService timerService;
+
+	private final BlockingQueue<Auftrag> warteschlange = new ArrayBlockingQueue<>(MAX_AUFTRAEGE);
+
+	// Hashwerte, zu denen gerade Varianten erzeugt werden oder ein Auftrag wartet
+	private final Set<String> auftraege = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final AtomicBoolean erzeugt = new AtomicBoolean();
+
+	@PostConstruct
+	private void postConstruct() {
+		// Nicht persistent: die Warteschlange ist nach einem Neustart ohnehin leer
+		timerService.createIntervalTimer(INTERVALL_MS, INTERVALL_MS, new TimerConfig(null, false));
+	}
+
+	/**
+	 * MIME-Type der Varianten: JPEG bleibt JPEG, sonst PNG wegen der Transparenz z.B. bei GIF
+	 * @param mimeType MIME-Type des Originals
+	 * @return MIME-Type der Varianten
+	 */
+	public static MimeType getMimeType(MimeType mimeType) {
+		return mimeType == MimeType.JPEG || mimeType == MimeType.PJPEG ? MimeType.JPEG : MimeType.PNG;
+	}
+
+	/**
+	 * Die Variante eines Bildes suchen. Falls es sie noch nicht gibt, wird sie im Hintergrund erzeugt.
+	 * @param hash Hashwert des Originals
+	 * @param mimeType MIME-Type des Originals
+	 * @param groesse Gewuenschte Groesse
+	 * @return Schluessel der Variante im BlobStore oder null, falls das Original geliefert werden muss
+	 */
+	public String findVorschau(String hash, MimeType mimeType, Groesse groesse) {
+		if (mimeType.getMultimediaType() != MultimediaType.IMAGE) {
+			return null;
+		}
+		final String schluessel = blobStore.getSchluessel(hash, groesse.getVariante());
+		if (blobStore.exists(schluessel)) {
+			return schluessel;
+		}
+		erzeugen(hash, mimeType);
+		return null;
+	}
+
+	/**
+	 * Die Varianten eines Bildes im Hintergrund erzeugen, z.B. nach dem Upload. Andere Dateien werden ignoriert.
+	 * @param hash Hashwert des Originals
+	 * @param mimeType MIME-Type des Originals
+	 * @return true, falls ein Auftrag fuer das Bild wartet oder ausgefuehrt wird, false bei einer anderen Datei
+	 *         oder einer vollen Warteschlange
+	 */
+	public boolean erzeugen(String hash, MimeType mimeType) {
+		if (mimeType.getMultimediaType() != MultimediaType.IMAGE) {
+			return false;
+		}
+		if (!auftraege.add(hash)) {
+			return true;
+		}
+
+		if (!warteschlange.offer(new Auftrag(hash, mimeType))) {
+			auftraege.remove(hash);
+			LOGGER.debugf("Mehr als %d Auftraege fuer Vorschaubilder, %s wird spaeter erzeugt", MAX_AUFTRAEGE, hash);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Die wartenden Auftraege abarbeiten. Laeuft das vom vorherigen Intervall noch, wird dieser Aufruf
+	 * ausgelassen.
+	 */
+	@Timeout
+	public void timeout() {
+		if (!erzeugt.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final List<Auftrag> batch = new ArrayList<>(MAX_AUFTRAEGE);
+			warteschlange.drainTo(batch);
+			int i = 0;
+			try {
+				for (; i < batch.size(); i++) {
+					erzeugenVarianten(batch.get(i));
+				}
+			}
+			finally {
+				// Nach einem unerwarteten Fehler koennen die restlichen Auftraege erneut angefordert werden
+				for (; i < batch.size(); i++) {
+					auftraege.remove(batch.get(i).hash);
+				}
+			}
+		}
+		finally {
+			erzeugt.set(false);
+		}
+	}
+
+	/**
+	 * Einen Auftrag ausfuehren. Bei einem fehlerhaften Bild wirft ImageIO nicht nur IOException, sondern auch
+	 * RuntimeExceptions wie IllegalArgumentException oder CMMException; sie betreffen nur diesen Auftrag.
+	 */
+	private void erzeugenVarianten(Auftrag auftrag) {
+		try {
+			erzeugenVarianten(auftrag.hash, auftrag.mimeType);
+		}
+		catch (IOException | IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException
+		       | NegativeArraySizeException | CMMException | ImagingOpException | RasterFormatException e) {
+			LOGGER.warnf("Keine Vorschau zum Inhalt %s: %s", auftrag.hash, e.toString());
+		}
+		finally {
+			auftraege.remove(auftrag.hash);
+		}
+	}
+
+	private void erzeugenVarianten(String hash, MimeType mimeType) throws IOException {
+		final BufferedImage original;
+		try (FileChannel channel = blobStore.open(hash);
+			 ImageInputStream in = ImageIO.createImageInputStream(Channels.newInputStream(channel))) {
+			original = lesen(in);
+		}
+
+		for (Groesse groesse : Groesse.values()) {
+			blobStore.putVariante(hash, groesse.getVariante(), erzeugenVariante(original, mimeType, groesse));
+		}
+		LOGGER.debugf("Vorschaubilder zum Inhalt %s erzeugt", hash);
+	}
+
+	/**
+	 * Eine Variante skalieren und kodieren
+	 * @param original Gelesenes Original
+	 * @param mimeType MIME-Type des Originals
+	 * @param groesse Gewuenschte Groesse
+	 * @return Inhalt der Variante im Format von getMimeType()
+	 */
+	static byte[] erzeugenVariante(BufferedImage original, MimeType mimeType, Groesse groesse) throws IOException {
+		final boolean jpeg = getMimeType(mimeType) == MimeType.JPEG;
+		final String format = jpeg ? FORMAT_JPEG : FORMAT_PNG;
+		final int typ = jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+		final BufferedImage vorschau = skalieren(original, groesse.getMaxKante(), typ);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (!ImageIO.write(vorschau, format, out)) {
+			throw new IOException("Kein ImageWriter fuer " + format);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Ein Bild lesen. Grosse Bilder werden schon beim Dekodieren unterabgetastet, damit z.B. ein Foto mit
+	 * 24 Megapixel nicht vollstaendig in den Heap geladen wird.
+	 * @param in Bild, das vom Aufrufer geschlossen wird
+	 */
+	static BufferedImage lesen(ImageInputStream in) throws IOException {
+		final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			throw new IOException("Kein ImageReader fuer den Inhalt");
+		}
+		final ImageReader reader = readers.next();
+		try {
+			reader.setInput(in, true, true);
+			final int schritt = getSchritt(reader.getWidth(0), reader.getHeight(0));
+			final ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(schritt, schritt, 0, 0);
+			return reader.read(0, param);
+		}
+		finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * @return Schrittweite fuer die Unterabtastung beim Dekodieren, so dass mindestens die doppelte Groesse der
+	 *         groessten Variante fuer eine gute Qualitaet bleibt
+	 */
+	static int getSchritt(int breite, int hoehe) {
+		return Math.max(1, Math.max(breite, hoehe) / (2 * Groesse.MEDIUM.getMaxKante()));
+	}
+
+	/**
+	 * Ein Bild schrittweise halbieren, bis es hoechstens maxKante breit bzw. hoch ist. Bilineare Interpolation
+	 * in einem einzigen Schritt wuerde bei starker Verkleinerung Treppen und Moire erzeugen.
+	 */
+	static BufferedImage skalieren(BufferedImage original, int maxKante, int typ) {
+		final double faktor = Math.min(1.0, (double) maxKante / Math.max(original.getWidth(), original.getHeight()));
+		final int zielBreite = Math.max(1, (int) Math.round(original.getWidth() * faktor));
+		final int zielHoehe = Math.max(1, (int) Math.round(original.getHeight() * faktor));
+
+		BufferedImage bild = original;
+		int breite = original.getWidth();
+		int hoehe = original.getHeight();
+		// Mindestens ein Schritt, damit das Ergebnis den Typ fuer den ImageWriter hat
+		do {
+			breite = Math.max(breite / 2, zielBreite);
+			hoehe = Math.max(hoehe / 2, zielHoehe);
+			final BufferedImage schritt = new BufferedImage(breite, hoehe, typ);
+			final Graphics2D g = schritt.createGraphics();
+			try {
+				g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(bild, 0, 0, breite, hoehe, null);
+			}
+			finally {
+				g.dispose();
+			}
+			bild = schritt;
+		} while (breite > zielBreite || hoehe > zielHoehe);
+		return bild;
+	}
+}
@@ -3,10 +3,11 @@
 -- Kommentare durch -- am Zeilenanfang
 -- ===============================================================================
 
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (300,0,'T-Shirt','L', '19,99', '01.01.2007 01:00:00','01.01.2007 01:00:00','1');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (301,0,'Socken','S', '4,99','01.01.2007 02:00:00','01.01.2007 02:00:00','1');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (302,0,'Hemd','XS','30,00', '01.01.2007 03:00:00','01.01.2007 03:00:00','1');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (303,0,'Hosentraeger','M', '12,50','01.01.2007 04:00:00','01.01.2007 04:00:00','0');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (304,0,'Muetze','M', '10,00','01.01.2007 05:00:00','01.01.2007 05:00:00','0');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (305,0,'Unterwaesche','XXL','300,00', '01.01.2007 06:00:00','01.01.2007 06:00:00','1');
-INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich) VALUES (306,0,'Kleid','L','129,99','07.08.2007 00:00:00','07.08.2007 00:00:00','1');
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (300,0,'T-Shirt','L', '19,99', '01.01.2007 01:00:00','01.01.2007 01:00:00','1',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (301,0,'Socken','S', '4,99','01.01.2007 02:00:00','01.01.2007 02:00:00','1',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (302,0,'Hemd','XS','30,00', '01.01.2007 03:00:00','01.01.2007 03:00:00','1',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (303,0,'Hosentraeger','M', '12,50','01.01.2007 04:00:00','01.01.2007 04:00:00','0',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (304,0,'Muetze','M', '10,00','01.01.2007 05:00:00','01.01.2007 05:00:00','0',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (305,0,'Unterwaesche','XXL','300,00', '01.01.2007 06:00:00','01.01.2007 06:00:00','1',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (306,0,'Kleid','L','129,99','07.08.2007 00:00:00','07.08.2007 00:00:00','1',100);
+INSERT INTO artikel (id, version, bezeichnung, groesse, preis, erzeugt, aktualisiert, erhaeltlich, bestand) VALUES (307,0,'Restposten','M','9,99','01.02.2008 00:00:00','01.02.2008 00:00:00','1',50);
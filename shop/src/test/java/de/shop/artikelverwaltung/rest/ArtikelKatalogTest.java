@@ -0,0 +1,257 @@
+package de.shop.artikelverwaltung.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static de.shop.util.TestConstants.ACCEPT;
+import static de.shop.util.TestConstants.ARTIKEL_ID_PATH;
+import static de.shop.util.TestConstants.ARTIKEL_ID_PATH_PARAM;
+import static de.shop.util.TestConstants.ARTIKEL_PATH;
+import static de.shop.util.TestConstants.LOCATION;
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.jayway.restassured.response.Response;
+
+import de.shop.util.AbstractResourceTest;
+
+/**
+ * Katalog der verfuegbaren Artikel ueber GET /artikel und GET /artikel/{id}. Neue und geaenderte Artikel
+ * muessen nach dem Commit im Katalog sein, nicht mehr erhaeltliche Artikel nur noch in der Datenbank.
+ */
+@RunWith(Arquillian.class)
+@FixMethodOrder(NAME_ASCENDING)
+public class ArtikelKatalogTest extends AbstractResourceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long ARTIKEL_ID_VERFUEGBAR = Long.valueOf(300);
+	private static final Long ARTIKEL_ID_NICHT_ERHAELTLICH = Long.valueOf(303);
+	private static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+	private static final String IF_MATCH = "If-Match";
+	private static final String ETAG = "ETag";
+	private static final String NEUE_BEZEICHNUNG = "Katalogtest";
+	private static final String NEUE_GROESSE = "M";
+	private static final double NEUER_PREIS = 42.5;
+	private static final double GEAENDERTER_PREIS = 39.9;
+	private static final double DELTA = 0.001;
+	private static final int NEUER_BESTAND = 10;
+
+
+	@Test
+	public void findArtikelVerfuegbar() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .get(ARTIKEL_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		final List<Long> ids = getIds(response);
+		assertThat(ids.contains(ARTIKEL_ID_VERFUEGBAR), is(true));
+		assertThat(ids.contains(ARTIKEL_ID_NICHT_ERHAELTLICH), is(false));
+		// Sortiert nach der ID
+		for (int i = 1; i < ids.size(); i++) {
+			assertThat(ids.get(i - 1) < ids.get(i), is(true));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findArtikelByIdNichtErhaeltlich() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NICHT_ERHAELTLICH;
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .get(ARTIKEL_ID_PATH);
+
+		// Then: nicht im Katalog, aber aus der Datenbank
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		final JsonObject jsonObject = getObject(response);
+		assertThat(jsonObject.getJsonNumber("id").longValue(), is(artikelId.longValue()));
+		assertThat(jsonObject.getBoolean("erhaeltlich"), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void createArtikelErhaeltlich() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final Long artikelId = createArtikel(true);
+
+		// Then: nach dem Commit im Katalog
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .get(ARTIKEL_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getIds(response).contains(artikelId), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void createArtikelNichtErhaeltlich() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final Long artikelId = createArtikel(false);
+
+		// Then
+		Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                           .get(ARTIKEL_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getIds(response).contains(artikelId), is(false));
+
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                  .get(ARTIKEL_ID_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void patchArtikelPreis() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = createArtikel(true);
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("preis", GEAENDERTER_PREIS)
+		                                                     .build();
+
+		// When
+		Response response = given().contentType(MERGE_PATCH_JSON)
+		                           .header(IF_MATCH, getEtag(artikelId))
+		                           .body(jsonObject.toString())
+		                           .auth()
+		                           .basic(username, password)
+		                           .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                           .patch(ARTIKEL_ID_PATH);
+
+		// Then: der Katalog liefert den neuen Preis und die neue Version
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+		final String etag = response.getHeader(ETAG);
+
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                  .get(ARTIKEL_ID_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.getHeader(ETAG), is(etag));
+		final double preis = getObject(response).getJsonNumber("preis").doubleValue();
+		assertThat(Math.abs(preis - GEAENDERTER_PREIS) < DELTA, is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void patchArtikelNichtErhaeltlich() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = createArtikel(true);
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("erhaeltlich", false)
+		                                                     .build();
+
+		// When
+		Response response = given().contentType(MERGE_PATCH_JSON)
+		                           .header(IF_MATCH, getEtag(artikelId))
+		                           .body(jsonObject.toString())
+		                           .auth()
+		                           .basic(username, password)
+		                           .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                           .patch(ARTIKEL_ID_PATH);
+
+		// Then: nicht mehr im Katalog, aber weiterhin ueber die ID
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .get(ARTIKEL_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getIds(response).contains(artikelId), is(false));
+
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                  .get(ARTIKEL_ID_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getObject(response).getBoolean("erhaeltlich"), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private Long createArtikel(boolean erhaeltlich) {
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("bezeichnung", NEUE_BEZEICHNUNG)
+		                                                     .add("groesse", NEUE_GROESSE)
+		                                                     .add("preis", NEUER_PREIS)
+		                                                     .add("erhaeltlich", erhaeltlich)
+		                                                     .add("bestand", NEUER_BESTAND)
+		                                                     .build();
+
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(USERNAME_ADMIN, PASSWORD_ADMIN)
+		                                 .post(ARTIKEL_PATH);
+
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		final String location = response.getHeader(LOCATION);
+		return Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+	}
+
+	private static String getEtag(Long artikelId) {
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .get(ARTIKEL_ID_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		return response.getHeader(ETAG);
+	}
+
+	private static List<Long> getIds(Response response) {
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonArray jsonArray = jsonReader.readArray();
+			final List<Long> ids = new ArrayList<>(jsonArray.size());
+			for (int i = 0; i < jsonArray.size(); i++) {
+				ids.add(jsonArray.getJsonObject(i).getJsonNumber("id").longValue());
+			}
+			return ids;
+		}
+	}
+
+	private static JsonObject getObject(Response response) {
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			return jsonReader.readObject();
+		}
+	}
+}
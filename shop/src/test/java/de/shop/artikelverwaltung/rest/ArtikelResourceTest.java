@@ -0,0 +1,202 @@
+package de.shop.artikelverwaltung.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static de.shop.util.TestConstants.ACCEPT;
+import static de.shop.util.TestConstants.ARTIKEL_ID_BESTAND_PATH;
+import static de.shop.util.TestConstants.ARTIKEL_ID_PATH_PARAM;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.jayway.restassured.response.Response;
+
+import de.shop.util.AbstractResourceTest;
+
+
+@RunWith(Arquillian.class)
+@FixMethodOrder(NAME_ASCENDING)
+public class ArtikelResourceTest extends AbstractResourceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long ARTIKEL_ID_VORHANDEN = Long.valueOf(300);
+	private static final Long ARTIKEL_ID_NACHSCHUB = Long.valueOf(302);
+	private static final Long ARTIKEL_ID_NICHT_VORHANDEN = Long.valueOf(1000);
+	private static final int NACHSCHUB = 5;
+
+
+	@Test
+	public void findBestand() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_VORHANDEN;
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .get(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getBestand(response) >= 0, is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findBestandNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NICHT_VORHANDEN;
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .get(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NOT_FOUND));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void nachbestellen() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NACHSCHUB;
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final int bestandVorher = getBestand(given().header(ACCEPT, APPLICATION_JSON)
+		                                            .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                            .get(ARTIKEL_ID_BESTAND_PATH));
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("menge", NACHSCHUB)
+		                                                     .build();
+
+		// When
+		Response response = given().contentType(APPLICATION_JSON)
+		                            .body(jsonObject.toString())
+		                            .auth()
+		                            .basic(username, password)
+		                            .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                            .post(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+
+		// Der Zaehler wird nach dem Commit erhoeht, also noch vor der Antwort
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                  .get(ARTIKEL_ID_BESTAND_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(getBestand(response), is(bestandVorher + NACHSCHUB));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void nachbestellenUngueltigeMenge() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NACHSCHUB;
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("menge", -NACHSCHUB)
+		                                                     .build();
+
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .post(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_BAD_REQUEST));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void nachbestellenNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NICHT_VORHANDEN;
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("menge", NACHSCHUB)
+		                                                     .build();
+
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .post(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NOT_FOUND));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void nachbestellenFehlendeBerechtigung() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long artikelId = ARTIKEL_ID_NACHSCHUB;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                                                     .add("menge", NACHSCHUB)
+		                                                     .build();
+
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(ARTIKEL_ID_PATH_PARAM, artikelId)
+		                                 .post(ARTIKEL_ID_BESTAND_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_FORBIDDEN));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static int getBestand(Response response) {
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			return jsonReader.readObject().getInt("bestand");
+		}
+	}
+}
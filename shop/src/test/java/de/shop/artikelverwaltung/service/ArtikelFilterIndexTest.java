@@ -0,0 +1,312 @@
+package de.shop.artikelverwaltung.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+
+/**
+ * Filter nach Preis, Groesse und Verfuegbarkeit mit den Facetten ohne Appserver und ohne Datenbank. Die Methoden
+ * fuer die CDI-Events werden direkt aufgerufen, wie es der Container nach dem Commit der Transaktion tut.
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class ArtikelFilterIndexTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long ID_SOCKEN = Long.valueOf(1);
+	private static final Long ID_SHIRT = Long.valueOf(2);
+	private static final Long ID_MUETZE = Long.valueOf(3);
+	private static final Long ID_HEMD = Long.valueOf(4);
+	private static final Long ID_KLEID = Long.valueOf(5);
+	private static final Long ID_MANTEL = Long.valueOf(6);
+	private static final Long ID_NICHT_VORHANDEN = Long.valueOf(999);
+
+	private static final double PREIS_SOCKEN = 4.99;
+	private static final double PREIS_10 = 10;
+	private static final double PREIS_HEMD = 30;
+	private static final double PREIS_KLEID = 120;
+	private static final double PREIS_MANTEL = 600;
+	private static final double PREIS_NEU = 200;
+	private static final double PREIS_MAX = 50;
+
+	private static final String S = "S";
+	private static final String M = "M";
+	private static final String L = "L";
+	private static final String XL = "XL";
+
+	private static final int LIMIT = 10;
+	private static final int ALLE = 6;
+	private static final int ANZAHL_M = 3;
+	private static final List<String> PREISBEREICHE = Arrays.asList("0-10", "10-25", "25-50", "50-100", "100-250",
+	                                                                "250-500", "500-");
+
+	private ArtikelFilterIndex filterIndex;
+
+	@Before
+	public void before() {
+		filterIndex = new ArtikelFilterIndex();
+		// In der Reihenfolge der Preise: ID_SOCKEN, ID_SHIRT, ID_MUETZE, ID_HEMD, ID_KLEID, ID_MANTEL
+		neu(ID_MANTEL, PREIS_MANTEL, M, false);
+		neu(ID_HEMD, PREIS_HEMD, M, true);
+		neu(ID_SOCKEN, PREIS_SOCKEN, S, true);
+		neu(ID_MUETZE, PREIS_10, L, false);
+		neu(ID_KLEID, PREIS_KLEID, XL, true);
+		neu(ID_SHIRT, PREIS_10, M, true);
+	}
+
+	@Test
+	public void findOhneKriterien() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, null, null, null));
+
+		// Then: nach Preis und bei gleichem Preis nach ID sortiert
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SOCKEN, ID_SHIRT, ID_MUETZE, ID_HEMD, ID_KLEID,
+		                                               ID_MANTEL)));
+		assertThat(ergebnis.getAnzahl(), is(ALLE));
+		assertThat(ergebnis.isWeitere(), is(false));
+		assertThat(ergebnis.getGroessen(), is(groessen(1, ANZAHL_M, 1, 1)));
+		assertThat(new ArrayList<>(ergebnis.getPreise().keySet()), is(PREISBEREICHE));
+		assertThat(preise(ergebnis), is(Arrays.asList(1, 2, 1, 0, 1, 0, 1)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findPreis() {
+		LOGGER.finer("BEGINN");
+
+		// When: beide Grenzen einschliesslich
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(PREIS_10, PREIS_HEMD, null, null));
+
+		// Then
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SHIRT, ID_MUETZE, ID_HEMD)));
+		assertThat(ergebnis.getAnzahl(), is(ergebnis.getIds().size()));
+		// Die Groessen im Preisbereich, die Preisbereiche unabhaengig vom Preis
+		assertThat(ergebnis.getGroessen(), is(groessen(1, 2, 0, 0)));
+		assertThat(preise(ergebnis), is(Arrays.asList(1, 2, 1, 0, 1, 0, 1)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findPreisLeer() {
+		LOGGER.finer("BEGINN");
+
+		// When: Mindestpreis ueber dem Hoechstpreis
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(PREIS_KLEID, PREIS_10, null, null));
+
+		// Then
+		assertThat(ergebnis.getIds(), is(Collections.<Long>emptyList()));
+		assertThat(ergebnis.getAnzahl(), is(0));
+		assertThat(ergebnis.getGroessen(), is(groessen(0, 0, 0, 0)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findGroesse() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, null, M, null));
+
+		// Then: die Groessen unabhaengig von der Groesse, die Preisbereiche nur fuer M
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SHIRT, ID_HEMD, ID_MANTEL)));
+		assertThat(ergebnis.getAnzahl(), is(ANZAHL_M));
+		assertThat(ergebnis.getGroessen(), is(groessen(1, ANZAHL_M, 1, 1)));
+		assertThat(preise(ergebnis), is(Arrays.asList(0, 1, 1, 0, 0, 0, 1)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findGroesseNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, null, "XXS", null));
+
+		// Then
+		assertThat(ergebnis.getIds(), is(Collections.<Long>emptyList()));
+		assertThat(ergebnis.getAnzahl(), is(0));
+		assertThat(ergebnis.getGroessen(), is(groessen(1, ANZAHL_M, 1, 1)));
+		assertThat(preise(ergebnis), is(Arrays.asList(0, 0, 0, 0, 0, 0, 0)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findErhaeltlich() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final ArtikelFilterErgebnis erhaeltlich = find(new ArtikelFilter(null, null, null, true));
+		final ArtikelFilterErgebnis nichtErhaeltlich = find(new ArtikelFilter(null, null, null, false));
+
+		// Then
+		assertThat(erhaeltlich.getIds(), is(Arrays.asList(ID_SOCKEN, ID_SHIRT, ID_HEMD, ID_KLEID)));
+		assertThat(erhaeltlich.getGroessen(), is(groessen(0, 2, 1, 1)));
+		assertThat(preise(erhaeltlich), is(Arrays.asList(1, 1, 1, 0, 1, 0, 0)));
+		assertThat(nichtErhaeltlich.getIds(), is(Arrays.asList(ID_MUETZE, ID_MANTEL)));
+		assertThat(nichtErhaeltlich.getGroessen(), is(groessen(1, 1, 0, 0)));
+		assertThat(preise(nichtErhaeltlich), is(Arrays.asList(0, 1, 0, 0, 0, 0, 1)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findKombiniert() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, PREIS_MAX, M, true));
+
+		// Then
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SHIRT, ID_HEMD)));
+		assertThat(ergebnis.getAnzahl(), is(2));
+		// Verfuegbar bis PREIS_MAX bzw. verfuegbar mit der Groesse M
+		assertThat(ergebnis.getGroessen(), is(groessen(0, 2, 1, 0)));
+		assertThat(preise(ergebnis), is(Arrays.asList(0, 1, 1, 0, 0, 0, 0)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findArtikelIds() {
+		LOGGER.finer("BEGINN");
+
+		// When: z.B. aus der Suche nach der Bezeichnung
+		final List<Long> artikelIds = Arrays.asList(ID_HEMD, ID_NICHT_VORHANDEN, ID_SOCKEN);
+		final ArtikelFilterErgebnis ergebnis = filterIndex.find(new ArtikelFilter(null, null, null, true),
+		                                                        artikelIds, null, LIMIT);
+
+		// Then
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SOCKEN, ID_HEMD)));
+		assertThat(ergebnis.getGroessen(), is(groessen(0, 1, 1, 0)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findSeiten() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final ArtikelFilter filter = new ArtikelFilter(null, null, null, null);
+
+		// When
+		final ArtikelFilterErgebnis seite1 = filterIndex.find(filter, null, null, 2);
+		final ArtikelFilterErgebnis seite2 = filterIndex.find(filter, null, ID_SHIRT, 2);
+		final ArtikelFilterErgebnis seite3 = filterIndex.find(filter, null, ID_HEMD, 2);
+
+		// Then
+		assertThat(seite1.getIds(), is(Arrays.asList(ID_SOCKEN, ID_SHIRT)));
+		assertThat(seite1.isWeitere(), is(true));
+		assertThat(seite2.getIds(), is(Arrays.asList(ID_MUETZE, ID_HEMD)));
+		assertThat(seite2.isWeitere(), is(true));
+		assertThat(seite3.getIds(), is(Arrays.asList(ID_KLEID, ID_MANTEL)));
+		assertThat(seite3.isWeitere(), is(false));
+		// Die Gesamtzahl und die Facetten gelten fuer alle Seiten
+		assertThat(seite3.getAnzahl(), is(ALLE));
+		assertThat(seite3.getGroessen(), is(seite1.getGroessen()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void onUpdateArtikel() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		filterIndex.onUpdateArtikel(newArtikel(ID_SOCKEN, PREIS_NEU, XL, false));
+
+		// Then
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, null, null, null));
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SHIRT, ID_MUETZE, ID_HEMD, ID_KLEID, ID_SOCKEN,
+		                                               ID_MANTEL)));
+		assertThat(ergebnis.getGroessen(), is((Map<String, Integer>) ImmutableMap.of(L, 1, M, ANZAHL_M, XL, 2)));
+		assertThat(find(new ArtikelFilter(null, null, null, true)).getIds(),
+		           is(Arrays.asList(ID_SHIRT, ID_HEMD, ID_KLEID)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void onDeleteArtikel() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		filterIndex.onDeleteArtikel(newArtikel(ID_MUETZE, PREIS_10, L, false));
+		// Ein zweites Event zum selben Artikel aendert nichts
+		filterIndex.onDeleteArtikel(newArtikel(ID_MUETZE, PREIS_10, L, false));
+
+		// Then: ohne Artikel gibt es auch die Groesse nicht mehr
+		final ArtikelFilterErgebnis ergebnis = find(new ArtikelFilter(null, null, null, null));
+		assertThat(ergebnis.getIds(), is(Arrays.asList(ID_SOCKEN, ID_SHIRT, ID_HEMD, ID_KLEID, ID_MANTEL)));
+		assertThat(ergebnis.getGroessen().containsKey(L), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void isLeer() {
+		LOGGER.finer("BEGINN");
+
+		// When Then: eine leere Groesse ist kein Kriterium
+		assertThat(new ArtikelFilter(null, null, null, null).isLeer(), is(true));
+		assertThat(new ArtikelFilter(null, null, "", null).isLeer(), is(true));
+		assertThat(new ArtikelFilter(null, null, M, null).isLeer(), is(false));
+		assertThat(new ArtikelFilter(PREIS_10, null, null, null).isLeer(), is(false));
+		assertThat(new ArtikelFilter(null, null, null, false).isLeer(), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private ArtikelFilterErgebnis find(ArtikelFilter filter) {
+		return filterIndex.find(filter, null, null, LIMIT);
+	}
+
+	private void neu(Long id, double preis, String groesse, boolean erhaeltlich) {
+		filterIndex.onCreateArtikel(newArtikel(id, preis, groesse, erhaeltlich));
+	}
+
+	private static Artikel newArtikel(Long id, double preis, String groesse, boolean erhaeltlich) {
+		final Artikel artikel = new Artikel();
+		artikel.setId(id);
+		artikel.setPreis(preis);
+		artikel.setGroesse(groesse);
+		artikel.setErhaeltlich(erhaeltlich);
+		return artikel;
+	}
+
+	/**
+	 * Anzahl je Groesse in der Sortierung der Facette
+	 */
+	private static Map<String, Integer> groessen(int anzahlL, int anzahlM, int anzahlS, int anzahlXl) {
+		return ImmutableMap.of(L, anzahlL, M, anzahlM, S, anzahlS, XL, anzahlXl);
+	}
+
+	/**
+	 * Anzahl je Preisbereich in der Reihenfolge von PREISBEREICHE
+	 */
+	private static List<Integer> preise(ArtikelFilterErgebnis ergebnis) {
+		return new ArrayList<>(ergebnis.getPreise().values());
+	}
+}
@@ -0,0 +1,262 @@
+package de.shop.artikelverwaltung.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+
+/**
+ * Trigramm-Index der Artikelbezeichnungen ohne Appserver und ohne Datenbank. Die Methoden fuer die CDI-Events
+ * werden direkt aufgerufen, wie es der Container nach dem Commit der Transaktion tut.
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class ArtikelIndexTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long ID_HEMDBLUSE = Long.valueOf(10);
+	private static final Long ID_HEMD = Long.valueOf(11);
+	private static final Long ID_TRACHTENHEMD = Long.valueOf(12);
+	private static final Long ID_HOSE = Long.valueOf(13);
+	private static final Long ID_VERTAUSCHT = Long.valueOf(14);
+	private static final Long ID_NEU = Long.valueOf(15);
+	private static final Long ID_UMLAUT = Long.valueOf(16);
+	private static final Long ID_KANJI = Long.valueOf(17);
+
+	private static final String HEMD = "hemd";
+	private static final String HEMDCHEN = "Hemdchen";
+	private static final String JACKE = "Jacke";
+	private static final String STAT_ARTIKEL = "artikel";
+	private static final String STAT_TRIGRAMME = "trigramme";
+	private static final String STAT_POSTINGS = "postings";
+	private static final String STAT_ABFRAGEN = "abfragen";
+	private static final int TRIGRAMME_BANANA = 3;
+
+	private ArtikelIndex artikelIndex;
+
+	@Before
+	public void before() {
+		artikelIndex = new ArtikelIndex();
+		neu(ID_HEMDBLUSE, "Hemdbluse");
+		neu(ID_HEMD, "Hemd");
+		neu(ID_TRACHTENHEMD, "Trachtenhemd");
+		neu(ID_HOSE, "Hose");
+		// Enthaelt die Trigramme "hem" und "emd", aber nicht "hemd"
+		neu(ID_VERTAUSCHT, "emd hem");
+	}
+
+	@Test
+	public void findTeilstring() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<Long> ids = artikelIndex.findArtikelIds("HEMD", false, 0);
+
+		// Then: Praefix vor Teilstring, dann die kuerzere Bezeichnung; ohne ID_VERTAUSCHT
+		assertThat(ids, is(Arrays.asList(ID_HEMD, ID_HEMDBLUSE, ID_TRACHTENHEMD)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findTeilstringMax() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<Long> ids = artikelIndex.findArtikelIds(HEMD, false, 2);
+
+		// Then: nur die besten Treffer
+		assertThat(ids, is(Arrays.asList(ID_HEMD, ID_HEMDBLUSE)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findTeilstringGleicherRang() {
+		LOGGER.finer("BEGINN");
+
+		// Given: gleiche Bezeichnung, die kleinere ID zuerst
+		neu(ID_NEU, "Hose");
+
+		// When
+		final List<Long> ids = artikelIndex.findArtikelIds("hose", false, 0);
+
+		// Then
+		assertThat(ids, is(Arrays.asList(ID_HOSE, ID_NEU)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findTeilstringNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(artikelIndex.findArtikelIds("socke", false, 0), is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findAehnlich() {
+		LOGGER.finer("BEGINN");
+
+		// Given: Tippfehler im letzten Zeichen
+		final String suchbegriff = "Trachtenhemt";
+
+		// When
+		final List<Long> exakt = artikelIndex.findArtikelIds(suchbegriff, false, 0);
+		final List<Long> aehnlich = artikelIndex.findArtikelIds(suchbegriff, true, 0);
+
+		// Then
+		assertThat(exakt, is(Collections.<Long>emptyList()));
+		assertThat(aehnlich, is(Arrays.asList(ID_TRACHTENHEMD)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findAehnlichTeilstringZuerst() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<Long> ids = artikelIndex.findArtikelIds(HEMD, true, 0);
+
+		// Then: Treffer mit dem Suchbegriff vor den nur aehnlichen Bezeichnungen
+		assertThat(ids, is(Arrays.asList(ID_HEMD, ID_HEMDBLUSE, ID_TRACHTENHEMD, ID_VERTAUSCHT)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findKurz() {
+		LOGGER.finer("BEGINN");
+
+		// When: weniger als 3 Zeichen, d.h. ohne Trigramme und ohne Fehlertoleranz
+		final List<Long> ids = artikelIndex.findArtikelIds("he", true, 0);
+
+		// Then
+		assertThat(ids, is(Arrays.asList(ID_HEMD, ID_HEMDBLUSE, ID_VERTAUSCHT, ID_TRACHTENHEMD)));
+		assertThat(artikelIndex.findArtikelIds("x", false, 0), is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findNichtAscii() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		neu(ID_UMLAUT, "\u00dcberzieher \u00c4rmellos");
+		neu(ID_KANJI, "\u65e5\u672c");
+
+		// When Then: Gross- und Kleinschreibung auch bei Umlauten
+		assertThat(artikelIndex.findArtikelIds("\u00fcberz", false, 0), is(Arrays.asList(ID_UMLAUT)));
+		assertThat(artikelIndex.findArtikelIds("\u00e4RMEL", false, 0), is(Arrays.asList(ID_UMLAUT)));
+		assertThat(artikelIndex.findArtikelIds("\u00dcberzieger", true, 0), is(Arrays.asList(ID_UMLAUT)));
+		assertThat(artikelIndex.findArtikelIds("\u672c", false, 0), is(Arrays.asList(ID_KANJI)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void onCreateArtikel() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Map<String, Number> vorher = artikelIndex.getStatistik();
+
+		// When
+		neu(ID_NEU, HEMDCHEN);
+		// Ein zweites Event zum selben Artikel aendert nichts
+		neu(ID_NEU, HEMDCHEN);
+
+		// Then
+		assertThat(artikelIndex.findArtikelIds(HEMD, false, 0),
+		           is(Arrays.asList(ID_HEMD, ID_NEU, ID_HEMDBLUSE, ID_TRACHTENHEMD)));
+		final Map<String, Number> nachher = artikelIndex.getStatistik();
+		assertThat(nachher.get(STAT_ARTIKEL).intValue(), is(vorher.get(STAT_ARTIKEL).intValue() + 1));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void onUpdateArtikel() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		artikelIndex.onUpdateArtikel(newArtikel(ID_HEMD, JACKE));
+
+		// Then
+		assertThat(artikelIndex.findArtikelIds(HEMD, false, 0),
+		           is(Arrays.asList(ID_HEMDBLUSE, ID_TRACHTENHEMD)));
+		assertThat(artikelIndex.findArtikelIds(JACKE, false, 0), is(Arrays.asList(ID_HEMD)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void onDeleteArtikel() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		artikelIndex.onDeleteArtikel(newArtikel(ID_TRACHTENHEMD, "Trachtenhemd"));
+		// Die freie Position wird wiederverwendet
+		neu(ID_NEU, HEMDCHEN);
+
+		// Then
+		assertThat(artikelIndex.findArtikelIds(HEMD, false, 0), is(Arrays.asList(ID_HEMD, ID_NEU, ID_HEMDBLUSE)));
+		assertThat(artikelIndex.findArtikelIds("tracht", true, 0), is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getStatistik() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		artikelIndex = new ArtikelIndex();
+
+		// When
+		// "banana" hat die verschiedenen Trigramme "ban", "ana" und "nan"
+		neu(ID_NEU, "banana");
+		final Map<String, Number> nachCreate = artikelIndex.getStatistik();
+		artikelIndex.findArtikelIds("nan", false, 0);
+		artikelIndex.onDeleteArtikel(newArtikel(ID_NEU, "banana"));
+		final Map<String, Number> nachDelete = artikelIndex.getStatistik();
+
+		// Then
+		assertThat(nachCreate.get(STAT_ARTIKEL).intValue(), is(1));
+		assertThat(nachCreate.get(STAT_TRIGRAMME).intValue(), is(TRIGRAMME_BANANA));
+		assertThat(nachCreate.get(STAT_POSTINGS).longValue(), is((long) TRIGRAMME_BANANA));
+		assertThat(nachDelete.get(STAT_ARTIKEL).intValue(), is(0));
+		assertThat(nachDelete.get(STAT_TRIGRAMME).intValue(), is(0));
+		assertThat(nachDelete.get(STAT_POSTINGS).longValue(), is(0L));
+		assertThat(nachDelete.get(STAT_ABFRAGEN).longValue(), is(1L));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private void neu(Long id, String bezeichnung) {
+		artikelIndex.onCreateArtikel(newArtikel(id, bezeichnung));
+	}
+
+	private static Artikel newArtikel(Long id, String bezeichnung) {
+		final Artikel artikel = new Artikel();
+		artikel.setId(id);
+		artikel.setBezeichnung(bezeichnung);
+		return artikel;
+	}
+}
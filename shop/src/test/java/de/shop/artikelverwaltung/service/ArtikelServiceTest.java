@@ -0,0 +1,162 @@
+package de.shop.artikelverwaltung.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+/**
+ * Zerlegung der IDs in IN-Listen fester Laenge fuer findArtikelMapByIds(), ohne Appserver und ohne Datenbank
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class ArtikelServiceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final long ERSTE_ID = 300L;
+	private static final int KLEIN = 4;
+	private static final int MITTEL = 16;
+	private static final int GROSS = 64;
+	private static final int VOLLE_ABSCHNITTE = 3;
+
+	@Test
+	public void zerlegenLeer() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(Collections.<Long>emptyList());
+
+		// Then
+		assertThat(chunks.isEmpty(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenEineId() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(ids(1));
+
+		// Then
+		assertThat(chunks, is(Arrays.asList(ids(1))));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenAufgefuellt() {
+		LOGGER.finer("BEGINN");
+
+		// Given: 2 IDs passen in die IN-Liste mit 4 Parametern
+		final List<Long> ids = ids(2);
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(ids);
+
+		// Then: mit der letzten ID aufgefuellt
+		assertThat(chunks.size(), is(1));
+		assertThat(chunks.get(0), is(Arrays.asList(ids.get(0), ids.get(1), ids.get(1), ids.get(1))));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenGenauEineLaenge() {
+		LOGGER.finer("BEGINN");
+
+		// When Then: ohne Auffuellen
+		assertThat(ArtikelService.zerlegen(ids(KLEIN)), is(Arrays.asList(ids(KLEIN))));
+		assertThat(ArtikelService.zerlegen(ids(MITTEL)), is(Arrays.asList(ids(MITTEL))));
+		assertThat(ArtikelService.zerlegen(ids(GROSS)), is(Arrays.asList(ids(GROSS))));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenZwischenLaengen() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(ids(KLEIN + 1));
+
+		// Then: die naechstgroessere Laenge
+		assertThat(chunks.size(), is(1));
+		assertThat(chunks.get(0).size(), is(MITTEL));
+		pruefen(ids(KLEIN + 1), chunks);
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenMehrereAbschnitte() {
+		LOGGER.finer("BEGINN");
+
+		// Given: volle Abschnitte und ein Rest von 8 IDs
+		final List<Long> ids = ids(VOLLE_ABSCHNITTE * GROSS + 2 * KLEIN);
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(ids);
+
+		// Then
+		assertThat(chunks.size(), is(VOLLE_ABSCHNITTE + 1));
+		for (int i = 0; i < VOLLE_ABSCHNITTE; i++) {
+			assertThat(chunks.get(i).size(), is(GROSS));
+		}
+		assertThat(chunks.get(VOLLE_ABSCHNITTE).size(), is(MITTEL));
+		pruefen(ids, chunks);
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void zerlegenEinsUeberMax() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<List<Long>> chunks = ArtikelService.zerlegen(ids(GROSS + 1));
+
+		// Then
+		assertThat(chunks.size(), is(2));
+		assertThat(chunks.get(0).size(), is(GROSS));
+		assertThat(chunks.get(1), is(Arrays.asList(ERSTE_ID + GROSS)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	/**
+	 * Jede ID kommt in genau einem Abschnitt vor, in der Reihenfolge der IDs; aufgefuellt wird nur am Ende
+	 * eines Abschnitts mit dessen letzter ID
+	 */
+	private static void pruefen(List<Long> ids, List<List<Long>> chunks) {
+		final List<Long> zusammen = new ArrayList<>(ids.size());
+		for (List<Long> chunk : chunks) {
+			final Set<Long> eindeutig = new LinkedHashSet<>(chunk);
+			zusammen.addAll(eindeutig);
+			final Long letzte = chunk.get(eindeutig.size() - 1);
+			for (int i = eindeutig.size(); i < chunk.size(); i++) {
+				assertThat(chunk.get(i), is(letzte));
+			}
+		}
+		assertThat(zusammen, is(ids));
+	}
+
+	private static List<Long> ids(int anzahl) {
+		final List<Long> ids = new ArrayList<>(anzahl);
+		for (int i = 0; i < anzahl; i++) {
+			ids.add(Long.valueOf(ERSTE_ID + i));
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,144 @@
+package de.shop.bestellverwaltung.rest;
+
+import static de.shop.util.TestConstants.ARTIKEL_URI;
+import static de.shop.util.TestConstants.BESTELLUNGEN_PATH;
+import static de.shop.util.TestConstants.KUNDEN_URI;
+import static java.net.HttpURLConnection.HTTP_CONFLICT;
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.json.JsonObject;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.jayway.restassured.response.Response;
+
+import de.shop.util.AbstractResourceTest;
+import de.shop.util.ConcurrentCreate;
+
+@RunWith(Arquillian.class)
+@FixMethodOrder(NAME_ASCENDING)
+public class BestellungResourceConcurrencyTest extends AbstractResourceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long KUNDE_ID_VORHANDEN = Long.valueOf(102);
+	// Artikel mit einem Bestand von 50, den nur dieser Test bestellt
+	private static final Long ARTIKEL_ID_RESTPOSTEN = Long.valueOf(307);
+	private static final int BESTAND_RESTPOSTEN = 50;
+	private static final int ANZAHL_THREADS = 200;
+	// Artikel mit einem Bestand von 100, der fuer alle Bestellungen desselben Kunden ausreicht
+	private static final Long ARTIKEL_ID_VORHANDEN = Long.valueOf(306);
+	private static final int ANZAHL_THREADS_GLEICHER_KUNDE = 50;
+
+	@Test
+	public void createBestellungenGleicherArtikel() throws InterruptedException, ExecutionException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_RESTPOSTEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+				                      .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+				                      .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+				            		                            .add(getJsonBuilderFactory().createObjectBuilder()
+				            		                                 .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+				            		                                 .add("anzahl", 1)))
+				                      .build();
+
+		// When
+		// Alle Threads bestellen gleichzeitig denselben Artikel, aber nur fuer einen Teil reicht der Bestand
+		final ExecutorService executorService = Executors.newFixedThreadPool(ANZAHL_THREADS);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<Response>> futures = new ArrayList<>(ANZAHL_THREADS);
+		for (int i = 0; i < ANZAHL_THREADS; i++) {
+			futures.add(executorService.submit(new ConcurrentCreate(jsonObject, BESTELLUNGEN_PATH,
+			                                                        username, password, start)));
+		}
+		final long beginn = System.nanoTime();
+		start.countDown();
+
+		int created = 0;
+		int conflict = 0;
+		for (Future<Response> future : futures) {
+			final int statusCode = future.get().getStatusCode();
+			if (statusCode == HTTP_CREATED) {
+				created++;
+			}
+			else if (statusCode == HTTP_CONFLICT) {
+				conflict++;
+			}
+		}
+		final long millis = NANOSECONDS.toMillis(System.nanoTime() - beginn);
+		executorService.shutdown();
+		LOGGER.info(ANZAHL_THREADS + " gleichzeitige Bestellungen in " + millis + " ms");
+
+		// Then
+		assertThat(created, is(BESTAND_RESTPOSTEN));
+		assertThat(conflict, is(ANZAHL_THREADS - BESTAND_RESTPOSTEN));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void createBestellungenGleicherKunde() throws InterruptedException, ExecutionException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_VORHANDEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+				                      .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+				                      .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+				            		                            .add(getJsonBuilderFactory().createObjectBuilder()
+				            		                                 .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+				            		                                 .add("anzahl", 1)))
+				                      .build();
+
+		// When
+		// Gleichzeitige Bestellungen desselben Kunden duerfen nicht an dessen Versionsnummer scheitern
+		final ExecutorService executorService = Executors.newFixedThreadPool(ANZAHL_THREADS_GLEICHER_KUNDE);
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<Response>> futures = new ArrayList<>(ANZAHL_THREADS_GLEICHER_KUNDE);
+		for (int i = 0; i < ANZAHL_THREADS_GLEICHER_KUNDE; i++) {
+			futures.add(executorService.submit(new ConcurrentCreate(jsonObject, BESTELLUNGEN_PATH,
+			                                                        username, password, start)));
+		}
+		final long beginn = System.nanoTime();
+		start.countDown();
+
+		int created = 0;
+		for (Future<Response> future : futures) {
+			if (future.get().getStatusCode() == HTTP_CREATED) {
+				created++;
+			}
+		}
+		final long millis = NANOSECONDS.toMillis(System.nanoTime() - beginn);
+		executorService.shutdown();
+		LOGGER.info(ANZAHL_THREADS_GLEICHER_KUNDE + " gleichzeitige Bestellungen eines Kunden in " + millis + " ms");
+
+		// Then
+		assertThat(created, is(ANZAHL_THREADS_GLEICHER_KUNDE));
+
+		LOGGER.finer("ENDE");
+	}
+}
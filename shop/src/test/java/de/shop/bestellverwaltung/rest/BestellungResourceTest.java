@@ -3,25 +3,37 @@ package de.shop.bestellverwaltung.rest;
 import static com.jayway.restassured.RestAssured.given;
 import static de.shop.util.TestConstants.ACCEPT;
 import static de.shop.util.TestConstants.ARTIKEL_URI;
+import static de.shop.util.TestConstants.BESTELLUNGEN_EINGAENGE_ID_PATH;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_KUNDE_PATH;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_PATH;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_PATH_PARAM;
 import static de.shop.util.TestConstants.BESTELLUNGEN_PATH;
+import static de.shop.util.TestConstants.EINGAENGE_ID_PATH_PARAM;
 import static de.shop.util.TestConstants.KUNDEN_URI;
 import static de.shop.util.TestConstants.LOCATION;
+import static de.shop.util.TestConstants.MAIL_PATH;
+import static de.shop.util.TestConstants.PREFER;
+import static de.shop.util.TestConstants.PREFERENCE_APPLIED;
+import static de.shop.util.TestConstants.SMTP_PORT;
+import static java.net.HttpURLConnection.HTTP_ACCEPTED;
 import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.runners.MethodSorters.NAME_ASCENDING;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
 
@@ -33,6 +45,7 @@ import org.junit.runner.RunWith;
 import com.jayway.restassured.response.Response;
 
 import de.shop.util.AbstractResourceTest;
+import de.shop.util.SmtpStandIn;
 
 
 @RunWith(Arquillian.class)
@@ -44,6 +57,13 @@ public class BestellungResourceTest extends AbstractResourceTest {
 	private static final Long KUNDE_ID_VORHANDEN = Long.valueOf(102);
 	private static final Long ARTIKEL_ID_VORHANDEN_1 = Long.valueOf(300);
 	private static final Long ARTIKEL_ID_VORHANDEN_2 = Long.valueOf(301);
+	private static final Long ARTIKEL_ID_NICHT_VORHANDEN = Long.valueOf(1000);
+	private static final long EMAIL_TIMEOUT_SEKUNDEN = 30;
+	private static final String EINGANG_ID_NICHT_VORHANDEN = "nicht-vorhanden";
+	private static final String RESPOND_ASYNC = "respond-async";
+	private static final String WARTEND = "WARTEND";
+	private static final long EINGANG_TIMEOUT_MS = 30000;
+	private static final long EINGANG_POLL_MS = 100;
 
 	
 	@Test
@@ -135,4 +155,225 @@ public class BestellungResourceTest extends AbstractResourceTest {
 
 		LOGGER.finer("ENDE");
 	}
+
+	@Test
+	public void createBestellungDoppelteUndFehlendeArtikel() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_VORHANDEN_1;
+		final Long artikelIdNichtVorhanden = ARTIKEL_ID_NICHT_VORHANDEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// Derselbe Artikel in 2 Positionen und eine Position mit einem nicht vorhandenen Artikel
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+		                              .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+		                                                        .add(getJsonBuilderFactory().createObjectBuilder()
+		                                                             .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+		                                                             .add("anzahl", 1))
+		                                                        .add(getJsonBuilderFactory().createObjectBuilder()
+		                                                             .add("artikelUri", ARTIKEL_URI + "/"
+		                                                                                + artikelIdNichtVorhanden)
+		                                                             .add("anzahl", 1))
+		                                                        .add(getJsonBuilderFactory().createObjectBuilder()
+		                                                             .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+		                                                             .add("anzahl", 2)))
+		                              .build();
+		
+		// When
+		Response response = given().contentType(APPLICATION_JSON)
+		                           .body(jsonObject.toString())
+		                           .auth()
+		                           .basic(username, password)
+		                           .post(BESTELLUNGEN_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		final String location = response.getHeader(LOCATION);
+		final Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+		
+		// When (2)
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(BESTELLUNGEN_ID_PATH_PARAM, id)
+		                  .get(BESTELLUNGEN_ID_PATH);
+		
+		// Then (2)
+		// Beide Positionen mit dem doppelten Artikel bleiben erhalten, die Position ohne Artikel entfaellt
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+		              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonArray bestellpositionen = jsonReader.readObject().getJsonArray("bestellpositionen");
+			assertThat(bestellpositionen.size(), is(2));
+			for (int i = 0; i < bestellpositionen.size(); i++) {
+				assertThat(bestellpositionen.getJsonObject(i).getString("artikelUri"),
+				           endsWith("/" + artikelId));
+			}
+		}
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void createBestellungArtikelNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_NICHT_VORHANDEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+		                              .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+		                                                        .add(getJsonBuilderFactory().createObjectBuilder()
+		                                                             .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+		                                                             .add("anzahl", 1)))
+		                              .build();
+		
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .post(BESTELLUNGEN_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NOT_FOUND));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void createBestellungMitEmail() throws IOException, InterruptedException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_VORHANDEN_1;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final String usernameAdmin = USERNAME_ADMIN;
+		final String passwordAdmin = PASSWORD_ADMIN;
+		
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+				                      .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+				                      .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+				            		                            .add(getJsonBuilderFactory().createObjectBuilder()
+				            		                                 .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+				            		                                 .add("anzahl", 1)))
+				                      .build();
+
+		try (final SmtpStandIn smtp = new SmtpStandIn(SMTP_PORT)) {
+			// When
+			final Response response = given().contentType(APPLICATION_JSON)
+					                         .body(jsonObject.toString())
+					                         .auth()
+					                         .basic(username, password)
+					                         .post(BESTELLUNGEN_PATH);
+			
+			// Then
+			assertThat(response.getStatusCode(), is(HTTP_CREATED));
+			final String location = response.getHeader(LOCATION);
+			final String id = location.substring(location.lastIndexOf('/') + 1);
+			
+			// Die Email wird nach dem Commit im Hintergrund versendet
+			final String email = smtp.empfangen(EMAIL_TIMEOUT_SEKUNDEN, TimeUnit.SECONDS);
+			assertThat(email, is(notNullValue()));
+			assertThat(email, containsString("Neue Bestellung Nr. " + id));
+		}
+		
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .auth()
+				                         .basic(usernameAdmin, passwordAdmin)
+				                         .get(MAIL_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonObject statistik = jsonReader.readObject();
+			assertThat(statistik.getJsonNumber("versendet").longValue() > 0, is(true));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void createBestellungAsynchron() throws InterruptedException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Long artikelId = ARTIKEL_ID_VORHANDEN_2;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+				                      .add("kundeUri", KUNDEN_URI + "/" + kundeId)
+				                      .add("bestellpositionen", getJsonBuilderFactory().createArrayBuilder()
+				            		                            .add(getJsonBuilderFactory().createObjectBuilder()
+				            		                                 .add("artikelUri", ARTIKEL_URI + "/" + artikelId)
+				            		                                 .add("anzahl", 1)))
+				                      .build();
+
+		// When
+		Response response = given().contentType(APPLICATION_JSON)
+				                   .header(PREFER, RESPOND_ASYNC)
+				                   .body(jsonObject.toString())
+				                   .auth()
+				                   .basic(username, password)
+				                   .post(BESTELLUNGEN_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_ACCEPTED));
+		assertThat(response.getHeader(PREFERENCE_APPLIED), is(RESPOND_ASYNC));
+		final String location = response.getHeader(LOCATION);
+		assertThat(location, containsString(BESTELLUNGEN_PATH + "/eingaenge/"));
+		final String eingangId = location.substring(location.lastIndexOf('/') + 1);
+		
+		// Der Timer schreibt die Bestellung alle paar Millisekunden
+		final long ende = System.currentTimeMillis() + EINGANG_TIMEOUT_MS;
+		JsonObject status;
+		do {
+			response = given().header(ACCEPT, APPLICATION_JSON)
+					          .pathParameter(EINGAENGE_ID_PATH_PARAM, eingangId)
+					          .get(BESTELLUNGEN_EINGAENGE_ID_PATH);
+			assertThat(response.getStatusCode(), is(HTTP_OK));
+			try (final JsonReader jsonReader =
+					              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+				status = jsonReader.readObject();
+			}
+			if (!WARTEND.equals(status.getString("status"))) {
+				break;
+			}
+			Thread.sleep(EINGANG_POLL_MS);
+		} while (System.currentTimeMillis() < ende);
+		
+		assertThat(status.getString("id"), is(eingangId));
+		assertThat(status.getString("status"), is("ERLEDIGT"));
+		assertThat(status.getString("bestellungUri"),
+		           endsWith(BESTELLUNGEN_PATH + "/" + status.getJsonNumber("bestellungId").longValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findEingangStatusNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final String eingangId = EINGANG_ID_NICHT_VORHANDEN;
+		
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .pathParameter(EINGAENGE_ID_PATH_PARAM, eingangId)
+				                         .get(BESTELLUNGEN_EINGAENGE_ID_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NOT_FOUND));
+
+		LOGGER.finer("ENDE");
+	}
 }
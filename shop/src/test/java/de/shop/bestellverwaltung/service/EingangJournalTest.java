@@ -0,0 +1,184 @@
+package de.shop.bestellverwaltung.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Journal der asynchron angenommenen Bestellungen in einem temporaeren Verzeichnis, ohne Appserver
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class EingangJournalTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long KUNDE_ID = Long.valueOf(102);
+	private static final Long ARTIKEL_ID_1 = Long.valueOf(300);
+	private static final Long ARTIKEL_ID_2 = Long.valueOf(301);
+	private static final Long BESTELLUNG_ID = Long.valueOf(400);
+	private static final int ANZAHL_THREADS = 8;
+	private static final int ANZAHL_JE_THREAD = 50;
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path verzeichnis;
+	private EingangJournal journal;
+
+	@Before
+	public void before() throws IOException {
+		verzeichnis = tmp.getRoot().toPath();
+		journal = new EingangJournal(verzeichnis);
+		journal.verdichten(Collections.<Eingang>emptyList());
+	}
+
+	@After
+	public void after() throws IOException {
+		journal.close();
+	}
+
+	@Test
+	public void lesenNachNeustart() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Eingang erledigt = newEingang();
+		final Eingang fehlgeschlagen = newEingang();
+		final Eingang offen = newEingang();
+		journal.sichern(journal.angenommen(erledigt));
+		journal.sichern(journal.angenommen(fehlgeschlagen));
+		journal.sichern(journal.angenommen(offen));
+		journal.erledigt(erledigt.getId(), BESTELLUNG_ID);
+		journal.fehlgeschlagen(fehlgeschlagen.getId());
+		journal.close();
+
+		// When
+		final EingangJournal neu = new EingangJournal(verzeichnis);
+		final Map<String, Eingang> gelesen = neu.lesen();
+
+		// Then
+		assertThat(gelesen.size(), is(1));
+		assertThat(gelesen.get(offen.getId()).toZeile(), is(offen.toZeile()));
+		assertThat(gelesen.get(offen.getId()).getArtikelIds(), is(offen.getArtikelIds()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void lesenNachVerdichten() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Eingang erledigt = newEingang();
+		final Eingang offen = newEingang();
+		journal.sichern(journal.angenommen(erledigt));
+		journal.sichern(journal.angenommen(offen));
+		journal.erledigt(erledigt.getId(), BESTELLUNG_ID);
+
+		// When
+		journal.verdichten(journal.lesen().values());
+		final Eingang danach = newEingang();
+		journal.sichern(journal.angenommen(danach));
+		journal.close();
+
+		// Then
+		final Map<String, Eingang> gelesen = new EingangJournal(verzeichnis).lesen();
+		assertThat(new ArrayList<>(gelesen.keySet()), is(Arrays.asList(offen.getId(), danach.getId())));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void lesenUnvollstaendigeZeile() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Eingang offen = newEingang();
+		journal.sichern(journal.angenommen(offen));
+		journal.close();
+		// Absturz mitten in der naechsten Zeile
+		Files.write(verzeichnis.resolve("bestellungen.journal"), "A;abc;10".getBytes(UTF_8), APPEND);
+
+		// When
+		final Map<String, Eingang> gelesen = new EingangJournal(verzeichnis).lesen();
+
+		// Then
+		assertThat(gelesen.size(), is(1));
+		assertThat(gelesen.containsKey(offen.getId()), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void sichernParallel() throws Exception {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final ExecutorService executorService = Executors.newFixedThreadPool(ANZAHL_THREADS);
+		final List<Callable<Void>> tasks = new ArrayList<>(ANZAHL_THREADS);
+		for (int i = 0; i < ANZAHL_THREADS; i++) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int j = 0; j < ANZAHL_JE_THREAD; j++) {
+						final long nummer;
+						synchronized (journal) {
+							nummer = journal.angenommen(newEingang());
+						}
+						journal.sichern(nummer);
+					}
+					return null;
+				}
+			});
+		}
+
+		// When
+		try {
+			for (Future<Void> future : executorService.invokeAll(tasks)) {
+				// Eine IOException oder InterruptedIOException wuerde hier geworfen
+				future.get();
+			}
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+		journal.close();
+
+		// Then
+		final Map<String, Eingang> gelesen = new EingangJournal(verzeichnis).lesen();
+		assertThat(gelesen.size(), is(ANZAHL_THREADS * ANZAHL_JE_THREAD));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static Eingang newEingang() {
+		final List<Short> anzahlen = Arrays.asList(Short.valueOf((short) 1), Short.valueOf((short) 2));
+		return new Eingang(UUID.randomUUID().toString(), KUNDE_ID, Locale.GERMAN,
+		                   Arrays.asList(ARTIKEL_ID_1, ARTIKEL_ID_2), anzahlen);
+	}
+}
@@ -0,0 +1,84 @@
+package de.shop.bestellverwaltung.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+/**
+ * Begrenzung der wartenden Bestellungen: ab KAPAZITAET liefert POST /bestellungen mit "Prefer: respond-async"
+ * den Status 503 durch den EingangVollExceptionMapper
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class WarteplaetzeTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final int KAPAZITAET = 3;
+	private static final int RETRY_AFTER = 1;
+
+	@Test
+	public void belegenBisKapazitaet() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Warteplaetze warteplaetze = new Warteplaetze(KAPAZITAET, RETRY_AFTER);
+
+		// When
+		for (int i = 0; i < KAPAZITAET; i++) {
+			warteplaetze.belegen();
+		}
+
+		// Then
+		assertThat(warteplaetze.getBelegt(), is(KAPAZITAET));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void belegenUeberKapazitaet() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Warteplaetze warteplaetze = new Warteplaetze(KAPAZITAET, RETRY_AFTER);
+		for (int i = 0; i < KAPAZITAET; i++) {
+			warteplaetze.belegen();
+		}
+
+		// When
+		try {
+			warteplaetze.belegen();
+			fail("EingangVollException erwartet");
+		}
+		catch (EingangVollException e) {
+			// Then
+			assertThat(e.getRetryAfter(), is(RETRY_AFTER));
+		}
+		assertThat(warteplaetze.getBelegt(), is(KAPAZITAET));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void belegenNachFreigeben() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Warteplaetze warteplaetze = new Warteplaetze(KAPAZITAET, RETRY_AFTER);
+		warteplaetze.setBelegt(KAPAZITAET);
+
+		// When
+		warteplaetze.freigeben();
+		warteplaetze.belegen();
+
+		// Then
+		assertThat(warteplaetze.getBelegt(), is(KAPAZITAET));
+
+		LOGGER.finer("ENDE");
+	}
+}
@@ -0,0 +1,322 @@
+package de.shop.kundenverwaltung.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+import javax.faces.context.FacesContext;
+
+import org.ajax4jsf.model.DataVisitResult;
+import org.ajax4jsf.model.DataVisitor;
+import org.ajax4jsf.model.SequenceRange;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import de.shop.kundenverwaltung.domain.Kunde;
+import de.shop.kundenverwaltung.service.KundeService;
+import de.shop.kundenverwaltung.service.KundeService.FetchType;
+import de.shop.kundenverwaltung.service.KundeService.OrderByType;
+
+/**
+ * Paginierung mit KundeDataModel ohne JSF und ohne Datenbank. Der KundeService liefert Anzahl und Seiten aus
+ * einer Liste, wie es countKunden() und findKundenSeite() mit COUNT bzw. OFFSET und LIMIT tun.
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class KundeDataModelTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final int ANZAHL = 12;
+	private static final int ROWS = 5;
+	private static final int ERSTE_ID = 101;
+	private static final Long ID_NICHT_AUF_SEITE = Long.valueOf(999);
+
+	private KundeServiceStub ks;
+	private KundeDataModel dataModel;
+
+	@Before
+	public void before() {
+		ks = new KundeServiceStub(ANZAHL);
+		dataModel = new KundeDataModel(ks, "", Locale.GERMAN);
+	}
+
+	@Test
+	public void walkErsteSeite() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<Long> ids = walk(0, ROWS);
+
+		// Then
+		assertThat(ids, is(ids(0, ROWS)));
+		assertThat(ks.first, is(0));
+		assertThat(ks.max, is(ROWS));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkLetzteSeiteUnvollstaendig() {
+		LOGGER.finer("BEGINN");
+
+		// Given: 12 Kunden, d.h. die 3. Seite hat nur 2 Kunden
+		final int first = 2 * ROWS;
+
+		// When
+		final List<Long> ids = walk(first, ROWS);
+
+		// Then
+		assertThat(ids, is(ids(first, ANZAHL)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkLetzteSeiteVollstaendig() {
+		LOGGER.finer("BEGINN");
+
+		// Given: die letzte Seite endet genau mit dem letzten Kunden
+		ks = new KundeServiceStub(2 * ROWS);
+		dataModel = new KundeDataModel(ks, "", Locale.GERMAN);
+
+		// When
+		final List<Long> ids = walk(ROWS, ROWS);
+
+		// Then
+		assertThat(ids, is(ids(ROWS, 2 * ROWS)));
+		assertThat(walk(2 * ROWS, ROWS), is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkHinterDemEnde() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<Long> ids = walk(ANZAHL + ROWS, ROWS);
+
+		// Then
+		assertThat(ids, is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkOhneRows() {
+		LOGGER.finer("BEGINN");
+
+		// When: ohne rich:dataScroller werden alle Kunden gemaess der Anzahl gelesen
+		final List<Long> ids = walk(0, 0);
+
+		// Then
+		assertThat(ids, is(ids(0, ANZAHL)));
+		assertThat(ks.max, is(ANZAHL));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkOhneKunden() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		ks = new KundeServiceStub(0);
+		dataModel = new KundeDataModel(ks, "", Locale.GERMAN);
+
+		// When
+		final List<Long> ids = walk(0, ROWS);
+
+		// Then
+		assertThat(dataModel.getRowCount(), is(0));
+		assertThat(ids, is(Collections.<Long>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void walkGleicheSeiteNurEinmalGelesen() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		walk(ROWS, ROWS);
+		walk(ROWS, ROWS);
+		final int anzahlNachGleicherSeite = ks.anzahlSeiten;
+		walk(2 * ROWS, ROWS);
+		final int anzahlNachAndererSeite = ks.anzahlSeiten;
+		dataModel.refresh();
+		walk(2 * ROWS, ROWS);
+
+		// Then
+		assertThat(anzahlNachGleicherSeite, is(1));
+		assertThat(anzahlNachAndererSeite, is(2));
+		assertThat(ks.anzahlSeiten, is(2 + 1));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getRowCount() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final int rowCount = dataModel.getRowCount();
+		dataModel.getRowCount();
+		final int anzahlAbfragen = ks.anzahlCounts;
+		// z.B. nach dem Loeschen eines Kunden
+		ks.kunden.remove(0);
+		dataModel.refresh();
+
+		// Then
+		assertThat(rowCount, is(ANZAHL));
+		assertThat(anzahlAbfragen, is(1));
+		assertThat(dataModel.getRowCount(), is(ANZAHL - 1));
+		assertThat(ks.anzahlCounts, is(2));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getRowCountGroesserAlsInt() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		ks.anzahl = Long.valueOf(Integer.MAX_VALUE + 1L);
+
+		// When
+		final int rowCount = dataModel.getRowCount();
+
+		// Then
+		assertThat(rowCount, is(Integer.MAX_VALUE));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void setVornameFilterUndOrder() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		walk(0, ROWS);
+
+		// When
+		dataModel.setVornameFilter("a");
+		dataModel.setOrder(OrderByType.VORNAME_DESC);
+		walk(0, ROWS);
+
+		// Then: Filter und Sortierung werden an die Abfrage durchgereicht und die Seite neu gelesen
+		assertThat(ks.anzahlSeiten, is(2));
+		assertThat(ks.vornameFilter, is("a"));
+		assertThat(ks.order, is(OrderByType.VORNAME_DESC));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getRowData() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		walk(ROWS, ROWS);
+		final Long idAufSeite = Long.valueOf(ERSTE_ID + ROWS);
+
+		// When
+		dataModel.setRowKey(idAufSeite);
+		final Kunde kundeAufSeite = dataModel.getRowData();
+		dataModel.setRowKey(ID_NICHT_AUF_SEITE);
+		final Kunde kundeNichtAufSeite = dataModel.getRowData();
+
+		// Then
+		assertThat(kundeAufSeite.getId(), is(idAufSeite));
+		assertThat(kundeNichtAufSeite, is(nullValue()));
+		assertThat(dataModel.isRowAvailable(), is(false));
+		// Nur der Kunde, der nicht auf der Seite ist, wird einzeln gelesen
+		assertThat(ks.findById, is(Arrays.asList(ID_NICHT_AUF_SEITE, ID_NICHT_AUF_SEITE)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private List<Long> walk(int first, int rows) {
+		final List<Long> ids = new ArrayList<>();
+		dataModel.walk(null, new DataVisitor() {
+			@Override
+			public DataVisitResult process(FacesContext context, Object rowKey, Object argument) {
+				ids.add((Long) rowKey);
+				return DataVisitResult.CONTINUE;
+			}
+		}, new SequenceRange(first, rows), null);
+		return ids;
+	}
+
+	/**
+	 * @return IDs der Kunden von Index "von" (inklusive) bis Index "bis" (exklusive)
+	 */
+	private static List<Long> ids(int von, int bis) {
+		final List<Long> ids = new ArrayList<>(bis - von);
+		for (int i = von; i < bis; i++) {
+			ids.add(Long.valueOf(ERSTE_ID + i));
+		}
+		return ids;
+	}
+
+	/**
+	 * KundeService mit einer Liste statt der Datenbank, der die Aufrufe festhaelt
+	 */
+	private static final class KundeServiceStub extends KundeService {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Kunde> kunden = new ArrayList<>();
+		private Long anzahl;
+		private int anzahlCounts;
+		private int anzahlSeiten;
+		private int first;
+		private int max;
+		private String vornameFilter;
+		private OrderByType order;
+		private final List<Long> findById = new ArrayList<>();
+
+		private KundeServiceStub(int anzahlKunden) {
+			super();
+			for (int i = 0; i < anzahlKunden; i++) {
+				final Kunde kunde = new Kunde();
+				kunde.setId(Long.valueOf(ERSTE_ID + i));
+				kunden.add(kunde);
+			}
+		}
+
+		@Override
+		public long countKunden(String nachname, String vornameFilter, Locale locale) {
+			anzahlCounts++;
+			return anzahl == null ? kunden.size() : anzahl.longValue();
+		}
+
+		@Override
+		public List<Kunde> findKundenSeite(String nachname, String vornameFilter, OrderByType order, int first,
+		                                   int max, FetchType fetch) {
+			anzahlSeiten++;
+			this.first = first;
+			this.max = max;
+			this.vornameFilter = vornameFilter;
+			this.order = order;
+			// wie OFFSET und LIMIT in SQL
+			final int von = Math.min(first, kunden.size());
+			final int bis = Math.min(first + max, kunden.size());
+			return new ArrayList<>(kunden.subList(von, bis));
+		}
+
+		@Override
+		public Kunde findKundeById(Long id, FetchType fetch, Locale locale) {
+			findById.add(id);
+			return null;
+		}
+	}
+}
@@ -2,40 +2,34 @@ package de.shop.kundenverwaltung.rest;
 
 import static com.jayway.restassured.RestAssured.given;
 import static de.shop.util.TestConstants.ACCEPT;
-import static de.shop.util.TestConstants.BASEPATH;
-import static de.shop.util.TestConstants.BASEURI;
-import static de.shop.util.TestConstants.KUNDEN_ID_FILE_PATH;
 import static de.shop.util.TestConstants.KUNDEN_ID_PATH_PARAM;
 import static de.shop.util.TestConstants.KUNDEN_ID_PATH;
 import static de.shop.util.TestConstants.KUNDEN_NACHNAME_QUERY_PARAM;
 import static de.shop.util.TestConstants.KUNDEN_PATH;
 import static de.shop.util.TestConstants.LOCATION;
-import static de.shop.util.TestConstants.PORT;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_CONFLICT;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PRECON_FAILED;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.junit.runners.MethodSorters.NAME_ASCENDING;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.StringReader;
 import java.lang.invoke.MethodHandles;
-import java.nio.file.CopyOption;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -44,7 +38,6 @@ import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
-import javax.xml.bind.DatatypeConverter;
 
 import org.jboss.arquillian.junit.Arquillian;
 import org.junit.FixMethodOrder;
@@ -55,7 +48,6 @@ import org.junit.runner.RunWith;
 import com.jayway.restassured.response.Response;
 
 import de.shop.util.AbstractResourceTest;
-import de.shop.util.NoMimeTypeException;
 
 
 @RunWith(Arquillian.class)
@@ -71,28 +63,35 @@ public class KundeResourceTest extends AbstractResourceTest {
 	private static final Long KUNDE_ID_DELETE_FORBIDDEN = Long.valueOf(101);
 	private static final String NACHNAME_VORHANDEN = "Alpha";
 	private static final String NACHNAME_NICHT_VORHANDEN = "Falschername";
+	private static final int KUNDEN_LIMIT = 2;
+	private static final String KUNDEN_LIMIT_QUERY_PARAM = "limit";
+	private static final String LINK = "Link";
+	private static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+	private static final String KUNDEN_NACHNAMEN_STATISTIK_PATH = KUNDEN_PATH + "/nachnamen/statistik";
+	private static final String KUNDEN_BATCH_PATH = KUNDEN_PATH + "/batch";
+	private static final String CACHE_PATH = "/admin/cache";
+	private static final String CACHE_REGION_KUNDE = "shop.de.shop.kundenverwaltung.domain.Kunde";
+	private static final String KUNDEN_IDS_QUERY_PARAM = "ids";
+	private static final String EXPAND_QUERY_PARAM = "expand";
+	private static final String FIELDS_QUERY_PARAM = "fields";
+	private static final String FIELDS = "id,nachname,adresse.ort";
+	private static final String EXPAND_UNGUELTIG = "passwort";
+	private static final String ETAG = "ETag";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MATCH = "If-Match";
+	private static final String ETAG_VERALTET = "\"" + KUNDE_ID_UPDATE + ".-1\"";
+	private static final int HTTP_PRECONDITION_REQUIRED = 428;
 	private static final String NEUER_NACHNAME = "Nachnameneu";
 	private static final String NEUER_NACHNAME_INVALID = "!";
 	private static final String NEUER_VORNAME = "Vorname";
 	private static final String NEUE_EMAIL = NEUER_NACHNAME + "@test.de";
 	private static final String NEUE_EMAIL_INVALID = "falsch@falsch";
+	private static final String IMPORT_EMAIL = "Import" + NEUE_EMAIL;
 	private static final String NEUE_PLZ = "76133";
 	private static final String NEUER_ORT = "Karlsruhe";
 	private static final String NEUE_STRASSE = "Testweg";
 	private static final String NEUE_HAUSNR = "1";
 	
-	private static final String FILENAME = "image.gif";
-	//private static final String FILENAME = "video.mp4";
-	private static final String FILENAME_UPLOAD = "src/test/resources/rest/" + FILENAME;
-	private static final String FILENAME_DOWNLOAD = "target/" + FILENAME;
-	private static final CopyOption[] COPY_OPTIONS = {REPLACE_EXISTING};
-	private static final Long KUNDE_ID_UPLOAD = Long.valueOf(102);
-
-	private static final String FILENAME_INVALID_MIMETYPE = "image.bmp";
-	private static final String FILENAME_UPLOAD_INVALID_MIMETYPE = "src/test/resources/rest/" 
-																	+ FILENAME_INVALID_MIMETYPE;
-	
-	
 	@Test
 	public void validate() {
 		assertThat(true, is(true));
@@ -128,6 +127,110 @@ public class KundeResourceTest extends AbstractResourceTest {
 		LOGGER.finer("ENDE");
 	}
 	
+	@Test
+	public void findCacheStatistik() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		given().header(ACCEPT, APPLICATION_JSON)
+		       .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		       .get(KUNDEN_ID_PATH);
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .auth()
+				                         .basic(username, password)
+                                         .get(CACHE_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonObject jsonObject = jsonReader.readObject();
+			final JsonObject kundeRegion = jsonObject.getJsonObject("regionen").getJsonObject(CACHE_REGION_KUNDE);
+			assertThat(kundeRegion.getJsonNumber("einfuegungen").longValue() > 0, is(true));
+			assertThat(jsonObject.containsKey("queryCache"), is(true));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findKundeByIdMitFields() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+				                         .queryParam(FIELDS_QUERY_PARAM, FIELDS)
+                                         .get(KUNDEN_ID_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonObject jsonObject = jsonReader.readObject();
+			assertThat(jsonObject.keySet().size(), is(3));
+			assertThat(jsonObject.getJsonNumber("id").longValue(), is(kundeId.longValue()));
+			assertThat(jsonObject.containsKey("nachname"), is(true));
+			assertThat(jsonObject.getJsonObject("adresse").keySet().size(), is(1));
+		}
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void findKundeByIdNichtGeaendert() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                         .get(KUNDEN_ID_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		final String etag = response.getHeader(ETAG);
+		assertThat(etag, startsWith("\"" + kundeId + "."));
+		
+		// When
+		final Response responseNotModified = given().header(ACCEPT, APPLICATION_JSON)
+				                                    .header(IF_NONE_MATCH, etag)
+				                                    .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                                    .get(KUNDEN_ID_PATH);
+
+		// Then
+		assertThat(responseNotModified.getStatusCode(), is(HTTP_NOT_MODIFIED));
+		assertThat(responseNotModified.asString().isEmpty(), is(true));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void findKundeByIdExpandUngueltig() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_VORHANDEN;
+		
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+				                         .queryParam(EXPAND_QUERY_PARAM, EXPAND_UNGUELTIG)
+                                         .get(KUNDEN_ID_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_BAD_REQUEST));
+		
+		LOGGER.finer("ENDE");
+	}
+	
 	@Test
 	public void findKundeByIdNichtVorhanden() {
 		LOGGER.finer("BEGINN");
@@ -189,7 +292,62 @@ public class KundeResourceTest extends AbstractResourceTest {
 
 		LOGGER.finer("ENDE");
 	}
+
+	@Test
+	public void findKundenSeitenweise() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final int limit = KUNDEN_LIMIT;
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .queryParam(KUNDEN_LIMIT_QUERY_PARAM, limit)
+                                         .get(KUNDEN_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonArray jsonArray = jsonReader.readArray();
+	    	assertThat(jsonArray.size(), is(limit));
+
+	    	// Die naechste Seite beginnt nach der letzten ID
+	    	final long lastId = jsonArray.getJsonObject(limit - 1).getJsonNumber("id").longValue();
+	    	assertThat(response.getHeader(LINK), containsString("after=" + lastId));
+	    	assertThat(response.getHeader(LINK), endsWith("rel=\"next\""));
+		}
+
+		LOGGER.finer("ENDE");
+	}
 	
+	@Test
+	public void findNachnameIndexStatistik() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+
+		// When
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                         .auth()
+				                         .basic(username, password)
+                                         .get(KUNDEN_NACHNAMEN_STATISTIK_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonObject jsonObject = jsonReader.readObject();
+			assertThat(jsonObject.getJsonNumber("nachnamen").intValue() > 0, is(true));
+			assertThat(jsonObject.containsKey("geschaetzteBytes"), is(true));
+			assertThat(jsonObject.containsKey("mittlereDauerNanos"), is(true));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
 	@Test
 	public void createKunde() {
 		LOGGER.finer("BEGINN");
@@ -299,6 +457,54 @@ public class KundeResourceTest extends AbstractResourceTest {
 		LOGGER.finer("ENDE");
 	}
 
+	@Test
+	public void importKunden() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		final JsonArray jsonArray = getJsonBuilderFactory().createArrayBuilder()
+		                            .add(getJsonBuilderFactory().createObjectBuilder()
+		                                 .add("nachname", NEUER_NACHNAME)
+		                                 .add("vorname", NEUER_VORNAME)
+		                                 .add("email", IMPORT_EMAIL)
+		                                 .add("agbAkzeptiert", true)
+		                                 .add("adresse", getJsonBuilderFactory().createObjectBuilder()
+		                                                 .add("plz", NEUE_PLZ)
+		                                                 .add("ort", NEUER_ORT)
+		                                                 .add("strasse", NEUE_STRASSE)
+		                                                 .add("hausnummer", NEUE_HAUSNR)
+		                                                 .build())
+		                                 .build())
+		                            .add(getJsonBuilderFactory().createObjectBuilder()
+		                                 .add("nachname", NEUER_NACHNAME_INVALID)
+		                                 .add("email", NEUE_EMAIL_INVALID)
+		                                 .build())
+		                            .build();
+
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+		                                 .header(ACCEPT, APPLICATION_JSON)
+		                                 .body(jsonArray.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .post(KUNDEN_BATCH_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonArray ergebnisse = jsonReader.readArray();
+			assertThat(ergebnisse.size(), is(2));
+			assertThat(ergebnisse.getJsonObject(0).getString("status"), is("ERZEUGT"));
+			assertThat(ergebnisse.getJsonObject(1).getString("status"), is("UNGUELTIG"));
+		}
+		
+		LOGGER.finer("ENDE");
+	}
+
 	@Test
 	public void updateKunde() {
 		LOGGER.finer("BEGINN");
@@ -344,6 +550,229 @@ public class KundeResourceTest extends AbstractResourceTest {
 		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
    	}
 	
+	@Test
+	public void updateKundeIfMatchVeraltet() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final Response responseGet = given().header(ACCEPT, APPLICATION_JSON)
+				                            .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                            .get(KUNDEN_ID_PATH);
+		
+		// When
+		final Response response = given().contentType(APPLICATION_JSON)
+				                         .header(IF_MATCH, ETAG_VERALTET)
+				                         .body(responseGet.asString())
+				                         .auth()
+				                         .basic(username, password)
+				                         .put(KUNDEN_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_PRECON_FAILED));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void patchKunde() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final String neuerVorname = NEUER_VORNAME;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// Nur der Vorname wird uebertragen
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("vorname", neuerVorname)
+		                              .build();
+		Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                           .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                           .get(KUNDEN_ID_PATH);
+		final String etagVorher = response.getHeader(ETAG);
+		
+		// When
+		response = given().contentType(MERGE_PATCH_JSON)
+		                  .header(IF_MATCH, etagVorher)
+		                  .body(jsonObject.toString())
+		                  .auth()
+		                  .basic(username, password)
+		                  .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                  .patch(KUNDEN_ID_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+		final String etag = response.getHeader(ETAG);
+		assertThat(etag, is(notNullValue()));
+		
+		response = given().header(ACCEPT, APPLICATION_JSON)
+				          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                          .get(KUNDEN_ID_PATH);
+		// Das ETag aus PATCH ist das der neuen Version
+		assertThat(response.getHeader(ETAG), is(etag));
+		try (final JsonReader jsonReader = 
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			assertThat(jsonReader.readObject().getString("vorname"), is(neuerVorname));
+		}
+		
+		LOGGER.finer("ENDE");
+   	}
+	
+	@Test
+	public void updateKundeEmailExistiert() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final Long andererKundeId = KUNDE_ID_VORHANDEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// When
+		Response response = given().header(ACCEPT, APPLICATION_JSON)
+				                   .pathParameter(KUNDEN_ID_PATH_PARAM, andererKundeId)
+                                   .get(KUNDEN_ID_PATH);
+		String vorhandeneEmail;
+		try (final JsonReader jsonReader = 
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			vorhandeneEmail = jsonReader.readObject().getString("email");
+		}
+		
+		response = given().header(ACCEPT, APPLICATION_JSON)
+				          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                          .get(KUNDEN_ID_PATH);
+		JsonObject jsonObject;
+		try (final JsonReader jsonReader = 
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			jsonObject = jsonReader.readObject();
+		}
+		
+    	// Die Email-Adresse des anderen Kunden uebernehmen
+    	final JsonObjectBuilder job = getJsonBuilderFactory().createObjectBuilder();
+    	for (String k : jsonObject.keySet()) {
+    		if ("email".equals(k)) {
+    			job.add("email", vorhandeneEmail);
+    		}
+    		else {
+    			job.add(k, jsonObject.get(k));
+    		}
+    	}
+    	jsonObject = job.build();
+    	
+		response = given().contentType(APPLICATION_JSON)
+				          .body(jsonObject.toString())
+                          .auth()
+                          .basic(username, password)
+                          .put(KUNDEN_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_CONFLICT));
+		assertThat(response.asString(), containsString(vorhandeneEmail));
+		
+		LOGGER.finer("ENDE");
+   	}
+	
+	@Test
+	public void patchKundeEmailExistiert() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final Long andererKundeId = KUNDE_ID_VORHANDEN;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                           .pathParameter(KUNDEN_ID_PATH_PARAM, andererKundeId)
+		                           .get(KUNDEN_ID_PATH);
+		String vorhandeneEmail;
+		try (final JsonReader jsonReader =
+		              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			vorhandeneEmail = jsonReader.readObject().getString("email");
+		}
+		
+		// Nur die Email-Adresse des anderen Kunden wird uebertragen
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("email", vorhandeneEmail)
+		                              .build();
+		response = given().header(ACCEPT, APPLICATION_JSON)
+		                  .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                  .get(KUNDEN_ID_PATH);
+		final String etag = response.getHeader(ETAG);
+		
+		// When
+		response = given().contentType(MERGE_PATCH_JSON)
+		                  .header(IF_MATCH, etag)
+		                  .body(jsonObject.toString())
+		                  .auth()
+		                  .basic(username, password)
+		                  .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                  .patch(KUNDEN_ID_PATH);
+		
+		// Then: die UNIQUE-Constraint der Email-Adresse wird erkannt
+		assertThat(response.getStatusCode(), is(HTTP_CONFLICT));
+		assertThat(response.asString(), containsString(vorhandeneEmail));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void patchKundeIfMatchVeraltet() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("vorname", NEUER_VORNAME)
+		                              .build();
+		
+		// When
+		final Response response = given().contentType(MERGE_PATCH_JSON)
+		                                 .header(IF_MATCH, ETAG_VERALTET)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                                 .patch(KUNDEN_ID_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_PRECON_FAILED));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void patchKundeOhneVersion() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPDATE;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
+		                              .add("vorname", NEUER_VORNAME)
+		                              .build();
+		
+		// When: weder If-Match noch "version"
+		final Response response = given().contentType(MERGE_PATCH_JSON)
+		                                 .body(jsonObject.toString())
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                                 .patch(KUNDEN_ID_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_PRECONDITION_REQUIRED));
+		
+		LOGGER.finer("ENDE");
+	}
+	
 	@Test
 	public void deleteKunde() {
 		LOGGER.finer("BEGINN");
@@ -388,130 +817,76 @@ public class KundeResourceTest extends AbstractResourceTest {
 		LOGGER.finer("ENDE");
 	}
 	
-	
 	@Test
-	public void deleteKundeFehlendeBerechtigung() {
+	public void deleteKundenMitBestellungUndNichtVorhanden() {
 		LOGGER.finer("BEGINN");
 		
 		// Given
-		final String username = USERNAME;
-		final String password = PASSWORD;
-		final Long kundeId = KUNDE_ID_DELETE_FORBIDDEN;
+		final String ids = KUNDE_ID_DELETE_MIT_BESTELLUNGEN + "," + KUNDE_ID_NICHT_VORHANDEN;
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
 		
 		// When
-		final Response response = given().auth()
-                                         .basic(username, password)
-                                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
-                                         .delete(KUNDEN_ID_PATH);
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .queryParam(KUNDEN_IDS_QUERY_PARAM, ids)
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .delete(KUNDEN_PATH);
 		
 		// Then
-		assertThat(response.getStatusCode(), anyOf(is(HTTP_FORBIDDEN), is(HTTP_NOT_FOUND)));
-		
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		try (final JsonReader jsonReader =
+				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
+			final JsonObject jsonObject = jsonReader.readObject();
+			assertThat(jsonObject.getJsonArray("geloescht").isEmpty(), is(true));
+			assertThat(jsonObject.getJsonArray("nichtGeloescht").size(), is(2));
+		}
+
 		LOGGER.finer("ENDE");
 	}
 	
 	@Test
-	public void uploadDownload() throws IOException {
+	public void deleteKundenUngueltigeIds() {
 		LOGGER.finer("BEGINN");
 		
 		// Given
-		final Long kundeId = KUNDE_ID_UPLOAD;
-		final String fileName = FILENAME_UPLOAD;
-		final String username = USERNAME;
-		final String password = PASSWORD;
-		
-		// Datei als byte[] einlesen
-		byte[] bytes;
-		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
-			Files.copy(Paths.get(fileName), stream);
-			bytes = stream.toByteArray();
-		}
-		
-		// byte[] als Inhalt eines JSON-Datensatzes mit Base64-Codierung
-		JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
-	                            .add("bytes", DatatypeConverter.printBase64Binary(bytes))
-	                            .build();
+		final String ids = KUNDE_ID_DELETE + ",x";
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
 		
 		// When
-		Response response = given().contentType(APPLICATION_JSON)
-				                   .body(jsonObject.toString())
-                                   .auth()
-                                   .basic(username, password)
-                                   .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
-                                   .post(KUNDEN_ID_FILE_PATH);
-
-		// Then
-		assertThat(response.getStatusCode(), is(HTTP_CREATED));
-		// id extrahieren aus http://localhost:8080/shop2/rest/kunden/<id>/file
-		final String idStr = response.getHeader(LOCATION)
-				                     .replace(BASEURI + ":" + PORT + BASEPATH + KUNDEN_PATH + '/', "")
-				                     .replace("/file", "");
-		assertThat(idStr, is(kundeId.toString()));
-		
-		// When (2)
-		// Download der zuvor hochgeladenen Datei
-		response = given().header(ACCEPT, APPLICATION_JSON)
-				          .auth()
-                          .basic(username, password)
-                          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
-                          .get(KUNDEN_ID_FILE_PATH);
-		
-		try (final JsonReader jsonReader =
-				              getJsonReaderFactory().createReader(new StringReader(response.asString()))) {
-			jsonObject = jsonReader.readObject();
-		}
-		final String base64String = jsonObject.getString("bytes");
-		final byte[] downloaded = DatatypeConverter.parseBase64Binary(base64String);
-		
-		// Then (2)
-		// Dateigroesse vergleichen: hochgeladene Datei als byte[] einlesen
-		byte[] uploaded;
-		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
-			Files.copy(Paths.get(fileName), stream);
-			uploaded = stream.toByteArray();
-		}
-		assertThat(uploaded.length, is(downloaded.length));
+		final Response response = given().header(ACCEPT, APPLICATION_JSON)
+		                                 .queryParam(KUNDEN_IDS_QUERY_PARAM, ids)
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .delete(KUNDEN_PATH);
 		
-		// Abspeichern der heruntergeladenen Datei im Unterverzeichnis target zur manuellen Inspektion
-		try (ByteArrayInputStream inputStream = new ByteArrayInputStream(downloaded)) {
-			Files.copy(inputStream, Paths.get(FILENAME_DOWNLOAD), COPY_OPTIONS);
-		}
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_BAD_REQUEST));
+		assertThat(response.asString(), startsWith("Ungueltige Kunde-IDs"));
 
-		LOGGER.info("Heruntergeladene Datei abgespeichert: " + FILENAME_DOWNLOAD);
 		LOGGER.finer("ENDE");
 	}
 	
+	
 	@Test
-	public void uploadInvalidMimeType() throws IOException {
+	public void deleteKundeFehlendeBerechtigung() {
 		LOGGER.finer("BEGINN");
 		
 		// Given
-		final Long kundeId = KUNDE_ID_UPLOAD;
-		final String fileName = FILENAME_UPLOAD_INVALID_MIMETYPE;
 		final String username = USERNAME;
 		final String password = PASSWORD;
-		
-		// Datei als byte[] einlesen
-		byte[] bytes;
-		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
-			Files.copy(Paths.get(fileName), stream);
-			bytes = stream.toByteArray();
-		}
-		
-		// byte[] als Inhalt eines JSON-Datensatzes mit Base64-Codierung
-		final JsonObject jsonObject = getJsonBuilderFactory().createObjectBuilder()
-	                                  .add("bytes", DatatypeConverter.printBase64Binary(bytes))
-	                                  .build();
+		final Long kundeId = KUNDE_ID_DELETE_FORBIDDEN;
 		
 		// When
-		final Response response = given().contentType(APPLICATION_JSON)
-				                         .body(jsonObject.toString())
-				                         .auth()
-				                         .basic(username, password)
-				                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
-				                         .post(KUNDEN_ID_FILE_PATH);
+		final Response response = given().auth()
+                                         .basic(username, password)
+                                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                         .delete(KUNDEN_ID_PATH);
 		
-		assertThat(response.getStatusCode(), is(HTTP_CONFLICT));
-		assertThat(response.asString(), is(NoMimeTypeException.MESSAGE));
+		// Then
+		assertThat(response.getStatusCode(), anyOf(is(HTTP_FORBIDDEN), is(HTTP_NOT_FOUND)));
+		
+		LOGGER.finer("ENDE");
 	}
 }
@@ -0,0 +1,285 @@
+package de.shop.kundenverwaltung.rest;
+
+import static com.jayway.restassured.RestAssured.given;
+import static de.shop.util.TestConstants.BASEPATH;
+import static de.shop.util.TestConstants.BASEURI;
+import static de.shop.util.TestConstants.KUNDEN_ID_FILE_PATH;
+import static de.shop.util.TestConstants.KUNDEN_ID_PATH_PARAM;
+import static de.shop.util.TestConstants.KUNDEN_PATH;
+import static de.shop.util.TestConstants.LOCATION;
+import static de.shop.util.TestConstants.PORT;
+import static java.net.HttpURLConnection.HTTP_CONFLICT;
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_ENTITY_TOO_LARGE;
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.CopyOption;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.jayway.restassured.response.Response;
+
+import de.shop.util.AbstractResourceTest;
+import de.shop.util.FileHelper.MultimediaType;
+import de.shop.util.NoMimeTypeException;
+
+/**
+ * Upload und Download der Datei eines Kunden, auch fortsetzbar ueber KundeUploadResource
+ */
+@RunWith(Arquillian.class)
+@FixMethodOrder(NAME_ASCENDING)
+public class KundeUploadResourceTest extends AbstractResourceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final String ETAG = "ETag";
+	private static final String FILENAME = "image.gif";
+	//private static final String FILENAME = "video.mp4";
+	private static final String FILENAME_UPLOAD = "src/test/resources/rest/" + FILENAME;
+	private static final String FILENAME_DOWNLOAD = "target/" + FILENAME;
+	private static final CopyOption[] COPY_OPTIONS = {REPLACE_EXISTING};
+	private static final Long KUNDE_ID_UPLOAD = Long.valueOf(102);
+	private static final String RANGE = "Range";
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	private static final int RANGE_LAENGE = 10;
+	private static final String UPLOADS_PATH = "/uploads";
+	private static final String UPLOAD_LENGTH = "Upload-Length";
+	private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+	private static final String FILENAME_INVALID_MIMETYPE = "image.bmp";
+	private static final String FILENAME_UPLOAD_INVALID_MIMETYPE = "src/test/resources/rest/" 
+																	+ FILENAME_INVALID_MIMETYPE;
+	
+	@Test
+	public void uploadDownload() throws IOException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPLOAD;
+		final String fileName = FILENAME_UPLOAD;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// Datei als byte[] einlesen
+		byte[] uploaded;
+		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+			Files.copy(Paths.get(fileName), stream);
+			uploaded = stream.toByteArray();
+		}
+		
+		// When
+		// Binaerdaten ohne Base64-Codierung hochladen
+		Response response = given().contentType(APPLICATION_OCTET_STREAM)
+				                   .body(uploaded)
+                                   .auth()
+                                   .basic(username, password)
+                                   .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                   .post(KUNDEN_ID_FILE_PATH);
+
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		// id extrahieren aus http://localhost:8080/shop2/rest/kunden/<id>/file
+		final String idStr = response.getHeader(LOCATION)
+				                     .replace(BASEURI + ":" + PORT + BASEPATH + KUNDEN_PATH + '/', "")
+				                     .replace("/file", "");
+		assertThat(idStr, is(kundeId.toString()));
+		
+		// When (2)
+		// Download der zuvor hochgeladenen Datei
+		response = given().auth()
+                          .basic(username, password)
+                          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                          .get(KUNDEN_ID_FILE_PATH);
+		final byte[] downloaded = response.asByteArray();
+		
+		// Then (2)
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.getHeader(ETAG), is(notNullValue()));
+		assertThat(response.getHeader(ACCEPT_RANGES), is("bytes"));
+		assertThat(uploaded.length, is(downloaded.length));
+		
+		// Abspeichern der heruntergeladenen Datei im Unterverzeichnis target zur manuellen Inspektion
+		try (ByteArrayInputStream inputStream = new ByteArrayInputStream(downloaded)) {
+			Files.copy(inputStream, Paths.get(FILENAME_DOWNLOAD), COPY_OPTIONS);
+		}
+		LOGGER.info("Heruntergeladene Datei abgespeichert: " + FILENAME_DOWNLOAD);
+		
+		// When (3)
+		// Nur die ersten Bytes herunterladen
+		response = given().header(RANGE, "bytes=0-" + (RANGE_LAENGE - 1))
+				          .auth()
+                          .basic(username, password)
+                          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                          .get(KUNDEN_ID_FILE_PATH);
+		
+		// Then (3)
+		assertThat(response.getStatusCode(), is(HTTP_PARTIAL));
+		assertThat(response.getHeader(CONTENT_RANGE),
+		           is("bytes 0-" + (RANGE_LAENGE - 1) + "/" + uploaded.length));
+		assertThat(response.asByteArray().length, is(RANGE_LAENGE));
+
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void uploadFortsetzbar() throws IOException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPLOAD;
+		final String fileName = FILENAME_UPLOAD;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		byte[] uploaded;
+		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+			Files.copy(Paths.get(fileName), stream);
+			uploaded = stream.toByteArray();
+		}
+		final int mitte = uploaded.length / 2;
+		
+		// When
+		// Upload anlegen
+		Response response = given().header(UPLOAD_LENGTH, uploaded.length)
+                                   .auth()
+                                   .basic(username, password)
+                                   .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                                   .post(KUNDEN_ID_FILE_PATH + UPLOADS_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		assertThat(response.getHeader(UPLOAD_OFFSET), is("0"));
+		final String uploadUri = response.getHeader(LOCATION);
+		
+		// When (2)
+		// Erster Abschnitt, danach den Offset wie nach einem Verbindungsabbruch abfragen
+		response = given().contentType(APPLICATION_OCTET_STREAM)
+		                  .header(UPLOAD_OFFSET, 0)
+		                  .body(Arrays.copyOfRange(uploaded, 0, mitte))
+                          .auth()
+                          .basic(username, password)
+                          .put(uploadUri);
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+		response = given().auth()
+                          .basic(username, password)
+                          .head(uploadUri);
+		
+		// Then (2)
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.getHeader(UPLOAD_OFFSET), is(String.valueOf(mitte)));
+		
+		// When (3)
+		// Falscher Offset, danach der zweite Abschnitt
+		response = given().contentType(APPLICATION_OCTET_STREAM)
+		                  .header(UPLOAD_OFFSET, 0)
+		                  .body(Arrays.copyOfRange(uploaded, 0, mitte))
+                          .auth()
+                          .basic(username, password)
+                          .put(uploadUri);
+		assertThat(response.getStatusCode(), is(HTTP_CONFLICT));
+		assertThat(response.getHeader(UPLOAD_OFFSET), is(String.valueOf(mitte)));
+		response = given().contentType(APPLICATION_OCTET_STREAM)
+		                  .header(UPLOAD_OFFSET, mitte)
+		                  .body(Arrays.copyOfRange(uploaded, mitte, uploaded.length))
+                          .auth()
+                          .basic(username, password)
+                          .put(uploadUri);
+		
+		// Then (3)
+		assertThat(response.getStatusCode(), is(HTTP_NO_CONTENT));
+		assertThat(response.getHeader(UPLOAD_OFFSET), is(String.valueOf(uploaded.length)));
+		
+		// When (4)
+		// Abschliessen und herunterladen
+		response = given().auth()
+                          .basic(username, password)
+                          .post(uploadUri);
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		response = given().auth()
+                          .basic(username, password)
+                          .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+                          .get(KUNDEN_ID_FILE_PATH);
+		
+		// Then (4)
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.asByteArray(), is(uploaded));
+
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void uploadInvalidMimeType() throws IOException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPLOAD;
+		final String fileName = FILENAME_UPLOAD_INVALID_MIMETYPE;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// Datei als byte[] einlesen
+		byte[] bytes;
+		try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+			Files.copy(Paths.get(fileName), stream);
+			bytes = stream.toByteArray();
+		}
+		
+		// When
+		final Response response = given().contentType(APPLICATION_OCTET_STREAM)
+				                         .body(bytes)
+				                         .auth()
+				                         .basic(username, password)
+				                         .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+				                         .post(KUNDEN_ID_FILE_PATH);
+		
+		assertThat(response.getStatusCode(), is(HTTP_CONFLICT));
+		assertThat(response.asString(), is(NoMimeTypeException.MESSAGE));
+	}
+	
+	@Test
+	public void uploadZuGross() {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final Long kundeId = KUNDE_ID_UPLOAD;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// Ein GIF-Bild mit einem Byte mehr als erlaubt
+		final byte[] kopf = "GIF89a".getBytes(US_ASCII);
+		final byte[] bytes = Arrays.copyOf(kopf, (int) MultimediaType.IMAGE.getMaxGroesse() + 1);
+		
+		// When
+		final Response response = given().contentType(APPLICATION_OCTET_STREAM)
+		                                 .body(bytes)
+		                                 .auth()
+		                                 .basic(username, password)
+		                                 .pathParameter(KUNDEN_ID_PATH_PARAM, kundeId)
+		                                 .post(KUNDEN_ID_FILE_PATH);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_ENTITY_TOO_LARGE));
+		
+		LOGGER.finer("ENDE");
+	}
+}
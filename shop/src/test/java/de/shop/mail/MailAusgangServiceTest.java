@@ -0,0 +1,220 @@
+package de.shop.mail;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Provider;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import de.shop.util.Config;
+
+/**
+ * Versand der Emails aus dem Postausgang ohne EJB-Container und ohne SMTP-Server: die Session liefert fuer
+ * "smtp" den TransportStub, der die Emails nur protokolliert.
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class MailAusgangServiceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final String ABSENDER = "shop@test.de";
+	private static final String EMPFAENGER_1 = "kunde1@test.de";
+	private static final String EMPFAENGER_2 = "kunde2@test.de";
+	private static final String EMPFAENGER_3 = "kunde3@test.de";
+	private static final String BETREFF = "Neue Bestellung";
+	private static final String TEXT = "Text";
+	private static final int ANZAHL = 3;
+	private static final long BACKOFF_BASIS_SEKUNDEN = 30;
+	private static final int VERSUCHE_MAX_BACKOFF = 8;
+
+	private MailAusgangService mailAusgangService;
+	private List<Ausgangsmail> mails;
+	private List<Long> versendet;
+	private List<Ausgangsmail> fehlgeschlagen;
+
+	/**
+	 * Wird von der Session per Reflection erzeugt, deshalb wird er ueber statische Attribute gesteuert
+	 */
+	public static class TransportStub extends Transport {
+		private static List<String> empfangen = new ArrayList<>();
+		private static String abgelehnt;
+		private static int abbruchNach = -1;
+		private static boolean nichtErreichbar;
+		private static boolean geschlossen;
+
+		public TransportStub(Session session, URLName urlname) {
+			super(session, urlname);
+		}
+
+		private static void reset() {
+			empfangen = new ArrayList<>();
+			abgelehnt = null;
+			abbruchNach = -1;
+			nichtErreichbar = false;
+			geschlossen = false;
+		}
+
+		@Override
+		protected boolean protocolConnect(String host, int port, String user, String password)
+			throws MessagingException {
+			if (nichtErreichbar) {
+				throw new MessagingException("Server nicht erreichbar");
+			}
+			return true;
+		}
+
+		@Override
+		public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+			if (empfangen.size() == abbruchNach) {
+				throw new MessagingException("Verbindung abgebrochen");
+			}
+			final String empfaenger = ((InternetAddress) addresses[0]).getAddress();
+			if (empfaenger.equals(abgelehnt)) {
+				throw new SendFailedException("Empfaenger abgelehnt: " + empfaenger);
+			}
+			assertThat(((InternetAddress) message.getFrom()[0]).getAddress(), is(ABSENDER));
+			assertThat(message.getSubject(), is(BETREFF));
+			empfangen.add(empfaenger);
+		}
+
+		@Override
+		public synchronized void close() throws MessagingException {
+			geschlossen = true;
+			super.close();
+		}
+	}
+
+	@Before
+	public void before() {
+		TransportStub.reset();
+
+		final Properties props = new Properties();
+		props.setProperty("mail.transport.protocol", "smtp");
+		final Session session = Session.getInstance(props);
+		session.setProvider(new Provider(Provider.Type.TRANSPORT, "smtp", TransportStub.class.getName(), "Test",
+		                                 null));
+		final Config config = new Config();
+		config.setAbsenderMail(ABSENDER);
+		mailAusgangService = new MailAusgangService(session, config);
+
+		mails = Arrays.asList(newMail(EMPFAENGER_1), newMail(EMPFAENGER_2), newMail(EMPFAENGER_3));
+		versendet = new ArrayList<>();
+		fehlgeschlagen = new ArrayList<>();
+	}
+
+	@Test
+	public void senden() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final int anzahl = mailAusgangService.senden(mails, versendet, fehlgeschlagen);
+
+		// Then: alle Emails ueber eine Verbindung, die danach geschlossen ist
+		assertThat(anzahl, is(ANZAHL));
+		assertThat(versendet.size(), is(ANZAHL));
+		assertThat(fehlgeschlagen, is(Collections.<Ausgangsmail>emptyList()));
+		assertThat(TransportStub.empfangen, is(Arrays.asList(EMPFAENGER_1, EMPFAENGER_2, EMPFAENGER_3)));
+		assertThat(TransportStub.geschlossen, is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void sendenEmpfaengerAbgelehnt() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		TransportStub.abgelehnt = EMPFAENGER_2;
+
+		// When
+		final int anzahl = mailAusgangService.senden(mails, versendet, fehlgeschlagen);
+
+		// Then: nur diese Email wird erneut versucht
+		assertThat(anzahl, is(ANZAHL));
+		assertThat(versendet.size(), is(2));
+		assertThat(fehlgeschlagen, is(Arrays.asList(mails.get(1))));
+		assertThat(TransportStub.empfangen, is(Arrays.asList(EMPFAENGER_1, EMPFAENGER_3)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void sendenVerbindungAbgebrochen() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		TransportStub.abbruchNach = 1;
+
+		// When
+		final int anzahl = mailAusgangService.senden(mails, versendet, fehlgeschlagen);
+
+		// Then: alle noch nicht gesendeten Emails werden erneut versucht
+		assertThat(anzahl, is(1));
+		assertThat(versendet.size(), is(1));
+		assertThat(fehlgeschlagen, is(mails.subList(1, ANZAHL)));
+		assertThat(TransportStub.geschlossen, is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void sendenNichtErreichbar() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		TransportStub.nichtErreichbar = true;
+
+		// When
+		final int anzahl = mailAusgangService.senden(mails, versendet, fehlgeschlagen);
+
+		// Then
+		assertThat(anzahl, is(0));
+		assertThat(versendet, is(Collections.<Long>emptyList()));
+		assertThat(fehlgeschlagen, is(mails));
+		assertThat(TransportStub.empfangen, is(Collections.<String>emptyList()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getBackoff() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final long basis = TimeUnit.SECONDS.toMillis(BACKOFF_BASIS_SEKUNDEN);
+
+		// When Then: verdoppelt bis hoechstens 1 Stunde
+		assertThat(MailAusgangService.getBackoff(1), is(basis));
+		assertThat(MailAusgangService.getBackoff(2), is(2 * basis));
+		assertThat(MailAusgangService.getBackoff(VERSUCHE_MAX_BACKOFF), is(TimeUnit.HOURS.toMillis(1)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static Ausgangsmail newMail(String empfaenger) {
+		final Ausgangsmail mail = new Ausgangsmail(empfaenger, null, BETREFF, TEXT);
+		// Wie beim Speichern, fuer die Latenz
+		mail.prePersist();
+		return mail;
+	}
+}
@@ -0,0 +1,49 @@
+package de.shop.util;
+
+import static com.jayway.restassured.RestAssured.given;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import javax.json.JsonObject;
+
+import com.jayway.restassured.response.Response;
+
+public class ConcurrentCreate implements Callable<Response> {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private final JsonObject jsonObject;
+	private final String url;
+	private final String username;
+	private final String password;
+	private final CountDownLatch start;
+
+	public ConcurrentCreate(JsonObject jsonObject, String url, String username, String password,
+			                CountDownLatch start) {
+		super();
+		this.jsonObject = jsonObject;
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.start = start;
+	}
+
+	@Override
+	public Response call() throws InterruptedException {
+		LOGGER.finer("BEGINN");
+
+		// Alle Threads gleichzeitig starten
+		start.await();
+		final Response response = given().contentType(APPLICATION_JSON)
+				                         .body(jsonObject.toString())
+				                         .auth()
+				                         .basic(username, password)
+				                         .post(url);
+
+		LOGGER.finer("ENDE");
+		return response;
+	}
+}
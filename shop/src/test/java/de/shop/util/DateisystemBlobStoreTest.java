@@ -0,0 +1,217 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * BlobStore in einem temporaeren Verzeichnis, ohne Appserver
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class DateisystemBlobStoreTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final byte[] INHALT = "Inhalt einer hochgeladenen Datei".getBytes(UTF_8);
+	private static final byte[] VORSCHAU = "Vorschau".getBytes(UTF_8);
+	private static final String VARIANTE = "small";
+	private static final String TMP_VERZEICHNIS = "tmp";
+	private static final long EINE_STUNDE_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final long ZWEI_STUNDEN_MILLIS = TimeUnit.HOURS.toMillis(2);
+	private static final long DREI_STUNDEN_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path verzeichnis;
+	private DateisystemBlobStore blobStore;
+
+	@Before
+	public void before() {
+		verzeichnis = tmp.getRoot().toPath();
+		blobStore = new DateisystemBlobStore(verzeichnis);
+	}
+
+	@Test
+	public void put() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String erwarteterHash = Hashing.sha256().hashBytes(INHALT).toString();
+
+		// When
+		final String hash = blobStore.put(new ByteArrayInputStream(INHALT));
+
+		// Then
+		assertThat(hash, is(erwarteterHash));
+		assertThat(blobStore.exists(hash), is(true));
+		assertThat(blobStore.getGroesse(hash), is((long) INHALT.length));
+		assertThat(lesen(hash), is(INHALT));
+		assertThat(blobStore.getPfad(hash).startsWith(verzeichnis.resolve(hash.substring(0, 2))), is(true));
+		assertThat(anzahlDateien(verzeichnis.resolve(TMP_VERZEICHNIS)), is(0));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void putDedupliziert() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String hash = blobStore.put(new ByteArrayInputStream(INHALT));
+		final Path pfad = blobStore.getPfad(hash);
+		Files.setLastModifiedTime(pfad, FileTime.fromMillis(System.currentTimeMillis() - ZWEI_STUNDEN_MILLIS));
+
+		// When
+		final String hashNochmal = blobStore.put(new ByteArrayInputStream(INHALT));
+
+		// Then
+		assertThat(hashNochmal, is(hash));
+		assertThat(anzahlDateien(pfad.getParent()), is(1));
+		assertThat(anzahlDateien(verzeichnis.resolve(TMP_VERZEICHNIS)), is(0));
+		// Der erneute Upload schuetzt den Inhalt vor dem Loeschen
+		assertThat(blobStore.delete(hash, EINE_STUNDE_MILLIS), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void putTempFile() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final Path datei = blobStore.createTempFile();
+		Files.write(datei, INHALT);
+		final String hash = Hashing.sha256().hashBytes(INHALT).toString();
+
+		// When
+		blobStore.putTempFile(datei, hash);
+
+		// Then
+		assertThat(Files.exists(datei), is(false));
+		assertThat(lesen(hash), is(INHALT));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getPfadUngueltig() {
+		LOGGER.finer("BEGINN");
+
+		// When Then: kein Zugriff ausserhalb des Verzeichnisses
+		for (String hash : Arrays.asList(null, "../passwd", "ABC", "0123")) {
+			try {
+				blobStore.getPfad(hash);
+				fail("IllegalArgumentException erwartet fuer " + hash);
+			}
+			catch (IllegalArgumentException e) {
+				LOGGER.finest(e.getMessage());
+			}
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void findHashes() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String hash = blobStore.put(new ByteArrayInputStream(INHALT));
+		blobStore.putVariante(hash, VARIANTE, VORSCHAU);
+		final FileTime alt = FileTime.fromMillis(System.currentTimeMillis() - ZWEI_STUNDEN_MILLIS);
+		Files.setLastModifiedTime(blobStore.getPfad(hash), alt);
+		Files.setLastModifiedTime(blobStore.getPfad(blobStore.getSchluessel(hash, VARIANTE)), alt);
+		final String prefix = hash.substring(0, 2);
+
+		// When Then: Varianten sind keine Inhalte
+		assertThat(blobStore.findHashes(prefix, EINE_STUNDE_MILLIS), is(Arrays.asList(hash)));
+		assertThat(blobStore.findHashes(prefix, DREI_STUNDEN_MILLIS).isEmpty(), is(true));
+		assertThat(blobStore.findHashes("zz", EINE_STUNDE_MILLIS).isEmpty(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void deleteMitVariante() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String hash = blobStore.put(new ByteArrayInputStream(INHALT));
+		blobStore.putVariante(hash, VARIANTE, VORSCHAU);
+		final String schluessel = blobStore.getSchluessel(hash, VARIANTE);
+		assertThat(lesen(schluessel), is(VORSCHAU));
+		Files.setLastModifiedTime(blobStore.getPfad(hash),
+		                          FileTime.fromMillis(System.currentTimeMillis() - ZWEI_STUNDEN_MILLIS));
+
+		// When
+		final boolean geloescht = blobStore.delete(hash, EINE_STUNDE_MILLIS);
+
+		// Then
+		assertThat(geloescht, is(true));
+		assertThat(blobStore.exists(hash), is(false));
+		assertThat(blobStore.exists(schluessel), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void deleteZuJung() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String hash = blobStore.put(new ByteArrayInputStream(INHALT));
+
+		// When
+		final boolean geloescht = blobStore.delete(hash, EINE_STUNDE_MILLIS);
+
+		// Then
+		assertThat(geloescht, is(false));
+		assertThat(blobStore.exists(hash), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private byte[] lesen(String schluessel) throws IOException {
+		try (FileChannel channel = blobStore.open(schluessel)) {
+			final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				continue;
+			}
+			return buffer.array();
+		}
+	}
+
+	private static int anzahlDateien(Path pfad) throws IOException {
+		int anzahl = 0;
+		try (DirectoryStream<Path> dateien = Files.newDirectoryStream(pfad)) {
+			for (Path datei : dateien) {
+				LOGGER.finest(datei.toString());
+				anzahl++;
+			}
+		}
+		return anzahl;
+	}
+}
@@ -0,0 +1,283 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import de.shop.util.FileHelper.MimeType;
+import de.shop.util.FileHelper.MultimediaType;
+
+/**
+ * MIME-Type anhand der Magic Numbers und Begrenzung der Groesse beim Upload, ohne Appserver
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class FileHelperTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final String VERZEICHNIS = "src/test/resources/rest/";
+	private static final int PUFFER_GROESSE = 8192;
+	private static final int MAX_GROESSE = 10;
+	// Laenge der Box "ftyp" bei MP4 bzw. des RIFF-Chunks bei WAV, jeweils im ersten Byte
+	private static final byte[] LAENGE_MP4 = {0, 0, 0, (byte) 24};
+	private static final byte[] LAENGE_RIFF = {(byte) 36, 0, 0, 0};
+	private static final byte[] PNG_ANFANG = "\u0089PNG".getBytes(ISO_8859_1);
+
+	private final FileHelper fileHelper = new FileHelper();
+
+	@Test
+	public void getMimeTypeGif() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(fileHelper.getMimeType(lesen("image.gif")), is(MimeType.GIF));
+		assertThat(fileHelper.getMimeType(stream(ascii("GIF87a"))), is(MimeType.GIF));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeJpeg() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(fileHelper.getMimeType(lesen("image.jpg")), is(MimeType.JPEG));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypePng() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(fileHelper.getMimeType(lesen("image.png")), is(MimeType.PNG));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeMp4() {
+		LOGGER.finer("BEGINN");
+
+		// Given: Laenge der Box "ftyp" und Major Brand
+		final byte[] kopf = verbinden(LAENGE_MP4, ascii("ftypmp42"));
+
+		// When Then
+		assertThat(fileHelper.getMimeType(stream(kopf)), is(MimeType.MP4));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeWav() {
+		LOGGER.finer("BEGINN");
+
+		// Given: "RIFF", Laenge und "WAVE"
+		final byte[] kopf = verbinden(ascii("RIFF"), LAENGE_RIFF, ascii("WAVEfmt "));
+
+		// When Then
+		assertThat(fileHelper.getMimeType(stream(kopf)), is(MimeType.WAV));
+		// RIFF ohne WAVE, z.B. AVI
+		final byte[] avi = verbinden(ascii("RIFF"), LAENGE_RIFF, ascii("AVI LIST"));
+		assertThat(fileHelper.getMimeType(stream(avi)), is(nullValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeUnbekannt() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(fileHelper.getMimeType(lesen("image.bmp")), is(nullValue()));
+		assertThat(fileHelper.getMimeType(stream(ascii("kein Bild"))), is(nullValue()));
+		assertThat(fileHelper.getMimeType(stream(new byte[0])), is(nullValue()));
+		assertThat(fileHelper.getMimeType(null), is(nullValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeZuKurz() {
+		LOGGER.finer("BEGINN");
+
+		// Given: der Stream endet vor "WAVE" bzw. vor dem Ende der PNG-Signatur
+		final byte[] riff = ascii("RIFF");
+
+		// When Then
+		assertThat(fileHelper.getMimeType(stream(riff)), is(nullValue()));
+		assertThat(fileHelper.getMimeType(stream(PNG_ANFANG)), is(nullValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getMimeTypeStreamAmAnfang() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final byte[] inhalt = Files.readAllBytes(Paths.get(VERZEICHNIS + "image.png"));
+		final InputStream in = stream(inhalt);
+
+		// When
+		fileHelper.getMimeType(in);
+
+		// Then
+		final byte[] gelesen = new byte[inhalt.length];
+		int laenge = 0;
+		while (laenge < gelesen.length) {
+			final int n = in.read(gelesen, laenge, gelesen.length - laenge);
+			if (n < 0) {
+				break;
+			}
+			laenge += n;
+		}
+		assertThat(laenge, is(inhalt.length));
+		assertThat(gelesen, is(inhalt));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void begrenzenMaxGroesse() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final InputStream in = FileHelper.begrenzen(nullen(MAX_GROESSE), MAX_GROESSE);
+
+		// When
+		final long gelesen = lesenBisEnde(in);
+
+		// Then
+		assertThat(gelesen, is((long) MAX_GROESSE));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void begrenzenZuGross() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given: ein Bild mit einem Byte mehr als erlaubt, z.B. ein Upload ohne Content-Length
+		final long maxGroesse = MultimediaType.IMAGE.getMaxGroesse();
+		final InputStream in = FileHelper.begrenzen(nullen(maxGroesse + 1), maxGroesse);
+
+		// When
+		try {
+			lesenBisEnde(in);
+			fail("FileTooLargeException erwartet");
+		}
+		catch (FileTooLargeException e) {
+			// Then: FileTooLargeExceptionMapper liefert daraus den Status 413
+			assertThat(e.getMaxGroesse(), is(maxGroesse));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void begrenzenSkip() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final InputStream in = FileHelper.begrenzen(nullen(MAX_GROESSE + 1), MAX_GROESSE);
+
+		// When
+		try {
+			in.skip(MAX_GROESSE + 1);
+			fail("FileTooLargeException erwartet");
+		}
+		catch (FileTooLargeException e) {
+			// Then
+			assertThat(e.getMaxGroesse(), is((long) MAX_GROESSE));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static InputStream lesen(String filename) throws IOException {
+		return stream(Files.readAllBytes(Paths.get(VERZEICHNIS + filename)));
+	}
+
+	private static InputStream stream(byte[] bytes) {
+		return new BufferedInputStream(new ByteArrayInputStream(bytes));
+	}
+
+	private static byte[] ascii(String str) {
+		return str.getBytes(US_ASCII);
+	}
+
+	private static byte[] verbinden(byte[]... teile) {
+		byte[] ergebnis = new byte[0];
+		for (byte[] teil : teile) {
+			final int laenge = ergebnis.length;
+			ergebnis = Arrays.copyOf(ergebnis, laenge + teil.length);
+			System.arraycopy(teil, 0, ergebnis, laenge, teil.length);
+		}
+		return ergebnis;
+	}
+
+	/**
+	 * Stream aus Nullbytes, ohne sie im Speicher zu halten
+	 */
+	private static InputStream nullen(final long anzahl) {
+		return new InputStream() {
+			private long gelesen;
+
+			@Override
+			public int read() {
+				if (gelesen >= anzahl) {
+					return -1;
+				}
+				gelesen++;
+				return 0;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (gelesen >= anzahl) {
+					return -1;
+				}
+				final int n = (int) Math.min(len, anzahl - gelesen);
+				Arrays.fill(b, off, off + n, (byte) 0);
+				gelesen += n;
+				return n;
+			}
+
+			@Override
+			public long skip(long n) {
+				final long uebersprungen = Math.min(n, anzahl - gelesen);
+				gelesen += uebersprungen;
+				return uebersprungen;
+			}
+		};
+	}
+
+	private static long lesenBisEnde(InputStream in) throws IOException {
+		final byte[] puffer = new byte[PUFFER_GROESSE];
+		long gelesen = 0;
+		int n = in.read(puffer);
+		while (n >= 0) {
+			gelesen += n;
+			n = in.read(puffer);
+		}
+		return gelesen;
+	}
+}
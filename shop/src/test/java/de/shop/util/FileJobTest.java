@@ -0,0 +1,102 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Aufraeumen unbenutzter Inhalte im BlobStore ohne Datenbank: die Hashwerte, auf die eine Datei verweist,
+ * liefert der Test statt der Query File.FIND_HASHES_BY_HASHES
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class FileJobTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	// aelter als das Mindestalter von einem Tag
+	private static final long ALT_MILLIS = TimeUnit.DAYS.toMillis(2);
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private DateisystemBlobStore blobStore;
+	private Set<String> benutzt;
+	private FileJob fileJob;
+
+	@Before
+	public void before() {
+		blobStore = new DateisystemBlobStore(tmp.getRoot().toPath());
+		benutzt = new HashSet<>();
+		fileJob = new FileJob(blobStore) {
+			@Override
+			Set<String> findBenutzt(List<String> hashes) {
+				final Set<String> ergebnis = new HashSet<>(hashes);
+				ergebnis.retainAll(benutzt);
+				return ergebnis;
+			}
+		};
+	}
+
+	@Test
+	public void aufraeumen() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given: je ein benutzter und ein unbenutzter alter Inhalt und ein unbenutzter neuer Inhalt
+		final String benutzterHash = putAlt("benutzt");
+		final String unbenutzterHash = putAlt("unbenutzt");
+		final String neuerHash = blobStore.put(new ByteArrayInputStream("neu".getBytes(UTF_8)));
+		benutzt.add(benutzterHash);
+
+		// When
+		int anzahl = 0;
+		for (String hash : new String[] {benutzterHash, unbenutzterHash, neuerHash}) {
+			anzahl += fileJob.aufraeumen(hash.substring(0, 2));
+		}
+
+		// Then
+		assertThat(anzahl, is(1));
+		assertThat(blobStore.exists(benutzterHash), is(true));
+		assertThat(blobStore.exists(unbenutzterHash), is(false));
+		// Noch ohne Commit der zugehoerigen Datei: nicht loeschen
+		assertThat(blobStore.exists(neuerHash), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void aufraeumenLeererPrefix() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final int anzahl = fileJob.aufraeumen("00");
+
+		// Then
+		assertThat(anzahl, is(0));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private String putAlt(String inhalt) throws IOException {
+		final String hash = blobStore.put(new ByteArrayInputStream(inhalt.getBytes(UTF_8)));
+		Files.setLastModifiedTime(blobStore.getPfad(hash),
+		                          FileTime.fromMillis(System.currentTimeMillis() - ALT_MILLIS));
+		return hash;
+	}
+}
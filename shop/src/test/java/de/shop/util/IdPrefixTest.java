@@ -0,0 +1,73 @@
+package de.shop.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+/**
+ * Praefix einer ID ohne Datenbank
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class IdPrefixTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long PREFIX = Long.valueOf(12);
+	private static final long VON_2 = 120;
+	private static final long BIS_2 = 129;
+
+	@Test
+	public void parse() {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(IdPrefix.parse("12"), is(PREFIX));
+		assertThat(IdPrefix.parse(String.valueOf(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void parseKeinPraefix() {
+		LOGGER.finer("BEGINN");
+
+		// When Then: mit diesen Strings beginnt die Dezimaldarstellung keiner ID
+		assertThat(IdPrefix.parse(null), is(nullValue()));
+		assertThat(IdPrefix.parse(""), is(nullValue()));
+		assertThat(IdPrefix.parse("012"), is(nullValue()));
+		assertThat(IdPrefix.parse("0"), is(nullValue()));
+		assertThat(IdPrefix.parse("+12"), is(nullValue()));
+		assertThat(IdPrefix.parse("-12"), is(nullValue()));
+		assertThat(IdPrefix.parse(" 12"), is(nullValue()));
+		assertThat(IdPrefix.parse("1a"), is(nullValue()));
+		assertThat(IdPrefix.parse("99999999999999999999"), is(nullValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getIntervalle() {
+		LOGGER.finer("BEGINN");
+
+		// When
+		final List<long[]> intervalle = IdPrefix.getIntervalle(PREFIX);
+
+		// Then
+		assertThat(intervalle.get(0)[0], is(PREFIX.longValue()));
+		assertThat(intervalle.get(0)[1], is(PREFIX.longValue()));
+		assertThat(intervalle.get(1)[0], is(VON_2));
+		assertThat(intervalle.get(1)[1], is(BIS_2));
+		final long[] letztes = intervalle.get(intervalle.size() - 1);
+		assertThat(letztes[0] <= letztes[1], is(true));
+		assertThat(IdPrefix.getIntervalle(0).isEmpty(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+}
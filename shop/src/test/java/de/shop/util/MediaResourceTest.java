@@ -0,0 +1,137 @@
+package de.shop.util;
+
+import static com.jayway.restassured.RestAssured.given;
+import static de.shop.util.TestConstants.BASEURI;
+import static de.shop.util.TestConstants.KUNDEN_ID_FILE_PATH;
+import static de.shop.util.TestConstants.KUNDEN_ID_PATH_PARAM;
+import static de.shop.util.TestConstants.PORT;
+import static de.shop.util.TestConstants.WEB_PROJEKT;
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.hash.Hashing;
+import com.jayway.restassured.response.Response;
+
+/**
+ * Caching der Inhalte von MediaServlet: /media/{hash}.{extension} unbegrenzt, /media/{filename} mit ETag
+ */
+@RunWith(Arquillian.class)
+@FixMethodOrder(NAME_ASCENDING)
+public class MediaResourceTest extends AbstractResourceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final String MEDIA_URI = BASEURI + ":" + PORT + "/" + WEB_PROJEKT + MediaServlet.PATH;
+	private static final Long KUNDE_ID_UPLOAD = Long.valueOf(102);
+	private static final String FILENAME_UPLOAD = "src/test/resources/rest/image.gif";
+	private static final String FILENAME_MEDIA = "Kunde_102.gif";
+	private static final String FILENAME_MEDIA_NICHT_VORHANDEN = "Kunde_0.gif";
+	private static final String HASH_NICHT_VORHANDEN = Hashing.sha256().hashLong(0L).toString();
+	private static final String EXTENSION = ".gif";
+	private static final String MIME_TYPE = "image/gif";
+	
+	private static final String CACHE_CONTROL = "Cache-Control";
+	private static final String ETAG = "ETag";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	
+	@Test
+	public void getMediaHash() throws IOException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final byte[] uploaded = hochladen();
+		final String hash = Hashing.sha256().hashBytes(uploaded).toString();
+		
+		// When
+		final Response response = given().get(MEDIA_URI + '/' + hash + EXTENSION);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.getContentType(), is(MIME_TYPE));
+		assertThat(response.getHeader(CACHE_CONTROL), is("public, max-age=31536000, immutable"));
+		assertThat(response.getHeader(ETAG), is('"' + hash + '"'));
+		assertThat(response.asByteArray(), is(uploaded));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void getMediaFilename() throws IOException {
+		LOGGER.finer("BEGINN");
+		
+		// Given
+		final byte[] uploaded = hochladen();
+		
+		// When
+		Response response = given().get(MEDIA_URI + '/' + FILENAME_MEDIA);
+		
+		// Then
+		assertThat(response.getStatusCode(), is(HTTP_OK));
+		assertThat(response.getContentType(), is(MIME_TYPE));
+		assertThat(response.getHeader(CACHE_CONTROL), is("no-cache"));
+		assertThat(response.getHeader(LAST_MODIFIED), is(notNullValue()));
+		assertThat(response.asByteArray(), is(uploaded));
+		final String etag = response.getHeader(ETAG);
+		assertThat(etag, is(notNullValue()));
+		
+		// When (2)
+		// Validierung mit dem ETag
+		response = given().header(IF_NONE_MATCH, etag)
+		                  .get(MEDIA_URI + '/' + FILENAME_MEDIA);
+		
+		// Then (2)
+		assertThat(response.getStatusCode(), is(HTTP_NOT_MODIFIED));
+		assertThat(response.getHeader(ETAG), is(etag));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	@Test
+	public void getMediaNichtVorhanden() {
+		LOGGER.finer("BEGINN");
+		
+		// When
+		final Response responseFilename = given().get(MEDIA_URI + '/' + FILENAME_MEDIA_NICHT_VORHANDEN);
+		final Response responseHash = given().get(MEDIA_URI + '/' + HASH_NICHT_VORHANDEN + EXTENSION);
+		
+		// Then
+		assertThat(responseFilename.getStatusCode(), is(HTTP_NOT_FOUND));
+		assertThat(responseHash.getStatusCode(), is(HTTP_NOT_FOUND));
+		
+		LOGGER.finer("ENDE");
+	}
+	
+	/**
+	 * Die Datei fuer den Kunden hochladen, damit es den Inhalt im BlobStore gibt
+	 * @return Hochgeladener Inhalt
+	 */
+	private byte[] hochladen() throws IOException {
+		final byte[] uploaded = Files.readAllBytes(Paths.get(FILENAME_UPLOAD));
+		final Response response = given().contentType(APPLICATION_OCTET_STREAM)
+		                                 .body(uploaded)
+		                                 .auth()
+		                                 .basic(USERNAME, PASSWORD)
+		                                 .pathParameter(KUNDEN_ID_PATH_PARAM, KUNDE_ID_UPLOAD)
+		                                 .post(KUNDEN_ID_FILE_PATH);
+		assertThat(response.getStatusCode(), is(HTTP_CREATED));
+		return uploaded;
+	}
+}
@@ -0,0 +1,159 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Uebertragung ohne sendfile und Begrenzung der gleichzeitigen Uebertragungen, ohne Servlet-Container
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class MediaServletTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final byte[] INHALT = "Inhalt fuer MediaServlet".getBytes(UTF_8);
+	private static final int MAX_UEBERTRAGUNGEN = 1;
+	private static final long WARTEZEIT_MILLIS = 10L;
+	private static final int START = 7;
+	private static final int LAENGE = 4;
+	private static final String RETRY_AFTER = "Retry-After";
+	private static final String ETAG = "ETag";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private DateisystemBlobStore blobStore;
+	private String hash;
+
+	@Before
+	public void before() throws IOException {
+		blobStore = new DateisystemBlobStore(tmp.getRoot().toPath());
+		hash = blobStore.put(new ByteArrayInputStream(INHALT));
+	}
+
+	@Test
+	public void uebertragen() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final MediaServlet mediaServlet = new MediaServlet(blobStore, MAX_UEBERTRAGUNGEN, WARTEZEIT_MILLIS);
+		final ResponseStub erste = new ResponseStub();
+		final ResponseStub zweite = new ResponseStub();
+
+		// When
+		mediaServlet.uebertragen(hash, 0L, INHALT.length, erste.getResponse());
+		// Der Platz der ersten Uebertragung ist wieder frei
+		mediaServlet.uebertragen(hash, 0L, INHALT.length, zweite.getResponse());
+
+		// Then
+		assertThat(erste.status, is(SC_OK));
+		assertThat(erste.inhalt.toByteArray(), is(INHALT));
+		assertThat(zweite.status, is(SC_OK));
+		assertThat(zweite.inhalt.toByteArray(), is(INHALT));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void uebertragenBereich() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final MediaServlet mediaServlet = new MediaServlet(blobStore, MAX_UEBERTRAGUNGEN, WARTEZEIT_MILLIS);
+		final ResponseStub response = new ResponseStub();
+
+		// When
+		mediaServlet.uebertragen(hash, START, LAENGE, response.getResponse());
+
+		// Then
+		assertThat(response.inhalt.toByteArray(), is(Arrays.copyOfRange(INHALT, START, START + LAENGE)));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void uebertragenZuViele() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given: alle Plaetze fuer Uebertragungen sind belegt
+		final MediaServlet mediaServlet = new MediaServlet(blobStore, 0, WARTEZEIT_MILLIS);
+		final ResponseStub response = new ResponseStub();
+		response.headers.put(ETAG, '"' + hash + '"');
+
+		// When
+		mediaServlet.uebertragen(hash, 0L, INHALT.length, response.getResponse());
+
+		// Then
+		assertThat(response.status, is(SC_SERVICE_UNAVAILABLE));
+		assertThat(response.headers.get(RETRY_AFTER), is("1"));
+		// Die Header fuer den Inhalt gelten nicht fuer den Status 503
+		assertThat(response.headers.get(ETAG), is(nullValue()));
+		assertThat(response.inhalt.size(), is(0));
+
+		LOGGER.finer("ENDE");
+	}
+
+	/**
+	 * HttpServletResponse ohne Servlet-Container, die Status, Header und Inhalt festhaelt
+	 */
+	private static final class ResponseStub implements InvocationHandler {
+		private final Map<String, String> headers = new HashMap<>();
+		private final ByteArrayOutputStream inhalt = new ByteArrayOutputStream();
+		private int status = SC_OK;
+
+		HttpServletResponse getResponse() {
+			return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+			                                                    new Class<?>[] {HttpServletResponse.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+				case "setHeader":
+					headers.put((String) args[0], (String) args[1]);
+					return null;
+				case "sendError":
+					status = ((Integer) args[0]).intValue();
+					return null;
+				case "reset":
+					headers.clear();
+					inhalt.reset();
+					return null;
+				case "getOutputStream":
+					return new ServletOutputStream() {
+						@Override
+						public void write(int b) {
+							inhalt.write(b);
+						}
+					};
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		}
+	}
+}
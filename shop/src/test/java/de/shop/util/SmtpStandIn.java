@@ -0,0 +1,103 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimaler SMTP-Server im Testprozess, damit die Emails aus dem Postausgang ohne echten Mailserver empfangen
+ * werden koennen. Jede Verbindung wird nacheinander bedient; jede Email wird angenommen und mit dem Header und
+ * dem Text in eine Warteschlange gestellt.
+ */
+public class SmtpStandIn implements Closeable {
+	private static final String CRLF = "\r\n";
+	private static final String ENDE_DATA = ".";
+	private static final String THREAD_NAME = "smtp-stand-in";
+
+	private final ServerSocket serverSocket;
+	private final BlockingQueue<String> emails = new LinkedBlockingQueue<>();
+
+	public SmtpStandIn(int port) throws IOException {
+		serverSocket = new ServerSocket(port);
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				annehmen();
+			}
+		}, THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Auf die naechste Email warten
+	 * @return Header und Text der Email oder null nach dem Timeout
+	 */
+	public String empfangen(long timeout, TimeUnit unit) throws InterruptedException {
+		return emails.poll(timeout, unit);
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void annehmen() {
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				bedienen(socket);
+			}
+			catch (IOException e) {
+				// Server geschlossen oder Verbindung abgebrochen
+			}
+		}
+	}
+
+	private void bedienen(Socket socket) throws IOException {
+		final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), US_ASCII));
+		final Writer out = new OutputStreamWriter(socket.getOutputStream(), US_ASCII);
+		antworten(out, "220 localhost SMTP");
+
+		for (String zeile = in.readLine(); zeile != null; zeile = in.readLine()) {
+			final String befehl = zeile.toUpperCase(Locale.ROOT);
+			if (befehl.startsWith("DATA")) {
+				antworten(out, "354 Ende mit <CRLF>.<CRLF>");
+				emails.add(lesenData(in));
+				antworten(out, "250 OK");
+			}
+			else if (befehl.startsWith("QUIT")) {
+				antworten(out, "221 Bye");
+				return;
+			}
+			else {
+				// HELO, EHLO, MAIL FROM, RCPT TO, RSET, NOOP
+				antworten(out, "250 OK");
+			}
+		}
+	}
+
+	private static String lesenData(BufferedReader in) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (String zeile = in.readLine(); zeile != null && !ENDE_DATA.equals(zeile); zeile = in.readLine()) {
+			// Transparenz nach RFC 5321: ein fuehrender Punkt wurde verdoppelt
+			sb.append(zeile.startsWith(ENDE_DATA) ? zeile.substring(1) : zeile).append(CRLF);
+		}
+		return sb.toString();
+	}
+
+	private static void antworten(Writer out, String antwort) throws IOException {
+		out.write(antwort + CRLF);
+		out.flush();
+	}
+}
@@ -12,16 +12,23 @@ public final class TestConstants {
 	// HTTP-Header
 	public static final String ACCEPT = "Accept";
 	public static final String LOCATION = "Location";
+	public static final String PREFER = "Prefer";
+	public static final String PREFERENCE_APPLIED = "Preference-Applied";
 	
 	// URLs und Pfade
 	public static final String BASEURI;
 	public static final int PORT;
 	public static final String BASEPATH;
 	
+	// Port fuer SmtpStandIn ohne Root-Rechte: die Socket-Binding "mail-smtp" von JBoss muss auf localhost und
+	// diesen Port zeigen, siehe arquillian.xml
+	public static final int SMTP_PORT;
+	
 	static {
 		BASEURI = System.getProperty("baseuri", "http://localhost");
 		PORT = Integer.parseInt(System.getProperty("port", "8080"));
 		BASEPATH = System.getProperty("basepath", "/shop/rest");
+		SMTP_PORT = Integer.parseInt(System.getProperty("smtpPort", "2525"));
 	}
 	
 	public static final String KUNDEN_PATH = "/kunden";
@@ -35,9 +42,17 @@ public final class TestConstants {
 	public static final String BESTELLUNGEN_ID_PATH_PARAM = "bestellungId";
 	public static final String BESTELLUNGEN_ID_PATH = BESTELLUNGEN_PATH + "/{" + BESTELLUNGEN_ID_PATH_PARAM + "}";
 	public static final String BESTELLUNGEN_ID_KUNDE_PATH = BESTELLUNGEN_ID_PATH + "/kunde";
+	public static final String EINGAENGE_ID_PATH_PARAM = "eingangId";
+	public static final String BESTELLUNGEN_EINGAENGE_ID_PATH = BESTELLUNGEN_PATH + "/eingaenge/{"
+	                                                            + EINGAENGE_ID_PATH_PARAM + "}";
 	
 	public static final String ARTIKEL_PATH = "/artikel";
 	public static final String ARTIKEL_URI = BASEURI + ":" + PORT + BASEPATH + ARTIKEL_PATH;
+	public static final String ARTIKEL_ID_PATH_PARAM = "artikelId";
+	public static final String ARTIKEL_ID_PATH = ARTIKEL_PATH + "/{" + ARTIKEL_ID_PATH_PARAM + "}";
+	public static final String ARTIKEL_ID_BESTAND_PATH = ARTIKEL_ID_PATH + "/bestand";
+	
+	public static final String MAIL_PATH = "/admin/mail";
 	
 	// Testklassen fuer Service- und Domain-Tests
 	public static final Class<?>[] TEST_CLASSES = { //Domain-Tests
@@ -0,0 +1,155 @@
+package de.shop.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Fortsetzbare Uploads in einem temporaeren Verzeichnis, ohne Appserver. Ein Neustart wird durch einen neuen
+ * BlobStore und einen neuen UploadService fuer dasselbe Verzeichnis nachgestellt.
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class UploadServiceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final Long KUNDE_ID = Long.valueOf(102);
+	private static final Long KUNDE_ID_ANDERER = Long.valueOf(103);
+	private static final byte[] INHALT = "Ein Video von einem Smartphone mit instabiler Verbindung".getBytes(UTF_8);
+	private static final String METADATEN = "*.upload";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Path verzeichnis;
+	private BlobStore blobStore;
+	private UploadService uploadService;
+
+	@Before
+	public void before() {
+		verzeichnis = tmp.getRoot().toPath();
+		blobStore = new DateisystemBlobStore(verzeichnis);
+		uploadService = new UploadService(blobStore);
+	}
+
+	@Test
+	public void fortsetzenNachNeustart() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final int mitte = INHALT.length / 2;
+		final String uploadId = uploadService.create(KUNDE_ID, INHALT.length);
+		uploadService.write(uploadId, KUNDE_ID, 0L, newInputStream(0, mitte));
+
+		// When
+		final BlobStore blobStoreNeu = new DateisystemBlobStore(verzeichnis);
+		final UploadService uploadServiceNeu = new UploadService(blobStoreNeu);
+
+		// Then
+		assertThat(uploadServiceNeu.getOffset(uploadId, KUNDE_ID), is((long) mitte));
+		assertThat(uploadServiceNeu.getLaenge(uploadId, KUNDE_ID), is((long) INHALT.length));
+
+		final long offset = uploadServiceNeu.write(uploadId, KUNDE_ID, mitte, newInputStream(mitte, INHALT.length));
+		assertThat(offset, is((long) INHALT.length));
+		final String hash = uploadServiceNeu.complete(uploadId, KUNDE_ID);
+		assertThat(hash, is(Hashing.sha256().hashBytes(INHALT).toString()));
+		assertThat(blobStoreNeu.getGroesse(hash), is((long) INHALT.length));
+		assertThat(blobStoreNeu.findTempFiles(METADATEN).isEmpty(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void abschliessenNachNeustart() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String uploadId = uploadService.create(KUNDE_ID, INHALT.length);
+		uploadService.write(uploadId, KUNDE_ID, 0L, newInputStream(0, INHALT.length));
+
+		// When: der Hashwert wird aus den gespeicherten Bytes neu berechnet
+		final String hash = new UploadService(new DateisystemBlobStore(verzeichnis)).complete(uploadId, KUNDE_ID);
+
+		// Then
+		assertThat(hash, is(Hashing.sha256().hashBytes(INHALT).toString()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void writeFalscherOffset() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String uploadId = uploadService.create(KUNDE_ID, INHALT.length);
+
+		// When
+		try {
+			uploadService.write(uploadId, KUNDE_ID, 1L, newInputStream(1, INHALT.length));
+			fail("UploadOffsetException erwartet");
+		}
+		catch (UploadOffsetException e) {
+			// Then
+			assertThat(uploadService.getOffset(uploadId, KUNDE_ID), is(0L));
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getOffsetAndererKunde() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String uploadId = uploadService.create(KUNDE_ID, INHALT.length);
+
+		// When
+		try {
+			uploadService.getOffset(uploadId, KUNDE_ID_ANDERER);
+			fail("NotFoundException erwartet");
+		}
+		catch (NotFoundException e) {
+			// Then
+			LOGGER.finest(e.getMessage());
+		}
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void delete() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final String uploadId = uploadService.create(KUNDE_ID, INHALT.length);
+
+		// When
+		uploadService.delete(uploadId, KUNDE_ID);
+
+		// Then: nach einem Neustart gibt es den Upload auch nicht
+		assertThat(blobStore.findTempFiles(METADATEN).isEmpty(), is(true));
+		assertThat(blobStore.findTempFiles("*").isEmpty(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static ByteArrayInputStream newInputStream(int von, int bis) {
+		return new ByteArrayInputStream(Arrays.copyOfRange(INHALT, von, bis));
+	}
+}
@@ -0,0 +1,225 @@
+package de.shop.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.runners.MethodSorters.NAME_ASCENDING;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+
+import de.shop.util.FileHelper.MimeType;
+import de.shop.util.VorschauService.Groesse;
+
+/**
+ * Vorschaubilder ohne Appserver und ohne BlobStore
+ */
+@FixMethodOrder(NAME_ASCENDING)
+public class VorschauServiceTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+	private static final int BREITE = 1000;
+	private static final int HOEHE = 500;
+	private static final int BREITE_KLEIN = 50;
+	private static final int HOEHE_KLEIN = 40;
+	private static final int BREITE_GROSS = 2000;
+	private static final int HOEHE_GROSS = 1000;
+	private static final String FORMAT_PNG = "png";
+	private static final String HASH_PREFIX = "hash-";
+
+	@Test
+	public void erzeugenVarianteSmall() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final BufferedImage original = newBild(BREITE, HOEHE);
+
+		// When
+		final byte[] inhalt = VorschauService.erzeugenVariante(original, MimeType.JPEG, Groesse.SMALL);
+
+		// Then
+		final BufferedImage vorschau = ImageIO.read(new ByteArrayInputStream(inhalt));
+		assertThat(vorschau.getWidth(), is(Groesse.SMALL.getMaxKante()));
+		assertThat(vorschau.getHeight(), is(Groesse.SMALL.getMaxKante() / 2));
+		assertThat(vorschau.getColorModel().hasAlpha(), is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void erzeugenVarianteMedium() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final BufferedImage original = newBild(HOEHE, BREITE);
+
+		// When
+		final byte[] inhalt = VorschauService.erzeugenVariante(original, MimeType.GIF, Groesse.MEDIUM);
+
+		// Then
+		final BufferedImage vorschau = ImageIO.read(new ByteArrayInputStream(inhalt));
+		assertThat(vorschau.getWidth(), is(Groesse.MEDIUM.getMaxKante() / 2));
+		assertThat(vorschau.getHeight(), is(Groesse.MEDIUM.getMaxKante()));
+		// PNG wegen der Transparenz bei GIF
+		assertThat(vorschau.getColorModel().hasAlpha(), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void erzeugenVarianteNichtVergroessert() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final BufferedImage original = newBild(BREITE_KLEIN, HOEHE_KLEIN);
+
+		// When
+		final byte[] inhalt = VorschauService.erzeugenVariante(original, MimeType.PNG, Groesse.MEDIUM);
+
+		// Then
+		final BufferedImage vorschau = ImageIO.read(new ByteArrayInputStream(inhalt));
+		assertThat(vorschau.getWidth(), is(BREITE_KLEIN));
+		assertThat(vorschau.getHeight(), is(HOEHE_KLEIN));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getSchritt() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final int doppeltMedium = 2 * Groesse.MEDIUM.getMaxKante();
+
+		// When Then
+		assertThat(VorschauService.getSchritt(BREITE_KLEIN, HOEHE_KLEIN), is(1));
+		assertThat(VorschauService.getSchritt(2 * doppeltMedium - 1, HOEHE_KLEIN), is(1));
+		assertThat(VorschauService.getSchritt(HOEHE_KLEIN, 2 * doppeltMedium), is(2));
+		assertThat(VorschauService.getSchritt(4 * doppeltMedium, 2 * doppeltMedium), is(4));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void lesenUnterabgetastet() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(newBild(BREITE_GROSS, HOEHE_GROSS), FORMAT_PNG, out);
+		final int schritt = VorschauService.getSchritt(BREITE_GROSS, HOEHE_GROSS);
+
+		// When
+		final BufferedImage bild;
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			bild = VorschauService.lesen(in);
+		}
+
+		// Then
+		assertThat(schritt > 1, is(true));
+		assertThat(bild.getWidth(), is(BREITE_GROSS / schritt));
+		assertThat(bild.getHeight(), is(HOEHE_GROSS / schritt));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void lesenKeinBild() throws IOException {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final byte[] inhalt = "kein Bild".getBytes("UTF-8");
+
+		// When
+		IOException exception = null;
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(inhalt))) {
+			VorschauService.lesen(in);
+		}
+		catch (IOException e) {
+			exception = e;
+		}
+
+		// Then
+		assertThat(exception == null, is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void erzeugenWarteschlangeVoll() {
+		LOGGER.finer("BEGINN");
+
+		// Given: ohne Container laeuft kein Timer, der die Warteschlange abarbeitet
+		final VorschauService vorschauService = new VorschauService();
+		for (int i = 0; i < VorschauService.MAX_AUFTRAEGE; i++) {
+			assertThat(vorschauService.erzeugen(HASH_PREFIX + i, MimeType.JPEG), is(true));
+		}
+
+		// When
+		final boolean angenommen = vorschauService.erzeugen(HASH_PREFIX + VorschauService.MAX_AUFTRAEGE,
+		                                                     MimeType.JPEG);
+
+		// Then
+		assertThat(angenommen, is(false));
+		// Ein wartender Auftrag fuer dasselbe Bild wird nicht doppelt eingereiht
+		assertThat(vorschauService.erzeugen(HASH_PREFIX + 0, MimeType.JPEG), is(true));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void erzeugenKeinBild() {
+		LOGGER.finer("BEGINN");
+
+		// Given
+		final VorschauService vorschauService = new VorschauService();
+
+		// When
+		final boolean angenommen = vorschauService.erzeugen(HASH_PREFIX, MimeType.MP4);
+
+		// Then
+		assertThat(angenommen, is(false));
+
+		LOGGER.finer("ENDE");
+	}
+
+	@Test
+	public void getGroesse() {
+		LOGGER.finer("BEGINN");
+
+		// When Then
+		assertThat(Groesse.get("small"), is(Groesse.SMALL));
+		assertThat(Groesse.get("medium"), is(Groesse.MEDIUM));
+		assertThat(Groesse.get("SMALL"), is(nullValue()));
+		assertThat(Groesse.get(null), is(nullValue()));
+
+		LOGGER.finer("ENDE");
+	}
+
+	private static BufferedImage newBild(int breite, int hoehe) {
+		final BufferedImage bild = new BufferedImage(breite, hoehe, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = bild.createGraphics();
+		try {
+			g.setColor(Color.BLUE);
+			g.fillRect(0, 0, breite, hoehe);
+			g.setColor(Color.YELLOW);
+			g.fillOval(0, 0, breite / 2, hoehe / 2);
+		}
+		finally {
+			g.dispose();
+		}
+		return bild;
+	}
+}